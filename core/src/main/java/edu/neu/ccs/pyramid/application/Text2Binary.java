@@ -0,0 +1,101 @@
+package edu.neu.ccs.pyramid.application;
+
+import edu.neu.ccs.pyramid.configuration.Config;
+import edu.neu.ccs.pyramid.dataset.*;
+
+/**
+ * converts between the text formats (trec, libsvm) and the binary format, in either direction
+ */
+public class Text2Binary {
+    public static void main(String[] args) throws Exception{
+        Config config = new Config(args[0]);
+        System.out.println(config);
+        String direction = config.getString("direction");
+        switch (direction) {
+            case "toBinary":
+                toBinary(config);
+                break;
+            case "fromBinary":
+                fromBinary(config);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown direction "+direction);
+        }
+    }
+
+    private static void toBinary(Config config) throws Exception{
+        String format = config.getString("format");
+        String dataType = config.getString("dataSetType");
+        String input = config.getString("input");
+        String binaryFile = config.getString("binaryFile");
+        DataSet dataSet = null;
+        if (format.equals("trec")){
+            switch (dataType) {
+                case "clf":
+                    dataSet = TRECFormat.loadClfDataSet(input, DataSetType.CLF_COMPRESSED, true);
+                    break;
+                case "reg":
+                    dataSet = TRECFormat.loadRegDataSet(input, DataSetType.REG_COMPRESSED, true);
+                    break;
+                case "mlclf":
+                    dataSet = TRECFormat.loadMultiLabelClfDataSet(input, DataSetType.ML_CLF_COMPRESSED, true);
+                    break;
+            }
+        }
+        if (format.equals("libsvm")){
+            int numFeatures = config.getInt("numFeatures");
+            switch (dataType) {
+                case "clf":
+                    dataSet = LibSvmFormat.loadCompressedClfDataSet(input, numFeatures, config.getInt("numClasses"));
+                    break;
+                case "reg":
+                    dataSet = LibSvmFormat.loadCompressedRegDataSet(input, numFeatures);
+                    break;
+                case "mlclf":
+                    dataSet = LibSvmFormat.loadCompressedMultiLabelClfDataSet(input, numFeatures, config.getInt("numClasses"));
+                    break;
+            }
+        }
+        if (dataSet==null){
+            throw new IllegalArgumentException("unknown format "+format+" or data set type "+dataType);
+        }
+        System.out.println("translating: " + input);
+        BinaryFormat.save(dataSet, binaryFile);
+    }
+
+    private static void fromBinary(Config config) throws Exception{
+        String format = config.getString("format");
+        String dataType = config.getString("dataSetType");
+        String binaryFile = config.getString("binaryFile");
+        String output = config.getString("output");
+        System.out.println("translating: " + binaryFile);
+        switch (dataType) {
+            case "clf":
+                ClfDataSet clfDataSet = BinaryFormat.loadClfDataSet(binaryFile);
+                if (format.equals("trec")){
+                    TRECFormat.save(clfDataSet, output);
+                } else {
+                    LibSvmFormat.save(clfDataSet, output);
+                }
+                break;
+            case "reg":
+                RegDataSet regDataSet = BinaryFormat.loadRegDataSet(binaryFile);
+                if (format.equals("trec")){
+                    TRECFormat.save(regDataSet, output);
+                } else {
+                    LibSvmFormat.save(regDataSet, output);
+                }
+                break;
+            case "mlclf":
+                MultiLabelClfDataSet mlClfDataSet = BinaryFormat.loadMultiLabelClfDataSet(binaryFile);
+                if (format.equals("trec")){
+                    TRECFormat.save(mlClfDataSet, output);
+                } else {
+                    LibSvmFormat.save(mlClfDataSet, output);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown data set type "+dataType);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package edu.neu.ccs.pyramid.classification.lkboost;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.dataset.LabelTranslator;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.FlatGradientBoosting;
+import edu.neu.ccs.pyramid.util.ArgMax;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.mahout.math.Vector;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * scoring-only {@link LKBoost} loaded from the compact binary format
+ * scores and probabilities are the same as the original model, bit for bit
+ */
+public class FlatLKBoost implements Classifier.ProbabilityEstimator, Classifier.ScoreEstimator{
+    private static final long serialVersionUID = 1L;
+    static final String KIND = "LKBoost";
+    private int numClasses;
+    private FlatGradientBoosting boosting;
+    private LabelTranslator labelTranslator;
+
+    private FlatLKBoost() {
+    }
+
+    /**
+     * read a model written by {@link LKBoost#writeTo}
+     */
+    public static FlatLKBoost readFrom(ByteBuffer buffer){
+        FlatLKBoost lkBoost = new FlatLKBoost();
+        lkBoost.numClasses = buffer.getInt();
+        lkBoost.labelTranslator = BinarySerialization.readLabelTranslator(buffer);
+        lkBoost.boosting = FlatGradientBoosting.readFrom(buffer);
+        return lkBoost;
+    }
+
+    /**
+     * same layout as {@link LKBoost#writeTo}
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(numClasses);
+        BinarySerialization.writeLabelTranslator(out, labelTranslator);
+        boosting.writeTo(out);
+    }
+
+    public static FlatLKBoost deserializeBinary(File file) throws IOException {
+        return readFrom(BinarySerialization.openForRead(file, KIND));
+    }
+
+    @Override
+    public int predict(Vector vector) {
+        return ArgMax.argMax(predictClassScores(vector));
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public double predictClassScore(Vector vector, int k) {
+        return boosting.score(vector, k);
+    }
+
+    @Override
+    public double[] predictClassScores(Vector vector) {
+        return boosting.scores(vector);
+    }
+
+    @Override
+    public double[] predictClassProbs(Vector vector) {
+        double[] scoreVector = predictClassScores(vector);
+        double[] probVector = new double[numClasses];
+        double logDenominator = MathUtil.logSumExp(scoreVector);
+        for (int k=0;k<numClasses;k++){
+            probVector[k] = Math.exp(scoreVector[k]-logDenominator);
+        }
+        return probVector;
+    }
+
+    @Override
+    public double[] predictLogClassProbs(Vector vector) {
+        double[] scoreVector = predictClassScores(vector);
+        double[] logProbVector = new double[numClasses];
+        double logDenominator = MathUtil.logSumExp(scoreVector);
+        for (int k=0;k<numClasses;k++){
+            logProbVector[k] = scoreVector[k]-logDenominator;
+        }
+        return logProbVector;
+    }
+
+    /**
+     * features are not stored in the binary format
+     */
+    @Override
+    public FeatureList getFeatureList() {
+        return null;
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+}
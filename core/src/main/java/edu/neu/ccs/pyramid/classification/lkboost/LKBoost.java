@@ -1,15 +1,20 @@
 package edu.neu.ccs.pyramid.classification.lkboost;
 
 import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.Ensemble;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.FlatGradientBoosting;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GradientBoosting;
 import edu.neu.ccs.pyramid.util.ArgMax;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.Vector;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 
 /**
@@ -35,6 +40,15 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
         return ArgMax.argMax(scores);
     }
 
+    @Override
+    public int[] predict(DataSet dataSet){
+        double[] scores = new double[dataSet.getNumDataPoints()*numClasses];
+        predictBatch(dataSet, scores);
+        return IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .map(i -> ArgMax.argMax(Arrays.copyOfRange(scores, i*numClasses, (i+1)*numClasses)))
+                .toArray();
+    }
+
     public int getNumClasses() {
         return this.numClasses;
     }
@@ -98,6 +112,21 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
 
 
 
+    /**
+     * flattened trees and label translator in the compact binary format, read back by {@link FlatLKBoost#readFrom}
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(numClasses);
+        BinarySerialization.writeLabelTranslator(out, labelTranslator);
+        new FlatGradientBoosting(this).writeTo(out);
+    }
+
+    public void serializeBinary(File file) throws IOException {
+        try (DataOutputStream out = BinarySerialization.openForWrite(file, FlatLKBoost.KIND)){
+            writeTo(out);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -94,7 +94,7 @@ public class LKBoostOptimizer extends GBOptimizer {
 
 
     private double gradient(int ensembleIndex, int dataPoint){
-        double prob = probabilityMatrix.getProbabilitiesForData(dataPoint)[ensembleIndex];
+        double prob = probabilityMatrix.getProbability(dataPoint,ensembleIndex);
         return targetDistribution[dataPoint][ensembleIndex] - prob;
     }
 
@@ -106,21 +106,19 @@ public class LKBoostOptimizer extends GBOptimizer {
      */
     private void updateClassProb(int i){
         int numClasses = this.boosting.getNumClasses();
-        float[] scores = scoreMatrix.getScoresForData(i);
-
-        double logDenominator = MathUtil.logSumExp(scores);
+        double logDenominator = scoreMatrix.logSumExpForData(i);
 //        if (logger.isDebugEnabled()){
 //            logger.debug("logDenominator for data point "+i+" with scores  = "+ Arrays.toString(scores)
 //                    +" ="+logDenominator+", label = "+lktbConfig.getDataSet().getLabels()[i]);
 //        }
         for (int k=0;k<numClasses;k++){
-            double logNumerator = scores[k];
+            double logNumerator = scoreMatrix.getScore(i,k);
             double pro = Math.exp(logNumerator-logDenominator);
             this.probabilityMatrix.setProbability(i,k,pro);
             if (Double.isNaN(pro)){
                 throw new RuntimeException("pro=NaN, logNumerator = "
                         +logNumerator+", logDenominator="+logDenominator+
-                        ", scores = "+Arrays.toString(scores));
+                        ", scores = "+Arrays.toString(scoreMatrix.getScoresForData(i)));
             }
         }
     }
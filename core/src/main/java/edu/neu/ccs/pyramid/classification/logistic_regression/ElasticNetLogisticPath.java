@@ -0,0 +1,272 @@
+package edu.neu.ccs.pyramid.classification.logistic_regression;
+
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.eval.Accuracy;
+import edu.neu.ccs.pyramid.util.Grid;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * elastic net logistic regression over a decreasing sequence of regularizations
+ * each fit starts from the previous solution, and the sub-problems use screening
+ * with the sequential strong rule, so that small regularizations are reached cheaply.
+ * the default grid starts at the smallest regularization where all weights but the biases are 0,
+ * found from the gradient of the bias-only model.
+ * Friedman, Jerome, Trevor Hastie, and Rob Tibshirani.
+ * "Regularization paths for generalized linear models via coordinate descent."
+ * Journal of statistical software 33.1 (2010): 1.
+ */
+public class ElasticNetLogisticPath {
+    private static final Logger logger = LogManager.getLogger();
+    private DataSet dataSet;
+    private int numClasses;
+    // N * L
+    private double[][] targets;
+    private double[] weights;
+    private double sumWeights;
+    private double l1Ratio = 1;
+    // if not given, a log uniform grid below the max regularization
+    private List<Double> regularizations;
+    private int numRegularizations = 20;
+    private double minRatio = 0.001;
+    private boolean lineSearch = true;
+    private int maxNumLinearRegUpdates = 10;
+    private DataSet validationSet;
+    private double[][] validationTargets;
+    // null unless the validation set has single labels
+    private ClfDataSet validationClfSet;
+
+    public ElasticNetLogisticPath(DataSet dataSet, int numClasses, double[][] targets, double[] weights) {
+        this.dataSet = dataSet;
+        this.numClasses = numClasses;
+        this.targets = targets;
+        this.weights = weights;
+        this.sumWeights = Arrays.stream(weights).parallel().sum();
+    }
+
+    public ElasticNetLogisticPath(DataSet dataSet, int numClasses, double[][] targets) {
+        this(dataSet, numClasses, targets, defaultWeights(dataSet.getNumDataPoints()));
+    }
+
+    public ElasticNetLogisticPath(ClfDataSet dataSet) {
+        this(dataSet, dataSet.getNumClasses(), oneHot(dataSet));
+    }
+
+    public ElasticNetLogisticPath setL1Ratio(double l1Ratio) {
+        if (l1Ratio<0 || l1Ratio>1){
+            throw new IllegalArgumentException("(l1Ratio>=0)&&(l1Ratio<=1)");
+        }
+        this.l1Ratio = l1Ratio;
+        return this;
+    }
+
+    /**
+     * fit these regularizations, from big to small
+     */
+    public ElasticNetLogisticPath setRegularizations(List<Double> regularizations) {
+        List<Double> sorted = new ArrayList<>(regularizations);
+        sorted.sort(Collections.reverseOrder());
+        this.regularizations = sorted;
+        return this;
+    }
+
+    public ElasticNetLogisticPath setNumRegularizations(int numRegularizations) {
+        this.numRegularizations = numRegularizations;
+        return this;
+    }
+
+    /**
+     * smallest regularization of the default grid, relative to the biggest one
+     */
+    public ElasticNetLogisticPath setMinRatio(double minRatio) {
+        this.minRatio = minRatio;
+        return this;
+    }
+
+    public ElasticNetLogisticPath setLineSearch(boolean lineSearch) {
+        this.lineSearch = lineSearch;
+        return this;
+    }
+
+    public ElasticNetLogisticPath setMaxNumLinearRegUpdates(int maxNumLinearRegUpdates) {
+        this.maxNumLinearRegUpdates = maxNumLinearRegUpdates;
+        return this;
+    }
+
+    /**
+     * every model on the path is evaluated on this set by average log-likelihood
+     */
+    public ElasticNetLogisticPath setValidationSet(DataSet validationSet, double[][] validationTargets) {
+        this.validationSet = validationSet;
+        this.validationTargets = validationTargets;
+        this.validationClfSet = null;
+        return this;
+    }
+
+    /**
+     * every model on the path is evaluated on this set by average log-likelihood and accuracy
+     */
+    public ElasticNetLogisticPath setValidationSet(ClfDataSet validationSet) {
+        this.validationSet = validationSet;
+        this.validationTargets = oneHot(validationSet);
+        this.validationClfSet = validationSet;
+        return this;
+    }
+
+    /**
+     * the bias-only model that fits the weighted class frequencies
+     */
+    private LogisticRegression biasOnly(){
+        double[] priors = new double[numClasses];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int k=0;k<numClasses;k++){
+                priors[k] += weights[i]*targets[i][k];
+            }
+        }
+        for (int k=0;k<numClasses;k++){
+            // keep scores finite for classes never seen
+            priors[k] = Math.max(priors[k]/sumWeights, 1E-10);
+        }
+        return new LogisticRegression(numClasses, dataSet.getNumFeatures(), priors);
+    }
+
+    /**
+     * smallest regularization at which all weights but the biases are 0;
+     * it needs l1Ratio > 0
+     */
+    public double maxRegularization(){
+        if (l1Ratio==0){
+            throw new IllegalStateException("with l1Ratio = 0, regularizations should be given");
+        }
+        LogisticRegression start = biasOnly();
+        double[] probs = start.predictClassProbs(new DenseVector(dataSet.getNumFeatures()));
+        return IntStream.range(0, dataSet.getNumFeatures()).parallel().mapToDouble(j -> {
+            double[] gradients = new double[numClasses];
+            for (Vector.Element element: dataSet.getColumn(j).nonZeroes()){
+                int i = element.index();
+                for (int k=0;k<numClasses;k++){
+                    gradients[k] += weights[i]*element.get()*(probs[k]-targets[i][k]);
+                }
+            }
+            return Arrays.stream(gradients).map(Math::abs).max().getAsDouble()/sumWeights;
+        }).max().orElse(0)/l1Ratio;
+    }
+
+    public List<Solution> fit(){
+        List<Double> grid = regularizations;
+        if (grid==null){
+            double max = maxRegularization();
+            grid = new ArrayList<>(Grid.logUniform(max*minRatio, max, numRegularizations));
+            grid.sort(Collections.reverseOrder());
+        }
+        LogisticRegression logisticRegression = biasOnly();
+        double previousRegularization = Double.NaN;
+        List<Solution> solutions = new ArrayList<>();
+        for (double regularization: grid){
+            ElasticNetLogisticTrainer trainer = ElasticNetLogisticTrainer.newBuilder(logisticRegression, dataSet,
+                    numClasses, targets, weights)
+                    .setRegularization(regularization)
+                    .setL1Ratio(l1Ratio)
+                    .setLineSearch(lineSearch)
+                    .setMaxNumLinearRegUpdates(maxNumLinearRegUpdates)
+                    .setScreening(true)
+                    .build();
+            trainer.setPreviousRegularization(previousRegularization);
+            trainer.optimize();
+            previousRegularization = regularization;
+
+            LogisticRegression model = new LogisticRegression(numClasses, dataSet.getNumFeatures(),
+                    new DenseVector(logisticRegression.getWeights().getAllWeights()));
+            model.setFeatureList(dataSet.getFeatureList());
+            double logLikelihood = Double.NaN;
+            double accuracy = Double.NaN;
+            if (validationSet!=null){
+                logLikelihood = model.dataSetLogLikelihood(validationSet, validationTargets)/validationSet.getNumDataPoints();
+            }
+            if (validationClfSet!=null){
+                accuracy = Accuracy.accuracy(model, validationClfSet);
+            }
+            Solution solution = new Solution(regularization, model, logLikelihood, accuracy);
+            if (logger.isDebugEnabled()){
+                logger.debug(solution);
+            }
+            solutions.add(solution);
+        }
+        return solutions;
+    }
+
+    private static double[][] oneHot(ClfDataSet dataSet){
+        int[] labels = dataSet.getLabels();
+        double[][] targets = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
+        for (int i=0;i<labels.length;i++){
+            targets[i][labels[i]] = 1;
+        }
+        return targets;
+    }
+
+    private static double[] defaultWeights(int numData){
+        double[] weights = new double[numData];
+        Arrays.fill(weights,1.0);
+        return weights;
+    }
+
+    public static class Solution {
+        private double regularization;
+        private LogisticRegression logisticRegression;
+        private double validationLogLikelihood;
+        private double validationAccuracy;
+
+        Solution(double regularization, LogisticRegression logisticRegression,
+                 double validationLogLikelihood, double validationAccuracy) {
+            this.regularization = regularization;
+            this.logisticRegression = logisticRegression;
+            this.validationLogLikelihood = validationLogLikelihood;
+            this.validationAccuracy = validationAccuracy;
+        }
+
+        public double getRegularization() {
+            return regularization;
+        }
+
+        public LogisticRegression getLogisticRegression() {
+            return logisticRegression;
+        }
+
+        /**
+         * average log-likelihood per data point; NaN without a validation set
+         */
+        public double getValidationLogLikelihood() {
+            return validationLogLikelihood;
+        }
+
+        /**
+         * NaN unless the validation set is a ClfDataSet
+         */
+        public double getValidationAccuracy() {
+            return validationAccuracy;
+        }
+
+        public int getNumNonZeros(){
+            int count = 0;
+            for (int k=0;k<logisticRegression.getNumClasses();k++){
+                count += logisticRegression.getWeights().getWeightsWithoutBiasForClass(k).getNumNonZeroElements();
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "regularization = "+regularization+", non-zeros = "+getNumNonZeros()
+                    +", validation log-likelihood = "+validationLogLikelihood+", validation accuracy = "+validationAccuracy;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import edu.neu.ccs.pyramid.optimization.*;
 import edu.neu.ccs.pyramid.regression.linear_regression.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.util.Arrays;
@@ -42,9 +41,6 @@ public class ElasticNetLogisticTrainer {
     private double l1Ratio;
     // relative threshold
     private double epsilon;
-    private Vector empiricalCounts;
-    private Vector predictedCounts;
-    private int numParameters;
     // size num classes * num data
     private double[][] probabilityMatrix;
     private Terminator terminator;
@@ -60,8 +56,30 @@ public class ElasticNetLogisticTrainer {
 
     private boolean isActiveSet = false;
 
+    private boolean screening = false;
+    private double previousRegularization = Double.NaN;
+
     private int maxNumLinearRegUpdates = 10;
 
+    public boolean isScreening() {
+        return screening;
+    }
+
+    /**
+     * strong rule and gap safe screening in the weighted least square sub-problems,
+     * so that coordinate descent mostly visits features with non-zero or KKT-violating coefficients
+     */
+    public void setScreening(boolean screening) {
+        this.screening = screening;
+    }
+
+    /**
+     * regularization the current weights were trained with, when warm starting along a regularization path
+     */
+    public void setPreviousRegularization(double previousRegularization) {
+        this.previousRegularization = previousRegularization;
+    }
+
     public static Builder newBuilder(LogisticRegression logisticRegression, DataSet dataSet, int numClasses,
                                      double[][] targets, double[] weights) {
         return new Builder(logisticRegression, dataSet, numClasses, targets, weights);
@@ -235,6 +253,8 @@ public class ElasticNetLogisticTrainer {
         linearRegTrainer.setRegularization(this.regularization);
         linearRegTrainer.setL1Ratio(this.l1Ratio);
         linearRegTrainer.setActiveSet(this.isActiveSet);
+        linearRegTrainer.setScreening(this.screening);
+        linearRegTrainer.setPreviousRegularization(this.previousRegularization);
         //TODO: no large iterations
         linearRegTrainer.getTerminator().setMaxIteration(maxNumLinearRegUpdates);
         if (logger.isDebugEnabled()){
@@ -256,9 +276,7 @@ public class ElasticNetLogisticTrainer {
             // move back to starting point
             logisticRegression.getWeights().setWeightVector(oldWeights.getAllWeights());
             // this gradient doesn't include the penalty term, so it is only approximate
-            Vector gradient = this.predictedCounts.minus(empiricalCounts).divide(numDataPoints);
-            lineSearch(searchDirection, gradient);
-            updatePredictedCounts();
+            lineSearch(searchDirection, directionalDerivative(searchDirection));
             updateClassProbMatrix();
         }
 
@@ -328,7 +346,7 @@ public class ElasticNetLogisticTrainer {
      * @param searchDirection
      * @return
      */
-    private void lineSearch(Vector searchDirection, Vector gradient){
+    private void lineSearch(Vector searchDirection, double product){
         Vector localSearchDir;
         double initialStepLength = 1;
         double shrinkage = 0.5;
@@ -341,8 +359,6 @@ public class ElasticNetLogisticTrainer {
             logger.debug("start line search");
             logger.debug("initial loss = "+loss());
         }
-        double product = gradient.dot(searchDirection);
-
         localSearchDir = searchDirection;
 
         while(true){
@@ -364,61 +380,37 @@ public class ElasticNetLogisticTrainer {
     }
 
 
-    private void updateEmpricalCounts(){
-        IntStream.range(0,numParameters).parallel()
-                .forEach(i -> this.empiricalCounts.set(i, calEmpricalCount(i)));
-    }
-
-    private double calEmpricalCount(int parameterIndex){
-        int classIndex = logisticRegression.getWeights().getClassIndex(parameterIndex);
-        int featureIndex = logisticRegression.getWeights().getFeatureIndex(parameterIndex);
-        double count = 0;
-        //bias
-        if (featureIndex == -1){
-            for (int i=0;i<dataSet.getNumDataPoints();i++){
-                count += targets[i][classIndex];
-            }
-        } else {
-            Vector featureColumn = dataSet.getColumn(featureIndex);
-            for (Vector.Element element: featureColumn.nonZeroes()){
-                int dataPointIndex = element.index();
-                double featureValue = element.get();
-                count += featureValue * targets[dataPointIndex][classIndex];
-            }
-        }
-        return count;
-    }
-
-    private void updatePredictedCounts(){
-        if (logger.isDebugEnabled()){
-            logger.debug("start updatePredictedCounts()");
-        }
-        IntStream.range(0,numParameters).parallel()
-                .forEach(i -> this.predictedCounts.set(i, calPredictedCount(i)));
-        if (logger.isDebugEnabled()){
-            logger.debug("finish updatePredictedCounts()");
+    /**
+     * derivative of the weighted average negative log-likelihood along the search direction
+     * only parameters that move are visited, which are the parameters of one class
+     */
+    private double directionalDerivative(Vector searchDirection){
+        double product = 0;
+        for (Vector.Element element: searchDirection.nonZeroes()){
+            product += element.get()*calGradient(element.index());
         }
+        return product;
     }
 
-    private double calPredictedCount(int parameterIndex){
+    private double calGradient(int parameterIndex){
         int classIndex = logisticRegression.getWeights().getClassIndex(parameterIndex);
         int featureIndex = logisticRegression.getWeights().getFeatureIndex(parameterIndex);
-        double count = 0;
+        double gradient = 0;
         double[] probs = this.probabilityMatrix[classIndex];
         //bias
         if (featureIndex == -1){
             for (int i=0;i<dataSet.getNumDataPoints();i++){
-                count += probs[i];
+                gradient += weights[i]*(probs[i] - targets[i][classIndex]);
             }
         } else {
             Vector featureColumn = dataSet.getColumn(featureIndex);
             for (Vector.Element element: featureColumn.nonZeroes()){
                 int dataPointIndex = element.index();
                 double featureValue = element.get();
-                count += probs[dataPointIndex] * featureValue;
+                gradient += weights[dataPointIndex]*(probs[dataPointIndex] - targets[dataPointIndex][classIndex])*featureValue;
             }
         }
-        return count;
+        return gradient/sumWeights;
     }
 
 
@@ -439,6 +431,7 @@ public class ElasticNetLogisticTrainer {
         private double l1Ratio=0;
         private double epsilon=0.001;
         private boolean lineSearch=true;
+        private boolean screening=false;
 
         private int maxNumLinearRegUpdates=10;
 
@@ -517,6 +510,11 @@ public class ElasticNetLogisticTrainer {
             return this;
         }
 
+        public Builder setScreening(boolean screening) {
+            this.screening = screening;
+            return this;
+        }
+
         public Builder setMaxNumLinearRegUpdates(int maxNumLinearRegUpdates) {
             this.maxNumLinearRegUpdates = maxNumLinearRegUpdates;
             return this;
@@ -534,13 +532,9 @@ public class ElasticNetLogisticTrainer {
             trainer.l1Ratio = this.l1Ratio;
             trainer.epsilon = this.epsilon;
             trainer.lineSearch = this.lineSearch;
-            trainer.numParameters = logisticRegression.getWeights().totalSize();
-            trainer.empiricalCounts = new DenseVector(trainer.numParameters);
-            trainer.predictedCounts = new DenseVector(trainer.numParameters);
+            trainer.screening = this.screening;
             trainer.probabilityMatrix = new double[numClasses][dataSet.getNumDataPoints()];
-            trainer.updateEmpricalCounts();
             trainer.updateClassProbMatrix();
-            trainer.updatePredictedCounts();
             trainer.terminator = new Terminator();
             trainer.maxNumLinearRegUpdates = maxNumLinearRegUpdates;
             return trainer;
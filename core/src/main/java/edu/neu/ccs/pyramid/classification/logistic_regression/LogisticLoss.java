@@ -17,16 +17,20 @@ import java.util.stream.IntStream;
 /**
  * Created by Rainicy on 10/24/15.
  */
-public class LogisticLoss implements Optimizable.ByGradientValue {
+public class LogisticLoss implements Optimizable.ByMiniBatchGradient {
     private static final Logger logger = LogManager.getLogger();
     private LogisticRegression logisticRegression;
     private DataSet dataSet;
     // instance weights
     private double[] weights;
     private double[][] targetDistributions;
-    private Vector empiricalCounts;
-    private Vector predictedCounts;
+    private double[] empiricalCounts;
+    // reused across calls; getGradient() returns a view of it
+    private double[] gradientValues;
     private Vector gradient;
+    // allocated on the first batch and reused; getBatchGradient() returns a view of it
+    private double[] batchGradientValues;
+    private Vector batchGradient;
     private int numParameters;
     private int numClasses;
 
@@ -57,8 +61,9 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
         this.dataSet = dataSet;
         this.weights = weights;
         this.priorGaussianVariance = priorGaussianVariance;
-        this.empiricalCounts = new DenseVector(numParameters);
-        this.predictedCounts = new DenseVector(numParameters);
+        this.empiricalCounts = new double[numParameters];
+        this.gradientValues = new double[numParameters];
+        this.gradient = new DenseVector(gradientValues, true);
         this.numClasses = targetDistributions[0].length;
         this.logProbabilityMatrix = new double[numClasses][dataSet.getNumDataPoints()];
         this.probabilityMatrix = new double[numClasses][dataSet.getNumDataPoints()];
@@ -80,8 +85,9 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
         this.weights = weights;
         this.regularization = regularization;
         this.l1Ratio = l1Ratio;
-        this.empiricalCounts = new DenseVector(numParameters);
-        this.predictedCounts = new DenseVector(numParameters);
+        this.empiricalCounts = new double[numParameters];
+        this.gradientValues = new double[numParameters];
+        this.gradient = new DenseVector(gradientValues, true);
         this.numClasses = targetDistributions[0].length;
         this.logProbabilityMatrix = new double[numClasses][dataSet.getNumDataPoints()];
         this.probabilityMatrix = new double[numClasses][dataSet.getNumDataPoints()];
@@ -236,7 +242,6 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
             return this.gradient;
         }
         updateClassProbMatrix();
-        updatePredictedCounts();
         updateGradient();
         this.isGradientCacheValid = true;
         if (logger.isDebugEnabled()){
@@ -246,20 +251,81 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
     }
 
 
+    /**
+     * predicted counts - empirical counts + penalty gradient, in one pass over the parameters,
+     * written into the same buffer every time
+     */
     private void updateGradient(){
-        this.gradient = this.predictedCounts.minus(empiricalCounts).plus(penaltyGradient());
+        StopWatch stopWatch = new StopWatch();
+        if (logger.isDebugEnabled()){
+            stopWatch.start();
+        }
+        IntStream intStream;
+        if (isParallel){
+            intStream = IntStream.range(0,numParameters).parallel();
+        } else {
+            intStream = IntStream.range(0,numParameters);
+        }
+        intStream.forEach(i -> gradientValues[i] = calPredictedCount(i) - empiricalCounts[i] + penaltyGradient(i));
+        if (logger.isDebugEnabled()){
+            logger.debug("time spent on updateGradient = "+stopWatch);
+        }
     }
 
-    private Vector penaltyGradient(){
-        Vector weightsVector = this.logisticRegression.getWeights().getAllWeights();
-        Vector penalty = new DenseVector(weightsVector.size());
+    @Override
+    public int getNumDataPoints() {
+        return dataSet.getNumDataPoints();
+    }
 
-        penalty = penalty.plus(weightsVector.divide(priorGaussianVariance));
+    /**
+     * only the rows of the batch are visited; the probability matrices are not touched.
+     * the buffer is first overwritten with the penalty gradient, so the one pass over all parameters
+     * per batch also clears the previous batch
+     */
+    @Override
+    public Vector getBatchGradient(int[] dataPoints) {
+        int numFeatures = dataSet.getNumFeatures();
+        double scale = ((double) dataSet.getNumDataPoints())/dataPoints.length;
+        if (batchGradientValues==null){
+            batchGradientValues = new double[numParameters];
+            batchGradient = new DenseVector(batchGradientValues, true);
+        }
+        Vector weightsVector = logisticRegression.getWeights().getAllWeights();
+        for (int k=0;k<numClasses;k++){
+            int biasPosition = k*(numFeatures+1);
+            // biases are not penalized
+            batchGradientValues[biasPosition] = 0;
+            for (int j=0;j<numFeatures;j++){
+                batchGradientValues[biasPosition+1+j] = weightsVector.getQuick(biasPosition+1+j)/priorGaussianVariance;
+            }
+        }
+        for (int i: dataPoints){
+            if (weights[i]==0){
+                continue;
+            }
+            Vector row = dataSet.getRow(i);
+            double[] probs = logisticRegression.predictClassProbs(row);
+            for (int k=0;k<numClasses;k++){
+                double coefficient = scale*weights[i]*(probs[k]-targetDistributions[i][k]);
+                if (coefficient==0){
+                    continue;
+                }
+                int biasPosition = k*(numFeatures+1);
+                batchGradientValues[biasPosition] += coefficient;
+                for (Vector.Element element: row.nonZeroes()){
+                    batchGradientValues[biasPosition+1+element.index()] += coefficient*element.get();
+                }
+            }
+        }
+        return batchGradient;
+    }
 
-        for (int j:logisticRegression.getWeights().getAllBiasPositions()){
-            penalty.set(j,0);
+    private double penaltyGradient(int parameterIndex){
+        // biases are not penalized
+        if (logisticRegression.getWeights().getFeatureIndex(parameterIndex)==-1){
+            return 0;
         }
-        return penalty;
+        return logisticRegression.getWeights().getAllWeights().getQuick(parameterIndex)/priorGaussianVariance;
     }
 
     //todo removed isParallel
@@ -270,25 +336,7 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
         } else {
             intStream = IntStream.range(0, numParameters);
         }
-        intStream.forEach(i -> this.empiricalCounts.set(i, calEmpricalCount(i)));
-    }
-
-    private void updatePredictedCounts(){
-        StopWatch stopWatch = new StopWatch();
-        if (logger.isDebugEnabled()){
-            stopWatch.start();
-        }
-        IntStream intStream;
-        if (isParallel){
-            intStream = IntStream.range(0,numParameters).parallel();
-        } else {
-            intStream = IntStream.range(0,numParameters);
-        }
-
-        intStream.forEach(i -> this.predictedCounts.set(i, calPredictedCount(i)));
-        if (logger.isDebugEnabled()){
-            logger.debug("time spent on updatePredictedCounts = "+stopWatch);
-        }
+        intStream.forEach(i -> this.empiricalCounts[i] = calEmpricalCount(i));
     }
 
     // todo for dense matrix, store a sparse instance weights vector to skip zeros
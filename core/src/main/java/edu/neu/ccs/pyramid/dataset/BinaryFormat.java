@@ -0,0 +1,388 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * single file binary format for data sets, loaded with memory mapping
+ * layout, little endian, every section aligned to 8 bytes:
+ * a 64 byte header (magic, version, kind, numDataPoints, numFeatures, numClasses, missingValue, numNonZeros,
+ * settings position), then the row arrays (offsets, indices, values) and column arrays of a {@link CompressedDataSet},
+ * then the labels (int for classification, double for regression, offsets and class indices for multi-label),
+ * then the settings: feature list, id translator and label translator.
+ * files are written once and only read afterwards, so several processes can map the same file
+ */
+public class BinaryFormat {
+    private static final int MAGIC = 0x50595244;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    // kinds of data sets
+    private static final int PLAIN = 0;
+    private static final int CLF = 1;
+    private static final int REG = 2;
+    private static final int ML_CLF = 3;
+    // bytes per mapped window; keeps every mapping well below the 2GB limit
+    private static final int WINDOW_SIZE = 1<<30;
+    private static final int WRITE_BUFFER_SIZE = 1<<20;
+
+    public static void save(DataSet dataSet, String binaryFile) throws IOException {
+        save(dataSet, new File(binaryFile));
+    }
+
+    /**
+     * data sets that are not compressed are compressed first
+     */
+    public static void save(DataSet dataSet, File binaryFile) throws IOException {
+        CompressedDataSet compressed;
+        if (dataSet instanceof CompressedDataSet){
+            compressed = (CompressedDataSet) dataSet;
+        } else {
+            compressed = CompressedDataSetBuilder.compress(dataSet);
+        }
+        File parent = binaryFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists()){
+            parent.mkdirs();
+        }
+        try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            long position = HEADER_SIZE;
+            position = writeSection(channel, position, compressed.getRows());
+            position = writeSection(channel, position, compressed.getColumns());
+            int kind = PLAIN;
+            int numClasses = 0;
+            if (dataSet instanceof ClfDataSet){
+                kind = CLF;
+                numClasses = ((ClfDataSet) dataSet).getNumClasses();
+                position = writeInts(channel, position, ((ClfDataSet) dataSet).getLabels());
+            } else if (dataSet instanceof RegDataSet){
+                kind = REG;
+                position = writeDoubles(channel, position, ((RegDataSet) dataSet).getLabels());
+            } else if (dataSet instanceof MultiLabelClfDataSet){
+                kind = ML_CLF;
+                numClasses = ((MultiLabelClfDataSet) dataSet).getNumClasses();
+                MultiLabel[] multiLabels = ((MultiLabelClfDataSet) dataSet).getMultiLabels();
+                int[] labelOffsets = new int[multiLabels.length+1];
+                for (int i=0;i<multiLabels.length;i++){
+                    labelOffsets[i+1] = labelOffsets[i] + multiLabels[i].getNumMatchedLabels();
+                }
+                int[] labels = new int[labelOffsets[multiLabels.length]];
+                for (int i=0;i<multiLabels.length;i++){
+                    int k = labelOffsets[i];
+                    for (int label: multiLabels[i].getMatchedLabelsOrdered()){
+                        labels[k] = label;
+                        k += 1;
+                    }
+                }
+                position = writeInts(channel, position, labelOffsets);
+                position = writeInts(channel, position, labels);
+            }
+            long settingsPosition = position;
+            channel.write(ByteBuffer.wrap(settings(dataSet)), settingsPosition);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(kind)
+                    .putInt(compressed.getNumDataPoints()).putInt(compressed.getNumFeatures())
+                    .putInt(numClasses).putInt(compressed.hasMissingValue() ? 1 : 0).putInt(0)
+                    .putLong(compressed.getNumNonZeros()).putLong(settingsPosition);
+            header.clear();
+            channel.write(header, 0);
+        }
+    }
+
+    public static CompressedDataSet loadDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadDataSet(new File(binaryFile));
+    }
+
+    /**
+     * rows and columns stay in the mapped file and are read through buffer views, never copied to the heap;
+     * the page cache is shared by every process that loads the same file. labels and settings are small and copied
+     * @return a {@link CompressedClfDataSet}, {@link CompressedRegDataSet} or {@link CompressedMLClfDataSet}
+     * if the file holds labels, a plain {@link CompressedDataSet} otherwise
+     */
+    public static CompressedDataSet loadDataSet(File binaryFile) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ)){
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt()!=MAGIC){
+                throw new IllegalArgumentException(binaryFile+" is not a binary data set");
+            }
+            int version = header.getInt();
+            if (version!=VERSION){
+                throw new IllegalArgumentException("unsupported binary data set version "+version);
+            }
+            int kind = header.getInt();
+            int numDataPoints = header.getInt();
+            int numFeatures = header.getInt();
+            int numClasses = header.getInt();
+            boolean missingValue = header.getInt()==1;
+            header.getInt();
+            long numNonZeros = header.getLong();
+            long settingsPosition = header.getLong();
+            if (numNonZeros>Integer.MAX_VALUE){
+                throw new IllegalArgumentException("numNonZeros>Integer.MAX_VALUE");
+            }
+            int nnz = (int)numNonZeros;
+
+            long[] position = {HEADER_SIZE};
+            CompressedSection rows = mapSection(channel, position, numFeatures, numDataPoints, nnz);
+            CompressedSection columns = mapSection(channel, position, numDataPoints, numFeatures, nnz);
+            CompressedDataSet storage = new CompressedDataSet(numDataPoints, numFeatures, missingValue,
+                    rows, columns);
+
+            CompressedDataSet dataSet;
+            switch (kind){
+                case CLF:
+                    CompressedClfDataSet clfDataSet = new CompressedClfDataSet(storage, numClasses);
+                    int[] labels = readInts(channel, position, numDataPoints);
+                    for (int i=0;i<numDataPoints;i++){
+                        clfDataSet.setLabel(i, labels[i]);
+                    }
+                    dataSet = clfDataSet;
+                    break;
+                case REG:
+                    CompressedRegDataSet regDataSet = new CompressedRegDataSet(storage);
+                    double[] values = readDoubles(channel, position, numDataPoints);
+                    for (int i=0;i<numDataPoints;i++){
+                        regDataSet.setLabel(i, values[i]);
+                    }
+                    dataSet = regDataSet;
+                    break;
+                case ML_CLF:
+                    CompressedMLClfDataSet mlClfDataSet = new CompressedMLClfDataSet(storage, numClasses);
+                    int[] labelOffsets = readInts(channel, position, numDataPoints+1);
+                    int[] matched = readInts(channel, position, labelOffsets[numDataPoints]);
+                    for (int i=0;i<numDataPoints;i++){
+                        for (int k=labelOffsets[i];k<labelOffsets[i+1];k++){
+                            mlClfDataSet.addLabel(i, matched[k]);
+                        }
+                    }
+                    dataSet = mlClfDataSet;
+                    break;
+                default:
+                    dataSet = storage;
+            }
+            long settingsSize = channel.size() - settingsPosition;
+            if (settingsSize>Integer.MAX_VALUE){
+                throw new IllegalArgumentException("settings are too large");
+            }
+            byte[] settings = new byte[(int)settingsSize];
+            channel.map(FileChannel.MapMode.READ_ONLY, settingsPosition, settingsSize).get(settings);
+            loadSettings(dataSet, settings);
+            return dataSet;
+        }
+    }
+
+    public static CompressedClfDataSet loadClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return cast(loadDataSet(binaryFile), CompressedClfDataSet.class);
+    }
+
+    public static CompressedRegDataSet loadRegDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return cast(loadDataSet(binaryFile), CompressedRegDataSet.class);
+    }
+
+    public static CompressedMLClfDataSet loadMultiLabelClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return cast(loadDataSet(binaryFile), CompressedMLClfDataSet.class);
+    }
+
+    private static <T> T cast(CompressedDataSet dataSet, Class<T> type){
+        if (!type.isInstance(dataSet)){
+            throw new IllegalArgumentException("the file holds a "+dataSet.getClass().getSimpleName()
+                    +", not a "+type.getSimpleName());
+        }
+        return type.cast(dataSet);
+    }
+
+    /**
+     * feature list is java serialized since features are polymorphic; translators are written as plain strings
+     */
+    private static byte[] settings(DataSet dataSet) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)){
+            ByteArrayOutputStream featureBytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(featureBytes)){
+                objectOutputStream.writeObject(dataSet.getFeatureList());
+            }
+            out.writeInt(featureBytes.size());
+            featureBytes.writeTo(out);
+
+            IdTranslator idTranslator = dataSet.getIdTranslator();
+            String[] extIds = idTranslator.getAllExtIds();
+            out.writeInt(extIds.length);
+            for (String extId: extIds){
+                out.writeInt(idTranslator.toIntId(extId));
+                out.writeUTF(extId);
+            }
+
+            LabelTranslator labelTranslator = null;
+            if (dataSet instanceof ClfDataSet){
+                labelTranslator = ((ClfDataSet) dataSet).getLabelTranslator();
+            }
+            if (dataSet instanceof MultiLabelClfDataSet){
+                labelTranslator = ((MultiLabelClfDataSet) dataSet).getLabelTranslator();
+            }
+            if (labelTranslator==null){
+                out.writeInt(0);
+            } else {
+                out.writeInt(labelTranslator.getNumClasses());
+                for (int k=0;k<labelTranslator.getNumClasses();k++){
+                    out.writeUTF(labelTranslator.toExtLabel(k));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void loadSettings(CompressedDataSet dataSet, byte[] settings) throws IOException, ClassNotFoundException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(settings))){
+            byte[] featureBytes = new byte[in.readInt()];
+            in.readFully(featureBytes);
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(featureBytes))){
+                dataSet.setFeatureList((FeatureList) objectInputStream.readObject());
+            }
+
+            int numIds = in.readInt();
+            IdTranslator idTranslator = new IdTranslator();
+            for (int k=0;k<numIds;k++){
+                int intId = in.readInt();
+                idTranslator.addData(intId, in.readUTF());
+            }
+            dataSet.setIdTranslator(idTranslator);
+
+            int numClasses = in.readInt();
+            if (numClasses>0){
+                String[] extLabels = new String[numClasses];
+                for (int k=0;k<numClasses;k++){
+                    extLabels[k] = in.readUTF();
+                }
+                LabelTranslator labelTranslator = new LabelTranslator(extLabels);
+                if (dataSet instanceof CompressedClfDataSet){
+                    ((CompressedClfDataSet) dataSet).setLabelTranslator(labelTranslator);
+                }
+                if (dataSet instanceof CompressedMLClfDataSet){
+                    ((CompressedMLClfDataSet) dataSet).setLabelTranslator(labelTranslator);
+                }
+            }
+        }
+    }
+
+    /**
+     * offsets, indices and values; the windows of a mapped section are written back to back
+     */
+    private static long writeSection(FileChannel channel, long position, CompressedSection section) throws IOException {
+        position = writeInts(channel, position, section.getOffsets());
+        for (int w=0;w<section.getNumWindows();w++){
+            position = writeInts(channel, position, section.getIndices(w));
+        }
+        position = align(position);
+        for (int w=0;w<section.getNumWindows();w++){
+            position = writeDoubles(channel, position, section.getValues(w));
+        }
+        return align(position);
+    }
+
+    private static long writeInts(FileChannel channel, long position, int[] array) throws IOException {
+        return align(writeInts(channel, position, IntBuffer.wrap(array)));
+    }
+
+    private static long writeDoubles(FileChannel channel, long position, double[] array) throws IOException {
+        return align(writeDoubles(channel, position, DoubleBuffer.wrap(array)));
+    }
+
+    /**
+     * writes the remaining ints of the source, without aligning the end
+     */
+    private static long writeInts(FileChannel channel, long position, IntBuffer source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int perBuffer = WRITE_BUFFER_SIZE/Integer.BYTES;
+        while (source.hasRemaining()){
+            int length = Math.min(perBuffer, source.remaining());
+            IntBuffer part = source.slice();
+            part.limit(length);
+            source.position(source.position()+length);
+            buffer.clear();
+            buffer.asIntBuffer().put(part);
+            buffer.limit(length*Integer.BYTES);
+            position = writeFully(channel, position, buffer);
+        }
+        return position;
+    }
+
+    private static long writeDoubles(FileChannel channel, long position, DoubleBuffer source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int perBuffer = WRITE_BUFFER_SIZE/Double.BYTES;
+        while (source.hasRemaining()){
+            int length = Math.min(perBuffer, source.remaining());
+            DoubleBuffer part = source.slice();
+            part.limit(length);
+            source.position(source.position()+length);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(part);
+            buffer.limit(length*Double.BYTES);
+            position = writeFully(channel, position, buffer);
+        }
+        return position;
+    }
+
+    private static long writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()){
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * @param size length of each vector
+     * @param position start of the section, moved to the start of the next section
+     */
+    private static CompressedSection mapSection(FileChannel channel, long[] position, int size, int numVectors,
+                                                int nnz) throws IOException {
+        long offsetsPosition = position[0];
+        long indicesPosition = align(offsetsPosition + (long)(numVectors+1)*Integer.BYTES);
+        long valuesPosition = align(indicesPosition + (long)nnz*Integer.BYTES);
+        position[0] = align(valuesPosition + (long)nnz*Double.BYTES);
+        return CompressedSection.map(channel, size, numVectors, offsetsPosition, indicesPosition, valuesPosition,
+                WINDOW_SIZE);
+    }
+
+    /**
+     * bulk copy out of the mapped file, one window at a time
+     * @param position start of the section, moved to the start of the next section
+     */
+    private static int[] readInts(FileChannel channel, long[] position, int length) throws IOException {
+        int[] array = new int[length];
+        int perWindow = WINDOW_SIZE/Integer.BYTES;
+        for (int start=0;start<length;start+=perWindow){
+            int count = Math.min(perWindow, length-start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position[0] + (long)start*Integer.BYTES, (long)count*Integer.BYTES);
+            window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(array, start, count);
+        }
+        position[0] = align(position[0] + (long)length*Integer.BYTES);
+        return array;
+    }
+
+    private static double[] readDoubles(FileChannel channel, long[] position, int length) throws IOException {
+        double[] array = new double[length];
+        int perWindow = WINDOW_SIZE/Double.BYTES;
+        for (int start=0;start<length;start+=perWindow){
+            int count = Math.min(perWindow, length-start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position[0] + (long)start*Double.BYTES, (long)count*Double.BYTES);
+            window.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(array, start, count);
+        }
+        position[0] = align(position[0] + (long)length*Double.BYTES);
+        return array;
+    }
+
+    private static long align(long position){
+        return (position + 7) & ~7L;
+    }
+}
@@ -0,0 +1,66 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+/**
+ * classification data set on compressed storage; features are immutable, labels are not
+ */
+public class CompressedClfDataSet extends CompressedDataSet implements ClfDataSet {
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private int[] labels;
+    private LabelTranslator labelTranslator;
+
+    CompressedClfDataSet(CompressedDataSet storage, int numClasses) {
+        super(storage);
+        this.numClasses = numClasses;
+        this.labels = new int[numDataPoints];
+        this.labelTranslator = LabelTranslator.newDefaultLabelTranslator(numClasses);
+    }
+
+    @Override
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    @Override
+    public int[] getLabels() {
+        return this.labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, int label) {
+        if (label<0||label>=this.numClasses){
+            throw new IllegalArgumentException("label<0||label>=this.numClasses");
+        }
+        this.labels[dataPointIndex]=label;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("number of classes = ").append(this.numClasses).append("\n");
+        sb.append(super.toString());
+        sb.append("labels = ").append(Arrays.toString(labels));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+}
@@ -0,0 +1,105 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * an immutable sparse data set stored both by row (compressed sparse row) and by column (compressed sparse column)
+ * row i holds its features sorted, with their values; column j holds its data points sorted, with their values.
+ * zeros are never stored; missing values are stored as NaN.
+ * storage is either primitive arrays on the heap or read-only views of a file mapped by {@link BinaryFormat}.
+ * build it with {@link CompressedDataSetBuilder}
+ */
+public class CompressedDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 2L;
+    /**
+     * rows and columns are indexed by int offsets into arrays,
+     * so a data set holds at most this many non-zero entries, and at most this many rows
+     */
+    public static final int MAX_NUM_ENTRIES = Integer.MAX_VALUE-8;
+
+    private CompressedSection rows;
+    private CompressedSection columns;
+
+    CompressedDataSet(int numDataPoints, int numFeatures, boolean missingValue,
+                      int[] rowOffsets, int[] rowIndices, double[] rowValues,
+                      int[] columnOffsets, int[] columnIndices, double[] columnValues) {
+        this(numDataPoints, numFeatures, missingValue,
+                CompressedSection.onHeap(numFeatures, rowOffsets, rowIndices, rowValues),
+                CompressedSection.onHeap(numDataPoints, columnOffsets, columnIndices, columnValues));
+    }
+
+    CompressedDataSet(int numDataPoints, int numFeatures, boolean missingValue,
+                      CompressedSection rows, CompressedSection columns) {
+        super(numDataPoints, numFeatures, missingValue);
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * share the storage of another compressed data set
+     */
+    CompressedDataSet(CompressedDataSet storage){
+        this(storage.numDataPoints, storage.numFeatures, storage.missingValue, storage.rows, storage.columns);
+    }
+
+    /**
+     * a read-only view; get is a binary search over the stored features of the row
+     */
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return rows.getVector(dataPointIndex);
+    }
+
+    /**
+     * a read-only view; get is a binary search over the stored data points of the column
+     */
+    @Override
+    public Vector getColumn(int featureIndex) {
+        return columns.getVector(featureIndex);
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("compressed data set is immutable");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    /**
+     * copies made through {@link DataSetBuilder} need random writes
+     */
+    @Override
+    public Density density() {
+        return Density.SPARSE_RANDOM;
+    }
+
+    public int getNumNonZeros(){
+        return rows.getNumEntries();
+    }
+
+    /**
+     * whether the rows and columns are views of a memory-mapped file rather than heap arrays
+     */
+    public boolean isMapped(){
+        return rows.isMapped();
+    }
+
+    CompressedSection getRows() {
+        return rows;
+    }
+
+    CompressedSection getColumns() {
+        return columns;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("number of non-zeros = ").append(getNumNonZeros()).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,296 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * collects feature values in any order, then fills the row and column arrays of a {@link CompressedDataSet}
+ * with counting sorts, linear in the number of values.
+ * if a feature value is set several times, the last one wins; zeros are dropped.
+ * not thread safe!
+ */
+public class CompressedDataSetBuilder {
+    private int numDataPoints = -1;
+    private int numFeatures = -1;
+    private boolean missingValue = false;
+    private int numClasses = -1;
+
+    // coordinates in insertion order
+    private int[] rows = new int[16];
+    private int[] columns = new int[16];
+    private double[] values = new double[16];
+    private int size = 0;
+
+    public static CompressedDataSetBuilder getBuilder(){
+        return new CompressedDataSetBuilder();
+    }
+
+    public CompressedDataSetBuilder numDataPoints(int numDataPoints) {
+        this.numDataPoints = numDataPoints;
+        return this;
+    }
+
+    public CompressedDataSetBuilder numFeatures(int numFeatures) {
+        this.numFeatures = numFeatures;
+        return this;
+    }
+
+    public CompressedDataSetBuilder missingValue(boolean missingValue) {
+        this.missingValue = missingValue;
+        return this;
+    }
+
+    public CompressedDataSetBuilder numClasses(int numClasses) {
+        this.numClasses = numClasses;
+        return this;
+    }
+
+    public CompressedDataSetBuilder setFeatureValue(int dataPointIndex, int featureIndex, double featureValue){
+        if (dataPointIndex<0 || dataPointIndex>=numDataPoints){
+            throw new IllegalArgumentException("dataPointIndex<0 || dataPointIndex>=numDataPoints");
+        }
+        if (featureIndex<0 || featureIndex>=numFeatures){
+            throw new IllegalArgumentException("featureIndex<0 || featureIndex>=numFeatures");
+        }
+        if ((!missingValue) && Double.isNaN(featureValue)){
+            throw new IllegalArgumentException("missing value is not allowed in this data set");
+        }
+        if (Double.isInfinite(featureValue)){
+            throw new IllegalArgumentException("feature value cannot be infinity");
+        }
+        if (size==rows.length){
+            int capacity = 2*size;
+            rows = Arrays.copyOf(rows, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        rows[size] = dataPointIndex;
+        columns[size] = featureIndex;
+        values[size] = featureValue;
+        size += 1;
+        return this;
+    }
+
+    public CompressedDataSet build(){
+        if (!valid()){
+            throw new IllegalArgumentException("Illegal arguments");
+        }
+        // stable sort by column, then by row: row major, insertion order kept among duplicates
+        int[] byColumn = countingSort(columns, identity(size), numFeatures);
+        int[] byRow = countingSort(rows, byColumn, numDataPoints);
+        int[] rowOffsets = new int[numDataPoints+1];
+        int[] rowIndices = new int[size];
+        double[] rowValues = new double[size];
+        for (int k=0;k<size;k++){
+            int entry = byRow[k];
+            rowIndices[k] = columns[entry];
+            rowValues[k] = values[entry];
+            rowOffsets[rows[entry]+1] += 1;
+        }
+        for (int i=0;i<numDataPoints;i++){
+            rowOffsets[i+1] += rowOffsets[i];
+        }
+        return fromRows(numDataPoints, numFeatures, missingValue, rowOffsets, rowIndices, rowValues);
+    }
+
+    /**
+     * bulk construction from rows laid out one after another, e.g. by a parser
+     * entries of a row may be unsorted and may repeat a feature, in which case the last one wins; zeros are dropped.
+     * the given arrays are reused and modified
+     */
+    static CompressedDataSet fromRows(int numDataPoints, int numFeatures, boolean missingValue,
+                                      int[] rowOffsets, int[] rowIndices, double[] rowValues){
+        int[] offsets = new int[numDataPoints+1];
+        int numNonZeros = 0;
+        for (int i=0;i<numDataPoints;i++){
+            int start = rowOffsets[i];
+            int end = rowOffsets[i+1];
+            if (!isSorted(rowIndices, start, end)){
+                sortRow(rowIndices, rowValues, start, end);
+            }
+            // compaction never overtakes the entries still to be read
+            for (int k=start;k<end;k++){
+                int featureIndex = rowIndices[k];
+                double featureValue = rowValues[k];
+                if (featureIndex<0 || featureIndex>=numFeatures){
+                    throw new IllegalArgumentException("featureIndex<0 || featureIndex>=numFeatures");
+                }
+                if ((!missingValue) && Double.isNaN(featureValue)){
+                    throw new IllegalArgumentException("missing value is not allowed in this data set");
+                }
+                if (Double.isInfinite(featureValue)){
+                    throw new IllegalArgumentException("feature value cannot be infinity");
+                }
+                // the last duplicate wins
+                if (k+1<end && rowIndices[k+1]==featureIndex){
+                    continue;
+                }
+                if (featureValue==0){
+                    continue;
+                }
+                rowIndices[numNonZeros] = featureIndex;
+                rowValues[numNonZeros] = featureValue;
+                numNonZeros += 1;
+            }
+            offsets[i+1] = numNonZeros;
+        }
+        if (numNonZeros<rowIndices.length){
+            rowIndices = Arrays.copyOf(rowIndices, numNonZeros);
+            rowValues = Arrays.copyOf(rowValues, numNonZeros);
+        }
+
+        // scanning rows in order keeps data points sorted within each column
+        int[] columnOffsets = new int[numFeatures+1];
+        for (int k=0;k<numNonZeros;k++){
+            columnOffsets[rowIndices[k]+1] += 1;
+        }
+        for (int j=0;j<numFeatures;j++){
+            columnOffsets[j+1] += columnOffsets[j];
+        }
+        int[] next = Arrays.copyOf(columnOffsets, numFeatures);
+        int[] columnIndices = new int[numNonZeros];
+        double[] columnValues = new double[numNonZeros];
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=offsets[i];k<offsets[i+1];k++){
+                int position = next[rowIndices[k]];
+                columnIndices[position] = i;
+                columnValues[position] = rowValues[k];
+                next[rowIndices[k]] += 1;
+            }
+        }
+        return new CompressedDataSet(numDataPoints, numFeatures, missingValue,
+                offsets, rowIndices, rowValues, columnOffsets, columnIndices, columnValues);
+    }
+
+    private static boolean isSorted(int[] indices, int start, int end){
+        for (int k=start+1;k<end;k++){
+            if (indices[k-1]>indices[k]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * stable, so that duplicates keep their order
+     */
+    private static void sortRow(int[] indices, double[] values, int start, int end){
+        int[] order = IntStream.range(start, end).boxed()
+                .sorted(Comparator.comparingInt(k -> indices[k]))
+                .mapToInt(Integer::intValue).toArray();
+        int[] sortedIndices = new int[order.length];
+        double[] sortedValues = new double[order.length];
+        for (int k=0;k<order.length;k++){
+            sortedIndices[k] = indices[order[k]];
+            sortedValues[k] = values[order[k]];
+        }
+        System.arraycopy(sortedIndices, 0, indices, start, order.length);
+        System.arraycopy(sortedValues, 0, values, start, order.length);
+    }
+
+    public CompressedClfDataSet buildClfDataSet(){
+        if (numClasses<=0){
+            throw new IllegalArgumentException("numClasses<=0");
+        }
+        return new CompressedClfDataSet(build(), numClasses);
+    }
+
+    public CompressedMLClfDataSet buildMLClfDataSet(){
+        if (numClasses<=0){
+            throw new IllegalArgumentException("numClasses<=0");
+        }
+        return new CompressedMLClfDataSet(build(), numClasses);
+    }
+
+    public CompressedRegDataSet buildRegDataSet(){
+        return new CompressedRegDataSet(build());
+    }
+
+    /**
+     * compressed copy of any data set, keeping labels, feature list and id translator
+     */
+    public static CompressedDataSet compress(DataSet dataSet){
+        CompressedDataSetBuilder builder = getBuilder().numDataPoints(dataSet.getNumDataPoints())
+                .numFeatures(dataSet.getNumFeatures())
+                .missingValue(dataSet.hasMissingValue());
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                builder.setFeatureValue(i, element.index(), element.get());
+            }
+        }
+        CompressedDataSet compressed;
+        if (dataSet instanceof ClfDataSet){
+            ClfDataSet clfDataSet = (ClfDataSet) dataSet;
+            CompressedClfDataSet compressedClf = builder.numClasses(clfDataSet.getNumClasses()).buildClfDataSet();
+            int[] labels = clfDataSet.getLabels();
+            for (int i=0;i<labels.length;i++){
+                compressedClf.setLabel(i, labels[i]);
+            }
+            compressedClf.setLabelTranslator(clfDataSet.getLabelTranslator());
+            compressed = compressedClf;
+        } else if (dataSet instanceof MultiLabelClfDataSet){
+            MultiLabelClfDataSet mlClfDataSet = (MultiLabelClfDataSet) dataSet;
+            CompressedMLClfDataSet compressedML = builder.numClasses(mlClfDataSet.getNumClasses()).buildMLClfDataSet();
+            MultiLabel[] multiLabels = mlClfDataSet.getMultiLabels();
+            for (int i=0;i<multiLabels.length;i++){
+                compressedML.addLabels(i, multiLabels[i].getMatchedLabels());
+            }
+            compressedML.setLabelTranslator(mlClfDataSet.getLabelTranslator());
+            compressed = compressedML;
+        } else if (dataSet instanceof RegDataSet){
+            CompressedRegDataSet compressedReg = builder.buildRegDataSet();
+            double[] labels = ((RegDataSet) dataSet).getLabels();
+            for (int i=0;i<labels.length;i++){
+                compressedReg.setLabel(i, labels[i]);
+            }
+            compressed = compressedReg;
+        } else {
+            compressed = builder.build();
+        }
+        compressed.setFeatureList(dataSet.getFeatureList());
+        compressed.setIdTranslator(dataSet.getIdTranslator());
+        return compressed;
+    }
+
+    private static int[] identity(int size){
+        int[] order = new int[size];
+        for (int k=0;k<size;k++){
+            order[k] = k;
+        }
+        return order;
+    }
+
+    /**
+     * stable sort of entries by key
+     */
+    private static int[] countingSort(int[] keys, int[] order, int numKeys){
+        int[] starts = new int[numKeys+1];
+        for (int entry: order){
+            starts[keys[entry]+1] += 1;
+        }
+        for (int key=0;key<numKeys;key++){
+            starts[key+1] += starts[key];
+        }
+        int[] sorted = new int[order.length];
+        for (int entry: order){
+            sorted[starts[keys[entry]]] = entry;
+            starts[keys[entry]] += 1;
+        }
+        return sorted;
+    }
+
+    private boolean valid(){
+        if (numDataPoints<=0){
+            return false;
+        }
+
+        if (numFeatures<=0){
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+/**
+ * regression data set on compressed storage; features are immutable, labels are not
+ */
+public class CompressedRegDataSet extends CompressedDataSet implements RegDataSet{
+    private static final long serialVersionUID = 1L;
+    private double[] labels;
+
+    CompressedRegDataSet(CompressedDataSet storage) {
+        super(storage);
+        this.labels = new double[numDataPoints];
+    }
+
+    @Override
+    public double[] getLabels() {
+        return this.labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, double label) {
+        this.labels[dataPointIndex]=label;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.toString());
+        sb.append("labels = ").append(Arrays.toString(labels));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse regression");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the rows, or the columns, of a {@link CompressedDataSet}
+ * vector v holds the entries offsets[v]...offsets[v+1]-1, indices sorted.
+ * entries live either in heap arrays or in read-only windows of a memory-mapped file;
+ * a window never splits a vector, so every vector is a view of one pair of buffers.
+ * only absolute reads are used, so views can be read from several threads.
+ * java serialization writes plain arrays; a deserialized section is on the heap
+ */
+class CompressedSection implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // length of each vector
+    private int size;
+    private int numVectors;
+    private transient IntBuffer offsets;
+    // first vector and first entry of each window
+    private transient int[] windowVectors;
+    private transient int[] windowEntries;
+    private transient IntBuffer[] indices;
+    private transient DoubleBuffer[] values;
+    private transient boolean mapped;
+
+    private CompressedSection(int size, int numVectors, IntBuffer offsets, int[] windowVectors, int[] windowEntries,
+                              IntBuffer[] indices, DoubleBuffer[] values, boolean mapped) {
+        this.size = size;
+        this.numVectors = numVectors;
+        this.offsets = offsets;
+        this.windowVectors = windowVectors;
+        this.windowEntries = windowEntries;
+        this.indices = indices;
+        this.values = values;
+        this.mapped = mapped;
+    }
+
+    static CompressedSection onHeap(int size, int[] offsets, int[] indices, double[] values){
+        return new CompressedSection(size, offsets.length-1, IntBuffer.wrap(offsets), new int[]{0}, new int[]{0},
+                new IntBuffer[]{IntBuffer.wrap(indices)}, new DoubleBuffer[]{DoubleBuffer.wrap(values)}, false);
+    }
+
+    /**
+     * map a section written as offsets, indices and values arrays; nothing is copied to the heap
+     * @param maxWindowBytes upper bound on the bytes of values in one mapping
+     */
+    static CompressedSection map(FileChannel channel, int size, int numVectors,
+                                 long offsetsPosition, long indicesPosition, long valuesPosition,
+                                 int maxWindowBytes) throws IOException {
+        long offsetsBytes = (long)(numVectors+1)*Integer.BYTES;
+        if (offsetsBytes>Integer.MAX_VALUE){
+            throw new IllegalArgumentException("too many vectors to map the offsets: "+numVectors);
+        }
+        IntBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsPosition, offsetsBytes)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int maxWindowEntries = maxWindowBytes/Double.BYTES;
+        List<Integer> firstVectors = new ArrayList<>();
+        int first = 0;
+        while (first<numVectors || firstVectors.isEmpty()){
+            firstVectors.add(first);
+            int firstEntry = offsets.get(first);
+            int end = first;
+            while (end<numVectors && offsets.get(end+1)-firstEntry<=maxWindowEntries){
+                end += 1;
+            }
+            if (end==first && numVectors>0){
+                throw new IllegalArgumentException("vector "+first+" has more than "+maxWindowEntries
+                        +" entries and cannot be mapped");
+            }
+            first = end;
+        }
+        int numWindows = firstVectors.size();
+        int[] windowVectors = new int[numWindows];
+        int[] windowEntries = new int[numWindows];
+        IntBuffer[] indices = new IntBuffer[numWindows];
+        DoubleBuffer[] values = new DoubleBuffer[numWindows];
+        for (int w=0;w<numWindows;w++){
+            windowVectors[w] = firstVectors.get(w);
+            int lastVector = w+1<numWindows ? firstVectors.get(w+1) : numVectors;
+            windowEntries[w] = offsets.get(windowVectors[w]);
+            long count = offsets.get(lastVector) - windowEntries[w];
+            indices[w] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    indicesPosition + (long)windowEntries[w]*Integer.BYTES, count*Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            values[w] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    valuesPosition + (long)windowEntries[w]*Double.BYTES, count*Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        return new CompressedSection(size, numVectors, offsets, windowVectors, windowEntries, indices, values, true);
+    }
+
+    Vector getVector(int v){
+        int w = window(v);
+        int base = windowEntries[w];
+        return new CompressedVector(size, indices[w], values[w], offsets.get(v)-base, offsets.get(v+1)-base);
+    }
+
+    int getNumVectors() {
+        return numVectors;
+    }
+
+    int getNumEntries(){
+        return offsets.get(numVectors);
+    }
+
+    boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * read-only views, in order
+     */
+    IntBuffer getOffsets(){
+        return offsets.asReadOnlyBuffer();
+    }
+
+    int getNumWindows(){
+        return indices.length;
+    }
+
+    IntBuffer getIndices(int window){
+        return indices[window].asReadOnlyBuffer();
+    }
+
+    DoubleBuffer getValues(int window){
+        return values[window].asReadOnlyBuffer();
+    }
+
+    int[] offsetsToArray(){
+        int[] array = new int[numVectors+1];
+        getOffsets().get(array);
+        return array;
+    }
+
+    int[] indicesToArray(){
+        int[] array = new int[getNumEntries()];
+        for (int w=0;w<indices.length;w++){
+            IntBuffer buffer = getIndices(w);
+            buffer.get(array, windowEntries[w], buffer.remaining());
+        }
+        return array;
+    }
+
+    double[] valuesToArray(){
+        double[] array = new double[getNumEntries()];
+        for (int w=0;w<values.length;w++){
+            DoubleBuffer buffer = getValues(w);
+            buffer.get(array, windowEntries[w], buffer.remaining());
+        }
+        return array;
+    }
+
+    private int window(int v){
+        if (windowVectors.length==1){
+            return 0;
+        }
+        int low = 0;
+        int high = windowVectors.length-1;
+        // last window starting at or before v
+        while (low<high){
+            int middle = (low+high+1)>>>1;
+            if (windowVectors[middle]<=v){
+                low = middle;
+            } else {
+                high = middle-1;
+            }
+        }
+        return low;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(offsetsToArray());
+        out.writeObject(indicesToArray());
+        out.writeObject(valuesToArray());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        CompressedSection heap = onHeap(size, (int[]) in.readObject(), (int[]) in.readObject(), (double[]) in.readObject());
+        this.offsets = heap.offsets;
+        this.windowVectors = heap.windowVectors;
+        this.windowEntries = heap.windowEntries;
+        this.indices = heap.indices;
+        this.values = heap.values;
+        this.mapped = false;
+    }
+}
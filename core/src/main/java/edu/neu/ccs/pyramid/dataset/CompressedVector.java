@@ -0,0 +1,350 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.OrderedIntDoubleMapping;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.DoubleFunction;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * a read-only view of one row or one column of a {@link CompressedDataSet}
+ * entries are indices[start...end-1] and values[start...end-1], indices sorted;
+ * the buffers wrap heap arrays or a memory-mapped file and are only read with absolute gets.
+ * get is a binary search, nonZeroes walks the buffers directly.
+ * other read operations work on a sequential sparse copy built on first use
+ * not thread safe!
+ */
+class CompressedVector implements Vector {
+    private int size;
+    private IntBuffer indices;
+    private DoubleBuffer values;
+    private int start;
+    private int end;
+    private SequentialAccessSparseVector materialized;
+
+    CompressedVector(int size, IntBuffer indices, DoubleBuffer values, int start, int end) {
+        this.size = size;
+        this.indices = indices;
+        this.values = values;
+        this.start = start;
+        this.end = end;
+    }
+
+    private Vector materialize(){
+        if (materialized==null){
+            SequentialAccessSparseVector vector = new SequentialAccessSparseVector(size, end-start);
+            for (int k=start;k<end;k++){
+                vector.setQuick(indices.get(k), values.get(k));
+            }
+            materialized = vector;
+        }
+        return materialized;
+    }
+
+    @Override
+    public double get(int i) {
+        int low = start;
+        int high = end-1;
+        while (low<=high){
+            int middle = (low+high)>>>1;
+            int index = indices.get(middle);
+            if (index<i){
+                low = middle+1;
+            } else if (index>i){
+                high = middle-1;
+            } else {
+                return values.get(middle);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public double getQuick(int i) {
+        return get(i);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public boolean isSequentialAccess() {
+        return true;
+    }
+
+    @Override
+    public Iterable<Element> nonZeroes() {
+        return () -> new Iterator<Element>() {
+            private int next = start;
+            private final EntryElement element = new EntryElement();
+
+            @Override
+            public boolean hasNext() {
+                return next<end;
+            }
+
+            @Override
+            public Element next() {
+                if (next>=end){
+                    throw new NoSuchElementException();
+                }
+                element.position = next;
+                next += 1;
+                return element;
+            }
+        };
+    }
+
+    @Override
+    public int getNumNondefaultElements() {
+        return end-start;
+    }
+
+    @Override
+    public int getNumNonZeroElements() {
+        return end-start;
+    }
+
+    @Override
+    public String asFormatString() {
+        return materialize().asFormatString();
+    }
+
+    @Override
+    public Vector clone() {
+        return materialize().clone();
+    }
+
+    @Override
+    public Iterable<Element> all() {
+        return materialize().all();
+    }
+
+    @Override
+    public Element getElement(int i) {
+        return materialize().getElement(i);
+    }
+
+    @Override
+    public Vector divide(double v) {
+        return materialize().divide(v);
+    }
+
+    @Override
+    public double dot(Vector vector) {
+        return materialize().dot(vector);
+    }
+
+    @Override
+    public Vector like() {
+        return materialize().like();
+    }
+
+    @Override
+    public Vector like(int i) {
+        return materialize().like(i);
+    }
+
+    @Override
+    public Vector minus(Vector vector) {
+        return materialize().minus(vector);
+    }
+
+    @Override
+    public Vector normalize() {
+        return materialize().normalize();
+    }
+
+    @Override
+    public Vector normalize(double v) {
+        return materialize().normalize(v);
+    }
+
+    @Override
+    public Vector logNormalize() {
+        return materialize().logNormalize();
+    }
+
+    @Override
+    public Vector logNormalize(double v) {
+        return materialize().logNormalize(v);
+    }
+
+    @Override
+    public double norm(double v) {
+        return materialize().norm(v);
+    }
+
+    @Override
+    public double minValue() {
+        return materialize().minValue();
+    }
+
+    @Override
+    public int minValueIndex() {
+        return materialize().minValueIndex();
+    }
+
+    @Override
+    public double maxValue() {
+        return materialize().maxValue();
+    }
+
+    @Override
+    public int maxValueIndex() {
+        return materialize().maxValueIndex();
+    }
+
+    @Override
+    public Vector plus(double v) {
+        return materialize().plus(v);
+    }
+
+    @Override
+    public Vector plus(Vector vector) {
+        return materialize().plus(vector);
+    }
+
+    @Override
+    public Vector times(double v) {
+        return materialize().times(v);
+    }
+
+    @Override
+    public Vector times(Vector vector) {
+        return materialize().times(vector);
+    }
+
+    @Override
+    public Vector viewPart(int i, int i1) {
+        return materialize().viewPart(i, i1);
+    }
+
+    @Override
+    public double zSum() {
+        return materialize().zSum();
+    }
+
+    @Override
+    public Matrix cross(Vector vector) {
+        return materialize().cross(vector);
+    }
+
+    @Override
+    public double aggregate(DoubleDoubleFunction doubleDoubleFunction, DoubleFunction doubleFunction) {
+        return materialize().aggregate(doubleDoubleFunction, doubleFunction);
+    }
+
+    @Override
+    public double aggregate(Vector vector, DoubleDoubleFunction doubleDoubleFunction, DoubleDoubleFunction doubleDoubleFunction1) {
+        return materialize().aggregate(vector, doubleDoubleFunction, doubleDoubleFunction1);
+    }
+
+    @Override
+    public double getLengthSquared() {
+        return materialize().getLengthSquared();
+    }
+
+    @Override
+    public double getDistanceSquared(Vector vector) {
+        return materialize().getDistanceSquared(vector);
+    }
+
+    @Override
+    public double getLookupCost() {
+        return materialize().getLookupCost();
+    }
+
+    @Override
+    public double getIteratorAdvanceCost() {
+        return materialize().getIteratorAdvanceCost();
+    }
+
+    @Override
+    public boolean isAddConstantTime() {
+        return materialize().isAddConstantTime();
+    }
+
+    @Override
+    public Vector assign(double v) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public Vector assign(double[] doubles) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public Vector assign(Vector vector) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public Vector assign(DoubleFunction doubleFunction) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public Vector assign(Vector vector, DoubleDoubleFunction doubleDoubleFunction) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public Vector assign(DoubleDoubleFunction doubleDoubleFunction, double v) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public void mergeUpdates(OrderedIntDoubleMapping orderedIntDoubleMapping) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public void set(int i, double v) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public void setQuick(int i, double v) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    @Override
+    public void incrementQuick(int i, double v) {
+        throw new UnsupportedOperationException("compressed vectors are read-only");
+    }
+
+    // reused across iterations, like the elements of Mahout vectors
+    private class EntryElement implements Element {
+        private int position;
+
+        @Override
+        public double get() {
+            return values.get(position);
+        }
+
+        @Override
+        public int index() {
+            return indices.get(position);
+        }
+
+        @Override
+        public void set(double value) {
+            throw new UnsupportedOperationException("compressed vectors are read-only");
+        }
+    }
+}
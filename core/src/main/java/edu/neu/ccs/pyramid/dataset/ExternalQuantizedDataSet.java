@@ -0,0 +1,468 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * a quantized data set kept on disk and read one block of rows at a time,
+ * for data sets that do not fit in memory.
+ * every block is loaded as a small {@link QuantizedDataSet} over the rows of the block, all blocks sharing
+ * the same bin boundaries; only the bin boundaries stay in memory.
+ * layout, little endian: a 64 byte header (magic, version, numDataPoints, numFeatures, missingValue,
+ * bytes per bin, block size, numBlocks, metadata position, index position), then the blocks,
+ * then the metadata (bin boundaries, sparse flags and feature list) and the block offsets.
+ * within a block, a sparse column is stored as its number of entries, the entry rows and the entry bins;
+ * a dense column as one bin per row.
+ * random access is slow: {@link #getRow(int)} decodes a whole block, and columns are not available
+ */
+public class ExternalQuantizedDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+    private static final int MAGIC = 0x50595251;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    public static final int DEFAULT_BLOCK_SIZE = 1<<16;
+
+    private File file;
+    // bin boundaries, no data points
+    private QuantizedDataSet schema;
+    private boolean[] sparseColumns;
+    private int blockSize;
+    private int numBlocks;
+    // numBlocks+1 file positions
+    private long[] blockOffsets;
+
+    private ExternalQuantizedDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        super(numDataPoints, numFeatures, missingValue, new IdTranslator());
+    }
+
+    /**
+     * write an in-memory quantized data set block by block
+     */
+    public static void save(QuantizedDataSet dataSet, File file, int blockSize) throws IOException {
+        try (Writer writer = writer(dataSet, file, blockSize)){
+            for (int i=0;i<dataSet.getNumDataPoints();i++){
+                writer.add(dataSet.getRow(i));
+            }
+        }
+    }
+
+    /**
+     * rows added to the writer are quantized with the bin boundaries of the reference,
+     * typically a quantized sample of the full data set
+     */
+    public static Writer writer(QuantizedDataSet reference, File file, int blockSize) throws IOException {
+        return new Writer(reference, file, blockSize);
+    }
+
+    public static ExternalQuantizedDataSet open(String file) throws IOException, ClassNotFoundException {
+        return open(new File(file));
+    }
+
+    public static ExternalQuantizedDataSet open(File file) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt()!=MAGIC){
+                throw new IllegalArgumentException(file+" is not an external quantized data set");
+            }
+            int version = header.getInt();
+            if (version!=VERSION){
+                throw new IllegalArgumentException("unsupported external quantized data set version "+version);
+            }
+            int numDataPoints = header.getInt();
+            int numFeatures = header.getInt();
+            boolean missingValue = header.getInt()==1;
+            int bytesPerBin = header.getInt();
+            int blockSize = header.getInt();
+            int numBlocks = header.getInt();
+            long metadataPosition = header.getLong();
+            long indexPosition = header.getLong();
+
+            ExternalQuantizedDataSet dataSet = new ExternalQuantizedDataSet(numDataPoints, numFeatures, missingValue);
+            dataSet.file = file;
+            dataSet.blockSize = blockSize;
+            dataSet.numBlocks = numBlocks;
+            dataSet.blockOffsets = new long[numBlocks+1];
+            channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, (long)(numBlocks+1)*Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(dataSet.blockOffsets);
+
+            byte[] metadata = new byte[(int)(indexPosition-metadataPosition)];
+            channel.map(FileChannel.MapMode.READ_ONLY, metadataPosition, metadata.length).get(metadata);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata))){
+                double[][] upperBounds = new double[numFeatures][];
+                double[] mins = new double[numFeatures];
+                int[] zeroBins = new int[numFeatures];
+                dataSet.sparseColumns = new boolean[numFeatures];
+                for (int j=0;j<numFeatures;j++){
+                    upperBounds[j] = new double[in.readInt()];
+                    for (int b=0;b<upperBounds[j].length;b++){
+                        upperBounds[j][b] = in.readDouble();
+                    }
+                    mins[j] = in.readDouble();
+                    zeroBins[j] = in.readInt();
+                    dataSet.sparseColumns[j] = in.readBoolean();
+                }
+                dataSet.schema = QuantizedDataSet.schema(numFeatures, missingValue, upperBounds, mins, zeroBins,
+                        bytesPerBin);
+                byte[] featureBytes = new byte[in.readInt()];
+                in.readFully(featureBytes);
+                try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(featureBytes))){
+                    FeatureList featureList = (FeatureList) objectInputStream.readObject();
+                    dataSet.setFeatureList(featureList);
+                    dataSet.schema.setFeatureList(featureList);
+                }
+            }
+            return dataSet;
+        }
+    }
+
+    /**
+     * bin boundaries shared by all blocks; holds no data points
+     */
+    public QuantizedDataSet getSchema() {
+        return schema;
+    }
+
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+
+    public int getBlockStart(int blockIndex){
+        return blockIndex*blockSize;
+    }
+
+    public int getBlockEnd(int blockIndex){
+        return Math.min(numDataPoints, (blockIndex+1)*blockSize);
+    }
+
+    /**
+     * map one block of the file and decode it
+     * @return data set over rows [blockStart, blockEnd), indexed from 0
+     */
+    public QuantizedDataSet loadBlock(int blockIndex) throws IOException {
+        int numRows = getBlockEnd(blockIndex) - getBlockStart(blockIndex);
+        int bytesPerBin = schema.getBytesPerBin();
+        int[][] entryRows = new int[numFeatures][];
+        byte[][] byteBins = null;
+        short[][] shortBins = null;
+        if (bytesPerBin==1){
+            byteBins = new byte[numFeatures][];
+        } else {
+            shortBins = new short[numFeatures][];
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[blockIndex],
+                    blockOffsets[blockIndex+1]-blockOffsets[blockIndex]);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int j=0;j<numFeatures;j++){
+                int numEntries = numRows;
+                if (sparseColumns[j]){
+                    numEntries = buffer.getInt();
+                    int[] rows = new int[numEntries];
+                    buffer.asIntBuffer().get(rows);
+                    buffer.position(buffer.position() + numEntries*Integer.BYTES);
+                    entryRows[j] = rows;
+                }
+                if (bytesPerBin==1){
+                    byteBins[j] = new byte[numEntries];
+                    buffer.get(byteBins[j]);
+                } else {
+                    shortBins[j] = new short[numEntries];
+                    buffer.asShortBuffer().get(shortBins[j]);
+                    buffer.position(buffer.position() + numEntries*Short.BYTES);
+                }
+            }
+        }
+        return schema.withStorage(numRows, entryRows, bytesPerBin==1 ? byteBins : shortBins);
+    }
+
+    /**
+     * visit all blocks in order; the next block is read while the current one is being consumed
+     * @param consumer receives each block and the index of its first row
+     */
+    public void forEachBlock(ObjIntConsumer<QuantizedDataSet> consumer){
+        if (numBlocks==0){
+            return;
+        }
+        CompletableFuture<QuantizedDataSet> next = loadAsync(0);
+        for (int b=0;b<numBlocks;b++){
+            QuantizedDataSet block;
+            try {
+                block = next.join();
+            } catch (CompletionException e){
+                if (e.getCause() instanceof IOException){
+                    throw new UncheckedIOException((IOException) e.getCause());
+                }
+                throw e;
+            }
+            if (b+1<numBlocks){
+                next = loadAsync(b+1);
+            }
+            consumer.accept(block, getBlockStart(b));
+        }
+    }
+
+    private CompletableFuture<QuantizedDataSet> loadAsync(int blockIndex){
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadBlock(blockIndex);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * decodes the whole block holding the data point; meant for occasional access only
+     */
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        int blockIndex = dataPointIndex/blockSize;
+        try {
+            return loadBlock(blockIndex).getRow(dataPointIndex - getBlockStart(blockIndex));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        throw new UnsupportedOperationException("columns of an external data set are not available; use forEachBlock");
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("external quantized data set is read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public Density density() {
+        for (boolean sparse: sparseColumns){
+            if (sparse){
+                return Density.SPARSE_RANDOM;
+            }
+        }
+        return Density.DENSE;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("external quantized").append("\n");
+        sb.append("file = ").append(file).append("\n");
+        sb.append("number of blocks = ").append(numBlocks).append("\n");
+        sb.append("bytes per bin index = ").append(schema.getBytesPerBin());
+        return sb.toString();
+    }
+
+    /**
+     * appends rows to an external quantized data set; each full block is written out immediately
+     */
+    public static class Writer implements Closeable{
+        private QuantizedDataSet reference;
+        private FileChannel channel;
+        private int numFeatures;
+        private int blockSize;
+        private int bytesPerBin;
+        private boolean missingValue;
+        // codes of the rows of the current block, null for sparse columns
+        private int[][] denseCodes;
+        // entries of the current block, null for dense columns
+        private int[][] sparseRows;
+        private int[][] sparseCodes;
+        private int[] numEntries;
+        // code of a zero value of each dense column
+        private int[] zeroCodes;
+        private int numRowsInBlock;
+        private int numDataPoints;
+        private long position;
+        private List<Long> blockOffsets;
+
+        private Writer(QuantizedDataSet reference, File file, int blockSize) throws IOException {
+            this.reference = reference;
+            this.numFeatures = reference.getNumFeatures();
+            this.blockSize = blockSize;
+            this.bytesPerBin = reference.getBytesPerBin();
+            this.missingValue = reference.hasMissingValue();
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists()){
+                parent.mkdirs();
+            }
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.denseCodes = new int[numFeatures][];
+            this.sparseRows = new int[numFeatures][];
+            this.sparseCodes = new int[numFeatures][];
+            this.numEntries = new int[numFeatures];
+            this.zeroCodes = new int[numFeatures];
+            for (int j=0;j<numFeatures;j++){
+                if (reference.isSparseColumn(j)){
+                    sparseRows[j] = new int[16];
+                    sparseCodes[j] = new int[16];
+                } else {
+                    denseCodes[j] = new int[blockSize];
+                    zeroCodes[j] = reference.toBin(j, 0);
+                }
+            }
+            this.position = HEADER_SIZE;
+            this.blockOffsets = new ArrayList<>();
+            blockOffsets.add(position);
+        }
+
+        public void add(Vector row) throws IOException {
+            int r = numRowsInBlock;
+            for (int j=0;j<numFeatures;j++){
+                if (denseCodes[j]!=null){
+                    denseCodes[j][r] = zeroCodes[j];
+                }
+            }
+            for (Vector.Element element: row.nonZeroes()){
+                int j = element.index();
+                double value = element.get();
+                if (Double.isNaN(value)){
+                    missingValue = true;
+                }
+                int code = reference.toBin(j, value);
+                if (denseCodes[j]!=null){
+                    denseCodes[j][r] = code;
+                } else {
+                    int k = numEntries[j];
+                    if (k==sparseRows[j].length){
+                        sparseRows[j] = Arrays.copyOf(sparseRows[j], 2*k);
+                        sparseCodes[j] = Arrays.copyOf(sparseCodes[j], 2*k);
+                    }
+                    sparseRows[j][k] = r;
+                    sparseCodes[j][k] = code;
+                    numEntries[j] = k+1;
+                }
+            }
+            numRowsInBlock += 1;
+            numDataPoints += 1;
+            if (numRowsInBlock==blockSize){
+                flushBlock();
+            }
+        }
+
+        /**
+         * entry rows of sparse columns are already sorted, since rows are appended one after another
+         */
+        private void flushBlock() throws IOException {
+            if (numRowsInBlock==0){
+                return;
+            }
+            long size = 0;
+            for (int j=0;j<numFeatures;j++){
+                if (denseCodes[j]!=null){
+                    size += (long)numRowsInBlock*bytesPerBin;
+                } else {
+                    size += Integer.BYTES + (long)numEntries[j]*(Integer.BYTES+bytesPerBin);
+                }
+            }
+            if (size>Integer.MAX_VALUE){
+                throw new IllegalStateException("block too large; use a smaller block size");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+            for (int j=0;j<numFeatures;j++){
+                int[] codes;
+                int length;
+                if (denseCodes[j]!=null){
+                    codes = denseCodes[j];
+                    length = numRowsInBlock;
+                } else {
+                    codes = sparseCodes[j];
+                    length = numEntries[j];
+                    buffer.putInt(length);
+                    for (int k=0;k<length;k++){
+                        buffer.putInt(sparseRows[j][k]);
+                    }
+                    numEntries[j] = 0;
+                }
+                for (int k=0;k<length;k++){
+                    if (bytesPerBin==1){
+                        buffer.put((byte)codes[k]);
+                    } else {
+                        buffer.putShort((short)codes[k]);
+                    }
+                }
+            }
+            buffer.flip();
+            position = writeFully(channel, position, buffer);
+            blockOffsets.add(position);
+            numRowsInBlock = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBlock();
+                long metadataPosition = position;
+                position = writeFully(channel, position, ByteBuffer.wrap(metadata()));
+                long indexPosition = position;
+                ByteBuffer index = ByteBuffer.allocate(blockOffsets.size()*Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (long offset: blockOffsets){
+                    index.putLong(offset);
+                }
+                index.flip();
+                writeFully(channel, position, index);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(numDataPoints).putInt(numFeatures)
+                        .putInt(missingValue ? 1 : 0).putInt(bytesPerBin).putInt(blockSize)
+                        .putInt(blockOffsets.size()-1).putLong(metadataPosition).putLong(indexPosition);
+                header.clear();
+                writeFully(channel, 0, header);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private byte[] metadata() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)){
+                for (int j=0;j<numFeatures;j++){
+                    double[] bounds = reference.getUpperBounds(j);
+                    out.writeInt(bounds.length);
+                    for (double bound: bounds){
+                        out.writeDouble(bound);
+                    }
+                    out.writeDouble(reference.getMin(j));
+                    out.writeInt(reference.getZeroBin(j));
+                    out.writeBoolean(denseCodes[j]==null);
+                }
+                ByteArrayOutputStream featureBytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(featureBytes)){
+                    objectOutputStream.writeObject(reference.getFeatureList());
+                }
+                out.writeInt(featureBytes.size());
+                out.write(featureBytes.toByteArray());
+            }
+            return bytes.toByteArray();
+        }
+
+        private static long writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()){
+                position += channel.write(buffer, position);
+            }
+            return position;
+        }
+    }
+}
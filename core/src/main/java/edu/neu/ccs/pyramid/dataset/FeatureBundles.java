@@ -0,0 +1,321 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * exclusive feature bundles of a {@link QuantizedDataSet}
+ * sparse features that are rarely outside their zero bins at the same data point are merged into one bundle column.
+ * each member feature of a bundle owns a range of codes, one per bin including the missing bin;
+ * code 0 means every member is in its zero bin.
+ * when several members of a bundle are outside their zero bins at a data point, only the first one is kept,
+ * and the others are seen in their zero bins.
+ * bundles are only used to build histograms faster; histograms, splits and trees stay in terms of the original features.
+ * a bundle column is stored densely, or sparsely as sorted rows and codes if most data points have code 0
+ */
+public class FeatureBundles implements Serializable{
+    private static final long serialVersionUID = 1L;
+    // codes are stored as unsigned shorts
+    private static final int MAX_NUM_CODES = 65535;
+    // number of most recently opened bundles tried for each feature
+    private static final int MAX_CANDIDATES = 128;
+    // a bundle is stored sparsely if less than 1/SPARSE_RATIO of its data points have a non-zero code
+    private static final int SPARSE_RATIO = 5;
+
+    private int numDataPoints;
+    // bundle of each feature, -1 if the feature is not bundled
+    private int[] bundleOf;
+    private int[][] members;
+    // feature and bin each code stands for; entry 0 is unused
+    private int[][] codeFeatures;
+    private int[][] codeBins;
+    // null for sparse bundles
+    private short[][] denseCodes;
+    // null for dense bundles
+    private int[][] entryRows;
+    private short[][] entryCodes;
+
+    private FeatureBundles() {
+    }
+
+    /**
+     * greedy bundling; features with more entries are placed first,
+     * each into the newest bundle it conflicts little enough with.
+     * as in LightGBM, the search is limited: only the {@link #MAX_CANDIDATES} most recently opened bundles are tried,
+     * so wide data is bundled in linear time and older bundles can drop their occupancy bits.
+     * a bundle of one feature is checked against the entries of that feature and gets its bits when a second member joins
+     * @param maxConflictRate max fraction of data points at which the members of a bundle may conflict
+     */
+    static FeatureBundles build(QuantizedDataSet dataSet, double maxConflictRate){
+        int numDataPoints = dataSet.getNumDataPoints();
+        int numFeatures = dataSet.getNumFeatures();
+        long maxConflicts = (long)(maxConflictRate*numDataPoints);
+        Integer[] candidates = IntStream.range(0, numFeatures)
+                .filter(j -> dataSet.isSparseColumn(j) && dataSet.getNumBins(j)>=2)
+                .boxed().toArray(Integer[]::new);
+        Arrays.sort(candidates, (a, b) -> Integer.compare(dataSet.getNumEntries(b), dataSet.getNumEntries(a)));
+
+        List<List<Integer>> bundleMembers = new ArrayList<>();
+        // data points where some member is outside its zero bin; null for single member bundles and
+        // for bundles outside the search window
+        List<BitSet> occupied = new ArrayList<>();
+        List<long[]> conflictCounts = new ArrayList<>();
+        List<int[]> numCodes = new ArrayList<>();
+        for (int j: candidates){
+            int width = dataSet.getNumBins(j) + 1;
+            int chosen = -1;
+            int oldest = Math.max(0, bundleMembers.size()-MAX_CANDIDATES);
+            for (int g=bundleMembers.size()-1;g>=oldest;g--){
+                if (numCodes.get(g)[0] + width > MAX_NUM_CODES){
+                    continue;
+                }
+                long budget = maxConflicts - conflictCounts.get(g)[0];
+                long conflicts;
+                if (occupied.get(g)==null){
+                    conflicts = countConflicts(dataSet, j, bundleMembers.get(g).get(0), budget);
+                } else {
+                    conflicts = countConflicts(dataSet, j, occupied.get(g), budget);
+                }
+                if (conflicts<=budget){
+                    conflictCounts.get(g)[0] += conflicts;
+                    chosen = g;
+                    break;
+                }
+            }
+            if (chosen==-1){
+                chosen = bundleMembers.size();
+                bundleMembers.add(new ArrayList<>());
+                occupied.add(null);
+                conflictCounts.add(new long[1]);
+                // code 0 is reserved
+                numCodes.add(new int[]{1});
+                // the bundle leaving the search window is never tried again
+                if (chosen>=MAX_CANDIDATES){
+                    occupied.set(chosen-MAX_CANDIDATES, null);
+                }
+            } else if (occupied.get(chosen)==null){
+                BitSet bits = new BitSet(numDataPoints);
+                setOccupied(dataSet, bundleMembers.get(chosen).get(0), bits);
+                occupied.set(chosen, bits);
+            }
+            bundleMembers.get(chosen).add(j);
+            numCodes.get(chosen)[0] += width;
+            if (occupied.get(chosen)!=null){
+                setOccupied(dataSet, j, occupied.get(chosen));
+            }
+        }
+        occupied.clear();
+
+        // a bundle of one feature gains nothing
+        List<int[]> kept = new ArrayList<>();
+        for (List<Integer> memberList: bundleMembers){
+            if (memberList.size()>=2){
+                kept.add(memberList.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        FeatureBundles bundles = new FeatureBundles();
+        bundles.numDataPoints = numDataPoints;
+        bundles.members = kept.toArray(new int[0][]);
+        int numBundles = bundles.members.length;
+        bundles.bundleOf = new int[numFeatures];
+        Arrays.fill(bundles.bundleOf, -1);
+        bundles.codeFeatures = new int[numBundles][];
+        bundles.codeBins = new int[numBundles][];
+        bundles.denseCodes = new short[numBundles][];
+        bundles.entryRows = new int[numBundles][];
+        bundles.entryCodes = new short[numBundles][];
+        for (int g=0;g<numBundles;g++){
+            for (int j: bundles.members[g]){
+                bundles.bundleOf[j] = g;
+            }
+        }
+        IntStream.range(0, numBundles).parallel().forEach(g -> bundles.encode(dataSet, g));
+        return bundles;
+    }
+
+    private static void setOccupied(QuantizedDataSet dataSet, int featureIndex, BitSet bits){
+        int zeroBin = dataSet.getZeroBin(featureIndex);
+        for (int e=0;e<dataSet.getNumEntries(featureIndex);e++){
+            if (dataSet.getEntryBin(featureIndex, e)!=zeroBin){
+                bits.set(dataSet.getEntryRow(featureIndex, e));
+            }
+        }
+    }
+
+    /**
+     * number of data points where feature j is outside its zero bin and the bundle is occupied;
+     * stops counting once over the budget
+     */
+    private static long countConflicts(QuantizedDataSet dataSet, int featureIndex, BitSet occupied, long budget){
+        int zeroBin = dataSet.getZeroBin(featureIndex);
+        long conflicts = 0;
+        for (int e=0;e<dataSet.getNumEntries(featureIndex);e++){
+            if (dataSet.getEntryBin(featureIndex, e)!=zeroBin && occupied.get(dataSet.getEntryRow(featureIndex, e))){
+                conflicts += 1;
+                if (conflicts>budget){
+                    return conflicts;
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * same as above against a bundle holding only the other feature;
+     * entry rows of sparse columns are sorted, so the two columns are merged
+     */
+    private static long countConflicts(QuantizedDataSet dataSet, int featureIndex, int otherIndex, long budget){
+        int zeroBin = dataSet.getZeroBin(featureIndex);
+        int otherZeroBin = dataSet.getZeroBin(otherIndex);
+        int numEntries = dataSet.getNumEntries(featureIndex);
+        int otherNumEntries = dataSet.getNumEntries(otherIndex);
+        long conflicts = 0;
+        int e = 0;
+        int o = 0;
+        while (e<numEntries && o<otherNumEntries){
+            int row = dataSet.getEntryRow(featureIndex, e);
+            int otherRow = dataSet.getEntryRow(otherIndex, o);
+            if (row<otherRow){
+                e += 1;
+            } else if (row>otherRow){
+                o += 1;
+            } else {
+                if (dataSet.getEntryBin(featureIndex, e)!=zeroBin && dataSet.getEntryBin(otherIndex, o)!=otherZeroBin){
+                    conflicts += 1;
+                    if (conflicts>budget){
+                        return conflicts;
+                    }
+                }
+                e += 1;
+                o += 1;
+            }
+        }
+        return conflicts;
+    }
+
+    private void encode(QuantizedDataSet dataSet, int bundle){
+        int totalCodes = 1;
+        for (int j: members[bundle]){
+            totalCodes += dataSet.getNumBins(j) + 1;
+        }
+        int[] features = new int[totalCodes];
+        int[] bins = new int[totalCodes];
+        short[] codes = new short[numDataPoints];
+        int[] touched = new int[16];
+        int numTouched = 0;
+        int offset = 1;
+        for (int j: members[bundle]){
+            int width = dataSet.getNumBins(j) + 1;
+            for (int b=0;b<width;b++){
+                features[offset+b] = j;
+                bins[offset+b] = b;
+            }
+            int zeroBin = dataSet.getZeroBin(j);
+            for (int e=0;e<dataSet.getNumEntries(j);e++){
+                int bin = dataSet.getEntryBin(j, e);
+                int i = dataSet.getEntryRow(j, e);
+                // the first member outside its zero bin keeps the data point
+                if (bin==zeroBin || codes[i]!=0){
+                    continue;
+                }
+                codes[i] = (short)(offset+bin);
+                if (numTouched==touched.length){
+                    touched = Arrays.copyOf(touched, 2*numTouched);
+                }
+                touched[numTouched] = i;
+                numTouched += 1;
+            }
+            offset += width;
+        }
+        codeFeatures[bundle] = features;
+        codeBins[bundle] = bins;
+        if (numTouched*SPARSE_RATIO < numDataPoints){
+            int[] rows = Arrays.copyOf(touched, numTouched);
+            Arrays.sort(rows);
+            short[] sparseCodes = new short[numTouched];
+            for (int k=0;k<numTouched;k++){
+                sparseCodes[k] = codes[rows[k]];
+            }
+            entryRows[bundle] = rows;
+            entryCodes[bundle] = sparseCodes;
+        } else {
+            denseCodes[bundle] = codes;
+        }
+    }
+
+    public int getNumBundles(){
+        return members.length;
+    }
+
+    public boolean isBundled(int featureIndex){
+        return bundleOf[featureIndex]!=-1;
+    }
+
+    /**
+     * @return bundle holding the feature, -1 if the feature is not bundled
+     */
+    public int getBundle(int featureIndex){
+        return bundleOf[featureIndex];
+    }
+
+    public int[] getMembers(int bundle){
+        return members[bundle];
+    }
+
+    public boolean isSparse(int bundle){
+        return entryRows[bundle]!=null;
+    }
+
+    /**
+     * number of stored entries of a bundle; data points not stored have code 0
+     */
+    public int getNumEntries(int bundle){
+        if (entryRows[bundle]==null){
+            return numDataPoints;
+        }
+        return entryRows[bundle].length;
+    }
+
+    public int getEntryRow(int bundle, int entry){
+        if (entryRows[bundle]==null){
+            return entry;
+        }
+        return entryRows[bundle][entry];
+    }
+
+    public int getEntryCode(int bundle, int entry){
+        if (entryRows[bundle]==null){
+            return denseCodes[bundle][entry] & 0xFFFF;
+        }
+        return entryCodes[bundle][entry] & 0xFFFF;
+    }
+
+    public int getCode(int bundle, int dataPointIndex){
+        if (entryRows[bundle]==null){
+            return denseCodes[bundle][dataPointIndex] & 0xFFFF;
+        }
+        int entry = Arrays.binarySearch(entryRows[bundle], dataPointIndex);
+        if (entry<0){
+            return 0;
+        }
+        return entryCodes[bundle][entry] & 0xFFFF;
+    }
+
+    /**
+     * feature a non-zero code belongs to
+     */
+    public int getFeature(int bundle, int code){
+        return codeFeatures[bundle][code];
+    }
+
+    /**
+     * bin of its feature a non-zero code stands for
+     */
+    public int getBin(int bundle, int code){
+        return codeBins[bundle][code];
+    }
+}
@@ -1,28 +1,43 @@
 package edu.neu.ccs.pyramid.dataset;
 
+import java.util.Arrays;
+
 /**
  * Created by chengli on 2/3/15.
+ * gradients are kept in one flat class major array, entry (i,k) at k*numDataPoints+i,
+ * so the gradients of one class are contiguous
  */
 public class GradientMatrix {
     private int numDataPoints;
     private int numClasses;
-    private double[][] classData;
+    private double[] classData;
     private Objective objective;
 
+    /**
+     * @throws IllegalArgumentException if numDataPoints*numClasses does not fit in one array
+     */
     public GradientMatrix(int numDataPoints, int numClasses, Objective objective) {
+        ScoreMatrix.checkSize(numDataPoints, numClasses);
         this.numDataPoints = numDataPoints;
         this.numClasses = numClasses;
-        this.classData = new double[numClasses][numDataPoints];
+        this.classData = new double[numClasses*numDataPoints];
         this.objective = objective;
     }
 
     public void setGradient(int dataPointIndex, int classIndex, double gradient){
-        this.classData[classIndex][dataPointIndex] = gradient;
+        this.classData[classIndex*numDataPoints+dataPointIndex] = gradient;
     }
 
+    public double getGradient(int dataPointIndex, int classIndex){
+        return this.classData[classIndex*numDataPoints+dataPointIndex];
+    }
 
+    /**
+     * @return a copy of the gradients of the class, one bulk copy of a contiguous range
+     */
     public double[] getGradientsForClass(int classIndex){
-        return classData[classIndex];
+        int offset = classIndex*numDataPoints;
+        return Arrays.copyOfRange(classData, offset, offset+numDataPoints);
     }
 
     public static enum Objective{
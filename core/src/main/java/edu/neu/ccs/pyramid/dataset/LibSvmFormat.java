@@ -189,6 +189,69 @@ public class LibSvmFormat {
         return dataSet;
     }
 
+    /**
+     * parallel loading into a {@link CompressedClfDataSet}; the file is parsed once, labels included
+     */
+    public static CompressedClfDataSet loadCompressedClfDataSet(String libSvmFile,
+                                                                int numFeatures, int numClasses) throws IOException {
+        SparseTextParser parser = parse(libSvmFile, true);
+        int numDataPoints = parser.numLines;
+        int[] extIntLabels = new int[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            extIntLabels[i] = (int)parser.labels[parser.labelOffsets[i]];
+        }
+        List<String> labelStrings = Arrays.stream(extIntLabels).distinct().sorted()
+                .mapToObj(label -> ""+label).collect(Collectors.toList());
+        LabelTranslator labelTranslator = new LabelTranslator(labelStrings);
+        if (labelTranslator.getNumClasses()!=numClasses){
+            throw new RuntimeException("labelTranslator.getNumClasses()!=numClasse");
+        }
+        CompressedClfDataSet dataSet = new CompressedClfDataSet(parser.toDataSet(numDataPoints,numFeatures,false),
+                numClasses);
+        for (int i=0;i<numDataPoints;i++){
+            dataSet.setLabel(i,labelTranslator.toIntLabel(""+extIntLabels[i]));
+        }
+        dataSet.setLabelTranslator(labelTranslator);
+        return dataSet;
+    }
+
+    public static CompressedRegDataSet loadCompressedRegDataSet(String libSvmFile, int numFeatures) throws IOException {
+        SparseTextParser parser = parse(libSvmFile, true);
+        int numDataPoints = parser.numLines;
+        CompressedRegDataSet dataSet = new CompressedRegDataSet(parser.toDataSet(numDataPoints,numFeatures,false));
+        for (int i=0;i<numDataPoints;i++){
+            dataSet.setLabel(i,parser.labels[parser.labelOffsets[i]]);
+        }
+        return dataSet;
+    }
+
+    /**
+     * labels start from 1 in the file, as in {@link #loadMultiLabelClfDataSet}
+     */
+    public static CompressedMLClfDataSet loadCompressedMultiLabelClfDataSet(String libSvmFile,
+                                                                            int numFeatures, int numClasses) throws IOException {
+        SparseTextParser parser = parse(libSvmFile, false);
+        int numDataPoints = parser.numLines;
+        CompressedMLClfDataSet dataSet = new CompressedMLClfDataSet(parser.toDataSet(numDataPoints,numFeatures,false),
+                numClasses);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=parser.labelOffsets[i];k<parser.labelOffsets[i+1];k++){
+                dataSet.addLabel(i,(int)parser.labels[k]-1);
+            }
+        }
+        return dataSet;
+    }
+
+    private static SparseTextParser parse(String libSvmFile, boolean singleLabel) throws IOException {
+        SparseTextParser parser = SparseTextParser.parse(new File(libSvmFile), 1);
+        for (int i=0;i<parser.numLines && singleLabel;i++){
+            if (parser.labelOffsets[i+1]==parser.labelOffsets[i]){
+                throw new IllegalArgumentException("no label in line "+i+" of "+libSvmFile);
+            }
+        }
+        return parser;
+    }
+
     public static LabelTranslator loadLabelTranslator(String libSvmFile) throws IOException{
         Set<Integer> oldLabels = new HashSet<>();
         try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
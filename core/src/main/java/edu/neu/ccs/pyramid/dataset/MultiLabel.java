@@ -112,6 +112,15 @@ public class MultiLabel implements Serializable{
         return set;
     }
 
+    /**
+     * iterate over labels without creating a set:
+     * for (int l = multiLabel.nextLabel(0); l >= 0; l = multiLabel.nextLabel(l+1))
+     * @return the first label >= fromIndex, -1 if there is none
+     */
+    public int nextLabel(int fromIndex){
+        return labels.nextSetBit(fromIndex);
+    }
+
     public int getNumMatchedLabels(){
         return labels.cardinality();
     }
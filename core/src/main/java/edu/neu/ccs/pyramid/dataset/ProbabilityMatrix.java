@@ -1,27 +1,56 @@
 package edu.neu.ccs.pyramid.dataset;
 
+import java.util.Arrays;
+
 /**
  * Created by chengli on 2/3/15.
+ * probabilities are kept in one flat row major array, entry (i,k) at i*numClasses+k
  */
 public class ProbabilityMatrix {
+    private int numDataPoints;
+    private int numClasses;
     // num data * num classes
-    private float[][] m;
+    private float[] m;
 
+    /**
+     * @throws IllegalArgumentException if numDataPoints*numClasses does not fit in one array
+     */
     public ProbabilityMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        ScoreMatrix.checkSize(numDataPoints, numClasses);
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.m = new float[numDataPoints*numClasses];
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
     }
 
     public void setProbability(int dataPointIndex, int classIndex, double probability){
-        this.m[dataPointIndex][classIndex] = (float)probability;
+        this.m[dataPointIndex*numClasses+classIndex] = (float)probability;
+    }
+
+    public float getProbability(int dataPointIndex, int classIndex){
+        return this.m[dataPointIndex*numClasses+classIndex];
     }
 
+    /**
+     * @return a copy of the probabilities of the data point; loops over data points should use
+     * {@link #getProbability(int, int)}, which does not allocate
+     */
     public float[] getProbabilitiesForData(int dataPointIndex){
-        return m[dataPointIndex];
+        int offset = dataPointIndex*numClasses;
+        return Arrays.copyOfRange(m, offset, offset+numClasses);
     }
 
 
+
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.m[dataPointIndex*numClasses+classIndex] += increment;
     }
 
 
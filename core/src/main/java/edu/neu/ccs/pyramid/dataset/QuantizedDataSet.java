@@ -0,0 +1,593 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * a read-only data set where every feature value is replaced by the index of its bin
+ * bins are computed once, per feature, either by equal width or by quantiles;
+ * bin b of feature j holds values v with upperBound(j,b-1) < v <= upperBound(j,b),
+ * and bin numBins(j) holds missing values.
+ * bin indices are stored column by column as bytes, or shorts if some feature needs more than 255 bins.
+ * columns dominated by zeros only store the data points outside the zero bin.
+ *
+ * rows and columns are exposed as vectors of representative values:
+ * 0 for the zero bin, the upper bound for other bins,
+ * so that a tree with bin boundaries as thresholds routes them exactly like the original values.
+ */
+public class QuantizedDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+
+    public enum Binning {
+        EQUAL_WIDTH, QUANTILE
+    }
+
+    // a column is stored sparsely if less than 1/SPARSE_RATIO of its data points are outside the zero bin
+    private static final int SPARSE_RATIO = 5;
+
+    // number of bins for present values
+    private int[] numBins;
+    private double[][] upperBounds;
+    // min present value, lower bound of bin 0
+    private double[] mins;
+    // bin containing zero, -1 if the feature is never zero
+    private int[] zeroBins;
+    // null for dense columns
+    private int[][] entryRows;
+    // exactly one of them is used
+    private byte[][] byteBins;
+    private short[][] shortBins;
+    // null unless features are bundled
+    private FeatureBundles bundles;
+    // entries of sparse columns grouped by data point, built when a row is first materialized
+    private transient volatile RowIndex rowIndex;
+
+    private QuantizedDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        super(numDataPoints, numFeatures, missingValue);
+    }
+
+    private QuantizedDataSet(int numDataPoints, int numFeatures, boolean missingValue, IdTranslator idTranslator) {
+        super(numDataPoints, numFeatures, missingValue, idTranslator);
+    }
+
+    /**
+     * bin boundaries without data points
+     * @param zeroBins bin containing zero for each feature, -1 if the feature is never zero
+     * @param bytesPerBin 1 or 2
+     */
+    static QuantizedDataSet schema(int numFeatures, boolean missingValue, double[][] upperBounds, double[] mins,
+                                   int[] zeroBins, int bytesPerBin){
+        QuantizedDataSet schema = new QuantizedDataSet(0, numFeatures, missingValue, new IdTranslator());
+        schema.numBins = new int[numFeatures];
+        for (int j=0;j<numFeatures;j++){
+            schema.numBins[j] = upperBounds[j].length;
+        }
+        schema.upperBounds = upperBounds;
+        schema.mins = mins;
+        schema.zeroBins = zeroBins;
+        schema.entryRows = new int[numFeatures][];
+        if (bytesPerBin==1){
+            schema.byteBins = new byte[numFeatures][];
+        } else {
+            schema.shortBins = new short[numFeatures][];
+        }
+        return schema;
+    }
+
+    /**
+     * a data set over other data points, with the same bin boundaries as this one
+     * @param entryRows null for dense columns
+     * @param bins byte[][] or short[][], matching {@link #getBytesPerBin()}
+     */
+    QuantizedDataSet withStorage(int numDataPoints, int[][] entryRows, Object bins){
+        QuantizedDataSet dataSet = new QuantizedDataSet(numDataPoints, numFeatures, missingValue, new IdTranslator());
+        dataSet.featureList = featureList;
+        dataSet.numBins = numBins;
+        dataSet.upperBounds = upperBounds;
+        dataSet.mins = mins;
+        dataSet.zeroBins = zeroBins;
+        dataSet.entryRows = entryRows;
+        if (byteBins!=null){
+            dataSet.byteBins = (byte[][]) bins;
+        } else {
+            dataSet.shortBins = (short[][]) bins;
+        }
+        return dataSet;
+    }
+
+    /**
+     * quantize all features of a data set
+     * @param maxNumBins max number of bins for present values of a feature, at most 65535
+     */
+    public static QuantizedDataSet quantize(DataSet dataSet, int maxNumBins, Binning binning){
+        if (maxNumBins<2 || maxNumBins>65535){
+            throw new IllegalArgumentException("maxNumBins should be between 2 and 65535");
+        }
+        int numDataPoints = dataSet.getNumDataPoints();
+        int numFeatures = dataSet.getNumFeatures();
+        QuantizedDataSet quantized = new QuantizedDataSet(numDataPoints, numFeatures, dataSet.hasMissingValue());
+        quantized.setFeatureList(dataSet.getFeatureList());
+        quantized.setIdTranslator(dataSet.getIdTranslator());
+        quantized.numBins = new int[numFeatures];
+        quantized.upperBounds = new double[numFeatures][];
+        quantized.mins = new double[numFeatures];
+        quantized.zeroBins = new int[numFeatures];
+        quantized.entryRows = new int[numFeatures][];
+        // one extra code for missing values
+        boolean useByte = maxNumBins + 1 <= 256;
+        if (useByte){
+            quantized.byteBins = new byte[numFeatures][];
+        } else {
+            quantized.shortBins = new short[numFeatures][];
+        }
+        IntStream.range(0, numFeatures).parallel().forEach(j -> quantized.quantizeColumn(dataSet.getColumn(j), j,
+                maxNumBins, binning));
+        return quantized;
+    }
+
+    /**
+     * quantize a data set with the bin boundaries of another one,
+     * e.g. a shard of a larger data set with the bins of a sample, so that all shards share their bins
+     */
+    public static QuantizedDataSet quantize(DataSet dataSet, QuantizedDataSet reference){
+        if (dataSet.getNumFeatures()!=reference.getNumFeatures()){
+            throw new IllegalArgumentException("dataSet.getNumFeatures()!=reference.getNumFeatures()");
+        }
+        QuantizedDataSet quantized = reference.withStorage(dataSet.getNumDataPoints(),
+                new int[reference.numFeatures][],
+                reference.byteBins!=null ? new byte[reference.numFeatures][] : new short[reference.numFeatures][]);
+        quantized.missingValue = dataSet.hasMissingValue() || reference.hasMissingValue();
+        quantized.setFeatureList(dataSet.getFeatureList());
+        quantized.setIdTranslator(dataSet.getIdTranslator());
+        IntStream.range(0, quantized.numFeatures).parallel().forEach(j -> quantized.storeColumn(dataSet.getColumn(j), j));
+        return quantized;
+    }
+
+    private void quantizeColumn(Vector column, int featureIndex, int maxNumBins, Binning binning){
+        int numEntries = column.getNumNonZeroElements();
+        double[] presentValues = new double[numEntries];
+        int numPresent = 0;
+        for (Vector.Element element: column.nonZeroes()){
+            double value = element.get();
+            if (!Double.isNaN(value)){
+                presentValues[numPresent] = value;
+                numPresent += 1;
+            }
+        }
+        presentValues = Arrays.copyOf(presentValues, numPresent);
+        int numZeros = numDataPoints - numEntries;
+
+        double[] bounds;
+        if (binning==Binning.EQUAL_WIDTH){
+            bounds = equalWidthBounds(presentValues, numZeros, maxNumBins);
+        } else {
+            bounds = quantileBounds(presentValues, numZeros, maxNumBins);
+        }
+        numBins[featureIndex] = bounds.length;
+        upperBounds[featureIndex] = bounds;
+        double min = Double.POSITIVE_INFINITY;
+        for (double value: presentValues){
+            min = Math.min(min, value);
+        }
+        if (numZeros>0){
+            min = Math.min(min, 0);
+        }
+        mins[featureIndex] = min;
+        if (numZeros>0){
+            zeroBins[featureIndex] = findBin(bounds, 0);
+        } else {
+            zeroBins[featureIndex] = -1;
+        }
+
+        storeColumn(column, featureIndex);
+    }
+
+    /**
+     * bin indices of a column, with the bins of the feature already set
+     * a column is stored sparsely only if the feature has a zero bin
+     */
+    private void storeColumn(Vector column, int featureIndex){
+        int numEntries = column.getNumNonZeroElements();
+        int numZeros = numDataPoints - numEntries;
+        int zeroBin = zeroBins[featureIndex];
+        boolean sparse = numZeros>0 && zeroBin!=-1 && numEntries*SPARSE_RATIO < numDataPoints;
+        int[] codes;
+        if (sparse){
+            int[] rows = new int[numEntries];
+            codes = new int[numEntries];
+            int k = 0;
+            for (Vector.Element element: column.nonZeroes()){
+                rows[k] = element.index();
+                k += 1;
+            }
+            // keep rows sorted for lookups
+            Arrays.sort(rows);
+            for (k=0;k<numEntries;k++){
+                codes[k] = code(featureIndex, column.get(rows[k]));
+            }
+            entryRows[featureIndex] = rows;
+        } else {
+            codes = new int[numDataPoints];
+            if (numZeros>0){
+                Arrays.fill(codes, zeroBin!=-1 ? zeroBin : code(featureIndex, 0));
+            }
+            for (Vector.Element element: column.nonZeroes()){
+                codes[element.index()] = code(featureIndex, element.get());
+            }
+        }
+        if (byteBins!=null){
+            byte[] packed = new byte[codes.length];
+            for (int k=0;k<codes.length;k++){
+                packed[k] = (byte)codes[k];
+            }
+            byteBins[featureIndex] = packed;
+        } else {
+            short[] packed = new short[codes.length];
+            for (int k=0;k<codes.length;k++){
+                packed[k] = (short)codes[k];
+            }
+            shortBins[featureIndex] = packed;
+        }
+    }
+
+    /**
+     * bin of a value, using the bin boundaries of this data set; missing values go to bin numBins
+     * values beyond the boundaries go to the first or last bin
+     */
+    public int toBin(int featureIndex, double value){
+        return code(featureIndex, value);
+    }
+
+    private int code(int featureIndex, double value){
+        if (Double.isNaN(value)){
+            return numBins[featureIndex];
+        }
+        return findBin(upperBounds[featureIndex], value);
+    }
+
+    /**
+     * the first bin whose upper bound is not smaller than the value
+     */
+    private static int findBin(double[] bounds, double value){
+        int low = 0;
+        int high = bounds.length-1;
+        while (low<high){
+            int mid = (low+high)>>>1;
+            if (value<=bounds[mid]){
+                high = mid;
+            } else {
+                low = mid+1;
+            }
+        }
+        return low;
+    }
+
+    private static double[] equalWidthBounds(double[] presentValues, int numZeros, int maxNumBins){
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value: presentValues){
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if (numZeros>0){
+            min = Math.min(min, 0);
+            max = Math.max(max, 0);
+        }
+        // all missing
+        if (max==Double.NEGATIVE_INFINITY){
+            return new double[0];
+        }
+        if (min==max){
+            return new double[]{max};
+        }
+        double length = (max-min)/maxNumBins;
+        double[] bounds = new double[maxNumBins];
+        for (int b=0;b<maxNumBins-1;b++){
+            bounds[b] = min + (b+1)*length;
+        }
+        bounds[maxNumBins-1] = max;
+        return bounds;
+    }
+
+    /**
+     * bins with roughly equal numbers of data points; a value is never split across bins
+     */
+    private static double[] quantileBounds(double[] presentValues, int numZeros, int maxNumBins){
+        double[] sorted = Arrays.copyOf(presentValues, presentValues.length + (numZeros>0?1:0));
+        if (numZeros>0){
+            sorted[sorted.length-1] = 0;
+        }
+        Arrays.sort(sorted);
+        if (sorted.length==0){
+            return new double[0];
+        }
+        double total = presentValues.length + numZeros;
+        double target = total/maxNumBins;
+        List<Double> bounds = new ArrayList<>();
+        double cumulative = 0;
+        int k = 0;
+        while (k<sorted.length){
+            double value = sorted[k];
+            int count = 0;
+            while (k<sorted.length && sorted[k]==value){
+                count += 1;
+                k += 1;
+            }
+            // the single zero stands for all implicit zeros
+            if (value==0 && numZeros>0){
+                count += numZeros - 1;
+            }
+            cumulative += count;
+            if (cumulative >= target*(bounds.size()+1)){
+                bounds.add(value);
+            }
+        }
+        double max = sorted[sorted.length-1];
+        if (bounds.isEmpty() || bounds.get(bounds.size()-1) < max){
+            if (bounds.size()<maxNumBins){
+                bounds.add(max);
+            } else {
+                bounds.set(bounds.size()-1, max);
+            }
+        }
+        return bounds.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    public int getNumBins(int featureIndex){
+        return numBins[featureIndex];
+    }
+
+    /**
+     * @return bin holding zero, or -1 if the feature is never zero
+     */
+    public int getZeroBin(int featureIndex){
+        return zeroBins[featureIndex];
+    }
+
+    public double getUpperBound(int featureIndex, int bin){
+        return upperBounds[featureIndex][bin];
+    }
+
+    public double getLowerBound(int featureIndex, int bin){
+        if (bin==0){
+            return mins[featureIndex];
+        }
+        return upperBounds[featureIndex][bin-1];
+    }
+
+    /**
+     * a value inside the bin; missing values stay missing
+     */
+    public double getRepresentative(int featureIndex, int bin){
+        if (bin==numBins[featureIndex]){
+            return Double.NaN;
+        }
+        if (bin==zeroBins[featureIndex]){
+            return 0;
+        }
+        return upperBounds[featureIndex][bin];
+    }
+
+    /**
+     * merge sparse features that are rarely outside their zero bins at the same data point,
+     * so that histograms are built from a few bundle columns instead of many sparse columns
+     * @param maxConflictRate max fraction of data points at which the features of a bundle may conflict
+     * @return number of bundles
+     */
+    public int bundleFeatures(double maxConflictRate){
+        this.bundles = FeatureBundles.build(this, maxConflictRate);
+        return bundles.getNumBundles();
+    }
+
+    /**
+     * @return null unless features are bundled
+     */
+    public FeatureBundles getBundles() {
+        return bundles;
+    }
+
+    /**
+     * 1 if bin indices are stored as bytes, 2 for shorts
+     */
+    public int getBytesPerBin(){
+        return byteBins!=null?1:2;
+    }
+
+    double[] getUpperBounds(int featureIndex){
+        return upperBounds[featureIndex];
+    }
+
+    double getMin(int featureIndex){
+        return mins[featureIndex];
+    }
+
+    public boolean isSparseColumn(int featureIndex){
+        return entryRows[featureIndex]!=null;
+    }
+
+    /**
+     * number of stored entries of a column;
+     * data points not stored are in the zero bin
+     */
+    public int getNumEntries(int featureIndex){
+        if (entryRows[featureIndex]==null){
+            return numDataPoints;
+        }
+        return entryRows[featureIndex].length;
+    }
+
+    public int getEntryRow(int featureIndex, int entry){
+        if (entryRows[featureIndex]==null){
+            return entry;
+        }
+        return entryRows[featureIndex][entry];
+    }
+
+    public int getEntryBin(int featureIndex, int entry){
+        if (byteBins!=null){
+            return byteBins[featureIndex][entry] & 0xFF;
+        }
+        return shortBins[featureIndex][entry] & 0xFFFF;
+    }
+
+    public int getBin(int dataPointIndex, int featureIndex){
+        int[] rows = entryRows[featureIndex];
+        if (rows==null){
+            return getEntryBin(featureIndex, dataPointIndex);
+        }
+        int entry = Arrays.binarySearch(rows, dataPointIndex);
+        if (entry<0){
+            return zeroBins[featureIndex];
+        }
+        return getEntryBin(featureIndex, entry);
+    }
+
+    public double getValue(int dataPointIndex, int featureIndex){
+        return getRepresentative(featureIndex, getBin(dataPointIndex, featureIndex));
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        if (entryRows[featureIndex]==null){
+            DenseVector vector = new DenseVector(numDataPoints);
+            for (int i=0;i<numDataPoints;i++){
+                vector.set(i, getRepresentative(featureIndex, getEntryBin(featureIndex, i)));
+            }
+            return vector;
+        }
+        int numEntries = entryRows[featureIndex].length;
+        RandomAccessSparseVector vector = new RandomAccessSparseVector(numDataPoints, numEntries);
+        for (int k=0;k<numEntries;k++){
+            vector.set(entryRows[featureIndex][k], getRepresentative(featureIndex, getEntryBin(featureIndex, k)));
+        }
+        return vector;
+    }
+
+    /**
+     * a read-only view; values are looked up on access
+     */
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return new QuantizedRow(this, dataPointIndex);
+    }
+
+    /**
+     * the non-zero values of a row: every dense column is read,
+     * but sparse columns are only visited through the entries of this data point
+     */
+    RandomAccessSparseVector materializeRow(int dataPointIndex){
+        RowIndex index = getRowIndex();
+        int start = index.offsets[dataPointIndex];
+        int end = index.offsets[dataPointIndex+1];
+        RandomAccessSparseVector vector = new RandomAccessSparseVector(numFeatures,
+                Math.max(1, index.denseFeatures.length+end-start));
+        for (int j: index.denseFeatures){
+            double value = getRepresentative(j, getEntryBin(j, dataPointIndex));
+            if (value!=0){
+                vector.setQuick(j, value);
+            }
+        }
+        for (int k=start;k<end;k++){
+            int j = index.features[k];
+            double value = getRepresentative(j, getEntryBin(j, index.entries[k]));
+            if (value!=0){
+                vector.setQuick(j, value);
+            }
+        }
+        return vector;
+    }
+
+    private RowIndex getRowIndex(){
+        RowIndex index = rowIndex;
+        if (index==null){
+            synchronized (this){
+                index = rowIndex;
+                if (index==null){
+                    index = new RowIndex(entryRows, numDataPoints);
+                    rowIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * a transpose of the sparse columns: data point i has entries offsets[i]...offsets[i+1]-1,
+     * each a feature and the position of the entry in its column, features in increasing order
+     */
+    private static class RowIndex {
+        private int[] denseFeatures;
+        private int[] offsets;
+        private int[] features;
+        private int[] entries;
+
+        private RowIndex(int[][] entryRows, int numDataPoints) {
+            int numFeatures = entryRows.length;
+            this.denseFeatures = IntStream.range(0, numFeatures).filter(j->entryRows[j]==null).toArray();
+            this.offsets = new int[numDataPoints+1];
+            for (int[] rows: entryRows){
+                if (rows!=null){
+                    for (int i: rows){
+                        offsets[i+1] += 1;
+                    }
+                }
+            }
+            for (int i=0;i<numDataPoints;i++){
+                offsets[i+1] += offsets[i];
+            }
+            this.features = new int[offsets[numDataPoints]];
+            this.entries = new int[offsets[numDataPoints]];
+            int[] next = Arrays.copyOf(offsets, numDataPoints);
+            for (int j=0;j<numFeatures;j++){
+                int[] rows = entryRows[j];
+                if (rows==null){
+                    continue;
+                }
+                for (int k=0;k<rows.length;k++){
+                    int position = next[rows[k]];
+                    features[position] = j;
+                    entries[position] = k;
+                    next[rows[k]] = position+1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("quantized data set is read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public Density density() {
+        for (int j=0;j<numFeatures;j++){
+            if (entryRows[j]!=null){
+                return Density.SPARSE_RANDOM;
+            }
+        }
+        return Density.DENSE;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("quantized").append("\n");
+        sb.append("bytes per bin index = ").append(getBytesPerBin());
+        if (bundles!=null){
+            sb.append("\n").append("number of feature bundles = ").append(bundles.getNumBundles());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,282 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.OrderedIntDoubleMapping;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.DoubleFunction;
+
+/**
+ * a row of a quantized data set
+ * get looks up the bin of one feature directly;
+ * other read operations work on a sparse copy built on first use
+ * not thread safe!
+ */
+class QuantizedRow implements Vector {
+    private QuantizedDataSet dataSet;
+    private int dataPointIndex;
+    private RandomAccessSparseVector materialized;
+
+    QuantizedRow(QuantizedDataSet dataSet, int dataPointIndex) {
+        this.dataSet = dataSet;
+        this.dataPointIndex = dataPointIndex;
+    }
+
+    private Vector materialize(){
+        if (materialized==null){
+            materialized = dataSet.materializeRow(dataPointIndex);
+        }
+        return materialized;
+    }
+
+    @Override
+    public double get(int i) {
+        return dataSet.getValue(dataPointIndex, i);
+    }
+
+    @Override
+    public double getQuick(int i) {
+        return dataSet.getValue(dataPointIndex, i);
+    }
+
+    @Override
+    public int size() {
+        return dataSet.getNumFeatures();
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public String asFormatString() {
+        return materialize().asFormatString();
+    }
+
+    @Override
+    public boolean isSequentialAccess() {
+        return materialize().isSequentialAccess();
+    }
+
+    @Override
+    public Vector clone() {
+        return materialize().clone();
+    }
+
+    @Override
+    public Iterable<Element> all() {
+        return materialize().all();
+    }
+
+    @Override
+    public Iterable<Element> nonZeroes() {
+        return materialize().nonZeroes();
+    }
+
+    @Override
+    public Element getElement(int i) {
+        return materialize().getElement(i);
+    }
+
+    @Override
+    public Vector divide(double v) {
+        return materialize().divide(v);
+    }
+
+    @Override
+    public double dot(Vector vector) {
+        return materialize().dot(vector);
+    }
+
+    @Override
+    public Vector like() {
+        return materialize().like();
+    }
+
+    @Override
+    public Vector like(int i) {
+        return materialize().like(i);
+    }
+
+    @Override
+    public Vector minus(Vector vector) {
+        return materialize().minus(vector);
+    }
+
+    @Override
+    public Vector normalize() {
+        return materialize().normalize();
+    }
+
+    @Override
+    public Vector normalize(double v) {
+        return materialize().normalize(v);
+    }
+
+    @Override
+    public Vector logNormalize() {
+        return materialize().logNormalize();
+    }
+
+    @Override
+    public Vector logNormalize(double v) {
+        return materialize().logNormalize(v);
+    }
+
+    @Override
+    public double norm(double v) {
+        return materialize().norm(v);
+    }
+
+    @Override
+    public double minValue() {
+        return materialize().minValue();
+    }
+
+    @Override
+    public int minValueIndex() {
+        return materialize().minValueIndex();
+    }
+
+    @Override
+    public double maxValue() {
+        return materialize().maxValue();
+    }
+
+    @Override
+    public int maxValueIndex() {
+        return materialize().maxValueIndex();
+    }
+
+    @Override
+    public Vector plus(double v) {
+        return materialize().plus(v);
+    }
+
+    @Override
+    public Vector plus(Vector vector) {
+        return materialize().plus(vector);
+    }
+
+    @Override
+    public int getNumNondefaultElements() {
+        return materialize().getNumNondefaultElements();
+    }
+
+    @Override
+    public int getNumNonZeroElements() {
+        return materialize().getNumNonZeroElements();
+    }
+
+    @Override
+    public Vector times(double v) {
+        return materialize().times(v);
+    }
+
+    @Override
+    public Vector times(Vector vector) {
+        return materialize().times(vector);
+    }
+
+    @Override
+    public Vector viewPart(int i, int i1) {
+        return materialize().viewPart(i, i1);
+    }
+
+    @Override
+    public double zSum() {
+        return materialize().zSum();
+    }
+
+    @Override
+    public Matrix cross(Vector vector) {
+        return materialize().cross(vector);
+    }
+
+    @Override
+    public double aggregate(DoubleDoubleFunction doubleDoubleFunction, DoubleFunction doubleFunction) {
+        return materialize().aggregate(doubleDoubleFunction, doubleFunction);
+    }
+
+    @Override
+    public double aggregate(Vector vector, DoubleDoubleFunction doubleDoubleFunction, DoubleDoubleFunction doubleDoubleFunction1) {
+        return materialize().aggregate(vector, doubleDoubleFunction, doubleDoubleFunction1);
+    }
+
+    @Override
+    public double getLengthSquared() {
+        return materialize().getLengthSquared();
+    }
+
+    @Override
+    public double getDistanceSquared(Vector vector) {
+        return materialize().getDistanceSquared(vector);
+    }
+
+    @Override
+    public double getLookupCost() {
+        return materialize().getLookupCost();
+    }
+
+    @Override
+    public double getIteratorAdvanceCost() {
+        return materialize().getIteratorAdvanceCost();
+    }
+
+    @Override
+    public boolean isAddConstantTime() {
+        return materialize().isAddConstantTime();
+    }
+
+    @Override
+    public Vector assign(double v) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public Vector assign(double[] doubles) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public Vector assign(Vector vector) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public Vector assign(DoubleFunction doubleFunction) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public Vector assign(Vector vector, DoubleDoubleFunction doubleDoubleFunction) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public Vector assign(DoubleDoubleFunction doubleDoubleFunction, double v) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public void mergeUpdates(OrderedIntDoubleMapping orderedIntDoubleMapping) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public void set(int i, double v) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public void setQuick(int i, double v) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+
+    @Override
+    public void incrementQuick(int i, double v) {
+        throw new UnsupportedOperationException("quantized rows are read-only");
+    }
+}
@@ -1,27 +1,104 @@
 package edu.neu.ccs.pyramid.dataset;
 
+import java.util.Arrays;
+
 /**
  * Created by chengli on 2/3/15.
+ * scores are kept in one flat row major array, entry (i,k) at i*numClasses+k
  */
 public class ScoreMatrix {
+    private int numDataPoints;
+    private int numClasses;
+    // largest array size all JVMs support
+    static final int MAX_SIZE = Integer.MAX_VALUE-8;
     // num data * num classes
-    private float[][] m;
+    private float[] m;
 
 
+    /**
+     * @throws IllegalArgumentException if numDataPoints*numClasses does not fit in one array
+     */
     public ScoreMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        checkSize(numDataPoints, numClasses);
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.m = new float[numDataPoints*numClasses];
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
     }
 
     public void setScore(int dataPointIndex, int classIndex, double score){
-        this.m[dataPointIndex][classIndex] = (float)score;
+        this.m[dataPointIndex*numClasses+classIndex] = (float)score;
+    }
+
+    public float getScore(int dataPointIndex, int classIndex){
+        return this.m[dataPointIndex*numClasses+classIndex];
     }
 
+    /**
+     * @return a copy of the scores of the data point; loops over data points should use
+     * {@link #getScore(int, int)} or {@link #logSumExpForData(int)}, which do not allocate
+     */
     public float[] getScoresForData(int dataPointIndex){
-        return m[dataPointIndex];
+        int offset = dataPointIndex*numClasses;
+        return Arrays.copyOfRange(m, offset, offset+numClasses);
+    }
+
+    /**
+     * log(exp(s_0)+exp(s_1)+...) over the scores of the data point, read in place;
+     * same as {@link edu.neu.ccs.pyramid.util.MathUtil#logSumExp(float[])} on the row
+     */
+    public double logSumExpForData(int dataPointIndex){
+        int offset = dataPointIndex*numClasses;
+        double maxElement = Double.NEGATIVE_INFINITY;
+        for (int p=offset;p<offset+numClasses;p++){
+            if (m[p] > maxElement){
+                maxElement = m[p];
+            }
+        }
+        if (maxElement==Double.NEGATIVE_INFINITY){
+            return Double.NEGATIVE_INFINITY;
+        }
+        double sum = 0;
+        for (int p=offset;p<offset+numClasses;p++){
+            sum += Math.exp(m[p] - maxElement);
+        }
+        return Math.log(sum) + maxElement;
     }
 
 
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.m[dataPointIndex*numClasses+classIndex] += increment;
+    }
+
+    /**
+     * bulk update of one class for data points start, start+1, ..., start+increments.length-1;
+     * disjoint ranges can be updated in parallel
+     */
+    public void incrementForClass(int classIndex, int start, double[] increments){
+        if (start<0 || start+increments.length>numDataPoints){
+            throw new IllegalArgumentException("start<0 || start+increments.length>numDataPoints");
+        }
+        int p = start*numClasses+classIndex;
+        for (int i=0;i<increments.length;i++, p+=numClasses){
+            m[p] += increments[i];
+        }
+    }
+
+    /**
+     * the flat array is indexed by int, so numDataPoints*numClasses must fit in an array
+     */
+    static void checkSize(int numDataPoints, int numClasses){
+        long size = (long)numDataPoints*numClasses;
+        if (size>MAX_SIZE){
+            throw new IllegalArgumentException("numDataPoints*numClasses = "+size+" exceeds the maximum array size "
+                    +MAX_SIZE+"; use fewer data points or classes per matrix");
+        }
     }
 }
@@ -0,0 +1,360 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * parallel parser for TREC and LibSVM matrix files
+ * each line is "labels index:value index:value ... # comment", where labels are separated by commas
+ * and the label field may be empty.
+ * the file is cut into chunks at line boundaries; chunks are memory mapped and tokenized byte by byte in parallel,
+ * without regular expressions or intermediate strings.
+ * the parsed rows go to {@link CompressedDataSetBuilder#fromRows} in bulk
+ */
+class SparseTextParser {
+    private static final int CHUNK_SIZE = 1<<26;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int k=1;k<POWERS_OF_TEN.length;k++){
+            POWERS_OF_TEN[k] = POWERS_OF_TEN[k-1]*10;
+        }
+    }
+
+    // all lines of the file, one after another
+    int numLines;
+    // labels of line i are labels[labelOffsets[i]...labelOffsets[i+1]-1]
+    int[] labelOffsets;
+    double[] labels;
+    // entries of line i are features/values[entryOffsets[i]...entryOffsets[i+1]-1]
+    int[] entryOffsets;
+    int[] features;
+    double[] values;
+
+    /**
+     * @param indexBase the feature index written for feature 0, e.g. 1 for LibSVM
+     */
+    static SparseTextParser parse(File file, int indexBase) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()){
+            long[] boundaries = chunkBoundaries(channel);
+            int numChunks = boundaries.length-1;
+            SparseTextParser[] chunks = new SparseTextParser[numChunks];
+            IOException[] failure = new IOException[1];
+            IntStream.range(0, numChunks).parallel().forEach(c -> {
+                try {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[c],
+                            boundaries[c+1]-boundaries[c]);
+                    chunks[c] = parseChunk(buffer, indexBase, boundaries[c]);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0]!=null){
+                throw failure[0];
+            }
+            return concatenate(chunks);
+        }
+    }
+
+    /**
+     * chunks start right after a line break
+     */
+    private static long[] chunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int numChunks = (int)Math.max(1, Math.min(Integer.MAX_VALUE-1, (size + CHUNK_SIZE - 1)/CHUNK_SIZE));
+        long[] boundaries = new long[numChunks+1];
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int c=1;c<numChunks;c++){
+            long position = Math.max(boundaries[c-1], c*(size/numChunks));
+            boolean found = false;
+            while (!found && position<size){
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read<=0){
+                    break;
+                }
+                for (int k=0;k<read;k++){
+                    if (probe.get(k)=='\n'){
+                        position += k+1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found){
+                    position += read;
+                }
+            }
+            boundaries[c] = Math.min(position, size);
+        }
+        boundaries[numChunks] = size;
+        return boundaries;
+    }
+
+    private static SparseTextParser parseChunk(ByteBuffer buffer, int indexBase, long chunkStart){
+        SparseTextParser chunk = new SparseTextParser();
+        int limit = buffer.limit();
+        int estimatedLines = 16;
+        int estimatedEntries = Math.max(16, limit/8);
+        chunk.labelOffsets = new int[estimatedLines+1];
+        chunk.labels = new double[estimatedLines];
+        chunk.entryOffsets = new int[estimatedLines+1];
+        chunk.features = new int[estimatedEntries];
+        chunk.values = new double[estimatedEntries];
+        int numLabels = 0;
+        int numEntries = 0;
+        int position = 0;
+        while (position<limit){
+            int lineEnd = position;
+            while (lineEnd<limit && buffer.get(lineEnd)!='\n'){
+                lineEnd += 1;
+            }
+            // label field, from the start of the line; empty when the line starts with a space
+            int p = position;
+            int fieldEnd = tokenEnd(buffer, p, lineEnd);
+            if (p==fieldEnd || buffer.get(p)!='#'){
+                int labelStart = p;
+                for (int q=p;q<=fieldEnd;q++){
+                    if (q==fieldEnd || buffer.get(q)==','){
+                        if (q>labelStart){
+                            if (numLabels==chunk.labels.length){
+                                chunk.labels = Arrays.copyOf(chunk.labels, grow(numLabels, "labels"));
+                            }
+                            chunk.labels[numLabels] = parseDouble(buffer, labelStart, q, chunkStart);
+                            numLabels += 1;
+                        }
+                        labelStart = q+1;
+                    }
+                }
+                p = fieldEnd;
+            } else {
+                p = lineEnd;
+            }
+            // index:value pairs
+            while (true){
+                p = skipSpaces(buffer, p, lineEnd);
+                if (p>=lineEnd || buffer.get(p)=='#'){
+                    break;
+                }
+                int pairEnd = tokenEnd(buffer, p, lineEnd);
+                int colon = p;
+                while (colon<pairEnd && buffer.get(colon)!=':'){
+                    colon += 1;
+                }
+                if (colon==pairEnd){
+                    throw new NumberFormatException("missing ':' at byte "+(chunkStart+p));
+                }
+                if (numEntries==chunk.features.length){
+                    int capacity = grow(numEntries, "entries");
+                    chunk.features = Arrays.copyOf(chunk.features, capacity);
+                    chunk.values = Arrays.copyOf(chunk.values, capacity);
+                }
+                chunk.features[numEntries] = parseInt(buffer, p, colon, chunkStart) - indexBase;
+                chunk.values[numEntries] = parseDouble(buffer, colon+1, pairEnd, chunkStart);
+                numEntries += 1;
+                p = pairEnd;
+            }
+            int numLines = chunk.numLines;
+            if (numLines+1==chunk.labelOffsets.length){
+                int capacity = grow(numLines+1, "lines");
+                chunk.labelOffsets = Arrays.copyOf(chunk.labelOffsets, capacity);
+                chunk.entryOffsets = Arrays.copyOf(chunk.entryOffsets, capacity);
+            }
+            chunk.labelOffsets[numLines+1] = numLabels;
+            chunk.entryOffsets[numLines+1] = numEntries;
+            chunk.numLines += 1;
+            position = lineEnd+1;
+        }
+        return chunk;
+    }
+
+    /**
+     * twice the length, capped at the largest array {@link CompressedDataSet} can index
+     */
+    private static int grow(int length, String what){
+        if (length>=CompressedDataSet.MAX_NUM_ENTRIES){
+            throw tooLarge(length+1L, what);
+        }
+        return (int)Math.min(2L*length, CompressedDataSet.MAX_NUM_ENTRIES);
+    }
+
+    private static IllegalArgumentException tooLarge(long count, String what){
+        return new IllegalArgumentException("the file has at least "+count+" "+what
+                +", but a CompressedDataSet is indexed by int offsets and holds at most "
+                +CompressedDataSet.MAX_NUM_ENTRIES+"; split the file");
+    }
+
+    private static SparseTextParser concatenate(SparseTextParser[] chunks){
+        SparseTextParser all = new SparseTextParser();
+        // summed in longs, checked before any int array is sized
+        long numLines = 0;
+        long numLabels = 0;
+        long numEntries = 0;
+        for (SparseTextParser chunk: chunks){
+            numLines += chunk.numLines;
+            numLabels += chunk.labelOffsets[chunk.numLines];
+            numEntries += chunk.entryOffsets[chunk.numLines];
+        }
+        if (numLines+1>CompressedDataSet.MAX_NUM_ENTRIES){
+            throw tooLarge(numLines, "lines");
+        }
+        if (numLabels>CompressedDataSet.MAX_NUM_ENTRIES){
+            throw tooLarge(numLabels, "labels");
+        }
+        if (numEntries>CompressedDataSet.MAX_NUM_ENTRIES){
+            throw tooLarge(numEntries, "entries");
+        }
+        all.numLines = (int) numLines;
+        all.labelOffsets = new int[all.numLines+1];
+        all.entryOffsets = new int[all.numLines+1];
+        all.labels = new double[(int) numLabels];
+        all.features = new int[(int) numEntries];
+        all.values = new double[(int) numEntries];
+        int line = 0;
+        int labelBase = 0;
+        int entryBase = 0;
+        for (int c=0;c<chunks.length;c++){
+            SparseTextParser chunk = chunks[c];
+            for (int i=1;i<=chunk.numLines;i++){
+                all.labelOffsets[line+i] = labelBase + chunk.labelOffsets[i];
+                all.entryOffsets[line+i] = entryBase + chunk.entryOffsets[i];
+            }
+            int chunkLabels = chunk.labelOffsets[chunk.numLines];
+            int chunkEntries = chunk.entryOffsets[chunk.numLines];
+            System.arraycopy(chunk.labels, 0, all.labels, labelBase, chunkLabels);
+            System.arraycopy(chunk.features, 0, all.features, entryBase, chunkEntries);
+            System.arraycopy(chunk.values, 0, all.values, entryBase, chunkEntries);
+            line += chunk.numLines;
+            labelBase += chunkLabels;
+            entryBase += chunkEntries;
+            // release the chunk as soon as it is copied
+            chunks[c] = null;
+        }
+        return all;
+    }
+
+    CompressedDataSet toDataSet(int numDataPoints, int numFeatures, boolean missingValue){
+        if (numLines!=numDataPoints){
+            throw new IllegalArgumentException("the file has "+numLines+" lines, but numDataPoints = "+numDataPoints);
+        }
+        return CompressedDataSetBuilder.fromRows(numDataPoints, numFeatures, missingValue,
+                entryOffsets, features, values);
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int from, int end){
+        int p = from;
+        while (p<end && isSpace(buffer.get(p))){
+            p += 1;
+        }
+        return p;
+    }
+
+    private static int tokenEnd(ByteBuffer buffer, int from, int end){
+        int p = from;
+        while (p<end && !isSpace(buffer.get(p))){
+            p += 1;
+        }
+        return p;
+    }
+
+    private static boolean isSpace(byte b){
+        return b==' ' || b=='\t' || b=='\r';
+    }
+
+    static int parseInt(ByteBuffer buffer, int start, int end, long chunkStart){
+        boolean negative = false;
+        int p = start;
+        if (p<end && (buffer.get(p)=='-' || buffer.get(p)=='+')){
+            negative = buffer.get(p)=='-';
+            p += 1;
+        }
+        if (p==end){
+            throw new NumberFormatException("empty integer at byte "+(chunkStart+start));
+        }
+        long value = 0;
+        for (;p<end;p++){
+            int digit = buffer.get(p)-'0';
+            if (digit<0 || digit>9){
+                throw new NumberFormatException("illegal integer at byte "+(chunkStart+start));
+            }
+            value = value*10 + digit;
+            if (value>Integer.MAX_VALUE){
+                throw new NumberFormatException("integer overflow at byte "+(chunkStart+start));
+            }
+        }
+        return (int)(negative ? -value : value);
+    }
+
+    /**
+     * exact for decimals with at most 15 significant digits and a small exponent, which covers nearly all data;
+     * anything else is handed to Double.parseDouble, so results always equal Double.parseDouble
+     */
+    static double parseDouble(ByteBuffer buffer, int start, int end, long chunkStart){
+        int p = start;
+        boolean negative = false;
+        if (p<end && (buffer.get(p)=='-' || buffer.get(p)=='+')){
+            negative = buffer.get(p)=='-';
+            p += 1;
+        }
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean fast = true;
+        for (;p<end;p++){
+            byte b = buffer.get(p);
+            if (b>='0' && b<='9'){
+                seenDigit = true;
+                if (mantissa!=0 || b!='0'){
+                    numDigits += 1;
+                }
+                if (numDigits>15){
+                    fast = false;
+                    break;
+                }
+                mantissa = mantissa*10 + (b-'0');
+                if (seenPoint){
+                    exponent -= 1;
+                }
+            } else if (b=='.' && !seenPoint){
+                seenPoint = true;
+            } else if ((b=='e' || b=='E') && seenDigit){
+                int exponentValue;
+                try {
+                    exponentValue = parseInt(buffer, p+1, end, chunkStart);
+                } catch (NumberFormatException e){
+                    fast = false;
+                    break;
+                }
+                exponent += exponentValue;
+                p = end;
+                break;
+            } else {
+                fast = false;
+                break;
+            }
+        }
+        if (fast && seenDigit && exponent>=-22 && exponent<=22){
+            double value = mantissa;
+            if (exponent>=0){
+                value *= POWERS_OF_TEN[exponent];
+            } else {
+                value /= POWERS_OF_TEN[-exponent];
+            }
+            return negative ? -value : value;
+        }
+        byte[] bytes = new byte[end-start];
+        for (int k=start;k<end;k++){
+            bytes[k-start] = buffer.get(k);
+        }
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
@@ -114,10 +114,15 @@ public class TRECFormat {
         return loadMultiLabelClfDataSetAutoSparseSequential(new File(trecFile));
     }
 
+    /**
+     * {@link DataSetType#CLF_COMPRESSED} parses the matrix file in parallel into a {@link CompressedDataSet},
+     * which is indexed by int offsets: the file may hold at most {@link CompressedDataSet#MAX_NUM_ENTRIES}
+     * lines and as many index:value entries, otherwise an IllegalArgumentException is thrown
+     */
     public static ClfDataSet loadClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.CLF_DENSE)
-                ||(dataSetType==DataSetType.CLF_SPARSE));
+                ||(dataSetType==DataSetType.CLF_SPARSE)||(dataSetType==DataSetType.CLF_COMPRESSED));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
@@ -132,7 +137,15 @@ public class TRECFormat {
         if (dataSetType==DataSetType.CLF_SPARSE){
             dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
         }
-        fillClfDataSet(dataSet,trecFile);
+        if (dataSetType==DataSetType.CLF_COMPRESSED){
+            SparseTextParser parser = parseMatrixFile(trecFile,true);
+            dataSet = new CompressedClfDataSet(parser.toDataSet(numDataPoints,numFeatures,missingValue),numClasses);
+            for (int i=0;i<numDataPoints;i++){
+                dataSet.setLabel(i,(int)parser.labels[parser.labelOffsets[i]]);
+            }
+        } else {
+            fillClfDataSet(dataSet,trecFile);
+        }
         if (loadSettings){
             loadFeatureList(dataSet,trecFile);
             loadIdTranslator(dataSet,trecFile);
@@ -142,10 +155,14 @@ public class TRECFormat {
         return dataSet;
     }
 
+    /**
+     * {@link DataSetType#ML_CLF_COMPRESSED} has the size limit of {@link #loadClfDataSet(File, DataSetType, boolean)}
+     */
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.ML_CLF_DENSE)
-                ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE));
+                ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE)
+                ||(dataSetType==DataSetType.ML_CLF_COMPRESSED));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
@@ -163,7 +180,17 @@ public class TRECFormat {
         if (dataSetType==DataSetType.ML_CLF_SEQ_SPARSE) {
             dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
         }
-        fillMultiLabelClfDataSet(dataSet,trecFile);
+        if (dataSetType==DataSetType.ML_CLF_COMPRESSED){
+            SparseTextParser parser = parseMatrixFile(trecFile,false);
+            dataSet = new CompressedMLClfDataSet(parser.toDataSet(numDataPoints,numFeatures,missingValue),numClasses);
+            for (int i=0;i<numDataPoints;i++){
+                for (int k=parser.labelOffsets[i];k<parser.labelOffsets[i+1];k++){
+                    dataSet.addLabel(i,(int)parser.labels[k]);
+                }
+            }
+        } else {
+            fillMultiLabelClfDataSet(dataSet,trecFile);
+        }
         if (loadSettings){
             loadFeatureList(dataSet, trecFile);
             loadIdTranslator(dataSet, trecFile);
@@ -192,10 +219,13 @@ public class TRECFormat {
         }
     }
 
+    /**
+     * {@link DataSetType#REG_COMPRESSED} has the size limit of {@link #loadClfDataSet(File, DataSetType, boolean)}
+     */
     public static RegDataSet loadRegDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.REG_DENSE)
-                ||(dataSetType==DataSetType.REG_SPARSE));
+                ||(dataSetType==DataSetType.REG_SPARSE)||(dataSetType==DataSetType.REG_COMPRESSED));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
@@ -209,7 +239,15 @@ public class TRECFormat {
         if (dataSetType==DataSetType.REG_SPARSE){
             dataSet = new SparseRegDataSet(numDataPoints,numFeatures,missingValue);
         }
-        fillRegDataSet(dataSet, trecFile);
+        if (dataSetType==DataSetType.REG_COMPRESSED){
+            SparseTextParser parser = parseMatrixFile(trecFile,true);
+            dataSet = new CompressedRegDataSet(parser.toDataSet(numDataPoints,numFeatures,missingValue));
+            for (int i=0;i<numDataPoints;i++){
+                dataSet.setLabel(i,parser.labels[parser.labelOffsets[i]]);
+            }
+        } else {
+            fillRegDataSet(dataSet, trecFile);
+        }
         if (loadSettings){
             loadFeatureList(dataSet, trecFile);
             loadIdTranslator(dataSet, trecFile);
@@ -405,6 +443,20 @@ public class TRECFormat {
     }
 
 
+    /**
+     * parallel byte level parsing of the whole matrix file, used by compressed data sets
+     */
+    private static SparseTextParser parseMatrixFile(File trecFile, boolean singleLabel) throws IOException {
+        File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
+        SparseTextParser parser = SparseTextParser.parse(matrixFile, 0);
+        for (int i=0;i<parser.numLines && singleLabel;i++){
+            if (parser.labelOffsets[i+1]==parser.labelOffsets[i]){
+                throw new IllegalArgumentException("no label in line "+i+" of "+matrixFile);
+            }
+        }
+        return parser;
+    }
+
     private static void fillRegDataSet(RegDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
         try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
@@ -96,12 +96,7 @@ public class AveragePrecision {
      * @return
      */
     public static double averagePrecision(int[] binaryLabels, double[] scores){
-        int[] sortedIndices = ArgSort.argSortDescending(scores);
-        int[] relevance = new int[binaryLabels.length];
-        for (int i=0;i<relevance.length;i++){
-            relevance[i] = binaryLabels[sortedIndices[i]];
-        }
-        return averagePrecision(relevance);
+        return RankingMeasures.averagePrecision(scores, binaryLabels);
     }
 
     /**
@@ -21,31 +21,14 @@ public class MAP {
      * @return
      */
     public static double map(MultiLabelClassifier.ClassProbEstimator classifier, MultiLabelClfDataSet dataSet, List<Integer> labels){
-        int numData = dataSet.getNumDataPoints();
         double[][] probs = new double[dataSet.getNumDataPoints()][classifier.getNumClasses()];
 
         IntStream.range(0, dataSet.getNumDataPoints()).parallel()
                 .forEach(i->probs[i] = classifier.predictClassProbs(dataSet.getRow(i)));
 
-        double sum = 0;
-
-        for (int l: labels){
-            int[] binaryLabels = new int[numData];
-            double[] marginals = new double[numData];
-            for (int i=0;i<numData;i++){
-                if (dataSet.getMultiLabels()[i].matchClass(l)){
-                    binaryLabels[i] = 1;
-                }
-                // leave the marginal 0 if l is a novel label in test set
-                if (l<classifier.getNumClasses()){
-                    marginals[i] = probs[i][l];
-                }
-            }
-
-            double averagePrecision = AveragePrecision.averagePrecision(binaryLabels, marginals);
-//            System.out.println("AP for label "+l+"="+averagePrecision);
-            sum += averagePrecision;
-        }
+        // the marginal is 0 if l is a novel label in test set
+        double sum = labels.parallelStream().mapToDouble(l ->
+                RankingMeasures.labelAveragePrecision(probs, dataSet.getMultiLabels(), l, null)).sum();
         return sum/labels.size();
     }
 
@@ -65,26 +48,13 @@ public class MAP {
         if (classifier.getNumClasses()!=dataSet.getNumClasses()){
             throw new IllegalArgumentException("classifier.getNumClasses()!=dataSet.getNumClasses()");
         }
-        int numData = dataSet.getNumDataPoints();
         double[][] probs = new double[dataSet.getNumDataPoints()][dataSet.getNumClasses()];
 
         IntStream.range(0, dataSet.getNumDataPoints()).parallel()
                 .forEach(i->probs[i] = classifier.predictClassProbs(dataSet.getRow(i)));
-        double[] ap = new double[classifier.getNumClasses()];
-
-        for (int l=0;l<classifier.getNumClasses();l++){
-            int[] binaryLabels = new int[numData];
-            double[] marginals = new double[numData];
-            for (int i=0;i<numData;i++){
-                if (dataSet.getMultiLabels()[i].matchClass(l)){
-                    binaryLabels[i] = 1;
-                }
-                marginals[i] = probs[i][l];
-            }
-
-            ap[l] = AveragePrecision.averagePrecision(binaryLabels, marginals);
-        }
-        return ap;
+        // labels are evaluated in parallel
+        return RankingMeasures.labelMeasures(probs, dataSet.getMultiLabels(), classifier.getNumClasses(), null)
+                .getAveragePrecisions();
     }
 
 
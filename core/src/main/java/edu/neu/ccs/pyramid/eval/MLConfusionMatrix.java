@@ -2,63 +2,52 @@ package edu.neu.ccs.pyramid.eval;
 
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
-import org.apache.mahout.math.Vector;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.stream.IntStream;
 
 /**
  * multi-label confusion matrix
- * use sparse matrix to avoid storing TN explicitly
- * convention: 0=TN, 1=TP, 2=FN, 3=FP
+ * only the counts needed by {@link InstanceAverage}, {@link MacroAverage} and {@link MicroAverage} are kept:
+ * TP, FP and FN per label, and sums of instance measures over data points; TN are implied.
+ * (truth, prediction) pairs can be added one at a time, and matrices built on shards of a data set can be merged,
+ * so memory does not grow with the number of data points.
  * Created by chengli on 3/2/16.
  */
 public class MLConfusionMatrix implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private int numClasses;
     private int numDataPoints;
-    //[numData][numClasses]
-    private DataSet entries;
+    // per label counts
+    private int[] labelTP;
+    private int[] labelFP;
+    private int[] labelFN;
+    // sums over data points of instance measures
+    private double instancePrecisionSum;
+    private double instanceRecallSum;
+    private double instanceF1Sum;
+    private double instanceOverlapSum;
+    private double instanceHammingLossSum;
+    // data points predicted completely correctly
+    private int numCorrect;
 
-    public int getNumClasses() {
-        return numClasses;
-    }
-
-    public DataSet getEntries() {
-        return entries;
-    }
-
-    public int getNumDataPoints() {
-        return numDataPoints;
+    /**
+     * an empty matrix to add data points to
+     */
+    public MLConfusionMatrix(int numClasses) {
+        this.numClasses = numClasses;
+        this.labelTP = new int[numClasses];
+        this.labelFP = new int[numClasses];
+        this.labelFN = new int[numClasses];
     }
 
     public MLConfusionMatrix(int numClasses, MultiLabel[] trueLabels, MultiLabel[] predictions) {
-        this.numClasses = numClasses;
-        this.numDataPoints = trueLabels.length;
-        int numData = trueLabels.length;
-        this.entries = DataSetBuilder.getBuilder().numDataPoints(numDataPoints)
-                .numFeatures(numClasses).density(Density.SPARSE_RANDOM).build();
-        IntStream.range(0,numData).forEach(i->{
-            MultiLabel label = trueLabels[i];
-            MultiLabel prediction = predictions[i];
-            Vector labelVector = label.toVector(numClasses);
-            Vector predVector = prediction.toVector(numClasses);
-            //todo speed up this by looking at non-zeros
-            for (int l=0;l<numClasses;l++){
-                double labelMatch = labelVector.get(l);
-                double prediMatch = predVector.get(l);
-                if (labelMatch==1&&prediMatch==1){
-                    entries.setFeatureValue(i,l,1);
-                } else if (labelMatch==1&&prediMatch==0){
-                    entries.setFeatureValue(i,l,2);
-                } else if (labelMatch==0&&prediMatch==0){
-                    // do nothing
-                } else {
-                    entries.setFeatureValue(i,l,3);
-                }
-            }
-        });
+        this(numClasses);
+        MLConfusionMatrix sum = IntStream.range(0, trueLabels.length).parallel()
+                .collect(() -> new MLConfusionMatrix(numClasses),
+                        (matrix, i) -> matrix.add(trueLabels[i], predictions[i]),
+                        MLConfusionMatrix::merge);
+        merge(sum);
     }
 
     /**
@@ -74,5 +63,112 @@ public class MLConfusionMatrix implements Serializable {
         this(dataSet.getNumClasses(),dataSet.getMultiLabels(),predictions);
     }
 
+    /**
+     * add one data point; only visits labels in the truth or the prediction
+     * not thread safe
+     */
+    public void add(MultiLabel trueLabel, MultiLabel prediction){
+        int tp = 0;
+        int fn = 0;
+        int fp = 0;
+        for (int l = trueLabel.nextLabel(0); l >= 0; l = trueLabel.nextLabel(l+1)){
+            if (prediction.matchClass(l)){
+                labelTP[l] += 1;
+                tp += 1;
+            } else {
+                labelFN[l] += 1;
+                fn += 1;
+            }
+        }
+        for (int l = prediction.nextLabel(0); l >= 0; l = prediction.nextLabel(l+1)){
+            if (!trueLabel.matchClass(l)){
+                labelFP[l] += 1;
+                fp += 1;
+            }
+        }
+        int tn = numClasses - tp - fn - fp;
+        double tpRate = ((double) tp)/numClasses;
+        double tnRate = ((double) tn)/numClasses;
+        double fpRate = ((double) fp)/numClasses;
+        double fnRate = ((double) fn)/numClasses;
+        instancePrecisionSum += Precision.precision(tpRate,fpRate);
+        instanceRecallSum += Recall.recall(tpRate,fnRate);
+        instanceF1Sum += FMeasure.f1(tpRate,fpRate,fnRate);
+        instanceOverlapSum += Overlap.overlap(tpRate,fpRate,fnRate);
+        instanceHammingLossSum += HammingLoss.hammingLoss(tpRate,tnRate,fpRate,fnRate);
+        if (fp==0 && fn==0){
+            numCorrect += 1;
+        }
+        numDataPoints += 1;
+    }
+
+    /**
+     * add the data points of another matrix with the same classes
+     */
+    public MLConfusionMatrix merge(MLConfusionMatrix other){
+        if (other.numClasses!=numClasses){
+            throw new IllegalArgumentException("numClasses = "+numClasses+", other numClasses = "+other.numClasses);
+        }
+        for (int l=0;l<numClasses;l++){
+            labelTP[l] += other.labelTP[l];
+            labelFP[l] += other.labelFP[l];
+            labelFN[l] += other.labelFN[l];
+        }
+        instancePrecisionSum += other.instancePrecisionSum;
+        instanceRecallSum += other.instanceRecallSum;
+        instanceF1Sum += other.instanceF1Sum;
+        instanceOverlapSum += other.instanceOverlapSum;
+        instanceHammingLossSum += other.instanceHammingLossSum;
+        numCorrect += other.numCorrect;
+        numDataPoints += other.numDataPoints;
+        return this;
+    }
 
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getTP(int classIndex){
+        return labelTP[classIndex];
+    }
+
+    public int getFP(int classIndex){
+        return labelFP[classIndex];
+    }
+
+    public int getFN(int classIndex){
+        return labelFN[classIndex];
+    }
+
+    public int getTN(int classIndex){
+        return numDataPoints - labelTP[classIndex] - labelFP[classIndex] - labelFN[classIndex];
+    }
+
+    double getInstancePrecisionSum() {
+        return instancePrecisionSum;
+    }
+
+    double getInstanceRecallSum() {
+        return instanceRecallSum;
+    }
+
+    double getInstanceF1Sum() {
+        return instanceF1Sum;
+    }
+
+    double getInstanceOverlapSum() {
+        return instanceOverlapSum;
+    }
+
+    double getInstanceHammingLossSum() {
+        return instanceHammingLossSum;
+    }
+
+    int getNumCorrect() {
+        return numCorrect;
+    }
 }
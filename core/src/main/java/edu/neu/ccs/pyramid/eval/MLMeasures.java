@@ -32,6 +32,16 @@ public class MLMeasures implements Serializable {
         this.microAverage = new MicroAverage(mlConfusionMatrix);
     }
 
+    /**
+     * measures of a matrix filled incrementally or merged from shards
+     */
+    public MLMeasures(MLConfusionMatrix mlConfusionMatrix){
+        this.mlConfusionMatrix = mlConfusionMatrix;
+        this.instanceAverage = new InstanceAverage(mlConfusionMatrix);
+        this.macroAverage = new MacroAverage(mlConfusionMatrix);
+        this.microAverage = new MicroAverage(mlConfusionMatrix);
+    }
+
     public MLMeasures(MultiLabelClassifier classifier, MultiLabelClfDataSet dataSet){
         this.mlConfusionMatrix = new MLConfusionMatrix(classifier,dataSet);
         this.instanceAverage = new InstanceAverage(mlConfusionMatrix);
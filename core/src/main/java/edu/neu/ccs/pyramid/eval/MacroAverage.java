@@ -5,13 +5,11 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import edu.neu.ccs.pyramid.util.PrintUtil;
-import org.apache.mahout.math.Vector;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -21,7 +19,6 @@ import java.util.stream.IntStream;
  * Based on
  * Koyejo, Oluwasanmi O., et al. "Consistent Multilabel Classification."
  * Advances in Neural Information Processing Systems. 2015.
- * convention: 0=TN, 1=TP, 2=FN, 3=FP
  * Created by chengli on 3/24/16.
  */
 @JsonSerialize(using = MacroAverage.Serializer.class)
@@ -55,7 +52,6 @@ public class MacroAverage implements Serializable {
     public MacroAverage(MLConfusionMatrix confusionMatrix) {
         this.numClasses = confusionMatrix.getNumClasses();
         int numDataPoints = confusionMatrix.getNumDataPoints();
-        DataSet entries = confusionMatrix.getEntries();
         this.labelWiseTP = new int[numClasses];
         this.labelWiseTN = new int[numClasses];
         this.labelWiseFP = new int[numClasses];
@@ -71,18 +67,10 @@ public class MacroAverage implements Serializable {
 
 
         IntStream.range(0,numClasses).parallel().forEach(l->{
-            Vector vector = entries.getColumn(l);
-            for (Vector.Element element: vector.nonZeroes()){
-                double v = element.get();
-                if (v==1){
-                    labelWiseTP[l] += 1;
-                } else if (v==2){
-                    labelWiseFN[l] += 1;
-                } else if (v==3){
-                    labelWiseFP[l] += 1;
-                }
-            }
-            labelWiseTN[l] = numDataPoints - vector.getNumNonZeroElements();
+            labelWiseTP[l] = confusionMatrix.getTP(l);
+            labelWiseFN[l] = confusionMatrix.getFN(l);
+            labelWiseFP[l] = confusionMatrix.getFP(l);
+            labelWiseTN[l] = confusionMatrix.getTN(l);
 
             double tp = ((double) labelWiseTP[l])/numDataPoints;
             double tn = ((double) labelWiseTN[l])/numDataPoints;
@@ -1,15 +1,11 @@
 package edu.neu.ccs.pyramid.eval;
 
-import edu.neu.ccs.pyramid.dataset.DataSet;
-import org.apache.mahout.math.Vector;
-
 import java.io.Serializable;
 
 /**
  * Based on
  * Koyejo, Oluwasanmi O., et al. "Consistent Multilabel Classification."
  * Advances in Neural Information Processing Systems. 2015.
- * convention: 0=TN, 1=TP, 2=FN, 3=FP
  * Created by chengli on 3/2/16.
  */
 public class MicroAverage implements Serializable {
@@ -28,21 +24,13 @@ public class MicroAverage implements Serializable {
         double tn = 0;
         double fp = 0;
         double fn = 0;
-        DataSet entries = confusionMatrix.getEntries();
-        for (int i=0;i<numDataPoints;i++){
-            for (Vector.Element element: entries.getRow(i).nonZeroes()){
-                double v = element.get();
-                if (v==1){
-                    tp += 1;
-                } else if (v==2){
-                    fn += 1;
-                } else if (v==3){
-                    fp += 1;
-                }
-            }
+        for (int l=0;l<numClasses;l++){
+            tp += confusionMatrix.getTP(l);
+            fp += confusionMatrix.getFP(l);
+            fn += confusionMatrix.getFN(l);
         }
 
-        tn = numDataPoints*numClasses-tp-fp-fn;
+        tn = ((double) numDataPoints)*numClasses-tp-fp-fn;
 
         precision = Precision.precision(tp,fp);
         recall = Recall.recall(tp,fn);
@@ -4,7 +4,6 @@ import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.util.ArgSort;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.math3.util.FastMath;
 
 import java.util.Arrays;
@@ -73,13 +72,13 @@ public class NDCG {
 
     public static double instanceNDCG(MultiLabelClassifier.ClassProbEstimator classifier, MultiLabelClfDataSet dataSet){
         return IntStream.range(0, dataSet.getNumDataPoints()).parallel().mapToDouble(i->{
-            double[] binaryLabels = new double[classifier.getNumClasses()];
+            boolean[] relevant = new boolean[classifier.getNumClasses()];
             MultiLabel multiLabel = dataSet.getMultiLabels()[i];
-            for (int l:multiLabel.getMatchedLabels()) {
-                binaryLabels[l] = 1;
+            for (int l = multiLabel.nextLabel(0); l >= 0; l = multiLabel.nextLabel(l+1)) {
+                relevant[l] = true;
             }
             double[] probs = classifier.predictClassProbs(dataSet.getRow(i));
-            return ndcg(binaryLabels, probs);
+            return RankingMeasures.binaryNDCG(relevant, probs);
         }).average().getAsDouble();
     }
 
@@ -94,8 +93,12 @@ public class NDCG {
         //should not sort the original one
         double[] sortedGrades = Arrays.copyOf(gradesInRankedList, gradesInRankedList.length);
         Arrays.sort(sortedGrades);
-        ArrayUtils.reverse(sortedGrades);
-        return dcg(sortedGrades,truncation);
+        double sum = 0;
+        // best grades first
+        for (int i=0;i<truncation;i++){
+            sum += gain(sortedGrades[sortedGrades.length-1-i], i);
+        }
+        return sum;
     }
 
     /**
@@ -106,12 +109,21 @@ public class NDCG {
      * @return
      */
     private static double dcg(double[] gradesInRankedList, int truncation){
-        return IntStream.range(0, truncation).parallel()
-                .mapToDouble(i-> {
-                    double nominator = FastMath.pow(2, gradesInRankedList[i])-1;
-                    //rank starts at 1
-                    double denominator = FastMath.log(2,i + 2);
-                    return nominator/denominator;
-                }).sum();
+        // lists are short and callers are already parallel over lists
+        double sum = 0;
+        for (int i=0;i<truncation;i++){
+            sum += gain(gradesInRankedList[i], i);
+        }
+        return sum;
+    }
+
+    /**
+     * @param position starts at 0
+     */
+    private static double gain(double grade, int position){
+        double nominator = FastMath.pow(2, grade)-1;
+        //rank starts at 1
+        double denominator = FastMath.log(2,position + 2);
+        return nominator/denominator;
     }
 }
@@ -0,0 +1,206 @@
+package edu.neu.ccs.pyramid.eval;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.util.ArgSort;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * AUC, average precision and NDCG on primitive arrays
+ * a list is argsorted once by descending score, without boxing, and AUC and average precision are read off
+ * the same pass over the sorted list.
+ * AUC treats data points with equal scores as one threshold, as {@link AUC} does;
+ * average precision breaks ties by data point order, as {@link AveragePrecision} does.
+ * weighted variants count each data point by its weight.
+ */
+public class RankingMeasures {
+
+    public static double auc(double[] scores, int[] labels){
+        return auc(scores, labels, null);
+    }
+
+    /**
+     * @param labels 1 for positive, 0 for negative
+     * @param weights null for unit weights
+     * @return 1 if there are only positives or only negatives
+     */
+    public static double auc(double[] scores, int[] labels, double[] weights){
+        int[] sorted = ArgSort.argSortDescending(scores);
+        return auc(sorted, scores, labels, weights);
+    }
+
+    public static double averagePrecision(double[] scores, int[] labels){
+        return averagePrecision(scores, labels, null);
+    }
+
+    /**
+     * @param labels 1 for relevant, 0 for irrelevant
+     * @param weights null for unit weights
+     * @return 1 if there is nothing relevant
+     */
+    public static double averagePrecision(double[] scores, int[] labels, double[] weights){
+        int[] sorted = ArgSort.argSortDescending(scores);
+        return averagePrecision(sorted, labels, weights);
+    }
+
+    /**
+     * @param sorted data point indices by descending score
+     */
+    static double auc(int[] sorted, double[] scores, int[] labels, double[] weights){
+        double positive = 0;
+        double negative = 0;
+        double area = 0;
+        // rates at the end of the previous tie group, unnormalized
+        double previousPositive = 0;
+        double previousNegative = 0;
+        for (int r=0;r<sorted.length;r++){
+            int i = sorted[r];
+            double weight = weights==null ? 1 : weights[i];
+            if (labels[i]==1){
+                positive += weight;
+            } else {
+                negative += weight;
+            }
+            boolean groupEnd = r==sorted.length-1 || scores[sorted[r+1]]!=scores[i];
+            if (groupEnd){
+                area += (negative - previousNegative)*(positive + previousPositive);
+                previousPositive = positive;
+                previousNegative = negative;
+            }
+        }
+        if (positive==0 || negative==0){
+            return 1;
+        }
+        return area/(2*positive*negative);
+    }
+
+    /**
+     * @param sorted data point indices by descending score
+     */
+    static double averagePrecision(int[] sorted, int[] labels, double[] weights){
+        double relevantSoFar = 0;
+        double retrievedSoFar = 0;
+        double sumPrecision = 0;
+        for (int r=0;r<sorted.length;r++){
+            int i = sorted[r];
+            double weight = weights==null ? 1 : weights[i];
+            retrievedSoFar += weight;
+            if (labels[i]==1){
+                relevantSoFar += weight;
+                sumPrecision += weight*relevantSoFar/retrievedSoFar;
+            }
+        }
+        return SafeDivide.divide(sumPrecision, relevantSoFar, 1);
+    }
+
+    /**
+     * NDCG of binary relevance; the ideal DCG only needs the number of relevant items
+     * @param relevant relevance of each item, original order
+     * @param scores original order
+     */
+    public static double binaryNDCG(boolean[] relevant, double[] scores){
+        int[] sorted = ArgSort.argSortDescending(scores);
+        double dcg = 0;
+        int numRelevant = 0;
+        for (int r=0;r<sorted.length;r++){
+            if (relevant[sorted[r]]){
+                dcg += 1/log2(r+2);
+                numRelevant += 1;
+            }
+        }
+        double idcg = 0;
+        for (int r=0;r<numRelevant;r++){
+            idcg += 1/log2(r+2);
+        }
+        return dcg/idcg;
+    }
+
+    private static double log2(double x){
+        return Math.log(x)/Math.log(2);
+    }
+
+    /**
+     * AUC and average precision of every label, for a score matrix [numData][numClasses]
+     * labels are evaluated in parallel on the common fork/join pool; each label sorts its column once.
+     * labels beyond the score matrix get score 0
+     * @param weights null for unit weights
+     */
+    public static LabelResults labelMeasures(double[][] scores, MultiLabel[] truth, int numClasses, double[] weights){
+        int numData = truth.length;
+        double[] aucs = new double[numClasses];
+        double[] averagePrecisions = new double[numClasses];
+        IntStream.range(0, numClasses).parallel().forEach(l -> {
+            double[] column = new double[numData];
+            int[] labels = new int[numData];
+            for (int i=0;i<numData;i++){
+                if (l<scores[i].length){
+                    column[i] = scores[i][l];
+                }
+                if (truth[i].matchClass(l)){
+                    labels[i] = 1;
+                }
+            }
+            int[] sorted = ArgSort.argSortDescending(column);
+            aucs[l] = auc(sorted, column, labels, weights);
+            averagePrecisions[l] = averagePrecision(sorted, labels, weights);
+        });
+        return new LabelResults(aucs, averagePrecisions);
+    }
+
+    /**
+     * average precision of one label, for a score matrix [numData][numClasses]
+     * @param weights null for unit weights
+     */
+    public static double labelAveragePrecision(double[][] scores, MultiLabel[] truth, int classIndex, double[] weights){
+        int numData = truth.length;
+        double[] column = new double[numData];
+        int[] labels = new int[numData];
+        for (int i=0;i<numData;i++){
+            if (classIndex<scores[i].length){
+                column[i] = scores[i][classIndex];
+            }
+            if (truth[i].matchClass(classIndex)){
+                labels[i] = 1;
+            }
+        }
+        return averagePrecision(column, labels, weights);
+    }
+
+    public static class LabelResults {
+        private double[] aucs;
+        private double[] averagePrecisions;
+
+        LabelResults(double[] aucs, double[] averagePrecisions) {
+            this.aucs = aucs;
+            this.averagePrecisions = averagePrecisions;
+        }
+
+        public double getAUC(int classIndex){
+            return aucs[classIndex];
+        }
+
+        public double getAveragePrecision(int classIndex){
+            return averagePrecisions[classIndex];
+        }
+
+        public double[] getAUCs() {
+            return aucs;
+        }
+
+        public double[] getAveragePrecisions() {
+            return averagePrecisions;
+        }
+
+        public double getMeanAUC(){
+            return Arrays.stream(aucs).average().orElse(Double.NaN);
+        }
+
+        /**
+         * label MAP
+         */
+        public double getMeanAveragePrecision(){
+            return Arrays.stream(averagePrecisions).average().orElse(Double.NaN);
+        }
+    }
+}
@@ -96,9 +96,8 @@ public class AdaBoostMHTrainer {
             for (int k: dataSet.getMultiLabels()[i].getMatchedLabels()){
                 y[k] = 1;
             }
-            float[] scores = scoreMatrix.getScoresForData(i);
             for (int k=0;k<numClasses;k++){
-                double prob = Math.exp(-1*y[k]*scores[k]);
+                double prob = Math.exp(-1*y[k]*scoreMatrix.getScore(i,k));
                 weightMatrix.setProbability(i, k, prob);
             }
         });
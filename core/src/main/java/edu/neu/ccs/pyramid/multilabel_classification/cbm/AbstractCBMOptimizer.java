@@ -50,9 +50,14 @@ public abstract class AbstractCBMOptimizer {
 
     protected boolean parallelBinaryUpdates =true;
 
+    // stacked binary classifiers during the E step
+    private StackedBinaryClassifiers stackedBinaryClassifiers;
+
     public AbstractCBMOptimizer(CBM cbm, MultiLabelClfDataSet dataSet) {
         this.cbm = cbm;
         this.dataSet = dataSet;
+        // training changes the binary classifiers
+        cbm.unstackBinaryClassifiers();
 
         this.gammas = new double[dataSet.getNumDataPoints()][cbm.getNumComponents()];
         double average = 1.0/ cbm.getNumComponents();
@@ -150,14 +155,23 @@ public abstract class AbstractCBMOptimizer {
 
 
     protected void updateGamma() {
+        // binary classifiers do not change during the E step
+        StackedBinaryClassifiers stacked = new StackedBinaryClassifiers(cbm);
+        this.stackedBinaryClassifiers = stacked.getNumLogistic()>0 ? stacked : null;
         IntStream.range(0, dataSet.getNumDataPoints()).parallel()
                 .forEach(this::updateGamma);
+        this.stackedBinaryClassifiers = null;
     }
 
     protected void updateGamma(int n) {
         Vector x = dataSet.getRow(n);
         MultiLabel y = dataSet.getMultiLabels()[n];
-        double[] posterior = cbm.posteriorMembershipShortCircuit(x, y);
+        double[] posterior;
+        if (stackedBinaryClassifiers!=null){
+            posterior = cbm.posteriorMembership(x, y, stackedBinaryClassifiers);
+        } else {
+            posterior = cbm.posteriorMembershipShortCircuit(x, y);
+        }
         for (int k=0; k<cbm.numComponents; k++) {
             gammas[n][k] = posterior[k];
         }
@@ -38,6 +38,12 @@ public class BMDistribution {
         this.numComponents = cbm.numComponents;
         this.logProportions = cbm.multiClassClassifier.predictLogClassProbs(x);
         this.logClassProbs = new double[numComponents][numLabels][2];
+        StackedBinaryClassifiers stacked = cbm.getStackedBinaryClassifiers();
+        if (stacked!=null){
+            int[] components = IntStream.range(0, numComponents).toArray();
+            stacked.fillLogClassProbs(x, components, stacked.margins(x), logClassProbs);
+            return;
+        }
         for (int k = 0; k< numComponents; k++){
             for (int l=0;l<numLabels;l++){
                 logClassProbs[k][l] = cbm.binaryClassifiers[k][l].predictLogClassProbs(x);
@@ -45,6 +51,18 @@ public class BMDistribution {
         }
     }
 
+    /**
+     * from margins of all pairs computed in advance, e.g. for a block of rows
+     */
+    BMDistribution(CBM cbm, Vector x, StackedBinaryClassifiers stacked, double[] margins) {
+        this.numLabels = cbm.numLabels;
+        this.numComponents = cbm.numComponents;
+        this.logProportions = cbm.multiClassClassifier.predictLogClassProbs(x);
+        this.logClassProbs = new double[numComponents][numLabels][2];
+        int[] components = IntStream.range(0, numComponents).toArray();
+        stacked.fillLogClassProbs(x, components, margins, logClassProbs);
+    }
+
     public double[] getLogProportions() {
         return logProportions;
     }
@@ -71,6 +89,12 @@ public class BMDistribution {
 //        System.out.println("active components = "+numComponents);
         this.logProportions = activeComponents.stream().mapToDouble(k->allLogProportions[k]).toArray();
         this.logClassProbs = new double[numComponents][numLabels][2];
+        StackedBinaryClassifiers stacked = cbm.getStackedBinaryClassifiers();
+        if (stacked!=null){
+            int[] components = activeComponents.stream().mapToInt(Integer::intValue).toArray();
+            stacked.fillLogClassProbs(x, components, stacked.margins(x, components), logClassProbs);
+            return;
+        }
         for (int k = 0; k< numComponents; k++){
             for (int l=0;l<numLabels;l++){
                 logClassProbs[k][l] = cbm.binaryClassifiers[activeComponents.get(k)][l].predictLogClassProbs(x);
@@ -1,5 +1,7 @@
 package edu.neu.ccs.pyramid.multilabel_classification.cbm;
 
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.lkboost.FlatLKBoost;
 import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
 import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
@@ -9,6 +11,7 @@ import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.classification.Classifier.ProbabilityEstimator;
 import edu.neu.ccs.pyramid.util.ArgSort;
 import edu.neu.ccs.pyramid.util.BernoulliDistribution;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import edu.neu.ccs.pyramid.util.Pair;
 import org.apache.commons.math3.distribution.EnumeratedIntegerDistribution;
@@ -17,6 +20,7 @@ import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.Vector;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -30,6 +34,11 @@ import java.util.stream.IntStream;
  */
 public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelClassifier.AssignmentProbEstimator, Serializable {
     private static final long serialVersionUID = 2L;
+    // tags of component classifiers in the binary format
+    private static final int NO_ESTIMATOR = 0;
+    private static final int LOGISTIC_REGRESSION = 1;
+    private static final int BOOSTING = 2;
+    private static final int PRIOR = 3;
     int numLabels;
     int numComponents;
     private int numFeatures;
@@ -49,9 +58,29 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
 
     private LabelTranslator labelTranslator;
 
+    // snapshot of the binary classifiers for batched inference, null if not stacked
+    private transient StackedBinaryClassifiers stackedBinaryClassifiers;
+
     private CBM() {
     }
 
+    /**
+     * stack the weights of all binary logistic regressions into one matrix,
+     * so that all K*L log probabilities of a row take a single sparse-dense multiply.
+     * the stack is a snapshot; call it again after the binary classifiers change, or unstack
+     */
+    public void stackBinaryClassifiers(){
+        this.stackedBinaryClassifiers = new StackedBinaryClassifiers(this);
+    }
+
+    public void unstackBinaryClassifiers(){
+        this.stackedBinaryClassifiers = null;
+    }
+
+    StackedBinaryClassifiers getStackedBinaryClassifiers() {
+        return stackedBinaryClassifiers;
+    }
+
     public String getBinaryClassifierType() {
         return binaryClassifierType;
     }
@@ -77,6 +106,19 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
         return shortCircuitPosterior.posteriorMembership();
     }
 
+    /**
+     * posterior membership with all K*L binary classifiers evaluated in one multiply
+     */
+    double[] posteriorMembership(Vector x, MultiLabel y, StackedBinaryClassifiers stacked){
+        double[] logProportions = multiClassClassifier.predictLogClassProbs(x);
+        double[] logYGivenComponents = stacked.logYGivenComponents(x, y, stacked.margins(x));
+        double[] logNumerator = new double[numComponents];
+        for (int k=0;k<numComponents;k++){
+            logNumerator[k] = logProportions[k] + logYGivenComponents[k];
+        }
+        return MathUtil.softmax(logNumerator);
+    }
+
 
     double[] posteriorMembership(Vector x, MultiLabel y, double[] noiseLabelWeights){
         BMDistribution bmDistribution = computeBM(x);
@@ -93,6 +135,26 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
         return new BMDistribution(this, x, piThreshold);
     }
 
+    /**
+     * distributions of a block of rows
+     * with stacked binary classifiers, the block is evaluated as one sparse-dense matrix multiply
+     */
+    public BMDistribution[] computeBM(Vector[] rows){
+        BMDistribution[] bmDistributions = new BMDistribution[rows.length];
+        StackedBinaryClassifiers stacked = stackedBinaryClassifiers;
+        if (stacked==null){
+            for (int r=0;r<rows.length;r++){
+                bmDistributions[r] = computeBM(rows[r]);
+            }
+            return bmDistributions;
+        }
+        double[][] margins = stacked.margins(rows);
+        for (int r=0;r<rows.length;r++){
+            bmDistributions[r] = new BMDistribution(this, rows[r], stacked, margins[r]);
+        }
+        return bmDistributions;
+    }
+
     /**
      * for single assignment, compute log assignment probability
      * @param x
@@ -201,6 +263,8 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
                 return predictBySupport(vector);
             case "marginal":
                 return predictByMarginals(vector);
+            case "topk":
+                return new TopKDecoder(computeBM(vector)).setAllowEmpty(allowEmpty).decode();
         }
 
 
@@ -225,6 +289,14 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
 
     }
 
+    /**
+     * the k multi-labels with the highest probabilities
+     * @return multi-labels and their probabilities, in decreasing probability
+     */
+    public List<Pair<MultiLabel,Double>> predictTopK(Vector vector, int k){
+        return new TopKDecoder(computeBM(vector)).setAllowEmpty(allowEmpty).setTop(k).topK();
+    }
+
     private MultiLabel predictBySupport(Vector vector) {
 //        List<Double> supportLogProbs = predictLogAssignmentProbs(vector, support);
 //        MultiLabel pred = new MultiLabel();
@@ -377,6 +449,110 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
 
 
 
+    /**
+     * compact binary format; logistic regressions keep their weights, boosted classifiers are flattened
+     * and come back as {@link FlatLKBoost}
+     */
+    public void serializeBinary(File file) throws IOException {
+        try (DataOutputStream out = BinarySerialization.openForWrite(file, "CBM")){
+            out.writeInt(numLabels);
+            out.writeInt(numComponents);
+            out.writeInt(numFeatures);
+            out.writeInt(numSample);
+            out.writeBoolean(allowEmpty);
+            BinarySerialization.writeString(out, predictMode);
+            BinarySerialization.writeString(out, binaryClassifierType);
+            BinarySerialization.writeString(out, multiClassClassifierType);
+            out.writeBoolean(support!=null);
+            if (support!=null){
+                BinarySerialization.writeMultiLabels(out, support);
+            }
+            BinarySerialization.writeLabelTranslator(out, labelTranslator);
+            writeEstimator(out, multiClassClassifier);
+            for (int k=0;k<numComponents;k++){
+                for (int l=0;l<numLabels;l++){
+                    writeEstimator(out, binaryClassifiers[k][l]);
+                }
+            }
+        }
+    }
+
+    public void serializeBinary(String file) throws IOException {
+        serializeBinary(new File(file));
+    }
+
+    public static CBM deserializeBinary(File file) throws IOException {
+        ByteBuffer buffer = BinarySerialization.openForRead(file, "CBM");
+        CBM cbm = new CBM();
+        cbm.numLabels = buffer.getInt();
+        cbm.numComponents = buffer.getInt();
+        cbm.numFeatures = buffer.getInt();
+        cbm.numSample = buffer.getInt();
+        cbm.allowEmpty = buffer.get()!=0;
+        cbm.predictMode = BinarySerialization.readString(buffer);
+        cbm.binaryClassifierType = BinarySerialization.readString(buffer);
+        cbm.multiClassClassifierType = BinarySerialization.readString(buffer);
+        if (buffer.get()!=0){
+            cbm.support = BinarySerialization.readMultiLabels(buffer);
+        }
+        cbm.labelTranslator = BinarySerialization.readLabelTranslator(buffer);
+        cbm.multiClassClassifier = readEstimator(buffer);
+        cbm.binaryClassifiers = new ProbabilityEstimator[cbm.numComponents][cbm.numLabels];
+        for (int k=0;k<cbm.numComponents;k++){
+            for (int l=0;l<cbm.numLabels;l++){
+                cbm.binaryClassifiers[k][l] = readEstimator(buffer);
+            }
+        }
+        // a loaded model is used for inference only
+        cbm.stackBinaryClassifiers();
+        return cbm;
+    }
+
+    public static CBM deserializeBinary(String file) throws IOException {
+        return deserializeBinary(new File(file));
+    }
+
+    private static void writeEstimator(DataOutputStream out, ProbabilityEstimator estimator) throws IOException {
+        if (estimator==null){
+            out.writeInt(NO_ESTIMATOR);
+        } else if (estimator instanceof LogisticRegression){
+            LogisticRegression logisticRegression = (LogisticRegression) estimator;
+            out.writeInt(LOGISTIC_REGRESSION);
+            out.writeInt(logisticRegression.getNumClasses());
+            out.writeInt(logisticRegression.getNumFeatures());
+            BinarySerialization.writeVector(out, logisticRegression.getWeights().getAllWeights());
+        } else if (estimator instanceof LKBoost){
+            out.writeInt(BOOSTING);
+            ((LKBoost) estimator).writeTo(out);
+        } else if (estimator instanceof FlatLKBoost){
+            out.writeInt(BOOSTING);
+            ((FlatLKBoost) estimator).writeTo(out);
+        } else if (estimator instanceof PriorProbClassifier){
+            out.writeInt(PRIOR);
+            BinarySerialization.writeDoubles(out, ((PriorProbClassifier) estimator).getClassProbs());
+        } else {
+            throw new UnsupportedOperationException("cannot write "+estimator.getClass().getSimpleName());
+        }
+    }
+
+    private static ProbabilityEstimator readEstimator(ByteBuffer buffer){
+        int tag = buffer.getInt();
+        switch (tag){
+            case NO_ESTIMATOR:
+                return null;
+            case LOGISTIC_REGRESSION:
+                int numClasses = buffer.getInt();
+                int numFeatures = buffer.getInt();
+                return new LogisticRegression(numClasses, numFeatures, BinarySerialization.readVector(buffer));
+            case BOOSTING:
+                return FlatLKBoost.readFrom(buffer);
+            case PRIOR:
+                return new PriorProbClassifier(BinarySerialization.readDoubles(buffer));
+            default:
+                throw new IllegalArgumentException("unknown classifier tag "+tag);
+        }
+    }
+
     public static Builder getBuilder(){
         return new Builder();
     }
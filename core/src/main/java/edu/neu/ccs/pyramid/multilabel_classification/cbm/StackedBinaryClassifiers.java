@@ -0,0 +1,229 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.Classifier.ProbabilityEstimator;
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * snapshot of the K*L binary classifiers of a CBM for batched inference
+ * a binary logistic regression only needs its margin w1*x+b1-(w0*x+b0), so the margins of all
+ * logistic regressions are stored feature major, weights of feature j for pair (k,l) at featureWeights[j][k*L+l],
+ * and the margins of one row are a single sparse-times-dense multiply: for each non-zero x_j, margins += x_j*featureWeights[j].
+ * features with zero weight in every pair are not stored.
+ * prior classifiers are kept as constant log probabilities; any other classifier is called directly.
+ * the snapshot does not follow later changes of the classifiers
+ */
+class StackedBinaryClassifiers {
+    private static final byte LOGISTIC = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte OTHER = 2;
+
+    private int numComponents;
+    private int numLabels;
+    private int numFeatures;
+    private int numLogistic;
+    private byte[] types;
+    // margin biases of logistic regressions, 0 for other pairs
+    private double[] biases;
+    // null if the feature has zero weight everywhere
+    private double[][] featureWeights;
+    // log probabilities of constant pairs
+    private double[][] constantLogProbs;
+    private ProbabilityEstimator[][] binaryClassifiers;
+
+    StackedBinaryClassifiers(CBM cbm) {
+        this.numComponents = cbm.numComponents;
+        this.numLabels = cbm.numLabels;
+        this.binaryClassifiers = cbm.binaryClassifiers;
+        int numPairs = numComponents*numLabels;
+        this.types = new byte[numPairs];
+        this.biases = new double[numPairs];
+        this.constantLogProbs = new double[numPairs][];
+        LogisticRegression[] logistics = new LogisticRegression[numPairs];
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numLabels;l++){
+                int p = k*numLabels+l;
+                ProbabilityEstimator estimator = binaryClassifiers[k][l];
+                if (estimator instanceof LogisticRegression && estimator.getNumClasses()==2){
+                    LogisticRegression logisticRegression = (LogisticRegression) estimator;
+                    types[p] = LOGISTIC;
+                    logistics[p] = logisticRegression;
+                    biases[p] = logisticRegression.getWeights().getBiasForClass(1)
+                            - logisticRegression.getWeights().getBiasForClass(0);
+                    numFeatures = Math.max(numFeatures, logisticRegression.getNumFeatures());
+                    numLogistic += 1;
+                } else if (estimator instanceof PriorProbClassifier){
+                    types[p] = CONSTANT;
+                    constantLogProbs[p] = estimator.predictLogClassProbs(null);
+                } else {
+                    types[p] = OTHER;
+                }
+            }
+        }
+        this.featureWeights = new double[numFeatures][];
+        IntStream.range(0, numFeatures).parallel().forEach(j -> {
+            double[] weights = new double[numPairs];
+            boolean nonZero = false;
+            for (int p=0;p<numPairs;p++){
+                if (types[p]==LOGISTIC){
+                    LogisticRegression logisticRegression = logistics[p];
+                    Vector weightVector = logisticRegression.getWeights().getAllWeights();
+                    int d = logisticRegression.getNumFeatures()+1;
+                    if (j<d-1){
+                        weights[p] = weightVector.getQuick(d+1+j) - weightVector.getQuick(1+j);
+                        nonZero = nonZero || weights[p]!=0;
+                    }
+                }
+            }
+            if (nonZero){
+                featureWeights[j] = weights;
+            }
+        });
+    }
+
+    int getNumLogistic() {
+        return numLogistic;
+    }
+
+    /**
+     * margins of all pairs, at k*L+l
+     */
+    double[] margins(Vector x){
+        double[] margins = biases.clone();
+        for (Vector.Element element: x.nonZeroes()){
+            int j = element.index();
+            if (j<numFeatures && featureWeights[j]!=null){
+                axpy(element.get(), featureWeights[j], 0, margins, 0, margins.length);
+            }
+        }
+        return margins;
+    }
+
+    /**
+     * margins of the pairs of the given components only, at c*L+l for the c-th given component;
+     * the weights of one component are contiguous
+     */
+    double[] margins(Vector x, int[] components){
+        double[] margins = new double[components.length*numLabels];
+        for (int c=0;c<components.length;c++){
+            System.arraycopy(biases, components[c]*numLabels, margins, c*numLabels, numLabels);
+        }
+        for (Vector.Element element: x.nonZeroes()){
+            int j = element.index();
+            if (j<numFeatures && featureWeights[j]!=null){
+                double value = element.get();
+                for (int c=0;c<components.length;c++){
+                    axpy(value, featureWeights[j], components[c]*numLabels, margins, c*numLabels, numLabels);
+                }
+            }
+        }
+        return margins;
+    }
+
+    /**
+     * margins of a block of rows; the block is transposed first, so each stored feature row is read
+     * once for all data points in the block that have the feature
+     */
+    double[][] margins(Vector[] rows){
+        double[][] margins = new double[rows.length][];
+        for (int r=0;r<rows.length;r++){
+            margins[r] = biases.clone();
+        }
+        // entries of the block as feature<<32|entry, sorted by feature
+        int[] entryRows = new int[16];
+        double[] entryValues = new double[16];
+        long[] keys = new long[16];
+        int size = 0;
+        for (int r=0;r<rows.length;r++){
+            for (Vector.Element element: rows[r].nonZeroes()){
+                int j = element.index();
+                if (j<numFeatures && featureWeights[j]!=null){
+                    if (size==keys.length){
+                        entryRows = Arrays.copyOf(entryRows, 2*size);
+                        entryValues = Arrays.copyOf(entryValues, 2*size);
+                        keys = Arrays.copyOf(keys, 2*size);
+                    }
+                    entryRows[size] = r;
+                    entryValues[size] = element.get();
+                    keys[size] = ((long)j<<32) | size;
+                    size += 1;
+                }
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        for (int k=0;k<size;k++){
+            double[] weights = featureWeights[(int)(keys[k]>>>32)];
+            int e = (int)keys[k];
+            axpy(entryValues[e], weights, 0, margins[entryRows[e]], 0, weights.length);
+        }
+        return margins;
+    }
+
+    /**
+     * log p(y_l=0|z=k), log p(y_l=1|z=k) into logClassProbs[c][l] for the c-th given component k
+     * @param margins margins of the given components, as returned by {@link #margins(Vector, int[])}
+     */
+    void fillLogClassProbs(Vector x, int[] components, double[] margins, double[][][] logClassProbs){
+        for (int c=0;c<components.length;c++){
+            int k = components[c];
+            for (int l=0;l<numLabels;l++){
+                logClassProbs[c][l] = logClassProbs(x, k, l, margins[c*numLabels+l]);
+            }
+        }
+    }
+
+    /**
+     * log p(y|z=k) of every component
+     * @param margins margins of all pairs, as returned by {@link #margins(Vector)}
+     */
+    double[] logYGivenComponents(Vector x, MultiLabel y, double[] margins){
+        double[] logYGivenComponents = new double[numComponents];
+        for (int k=0;k<numComponents;k++){
+            double sum = 0;
+            for (int l=0;l<numLabels;l++){
+                int p = k*numLabels+l;
+                int label = y.matchClass(l) ? 1 : 0;
+                if (types[p]==LOGISTIC){
+                    sum += logSigmoid(label==1 ? margins[p] : -margins[p]);
+                } else {
+                    sum += logClassProbs(x, k, l, margins[p])[label];
+                }
+            }
+            logYGivenComponents[k] = sum;
+        }
+        return logYGivenComponents;
+    }
+
+    private double[] logClassProbs(Vector x, int k, int l, double margin){
+        int p = k*numLabels+l;
+        switch (types[p]){
+            case LOGISTIC:
+                return new double[]{logSigmoid(-margin), logSigmoid(margin)};
+            case CONSTANT:
+                return constantLogProbs[p].clone();
+            default:
+                return binaryClassifiers[k][l].predictLogClassProbs(x);
+        }
+    }
+
+    /**
+     * log(1/(1+exp(-m))) without overflow
+     */
+    private static double logSigmoid(double margin){
+        if (margin>0){
+            return -Math.log1p(Math.exp(-margin));
+        }
+        return margin - Math.log1p(Math.exp(margin));
+    }
+
+    private static void axpy(double a, double[] x, int xStart, double[] y, int yStart, int length){
+        for (int i=0;i<length;i++){
+            y[yStart+i] += a*x[xStart+i];
+        }
+    }
+}
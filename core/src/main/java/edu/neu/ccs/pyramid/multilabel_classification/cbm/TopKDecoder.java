@@ -0,0 +1,435 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import edu.neu.ccs.pyramid.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * finds the k multi-labels with the highest mixture probability sum_k pi_k p(y|z=k)
+ * every component enumerates its labels in decreasing p(y|z=k), starting from its argmax.
+ * a candidate differs from the argmax by a set of flipped uncertain labels; with labels sorted by flip cost,
+ * a candidate is stored as its last flip position plus a pointer to the candidate holding the other flips,
+ * and has two successors, "flip the next label too" and "flip the next label instead",
+ * so each flip set is generated exactly once without any cache of visited labels.
+ * candidates of all components live in one heap keyed by pi_k p(y|z=k), in primitive arrays.
+ * search stops when the k-th best mixture probability reaches the upper bound of all unseen labels,
+ * sum_k min(pi_k p(y_last popped|z=k), top of heap), or when the candidate budget is used up
+ */
+public class TopKDecoder {
+    private int numComponents;
+    private int numLabels;
+    private double[] logProportions;
+    private int top = 1;
+    private int maxNumCandidates = 1<<16;
+    private boolean allowEmpty = false;
+
+    // log p(argmax|z=k)
+    private double[] logArgmaxProbs;
+    // argmax labels of each component, increasing
+    private int[][] argmaxLabels;
+    private boolean[][] inArgmax;
+    // |log p(y_l=1|z=k) - log p(y_l=0|z=k)|
+    private double[][] flipCosts;
+    // uncertain labels of each component by increasing flip cost
+    private int[][] flipOrder;
+
+    // candidates
+    private int numCandidates;
+    private int[] candidateComponents;
+    private int[] candidatePrefixes;
+    private int[] candidateLasts;
+    private double[] candidateLogProbs;
+
+    // max heap of candidates by log pi_k + log p(y|z=k)
+    private int heapSize;
+    private int[] heap;
+    private double[] heapKeys;
+    // number of candidates of each component in the heap
+    private int[] numInHeap;
+
+    // hashes of evaluated labels
+    private long[] seen;
+    private int numSeen;
+
+    // reusable label buffers
+    private int[] marks;
+    private int stamp;
+    private int[] labelBuffer;
+    private double[] terms;
+
+    public TopKDecoder(BMDistribution bmDistribution) {
+        this(bmDistribution.logProportions, bmDistribution.logClassProbs);
+    }
+
+    /**
+     * @param logProportions log p(z=k)
+     * @param logClassProbs log p(y_l=0|z=k), log p(y_l=1|z=k)
+     */
+    TopKDecoder(double[] logProportions, double[][][] logClassProbs) {
+        this.numComponents = logProportions.length;
+        this.numLabels = logClassProbs[0].length;
+        this.logProportions = logProportions;
+        this.logArgmaxProbs = new double[numComponents];
+        this.argmaxLabels = new int[numComponents][];
+        this.inArgmax = new boolean[numComponents][numLabels];
+        this.flipCosts = new double[numComponents][numLabels];
+        this.flipOrder = new int[numComponents][];
+        for (int k=0;k<numComponents;k++){
+            int numPositives = 0;
+            int numUncertain = 0;
+            for (int l=0;l<numLabels;l++){
+                double logProb0 = logClassProbs[k][l][0];
+                double logProb1 = logClassProbs[k][l][1];
+                // same tie breaking as the argmax of DynamicProgramming
+                if (logProb1>=logProb0){
+                    inArgmax[k][l] = true;
+                    numPositives += 1;
+                    logArgmaxProbs[k] += logProb1;
+                } else {
+                    logArgmaxProbs[k] += logProb0;
+                }
+                flipCosts[k][l] = Math.abs(logProb1-logProb0);
+                if (logProb0!=Double.NEGATIVE_INFINITY && logProb1!=Double.NEGATIVE_INFINITY){
+                    numUncertain += 1;
+                }
+            }
+            argmaxLabels[k] = new int[numPositives];
+            Integer[] uncertain = new Integer[numUncertain];
+            int p = 0;
+            int u = 0;
+            for (int l=0;l<numLabels;l++){
+                if (inArgmax[k][l]){
+                    argmaxLabels[k][p] = l;
+                    p += 1;
+                }
+                if (logClassProbs[k][l][0]!=Double.NEGATIVE_INFINITY && logClassProbs[k][l][1]!=Double.NEGATIVE_INFINITY){
+                    uncertain[u] = l;
+                    u += 1;
+                }
+            }
+            double[] costs = flipCosts[k];
+            Arrays.sort(uncertain, Comparator.comparingDouble(l -> costs[l]));
+            flipOrder[k] = Arrays.stream(uncertain).mapToInt(Integer::intValue).toArray();
+        }
+        this.marks = new int[numLabels];
+        this.labelBuffer = new int[numLabels];
+        this.terms = new double[numComponents];
+    }
+
+    /**
+     * number of multi-labels to return
+     */
+    public TopKDecoder setTop(int top) {
+        if (top<1){
+            throw new IllegalArgumentException("top<1");
+        }
+        this.top = top;
+        return this;
+    }
+
+    /**
+     * memory budget; the search stops after generating this many candidates
+     */
+    public TopKDecoder setMaxNumCandidates(int maxNumCandidates) {
+        if (maxNumCandidates<1){
+            throw new IllegalArgumentException("maxNumCandidates<1");
+        }
+        this.maxNumCandidates = maxNumCandidates;
+        return this;
+    }
+
+    public TopKDecoder setAllowEmpty(boolean allowEmpty) {
+        this.allowEmpty = allowEmpty;
+        return this;
+    }
+
+    /**
+     * @return the multi-label with the highest probability
+     */
+    public MultiLabel decode(){
+        List<Pair<MultiLabel,Double>> best = topK(1);
+        if (best.isEmpty()){
+            return new MultiLabel();
+        }
+        return best.get(0).getFirst();
+    }
+
+    public List<Pair<MultiLabel,Double>> topK(){
+        return topK(top);
+    }
+
+    /**
+     * @return up to k multi-labels with their probabilities, in decreasing probability
+     */
+    private List<Pair<MultiLabel,Double>> topK(int k){
+        int capacity = Math.min(maxNumCandidates, 1024);
+        this.candidateComponents = new int[capacity];
+        this.candidatePrefixes = new int[capacity];
+        this.candidateLasts = new int[capacity];
+        this.candidateLogProbs = new double[capacity];
+        this.heap = new int[capacity];
+        this.heapKeys = new double[capacity];
+        this.seen = new long[64];
+        this.numInHeap = new int[numComponents];
+        this.numCandidates = 0;
+        this.heapSize = 0;
+        this.numSeen = 0;
+
+        // log pi_k + log p(y|z=k) of the last popped candidate of each component
+        double[] lastPopped = new double[numComponents];
+        for (int c=0;c<numComponents;c++){
+            lastPopped[c] = logProportions[c] + logArgmaxProbs[c];
+            push(c, -1, -1, logArgmaxProbs[c]);
+        }
+
+        // best labels found so far, decreasing log probability
+        int[][] bestLabels = new int[k][];
+        double[] bestLogProbs = new double[k];
+        Arrays.fill(bestLogProbs, Double.NEGATIVE_INFINITY);
+        int numBest = 0;
+
+        while (heapSize>0){
+            if (numBest==k && bestLogProbs[k-1]>=upperBound(lastPopped)){
+                break;
+            }
+            int candidate = pop();
+            int c = candidateComponents[candidate];
+            lastPopped[c] = logProportions[c] + candidateLogProbs[candidate];
+            expand(candidate);
+
+            int size = materialize(candidate);
+            if (size==0 && !allowEmpty){
+                continue;
+            }
+            if (!markSeen(hash(size))){
+                continue;
+            }
+            double logProb = logProbability(size);
+            if (numBest<k || logProb>bestLogProbs[numBest-1]){
+                int position = Math.min(numBest, k-1);
+                while (position>0 && bestLogProbs[position-1]<logProb){
+                    bestLogProbs[position] = bestLogProbs[position-1];
+                    bestLabels[position] = bestLabels[position-1];
+                    position -= 1;
+                }
+                bestLogProbs[position] = logProb;
+                bestLabels[position] = Arrays.copyOf(labelBuffer, size);
+                numBest = Math.min(numBest+1, k);
+            }
+        }
+
+        List<Pair<MultiLabel,Double>> result = new ArrayList<>(numBest);
+        for (int i=0;i<numBest;i++){
+            MultiLabel multiLabel = new MultiLabel();
+            for (int l: bestLabels[i]){
+                multiLabel.addLabel(l);
+            }
+            result.add(new Pair<>(multiLabel, Math.exp(bestLogProbs[i])));
+        }
+        return result;
+    }
+
+    /**
+     * log of sum_k min(pi_k p(y_last popped|z=k), top of heap), over components with candidates left
+     */
+    private double upperBound(double[] lastPopped){
+        if (heapSize==0){
+            return Double.NEGATIVE_INFINITY;
+        }
+        double top = heapKeys[0];
+        for (int c=0;c<numComponents;c++){
+            terms[c] = numInHeap[c]==0 ? Double.NEGATIVE_INFINITY : Math.min(lastPopped[c], top);
+        }
+        return MathUtil.logSumExp(terms);
+    }
+
+    private void expand(int candidate){
+        int c = candidateComponents[candidate];
+        int last = candidateLasts[candidate];
+        int[] order = flipOrder[c];
+        if (last+1>=order.length){
+            return;
+        }
+        double[] costs = flipCosts[c];
+        double logProb = candidateLogProbs[candidate];
+        int next = order[last+1];
+        // flip the next label too
+        push(c, candidate, last+1, logProb - costs[next]);
+        // flip the next label instead of the last one
+        if (last>=0){
+            push(c, candidatePrefixes[candidate], last+1, logProb + costs[order[last]] - costs[next]);
+        }
+    }
+
+    /**
+     * labels of the candidate into labelBuffer, increasing
+     * @return number of labels
+     */
+    private int materialize(int candidate){
+        int c = candidateComponents[candidate];
+        stamp += 1;
+        int numFlips = 0;
+        for (int n=candidate;n>=0 && candidateLasts[n]>=0;n=candidatePrefixes[n]){
+            marks[flipOrder[c][candidateLasts[n]]] = stamp;
+            numFlips += 1;
+        }
+        int size = 0;
+        for (int l: argmaxLabels[c]){
+            if (marks[l]!=stamp){
+                labelBuffer[size] = l;
+                size += 1;
+            }
+        }
+        int numAdded = 0;
+        for (int n=candidate;n>=0 && candidateLasts[n]>=0;n=candidatePrefixes[n]){
+            int l = flipOrder[c][candidateLasts[n]];
+            if (!inArgmax[c][l]){
+                labelBuffer[size+numAdded] = l;
+                numAdded += 1;
+            }
+        }
+        size += numAdded;
+        if (numAdded>0){
+            Arrays.sort(labelBuffer, 0, size);
+        }
+        // labels in the buffer are marked for membership tests
+        stamp += 1;
+        for (int i=0;i<size;i++){
+            marks[labelBuffer[i]] = stamp;
+        }
+        return size;
+    }
+
+    /**
+     * log sum_k pi_k p(y|z=k) of the labels in labelBuffer
+     */
+    private double logProbability(int size){
+        for (int c=0;c<numComponents;c++){
+            double logProb = logArgmaxProbs[c];
+            for (int i=0;i<size;i++){
+                if (!inArgmax[c][labelBuffer[i]]){
+                    logProb -= flipCosts[c][labelBuffer[i]];
+                }
+            }
+            for (int l: argmaxLabels[c]){
+                if (marks[l]!=stamp){
+                    logProb -= flipCosts[c][l];
+                }
+            }
+            terms[c] = logProportions[c] + logProb;
+        }
+        return MathUtil.logSumExp(terms);
+    }
+
+    private long hash(int size){
+        long h = 0x9E3779B97F4A7C15L + size;
+        for (int i=0;i<size;i++){
+            h = (h ^ labelBuffer[i]) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h==0 ? 1 : h;
+    }
+
+    /**
+     * open addressing set of label hashes
+     * @return false if the hash was already there
+     */
+    private boolean markSeen(long hash){
+        if (2*(numSeen+1)>seen.length){
+            long[] old = seen;
+            seen = new long[2*old.length];
+            for (long h: old){
+                if (h!=0){
+                    insert(seen, h);
+                }
+            }
+        }
+        if (!insert(seen, hash)){
+            return false;
+        }
+        numSeen += 1;
+        return true;
+    }
+
+    private static boolean insert(long[] table, long hash){
+        int mask = table.length-1;
+        int slot = (int)(hash ^ (hash>>>32)) & mask;
+        while (table[slot]!=0){
+            if (table[slot]==hash){
+                return false;
+            }
+            slot = (slot+1) & mask;
+        }
+        table[slot] = hash;
+        return true;
+    }
+
+    private void push(int component, int prefix, int last, double logProb){
+        if (numCandidates==maxNumCandidates){
+            return;
+        }
+        if (numCandidates==candidateComponents.length){
+            int capacity = Math.min(maxNumCandidates, 2*numCandidates);
+            candidateComponents = Arrays.copyOf(candidateComponents, capacity);
+            candidatePrefixes = Arrays.copyOf(candidatePrefixes, capacity);
+            candidateLasts = Arrays.copyOf(candidateLasts, capacity);
+            candidateLogProbs = Arrays.copyOf(candidateLogProbs, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            heapKeys = Arrays.copyOf(heapKeys, capacity);
+        }
+        int candidate = numCandidates;
+        candidateComponents[candidate] = component;
+        candidatePrefixes[candidate] = prefix;
+        candidateLasts[candidate] = last;
+        candidateLogProbs[candidate] = logProb;
+        numCandidates += 1;
+        numInHeap[component] += 1;
+
+        double key = logProportions[component] + logProb;
+        int position = heapSize;
+        heapSize += 1;
+        while (position>0){
+            int parent = (position-1)/2;
+            if (heapKeys[parent]>=key){
+                break;
+            }
+            heap[position] = heap[parent];
+            heapKeys[position] = heapKeys[parent];
+            position = parent;
+        }
+        heap[position] = candidate;
+        heapKeys[position] = key;
+    }
+
+    private int pop(){
+        int result = heap[0];
+        numInHeap[candidateComponents[result]] -= 1;
+        heapSize -= 1;
+        int candidate = heap[heapSize];
+        double key = heapKeys[heapSize];
+        int position = 0;
+        while (true){
+            int child = 2*position+1;
+            if (child>=heapSize){
+                break;
+            }
+            if (child+1<heapSize && heapKeys[child+1]>heapKeys[child]){
+                child += 1;
+            }
+            if (heapKeys[child]<=key){
+                break;
+            }
+            heap[position] = heap[child];
+            heapKeys[position] = heapKeys[child];
+            position = child;
+        }
+        heap[position] = candidate;
+        heapKeys[position] = key;
+        return result;
+    }
+}
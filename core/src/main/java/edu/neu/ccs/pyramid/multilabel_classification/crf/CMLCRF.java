@@ -7,10 +7,13 @@ import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.Enumerator;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.util.ArgMax;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
 import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +32,8 @@ import static edu.neu.ccs.pyramid.dataset.DataSetUtil.gatherMultiLabels;
  */
 public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.AssignmentProbEstimator, Serializable {
     private static final long serialVersionUID = 3L;
+    // log of the relative probability below which combinations may be skipped by the sparse posterior
+    static final double PRUNE_MARGIN = 30;
     /**
      * Y_1, Y_2,...,Y_L
      */
@@ -56,6 +61,9 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
 
     private FeatureList featureList;
 
+    // number of labels in each support combination, computed on first use
+    private transient volatile int[] combinationSizes;
+
 
     public CMLCRF(MultiLabelClfDataSet dataSet) {
         this.numClasses = dataSet.getNumClasses();
@@ -148,10 +156,10 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
 
 
     // todo fix: handle separately
-    private double predictCombinationScore(int labelComIndex, double[] classScores){
+    double predictCombinationScore(int labelComIndex, double[] classScores){
         MultiLabel label = supportCombinations.get(labelComIndex);
         double score = 0.0;
-        for (Integer l: label.getMatchedLabels()){
+        for (int l = label.nextLabel(0); l >= 0; l = label.nextLabel(l+1)){
             score += classScores[l];
         }
         if (considerPair){
@@ -161,6 +169,151 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
         return score;
     }
 
+    /**
+     * posterior over the support without storing a score for every combination:
+     * in one pass, the log partition and the class marginals are accumulated
+     * (rescaled whenever the running max score grows), and a min-heap keeps the topK highest scoring combinations;
+     * of those, combinations with probability below threshold go to the remainder mass.
+     * combinations are pruned before scoring with an optimistic bound: the pair part plus the sum of the highest class
+     * scores, as many as the combination has labels. a combination is skipped if its bound cannot enter the full heap
+     * and is below the running max score by more than {@link #PRUNE_MARGIN}, so each skipped combination has relative
+     * probability below exp(-PRUNE_MARGIN), and the log partition and marginals stay exact up to that
+     * @param classScores
+     * @param topK
+     * @param threshold
+     * @return
+     */
+    SparseCombinationPosterior predictSparseCombinationPosterior(double[] classScores, int topK, double threshold){
+        int[] sizes = getCombinationSizes();
+        // bestSums[m] = sum of the m highest class scores
+        double[] sortedScores = classScores.clone();
+        Arrays.sort(sortedScores);
+        double[] bestSums = new double[numClasses+1];
+        for (int m=1;m<=numClasses;m++){
+            bestSums[m] = bestSums[m-1] + sortedScores[numClasses-m];
+        }
+        int heapCapacity = Math.min(topK, numSupports);
+        int[] heapCombinations = new int[heapCapacity];
+        double[] heapScores = new double[heapCapacity];
+        int heapSize = 0;
+        double maxScore = Double.NEGATIVE_INFINITY;
+        // sum of exp(score - maxScore)
+        double partition = 0;
+        double[] classSums = new double[numClasses];
+        for (int c=0;c<numSupports;c++){
+            if (heapSize==heapCapacity){
+                double bound = bestSums[sizes[c]];
+                if (considerPair){
+                    bound += combinationLabelPartScores[c];
+                }
+                if ((heapCapacity==0 || bound <= heapScores[0]) && bound < maxScore - PRUNE_MARGIN){
+                    continue;
+                }
+            }
+            double score = predictCombinationScore(c, classScores);
+            if (score > maxScore){
+                double scale = Math.exp(maxScore - score);
+                partition *= scale;
+                for (int l=0;l<numClasses;l++){
+                    classSums[l] *= scale;
+                }
+                maxScore = score;
+            }
+            double expScore = Math.exp(score - maxScore);
+            partition += expScore;
+            MultiLabel label = supportCombinations.get(c);
+            for (int l = label.nextLabel(0); l >= 0; l = label.nextLabel(l+1)){
+                classSums[l] += expScore;
+            }
+
+            if (heapSize < heapCapacity){
+                heapCombinations[heapSize] = c;
+                heapScores[heapSize] = score;
+                heapSize += 1;
+                siftUp(heapCombinations, heapScores, heapSize-1);
+            } else if (heapCapacity>0 && score > heapScores[0]){
+                heapCombinations[0] = c;
+                heapScores[0] = score;
+                siftDown(heapCombinations, heapScores, heapSize);
+            }
+        }
+        double logPartition = maxScore + Math.log(partition);
+        double[] classProbs = new double[numClasses];
+        for (int l=0;l<numClasses;l++){
+            classProbs[l] = classSums[l]/partition;
+        }
+
+        // pop the heap into descending order
+        int[] sortedCombinations = new int[heapSize];
+        double[] sortedProbs = new double[heapSize];
+        for (int k=heapSize-1;k>=0;k--){
+            sortedCombinations[k] = heapCombinations[0];
+            sortedProbs[k] = Math.exp(heapScores[0] - logPartition);
+            heapCombinations[0] = heapCombinations[k];
+            heapScores[0] = heapScores[k];
+            siftDown(heapCombinations, heapScores, k);
+        }
+        int numKept = 0;
+        while (numKept<heapSize && sortedProbs[numKept]>=threshold){
+            numKept += 1;
+        }
+        return new SparseCombinationPosterior(Arrays.copyOf(sortedCombinations, numKept),
+                Arrays.copyOf(sortedProbs, numKept), logPartition, classProbs);
+    }
+
+    private int[] getCombinationSizes(){
+        int[] sizes = combinationSizes;
+        if (sizes==null){
+            sizes = new int[numSupports];
+            for (int c=0;c<numSupports;c++){
+                sizes[c] = supportCombinations.get(c).getNumMatchedLabels();
+            }
+            combinationSizes = sizes;
+        }
+        return sizes;
+    }
+
+    private static void siftUp(int[] combinations, double[] scores, int position){
+        int child = position;
+        while (child>0){
+            int parent = (child-1)/2;
+            if (scores[parent] <= scores[child]){
+                break;
+            }
+            swap(combinations, scores, parent, child);
+            child = parent;
+        }
+    }
+
+    private static void siftDown(int[] combinations, double[] scores, int size){
+        int parent = 0;
+        while (true){
+            int smallest = parent;
+            int left = 2*parent+1;
+            int right = left+1;
+            if (left<size && scores[left]<scores[smallest]){
+                smallest = left;
+            }
+            if (right<size && scores[right]<scores[smallest]){
+                smallest = right;
+            }
+            if (smallest==parent){
+                break;
+            }
+            swap(combinations, scores, parent, smallest);
+            parent = smallest;
+        }
+    }
+
+    private static void swap(int[] combinations, double[] scores, int i, int j){
+        int combination = combinations[i];
+        combinations[i] = combinations[j];
+        combinations[j] = combination;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
 
 
     /**
@@ -372,6 +525,43 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
         serialize(file1);
     }
 
+    /**
+     * compact binary format: weights as one primitive array, support, settings and label translator;
+     * the feature list is not stored
+     */
+    public void serializeBinary(File file) throws IOException {
+        try (DataOutputStream out = BinarySerialization.openForWrite(file, "CMLCRF")){
+            out.writeInt(numClasses);
+            out.writeInt(numFeatures);
+            out.writeBoolean(considerPair);
+            out.writeDouble(lossStrength);
+            BinarySerialization.writeMultiLabels(out, supportCombinations);
+            BinarySerialization.writeLabelTranslator(out, labelTranslator);
+            Vector weightVector = weights.getAllWeights();
+            double[] values = new double[weightVector.size()];
+            for (int i=0;i<values.length;i++){
+                values[i] = weightVector.get(i);
+            }
+            BinarySerialization.writeDoubles(out, values);
+        }
+    }
+
+    public static CMLCRF deserializeBinary(File file) throws IOException {
+        ByteBuffer buffer = BinarySerialization.openForRead(file, "CMLCRF");
+        int numClasses = buffer.getInt();
+        int numFeatures = buffer.getInt();
+        boolean considerPair = buffer.get()!=0;
+        double lossStrength = buffer.getDouble();
+        List<MultiLabel> support = BinarySerialization.readMultiLabels(buffer);
+        CMLCRF cmlcrf = new CMLCRF(numClasses, numFeatures, support);
+        cmlcrf.labelTranslator = BinarySerialization.readLabelTranslator(buffer);
+        cmlcrf.lossStrength = lossStrength;
+        cmlcrf.weights.setWeightVector(new DenseVector(BinarySerialization.readDoubles(buffer), true));
+        // label part scores depend on the weights
+        cmlcrf.setConsiderPair(considerPair);
+        return cmlcrf;
+    }
+
     // this may return negative infinity if assignment is not seen before
     // todo speed up
     @Override
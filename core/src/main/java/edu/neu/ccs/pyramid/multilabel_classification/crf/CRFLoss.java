@@ -16,7 +16,7 @@ import java.util.stream.IntStream;
 /**
  * Created by Rainicy on 12/13/15.
  */
-public class CRFLoss implements Optimizable.ByGradientValue {
+public class CRFLoss implements Optimizable.ByMiniBatchGradient {
     private static final Logger logger = LogManager.getLogger();
     private CMLCRF cmlcrf;
     private List<MultiLabel> supportedCombinations;
@@ -28,6 +28,10 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     private int numWeightsForFeatures;
     private int numWeightsForLabelPairs;
     private Vector gradient;
+    // allocated on the first batch and reused; getBatchGradient() returns a view of batchGradientValues
+    private double[] batchGradientValues;
+    private Vector batchGradient;
+    private double[] batchCombDifferences;
     private double value;
     private double[] empiricalCounts;
     private int[] parameterToL1;
@@ -69,6 +73,14 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     // for each data point, store the position of the true combination in the support list
     private int[] labelComIndices;
 
+    // 0 for dense posteriors over all combinations
+    private int topK = 0;
+
+    private double probThreshold = 0;
+
+    // sparse mode only; numDataPoints
+    private SparseCombinationPosterior[] sparsePosteriors;
+
 
 
 
@@ -85,8 +97,9 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         this.numWeightsForLabelPairs = cmlcrf.getWeights().getNumWeightsForLabels();
         this.classScoreMatrix = new double[numData][numClasses];
         this.classProbMatrix = new double[numData][numClasses];
-        this.combScoreMatrix = new double[numData][numSupport];
-        this.combProbMatrix = new double[numData][numSupport];
+        // rows are filled in dense mode only
+        this.combScoreMatrix = new double[numData][];
+        this.combProbMatrix = new double[numData][];
         this.isGradientCacheValid = false;
         this.isValueCacheValid = false;
         this.empiricalCounts = new double[numParameters];
@@ -114,6 +127,47 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         this.regularizeAll = regularizeAll;
     }
 
+    /**
+     * keep, for each data point, only its topK most probable combinations with probability >= threshold,
+     * instead of numDataPoints by numCombinations score and probability matrices.
+     * the likelihood and the feature-label gradients stay exact;
+     * the label-pair gradients only see the kept combinations, and miss the remainder mass
+     * @param topK 0 to go back to dense posteriors
+     * @param threshold
+     */
+    public void setSparsePosteriors(int topK, double threshold) {
+        if (topK<0){
+            throw new IllegalArgumentException("topK should be >= 0");
+        }
+        this.topK = topK;
+        this.probThreshold = threshold;
+        if (isSparse()){
+            this.sparsePosteriors = new SparseCombinationPosterior[numData];
+            this.combScoreMatrix = new double[numData][];
+            this.combProbMatrix = new double[numData][];
+        } else {
+            this.sparsePosteriors = null;
+        }
+        this.isValueCacheValid = false;
+        this.isGradientCacheValid = false;
+    }
+
+    public boolean isSparse(){
+        return topK>0;
+    }
+
+    /**
+     * average over data points of the probability outside the kept combinations, in sparse mode
+     * the posteriors are those of the last value or gradient computation
+     */
+    public double getAverageRemainder(){
+        if (!isSparse()){
+            return 0;
+        }
+        return Arrays.stream(sparsePosteriors).parallel().mapToDouble(SparseCombinationPosterior::getRemainder)
+                .average().orElse(0);
+    }
+
 
 
     /**
@@ -130,10 +184,15 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         }
         // O(NdL)
         updateClassScoreMatrix();
-        updateAssignmentScoreMatrix();
-        updateAssignmentProbMatrix();
-        updateCombProbSums();
-        updateClassProbMatrix();
+        if (isSparse()){
+            updateSparsePosteriors();
+            updateSparseCombProbSums();
+        } else {
+            updateAssignmentScoreMatrix();
+            updateAssignmentProbMatrix();
+            updateCombProbSums();
+            updateClassProbMatrix();
+        }
         updateGradient();
         this.isGradientCacheValid = true;
         if (logger.isDebugEnabled()){
@@ -145,6 +204,84 @@ public class CRFLoss implements Optimizable.ByGradientValue {
 
 
 
+    @Override
+    public int getNumDataPoints() {
+        return numData;
+    }
+
+    /**
+     * posteriors are computed for the batch only, and the cached matrices are not touched;
+     * in sparse mode, the sparse posteriors are used as in {@link #getGradient()}.
+     * the buffer is first overwritten with the penalty gradient, so the one pass over all parameters
+     * per batch also clears the previous batch
+     */
+    @Override
+    public Vector getBatchGradient(int[] dataPoints) {
+        int numFeatures = dataSet.getNumFeatures();
+        double scale = ((double) numData)/dataPoints.length;
+        if (batchGradientValues==null){
+            batchGradientValues = new double[numParameters];
+            batchGradient = new DenseVector(batchGradientValues, true);
+            batchCombDifferences = new double[numSupport];
+        }
+        // regularize
+        for (int p=0;p<numWeightsForFeatures;p++){
+            if (regularizeAll || parameterToFeature[p] != -1){
+                batchGradientValues[p] = cmlcrf.getWeights().getWeightForIndex(p)/gaussianPriorVariance;
+            } else {
+                batchGradientValues[p] = 0;
+            }
+        }
+        // expected minus observed count of each combination over the batch
+        double[] combDifferences = batchCombDifferences;
+        Arrays.fill(combDifferences, 0);
+        for (int i: dataPoints){
+            Vector row = dataSet.getRow(i);
+            double[] classScores = cmlcrf.predictClassScores(row);
+            double[] classProbs;
+            if (isSparse()){
+                SparseCombinationPosterior posterior = cmlcrf.predictSparseCombinationPosterior(classScores, topK, probThreshold);
+                classProbs = posterior.getClassProbs();
+                for (int k=0;k<posterior.getNumKept();k++){
+                    combDifferences[posterior.getCombination(k)] += posterior.getProb(k);
+                }
+            } else {
+                double[] combProbs = cmlcrf.predictCombinationProbs(cmlcrf.predictCombinationScores(classScores));
+                classProbs = cmlcrf.calClassProbs(combProbs);
+                for (int c=0;c<numSupport;c++){
+                    combDifferences[c] += combProbs[c];
+                }
+            }
+            combDifferences[labelComIndices[i]] -= 1;
+
+            MultiLabel label = dataSet.getMultiLabels()[i];
+            for (int k=0;k<numClasses;k++){
+                double difference = classProbs[k];
+                if (label.matchClass(k)){
+                    difference -= 1;
+                }
+                int biasPosition = k*(numFeatures+1);
+                batchGradientValues[biasPosition] += scale*difference;
+                for (Vector.Element element: row.nonZeroes()){
+                    batchGradientValues[biasPosition+1+element.index()] += scale*difference*element.get();
+                }
+            }
+        }
+        if (cmlcrf.considerPair()){
+            for (int pos=0;pos<numWeightsForLabelPairs;pos++){
+                double count = 0;
+                for (int matched: labelPairToCombination.get(pos)){
+                    count += combDifferences[matched];
+                }
+                batchGradientValues[numWeightsForFeatures+pos] = scale*count;
+                if (regularizeAll){
+                    batchGradientValues[numWeightsForFeatures+pos] += cmlcrf.getWeights().getWeightForIndex(numWeightsForFeatures+pos)/gaussianPriorVariance;
+                }
+            }
+        }
+        return batchGradient;
+    }
+
     private void updateGradient() {
         if (logger.isDebugEnabled()){
             logger.debug("start method updateGradient()");
@@ -383,7 +520,11 @@ public class CRFLoss implements Optimizable.ByGradientValue {
 
     private double getValueForAllData() {
         updateClassScoreMatrix();
-        updateAssignmentScoreMatrix();
+        if (isSparse()){
+            updateSparsePosteriors();
+        } else {
+            updateAssignmentScoreMatrix();
+        }
         IntStream intStream;
         if (isParallel) {
             intStream = IntStream.range(0,dataSet.getNumDataPoints()).parallel();
@@ -396,6 +537,10 @@ public class CRFLoss implements Optimizable.ByGradientValue {
 
     // NLL
     private double getValueForOneData(int i) {
+        if (isSparse()){
+            return sparsePosteriors[i].getLogPartition()
+                    - cmlcrf.predictCombinationScore(labelComIndices[i], classScoreMatrix[i]);
+        }
         double sum = 0.0;
         // sum logZ(x_n)
         sum += MathUtil.logSumExp(combScoreMatrix[i]);
@@ -454,6 +599,23 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         }
     }
 
+    /**
+     * sparse posteriors and exact class marginals, without the combination matrices
+     */
+    private void updateSparsePosteriors(){
+        if (logger.isDebugEnabled()){
+            logger.debug("start updateSparsePosteriors()");
+        }
+        IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                .forEach(i -> {
+                    sparsePosteriors[i] = cmlcrf.predictSparseCombinationPosterior(classScoreMatrix[i], topK, probThreshold);
+                    classProbMatrix[i] = sparsePosteriors[i].getClassProbs();
+                });
+        if (logger.isDebugEnabled()){
+            logger.debug("finish updateSparsePosteriors(), average remainder = "+getAverageRemainder());
+        }
+    }
+
     private void updateClassProbMatrix(){
         if (logger.isDebugEnabled()){
             logger.debug("start updateClassProbMatrix()");
@@ -525,4 +687,21 @@ public class CRFLoss implements Optimizable.ByGradientValue {
                 .forEach(this::updateCombProbSums);
     }
 
+    private void updateSparseCombProbSums(){
+        double[] sums = IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .collect(() -> new double[numSupport],
+                        (partial, i) -> {
+                            SparseCombinationPosterior posterior = sparsePosteriors[i];
+                            for (int k=0;k<posterior.getNumKept();k++){
+                                partial[posterior.getCombination(k)] += posterior.getProb(k);
+                            }
+                        },
+                        (partial1, partial2) -> {
+                            for (int c=0;c<numSupport;c++){
+                                partial1[c] += partial2[c];
+                            }
+                        });
+        System.arraycopy(sums, 0, combProbSums, 0, numSupport);
+    }
+
 }
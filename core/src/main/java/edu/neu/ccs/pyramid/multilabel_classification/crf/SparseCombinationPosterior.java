@@ -0,0 +1,62 @@
+package edu.neu.ccs.pyramid.multilabel_classification.crf;
+
+/**
+ * posterior over the support combinations of one data point, restricted to its most probable combinations;
+ * the probability of all other combinations is kept as one remainder mass.
+ * the log partition and the class marginals are accumulated over the full support,
+ * except combinations pruned by {@link CMLCRF} because their relative probability is below exp(-30)
+ */
+public class SparseCombinationPosterior {
+    // support indices, by descending probability
+    private int[] combinations;
+    private double[] probs;
+    private double remainder;
+    private double logPartition;
+    private double[] classProbs;
+
+    SparseCombinationPosterior(int[] combinations, double[] probs, double logPartition, double[] classProbs) {
+        this.combinations = combinations;
+        this.probs = probs;
+        this.logPartition = logPartition;
+        this.classProbs = classProbs;
+        double kept = 0;
+        for (double prob: probs){
+            kept += prob;
+        }
+        this.remainder = Math.max(1-kept, 0);
+    }
+
+    public int getNumKept(){
+        return combinations.length;
+    }
+
+    /**
+     * @param k position in the kept list
+     * @return index in the support list
+     */
+    public int getCombination(int k){
+        return combinations[k];
+    }
+
+    public double getProb(int k){
+        return probs[k];
+    }
+
+    /**
+     * probability of all combinations not kept
+     */
+    public double getRemainder() {
+        return remainder;
+    }
+
+    public double getLogPartition() {
+        return logPartition;
+    }
+
+    /**
+     * marginal probabilities
+     */
+    public double[] getClassProbs() {
+        return classProbs;
+    }
+}
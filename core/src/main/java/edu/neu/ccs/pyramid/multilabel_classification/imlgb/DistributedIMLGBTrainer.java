@@ -0,0 +1,136 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.DistributedRegTreeTrainer;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * data-parallel IMLGB training
+ * every worker owns a shard of the rows, with its labels and scores;
+ * trees are grown by the coordinator from histograms summed over all workers, see {@link DistributedRegTreeTrainer}.
+ * workers are {@link IMLGBShard}s in this JVM or {@link RemoteIMLGBWorker}s talking to other processes.
+ * close the trainer to release the threads calling the workers; the workers themselves stay open
+ */
+public class DistributedIMLGBTrainer implements Closeable {
+    private static final Logger logger = LogManager.getLogger();
+    private IMLGradientBoosting boosting;
+    // bins shared by all workers
+    private QuantizedDataSet reference;
+    private List<? extends IMLGBWorker> workers;
+    private RegTreeConfig regTreeConfig;
+    private double learningRate;
+    private int numDataPoints;
+    private boolean[] shouldStop;
+    // calls the workers in parallel, shared by all trees
+    private ExecutorService executor;
+
+    /**
+     * @param usePrior start with prior probabilities if the model is empty
+     */
+    public DistributedIMLGBTrainer(IMLGradientBoosting boosting,
+                                   QuantizedDataSet reference,
+                                   List<? extends IMLGBWorker> workers,
+                                   RegTreeConfig regTreeConfig,
+                                   double learningRate,
+                                   boolean usePrior) throws IOException {
+        this.boosting = boosting;
+        this.reference = reference;
+        this.workers = workers;
+        this.regTreeConfig = regTreeConfig;
+        this.learningRate = learningRate;
+        this.shouldStop = new boolean[boosting.getNumClasses()];
+        this.executor = DistributedRegTreeTrainer.newExecutor(workers.size());
+        boosting.setFeatureList(reference.getFeatureList());
+        for (IMLGBWorker worker: workers){
+            numDataPoints += worker.getNumDataPoints();
+        }
+        for (int k=0;k<boosting.getNumClasses();k++){
+            for (Regressor regressor: boosting.getRegressors(k)){
+                addToWorkers(regressor, k);
+            }
+        }
+        if (usePrior && boosting.getRegressors(0).size()==0){
+            setPriorProbs();
+        }
+    }
+
+    public void setShouldStop(int classIndex){
+        shouldStop[classIndex] = true;
+    }
+
+    /**
+     * one tree per class, in turn; each tree uses all workers
+     */
+    public void iterate() throws IOException {
+        for (int k=0;k<boosting.getNumClasses();k++){
+            if (shouldStop[k]){
+                continue;
+            }
+            if (logger.isDebugEnabled()){
+                logger.debug("updating class "+k);
+            }
+            RegressionTree tree = DistributedRegTreeTrainer.fit(regTreeConfig, reference, workers, k, numDataPoints,
+                    executor);
+            tree.shrink(learningRate);
+            boosting.addRegressor(tree, k);
+            addToWorkers(tree, k);
+        }
+    }
+
+    /**
+     * same priors as {@link IMLGBTrainer}, from label counts summed over all workers
+     */
+    private void setPriorProbs() throws IOException {
+        int numClasses = boosting.getNumClasses();
+        int[] counts = new int[numClasses];
+        for (IMLGBWorker worker: workers){
+            int[] workerCounts = worker.countLabels();
+            for (int k=0;k<numClasses;k++){
+                counts[k] += workerCounts[k];
+            }
+        }
+        for (int k=0;k<numClasses;k++){
+            double prob = ((double)counts[k])/numDataPoints;
+            double score = MathUtil.inverseSigmoid(prob);
+            // we don't want the prior to be overly strong
+            double soft = Math.sqrt(Math.abs(score));
+            if (score<0){
+                soft = -soft;
+            }
+            Regressor constant = new ConstantRegressor(soft);
+            boosting.addRegressor(constant, k);
+            addToWorkers(constant, k);
+        }
+    }
+
+    private void addToWorkers(Regressor regressor, int classIndex) throws IOException {
+        try {
+            workers.parallelStream().forEach(worker -> {
+                try {
+                    worker.addRegressor(regressor, classIndex);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
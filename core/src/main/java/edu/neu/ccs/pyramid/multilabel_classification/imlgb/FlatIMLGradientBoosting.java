@@ -0,0 +1,105 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.LabelTranslator;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.FlatGradientBoosting;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.mahout.math.Vector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * scoring-only {@link IMLGradientBoosting} loaded from the compact binary format
+ * scores, probabilities and Hamming predictions are the same as the original model, bit for bit
+ */
+public class FlatIMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstimator, MultiLabelClassifier.ClassProbEstimator {
+    private static final long serialVersionUID = 1L;
+    static final String KIND = "IMLGradientBoosting";
+    private int numClasses;
+    private FlatGradientBoosting boosting;
+    private LabelTranslator labelTranslator;
+
+    private FlatIMLGradientBoosting() {
+    }
+
+    public static FlatIMLGradientBoosting deserializeBinary(File file) throws IOException {
+        ByteBuffer buffer = BinarySerialization.openForRead(file, KIND);
+        FlatIMLGradientBoosting model = new FlatIMLGradientBoosting();
+        model.numClasses = buffer.getInt();
+        model.labelTranslator = BinarySerialization.readLabelTranslator(buffer);
+        model.boosting = FlatGradientBoosting.readFrom(buffer);
+        return model;
+    }
+
+    public static FlatIMLGradientBoosting deserializeBinary(String file) throws IOException {
+        return deserializeBinary(new File(file));
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public double predictClassScore(Vector vector, int k) {
+        return boosting.score(vector, k);
+    }
+
+    @Override
+    public double[] predictClassScores(Vector vector) {
+        return boosting.scores(vector);
+    }
+
+    /**
+     * @param scores scores[i*numClasses+l] is set to the score of class l for data point i
+     */
+    public void predictClassScoresBatch(DataSet dataSet, double[] scores){
+        boosting.predictBatch(dataSet, scores);
+    }
+
+    @Override
+    public double[] predictClassProbs(Vector vector) {
+        double[] scores = predictClassScores(vector);
+        double[] probs = new double[numClasses];
+        for (int k=0;k<numClasses;k++){
+            double[] pair = new double[2];
+            pair[1] = scores[k];
+            probs[k] = Math.exp(scores[k]-MathUtil.logSumExp(pair));
+        }
+        return probs;
+    }
+
+    /**
+     * Hamming Loss optimal prediction
+     */
+    @Override
+    public MultiLabel predict(Vector vector) {
+        MultiLabel prediction = new MultiLabel();
+        double[] scores = predictClassScores(vector);
+        for (int k=0;k<numClasses;k++){
+            if (scores[k] > 0){
+                prediction.addLabel(k);
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * features are not stored in the binary format
+     */
+    @Override
+    public FeatureList getFeatureList() {
+        return null;
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+}
@@ -41,6 +41,22 @@ public class IMLGBLeafOutputCalculator implements LeafOutputCalculator{
 //            numerator += label*probabilities[i];
 //            denominator += Math.abs(label) * (1 - Math.abs(label))*probabilities[i];
 //        }
+        return leafOutput(numerator, denominator);
+    }
+
+    @Override
+    public double getLeafOutput(int[] dataIndices, double[] probabilities, double[] labels) {
+        double numerator = 0;
+        double denominator = 0;
+        for (int k=0;k<dataIndices.length;k++) {
+            double label = labels[dataIndices[k]];
+            numerator += label*probabilities[k];
+            denominator += Math.abs(label) * (1 - Math.abs(label))*probabilities[k];
+        }
+        return leafOutput(numerator, denominator);
+    }
+
+    private double leafOutput(double numerator, double denominator){
         double out;
         if (denominator == 0) {
             out = 0;
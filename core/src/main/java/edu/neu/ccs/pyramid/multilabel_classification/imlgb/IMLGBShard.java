@@ -0,0 +1,92 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.ShardHistograms;
+import edu.neu.ccs.pyramid.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * an in-memory shard of the training rows of {@link DistributedIMLGBTrainer}
+ * histograms are built from the quantized rows, but regressors are scored on the raw rows,
+ * so the scores match {@link IMLGradientBoosting#predictClassScores} even for warm-start trees
+ * whose thresholds fall inside a bin
+ */
+public class IMLGBShard implements IMLGBWorker {
+    // the raw rows are kept for scoring
+    private MultiLabelClfDataSet rawDataSet;
+    private QuantizedDataSet dataSet;
+    private MultiLabel[] multiLabels;
+    private int numClasses;
+    private ScoreMatrix scoreMatrix;
+    private double[] weights;
+    private ShardHistograms histograms;
+
+    /**
+     * @param reference bins shared by all shards
+     */
+    public IMLGBShard(MultiLabelClfDataSet dataSet, QuantizedDataSet reference) {
+        this.rawDataSet = dataSet;
+        this.dataSet = QuantizedDataSet.quantize(dataSet, reference);
+        this.multiLabels = dataSet.getMultiLabels();
+        this.numClasses = dataSet.getNumClasses();
+        this.scoreMatrix = new ScoreMatrix(dataSet.getNumDataPoints(), numClasses);
+        this.weights = new double[dataSet.getNumDataPoints()];
+        Arrays.fill(weights, 1.0);
+        this.histograms = new ShardHistograms(this.dataSet, true);
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return dataSet.getNumDataPoints();
+    }
+
+    @Override
+    public int[] countLabels() {
+        int[] counts = new int[numClasses];
+        for (MultiLabel multiLabel: multiLabels){
+            for (int matchedClass: multiLabel.getMatchedLabels()){
+                counts[matchedClass] += 1;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public void addRegressor(Regressor regressor, int classIndex) {
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .forEach(i -> scoreMatrix.increment(i, classIndex, regressor.predict(rawDataSet.getRow(i))));
+    }
+
+    double getScore(int dataPointIndex, int classIndex){
+        return scoreMatrix.getScore(dataPointIndex, classIndex);
+    }
+
+    @Override
+    public double[] startTree(int ensembleIndex, int rootId, int maxNumNodes) {
+        return histograms.start(gradients(ensembleIndex), weights, rootId, maxNumNodes);
+    }
+
+    @Override
+    public double[] split(int parentId, int leftId, int rightId, int featureIndex, double threshold,
+                          double leftProb, double rightProb, int histogramNodeId, boolean fullHistogram) {
+        return histograms.split(parentId, leftId, rightId, featureIndex, threshold, leftProb, rightProb,
+                histogramNodeId, fullHistogram);
+    }
+
+    /**
+     * same gradients as {@link IMLGBTrainer}: label minus probability of class k
+     */
+    private double[] gradients(int k){
+        return IntStream.range(0, dataSet.getNumDataPoints()).parallel().mapToDouble(i -> {
+            double score = scoreMatrix.getScore(i, k);
+            double prob = Math.exp(score - MathUtil.logSumExp(new double[]{0, score}));
+            return (multiLabels[i].matchClass(k) ? 1 : 0) - prob;
+        }).toArray();
+    }
+}
@@ -300,7 +300,7 @@ public class IMLGBTrainer {
 
 
     private double calClassProb(int dataPoint, int k){
-        double score = this.scoreMatrix.getScoresForData(dataPoint)[k];
+        double score = this.scoreMatrix.getScore(dataPoint,k);
         double logNumerator = score;
         double[] scores = new double[2];
         scores[0] = 0;
@@ -0,0 +1,25 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.TreeShard;
+
+import java.io.IOException;
+
+/**
+ * a shard of the training rows of {@link DistributedIMLGBTrainer}, local or in another process
+ * the shard keeps its labels and the scores of its rows, and computes the gradients of each class itself
+ */
+public interface IMLGBWorker extends TreeShard {
+
+    int getNumDataPoints() throws IOException;
+
+    /**
+     * @return number of rows of the shard matching each class
+     */
+    int[] countLabels() throws IOException;
+
+    /**
+     * add the predictions of a new regressor of class k to the scores of the shard
+     */
+    void addRegressor(Regressor regressor, int classIndex) throws IOException;
+}
@@ -0,0 +1,161 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.BinaryFormat;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.FlatTrees;
+import edu.neu.ccs.pyramid.util.Serialization;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * serves one shard of {@link DistributedIMLGBTrainer} to a coordinator over a socket,
+ * so that shards can live in separate JVM processes
+ * the server listens on the loopback interface unless another address is given;
+ * requests carry only primitives and {@link FlatTrees} bytes, see {@link RemoteIMLGBWorker}
+ */
+public class IMLGBWorkerServer {
+    private static final Logger logger = LogManager.getLogger();
+    // upper bound on the bytes of one regressor sent by the coordinator
+    private static final int MAX_REGRESSOR_SIZE = 1<<28;
+    private static final int MAX_MESSAGE_LENGTH = 1000;
+
+    /**
+     * args: port, shard in {@link BinaryFormat}, serialized {@link QuantizedDataSet} holding the shared bins,
+     * and optionally the address to listen on, loopback by default
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length!=3 && args.length!=4){
+            throw new IllegalArgumentException("Please specify port, shard file, reference file and optionally bind address");
+        }
+        int port = Integer.parseInt(args[0]);
+        MultiLabelClfDataSet dataSet = BinaryFormat.loadMultiLabelClfDataSet(args[1]);
+        QuantizedDataSet reference = (QuantizedDataSet) Serialization.deserialize(args[2]);
+        InetAddress address = args.length==4 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+        serve(new IMLGBShard(dataSet, reference), address, port);
+    }
+
+    /**
+     * listen on the loopback interface
+     */
+    public static void serve(IMLGBWorker worker, int port) throws IOException {
+        serve(worker, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public static void serve(IMLGBWorker worker, InetAddress address, int port) throws IOException {
+        serve(worker, new ServerSocket(port, 1, address));
+    }
+
+    /**
+     * answer requests of a single coordinator until it closes the connection
+     * the server socket is already bound, so coordinators can connect as soon as this is called; it is closed at the end
+     */
+    public static void serve(IMLGBWorker worker, ServerSocket serverSocket) throws IOException {
+        try (ServerSocket listening = serverSocket;
+             Socket socket = listening.accept()){
+            socket.setTcpNoDelay(true);
+            logger.info("serving coordinator at "+socket.getRemoteSocketAddress());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true){
+                int request;
+                try {
+                    request = in.readInt();
+                } catch (EOFException e){
+                    return;
+                }
+                if (request==RemoteIMLGBWorker.CLOSE){
+                    return;
+                }
+                handle(worker, request, in, out);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * read the arguments of the request, then reply; a failed request does not stop the server
+     */
+    private static void handle(IMLGBWorker worker, int request, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            switch (request){
+                case RemoteIMLGBWorker.NUM_DATA_POINTS:{
+                    int numDataPoints = worker.getNumDataPoints();
+                    out.writeByte(RemoteIMLGBWorker.OK);
+                    out.writeInt(numDataPoints);
+                    return;
+                }
+                case RemoteIMLGBWorker.COUNT_LABELS:{
+                    int[] counts = worker.countLabels();
+                    out.writeByte(RemoteIMLGBWorker.OK);
+                    RemoteIMLGBWorker.writeInts(out, counts);
+                    return;
+                }
+                case RemoteIMLGBWorker.ADD_REGRESSOR:{
+                    int classIndex = in.readInt();
+                    int size = in.readInt();
+                    if (size<0 || size>MAX_REGRESSOR_SIZE){
+                        throw new IOException("invalid regressor size "+size);
+                    }
+                    byte[] bytes = new byte[size];
+                    in.readFully(bytes);
+                    worker.addRegressor(new FlatRegressor(FlatTrees.readFrom(ByteBuffer.wrap(bytes))), classIndex);
+                    out.writeByte(RemoteIMLGBWorker.OK);
+                    return;
+                }
+                case RemoteIMLGBWorker.START_TREE:{
+                    double[] histogram = worker.startTree(in.readInt(), in.readInt(), in.readInt());
+                    out.writeByte(RemoteIMLGBWorker.OK);
+                    RemoteIMLGBWorker.writeDoubles(out, histogram);
+                    return;
+                }
+                case RemoteIMLGBWorker.SPLIT:{
+                    double[] histogram = worker.split(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                            in.readDouble(), in.readDouble(), in.readDouble(), in.readInt(), in.readBoolean());
+                    out.writeByte(RemoteIMLGBWorker.OK);
+                    RemoteIMLGBWorker.writeDoubles(out, histogram);
+                    return;
+                }
+                default:
+                    // the arguments cannot be skipped, so the stream cannot be trusted anymore
+                    throw new IOException("unknown request "+request);
+            }
+        } catch (RuntimeException e){
+            logger.error("request "+request+" failed", e);
+            out.writeByte(RemoteIMLGBWorker.FAILED);
+            String message = String.valueOf(e);
+            out.writeUTF(message.length()>MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+        }
+    }
+
+    /**
+     * a regressor received from the coordinator
+     */
+    private static class FlatRegressor implements Regressor {
+        private static final long serialVersionUID = 1L;
+        private FlatTrees flatTrees;
+
+        FlatRegressor(FlatTrees flatTrees) {
+            this.flatTrees = flatTrees;
+        }
+
+        @Override
+        public double predict(Vector vector) {
+            return flatTrees.predict(vector);
+        }
+
+        @Override
+        public FeatureList getFeatureList() {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
 import edu.neu.ccs.pyramid.dataset.CachedAccessOnlyVector;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.FlatGradientBoosting;
 import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -112,14 +115,31 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
     }
 
 
+    /**
+     * class scores of a block of data points, evaluated tree by tree
+     * the model is compiled on each call; reuse a {@link FlatGradientBoosting} to score many blocks
+     * @param scores scores[k*numClasses+l] is set to the score of class l for rows[k]
+     */
+    public void predictClassScoresBatch(DataSet dataSet, int[] rows, double[] scores){
+        new FlatGradientBoosting(regressors).predictBatch(dataSet, rows, scores);
+    }
+
     double[] predictClassScoresCachedInput(Vector vector){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector);
+        return predictClassScores(cached(vector));
     }
 
     double[] predictClassScoresCachedInput(Vector vector, boolean[] shouldStop){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector, shouldStop);
+        return predictClassScores(cached(vector), shouldStop);
+    }
+
+    /**
+     * only hash-based vectors benefit from the cache
+     */
+    private static Vector cached(Vector vector){
+        if (vector instanceof RandomAccessSparseVector){
+            return new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
+        }
+        return vector;
     }
 
 
@@ -234,6 +254,22 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         }
     }
 
+    /**
+     * compact binary format holding the flattened trees and the label translator, but not the feature list;
+     * read it back with {@link FlatIMLGradientBoosting#deserializeBinary(File)}
+     */
+    public void serializeBinary(File file) throws IOException {
+        try (DataOutputStream out = BinarySerialization.openForWrite(file, FlatIMLGradientBoosting.KIND)){
+            out.writeInt(numClasses);
+            BinarySerialization.writeLabelTranslator(out, labelTranslator);
+            new FlatGradientBoosting(regressors).writeTo(out);
+        }
+    }
+
+    public void serializeBinary(String file) throws IOException {
+        serializeBinary(new File(file));
+    }
+
     @Override
     public FeatureList getFeatureList() {
         return featureList;
@@ -0,0 +1,150 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.FlatTrees;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Collections;
+
+/**
+ * client side of an {@link IMLGBWorkerServer}; one request at a time over one socket
+ * requests and replies are primitives on data streams, regressors are sent as {@link FlatTrees},
+ * so no java object is ever deserialized on either side.
+ * a reply starts with {@link #OK} followed by the result, or {@link #FAILED} followed by an error message
+ */
+public class RemoteIMLGBWorker implements IMLGBWorker, Closeable {
+    static final int NUM_DATA_POINTS = 1;
+    static final int COUNT_LABELS = 2;
+    static final int ADD_REGRESSOR = 3;
+    static final int START_TREE = 4;
+    static final int SPLIT = 5;
+    static final int CLOSE = 6;
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private Socket socket;
+    private DataOutputStream out;
+    private DataInputStream in;
+
+    public RemoteIMLGBWorker(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * @param address host:port
+     */
+    public static RemoteIMLGBWorker connect(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        return new RemoteIMLGBWorker(address.substring(0, colon), Integer.parseInt(address.substring(colon+1)));
+    }
+
+    @Override
+    public synchronized int getNumDataPoints() throws IOException {
+        out.writeInt(NUM_DATA_POINTS);
+        send();
+        return in.readInt();
+    }
+
+    @Override
+    public synchronized int[] countLabels() throws IOException {
+        out.writeInt(COUNT_LABELS);
+        send();
+        return readInts(in);
+    }
+
+    /**
+     * only trees and constants can be sent
+     */
+    @Override
+    public synchronized void addRegressor(Regressor regressor, int classIndex) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream trees = new DataOutputStream(bytes)){
+            new FlatTrees(Collections.singletonList(regressor)).writeTo(trees);
+        }
+        out.writeInt(ADD_REGRESSOR);
+        out.writeInt(classIndex);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        send();
+    }
+
+    @Override
+    public synchronized double[] startTree(int ensembleIndex, int rootId, int maxNumNodes) throws IOException {
+        out.writeInt(START_TREE);
+        out.writeInt(ensembleIndex);
+        out.writeInt(rootId);
+        out.writeInt(maxNumNodes);
+        send();
+        return readDoubles(in);
+    }
+
+    @Override
+    public synchronized double[] split(int parentId, int leftId, int rightId, int featureIndex, double threshold,
+                                       double leftProb, double rightProb, int histogramNodeId,
+                                       boolean fullHistogram) throws IOException {
+        out.writeInt(SPLIT);
+        out.writeInt(parentId);
+        out.writeInt(leftId);
+        out.writeInt(rightId);
+        out.writeInt(featureIndex);
+        out.writeDouble(threshold);
+        out.writeDouble(leftProb);
+        out.writeDouble(rightProb);
+        out.writeInt(histogramNodeId);
+        out.writeBoolean(fullHistogram);
+        send();
+        return readDoubles(in);
+    }
+
+    /**
+     * send the pending request and wait for the status of its reply; the result follows in the stream
+     */
+    private void send() throws IOException {
+        out.flush();
+        if (in.readByte()==FAILED){
+            throw new IOException("worker at "+socket.getRemoteSocketAddress()+" failed: "+in.readUTF());
+        }
+    }
+
+    /**
+     * also stops the server
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.writeInt(CLOSE);
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+
+    static void writeInts(DataOutputStream out, int[] array) throws IOException {
+        BinarySerialization.writeInts(out, array);
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] array = new int[in.readInt()];
+        for (int k=0;k<array.length;k++){
+            array[k] = in.readInt();
+        }
+        return array;
+    }
+
+    static void writeDoubles(DataOutputStream out, double[] array) throws IOException {
+        BinarySerialization.writeDoubles(out, array);
+    }
+
+    static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] array = new double[in.readInt()];
+        for (int k=0;k<array.length;k++){
+            array[k] = in.readDouble();
+        }
+        return array;
+    }
+}
@@ -0,0 +1,61 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * Kingma, Diederik, and Jimmy Ba.
+ * "Adam: A method for stochastic optimization."
+ * arXiv preprint arXiv:1412.6980 (2014).
+ * steps are invariant to the scale of the objective, so the default learning rate works for any data set size
+ */
+public class Adam extends StochasticOptimizer{
+    private double learningRate = 0.001;
+    private double beta1 = 0.9;
+    private double beta2 = 0.999;
+    private double epsilon = 1E-8;
+    // first and second moment estimates
+    private double[] firstMoments;
+    private double[] secondMoments;
+    private int numUpdates = 0;
+
+    public Adam(Optimizable.ByMiniBatchGradient function) {
+        super(function);
+        int numParameters = function.getParameters().size();
+        this.firstMoments = new double[numParameters];
+        this.secondMoments = new double[numParameters];
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    public void setBeta1(double beta1) {
+        this.beta1 = beta1;
+    }
+
+    public void setBeta2(double beta2) {
+        this.beta2 = beta2;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    protected void update(int[] batch) {
+        Vector gradient = function.getBatchGradient(batch);
+        numUpdates += 1;
+        // bias corrections
+        double correction1 = 1-Math.pow(beta1, numUpdates);
+        double correction2 = 1-Math.pow(beta2, numUpdates);
+        for (int j=0;j<parameters.length;j++){
+            double g = gradient.getQuick(j);
+            firstMoments[j] = beta1*firstMoments[j] + (1-beta1)*g;
+            secondMoments[j] = beta2*secondMoments[j] + (1-beta2)*g*g;
+            double m = firstMoments[j]/correction1;
+            double v = secondMoments[j]/correction2;
+            parameters[j] -= learningRate*m/(Math.sqrt(v)+epsilon);
+        }
+        commitParameters();
+    }
+}
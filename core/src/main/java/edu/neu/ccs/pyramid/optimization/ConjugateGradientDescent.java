@@ -29,7 +29,8 @@ public class ConjugateGradientDescent extends GradientValueOptimizer implements
         double beta = newGradient.dot(newGradient)/oldGradient.dot(oldGradient);
         Vector newP = oldP.times(beta).minus(newGradient);
         oldP = newP;
-        oldGradient = newGradient;
+        // losses may reuse the gradient buffer; keep a copy
+        oldGradient = new DenseVector(newGradient);
         terminator.add(function.getValue());
     }
 
@@ -5,9 +5,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 
 /**
  * Numerical Optimization, Second Edition, Jorge Nocedal Stephen J. Wright
@@ -25,9 +22,18 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
      * history length;
      */
     private double m = 5;
-    private LinkedList<Vector> sQueue;
-    private LinkedList<Vector> yQueue;
-    private LinkedList<Double> rhoQueue;
+    // ring buffers of the last m steps and gradient changes, allocated at the first iteration
+    // history i (0 = oldest) is stored at row (historyStart+i)%capacity
+    private double[][] sHistory;
+    private double[][] yHistory;
+    private double[] rhoHistory;
+    private int historyStart = 0;
+    private int historySize = 0;
+    // work buffers, reused across iterations
+    private double[] oldGradient;
+    private double[] q;
+    private double[] r;
+    private double[] alphas;
 
 
 
@@ -35,10 +41,6 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
         super(function);
         this.lineSearcher = new BackTrackingLineSearcher(function);
         lineSearcher.setInitialStepLength(1);
-        this.sQueue = new LinkedList<>();
-        this.yQueue = new LinkedList<>();
-        this.rhoQueue = new LinkedList<>();
-
     }
 
     public BackTrackingLineSearcher getLineSearcher() {
@@ -46,9 +48,24 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
     }
 
     private void reset(){
-        this.sQueue = new LinkedList<>();
-        this.yQueue = new LinkedList<>();
-        this.rhoQueue = new LinkedList<>();
+        this.historyStart = 0;
+        this.historySize = 0;
+    }
+
+    private void allocate(int numParameters){
+        int capacity = (int) m;
+        this.sHistory = new double[capacity][numParameters];
+        this.yHistory = new double[capacity][numParameters];
+        this.rhoHistory = new double[capacity];
+        this.oldGradient = new double[numParameters];
+        this.q = new double[numParameters];
+        this.r = new double[numParameters];
+        this.alphas = new double[capacity];
+        reset();
+    }
+
+    private int row(int history){
+        return (historyStart+history)%sHistory.length;
     }
 
 
@@ -56,19 +73,40 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
         if (logger.isDebugEnabled()){
             logger.debug("start one iteration");
         }
+        Vector gradient = function.getGradient();
+        if (sHistory==null || oldGradient.length!=gradient.size()){
+            allocate(gradient.size());
+        }
 
         // we need to make a copy of the gradient; should not use pointer
-        Vector oldGradient = new DenseVector(function.getGradient());
+        for (int j=0;j<oldGradient.length;j++){
+            oldGradient[j] = gradient.getQuick(j);
+        }
         Vector direction = findDirection();
         if (logger.isDebugEnabled()){
             logger.debug("norm of direction = "+direction.norm(2));
         }
         BackTrackingLineSearcher.MoveInfo moveInfo = lineSearcher.moveAlongDirection(direction);
 
-        Vector s = moveInfo.getStep();
+        // the new pair goes to the oldest row once the history is full
+        int newRow;
+        if (historySize<sHistory.length){
+            newRow = row(historySize);
+            historySize += 1;
+        } else {
+            newRow = historyStart;
+            historyStart = (historyStart+1)%sHistory.length;
+        }
+        double[] s = sHistory[newRow];
+        double[] y = yHistory[newRow];
+        Vector step = moveInfo.getStep();
         Vector newGradient = function.getGradient();
-        Vector y = newGradient.minus(oldGradient);
-        double denominator = y.dot(s);
+        double denominator = 0;
+        for (int j=0;j<s.length;j++){
+            s[j] = step.getQuick(j);
+            y[j] = newGradient.getQuick(j) - oldGradient[j];
+            denominator += y[j]*s[j];
+        }
 
         //todo what to do if denominator is not positive?
         // round-off errors and an ill-conditioned inverse Hessian
@@ -88,24 +126,17 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
 //            reset();
 //            return;
         }
+        rhoHistory[newRow] = rho;
 
 
         if (logger.isDebugEnabled()){
-            if (y.size()<100){
-                logger.debug("y= "+y);
-                logger.debug("s= " + s);
+            if (y.length<100){
+                logger.debug("y= "+new DenseVector(y));
+                logger.debug("s= " + new DenseVector(s));
             }
             logger.debug("denominator = "+denominator);
             logger.debug("rho = "+rho);
         }
-        sQueue.add(s);
-        yQueue.add(y);
-        rhoQueue.add(rho);
-        if (sQueue.size()>m){
-            sQueue.remove();
-            yQueue.remove();
-            rhoQueue.remove();
-        }
         double value = function.getValue();
         terminator.add(value);
         if (logger.isDebugEnabled()){
@@ -113,8 +144,15 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
         }
     }
 
+    /**
+     * two-loop recursion over the ring buffers, without allocating vectors
+     * @return a view of a work buffer, overwritten by the next call
+     */
     Vector findDirection(){
         Vector g = function.getGradient();
+        if (sHistory==null || q.length!=g.size()){
+            allocate(g.size());
+        }
         // todo
 //        if (rhoQueue.size()==0){
 //            if (logger.isDebugEnabled()){
@@ -123,42 +161,41 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
 //            return g.times(-1);
 //        }
 
-        //using dense vector is much faster
-        Vector q = new DenseVector(g.size());
-        q.assign(g);
-        Iterator<Double> rhoDesIterator = rhoQueue.descendingIterator();
-        Iterator<Vector> sDesIterator = sQueue.descendingIterator();
-        Iterator<Vector> yDesIterator = yQueue.descendingIterator();
-
-        LinkedList<Double> alphaQueue = new LinkedList<>();
+        for (int j=0;j<q.length;j++){
+            q[j] = g.getQuick(j);
+        }
 
-        while(rhoDesIterator.hasNext()){
-            double rho = rhoDesIterator.next();
-            Vector s = sDesIterator.next();
-            Vector y = yDesIterator.next();
-            double alpha = s.dot(q) * rho;
-            alphaQueue.addFirst(alpha);
-            //seems no need to use "assign"
-            q = q.minus(y.times(alpha));
+        // newest to oldest
+        for (int h=historySize-1;h>=0;h--){
+            int row = row(h);
+            double alpha = dot(sHistory[row], q) * rhoHistory[row];
+            alphas[h] = alpha;
+            double[] y = yHistory[row];
+            for (int j=0;j<q.length;j++){
+                q[j] -= alpha*y[j];
+            }
         }
 
         double gamma = gamma();
         //use H_k^0 = gamma I
-        Vector r = q.times(gamma);
-        Iterator<Double> rhoIterator = rhoQueue.iterator();
-        Iterator<Vector> sIterator = sQueue.iterator();
-        Iterator<Vector> yIterator = yQueue.iterator();
-        Iterator<Double> alphaIterator = alphaQueue.iterator();
-        while(rhoIterator.hasNext()){
-            double rho = rhoIterator.next();
-            Vector s = sIterator.next();
-            Vector y = yIterator.next();
-            double alpha = alphaIterator.next();
-            double beta = y.dot(r) * rho;
-            r = r.plus(s.times(alpha - beta));
-        }
-
-        return r.times(-1);
+        for (int j=0;j<r.length;j++){
+            r[j] = gamma*q[j];
+        }
+        // oldest to newest
+        for (int h=0;h<historySize;h++){
+            int row = row(h);
+            double beta = dot(yHistory[row], r) * rhoHistory[row];
+            double[] s = sHistory[row];
+            double coefficient = alphas[h] - beta;
+            for (int j=0;j<r.length;j++){
+                r[j] += coefficient*s[j];
+            }
+        }
+
+        for (int j=0;j<r.length;j++){
+            r[j] = -r[j];
+        }
+        return new DenseVector(r, true);
     }
 
     /**
@@ -166,20 +203,34 @@ public class LBFGS extends GradientValueOptimizer implements Optimizer{
      * @return
      */
     double gamma(){
-        if (sQueue.isEmpty()){
+        if (historySize==0){
             return 1;
         }
-        Vector s = sQueue.getLast();
-        Vector y = yQueue.getLast();
-        double denominator = y.dot(y);
+        int newest = row(historySize-1);
+        double[] s = sHistory[newest];
+        double[] y = yHistory[newest];
+        double denominator = dot(y, y);
         if (denominator<=0){
             return 1;
         }
-        return (s.dot(y)) / (y.dot(y));
+        return dot(s, y) / denominator;
+    }
+
+    private static double dot(double[] a, double[] b){
+        double sum = 0;
+        for (int j=0;j<a.length;j++){
+            sum += a[j]*b[j];
+        }
+        return sum;
     }
 
     public void setHistory(double m) {
+        if (m<1){
+            throw new IllegalArgumentException("history length should be >= 1");
+        }
         this.m = m;
+        // buffers are resized at the next iteration
+        this.sHistory = null;
     }
 
 
@@ -20,6 +20,10 @@ public interface Optimizable{
     }
 
     public interface ByGradient extends Optimizable {
+        /**
+         * the returned vector may be a view of a buffer that the next call overwrites
+         * (e.g. after setParameters); callers that keep a gradient across parameter changes should copy it
+         */
         Vector getGradient();
     }
 
@@ -27,4 +31,20 @@ public interface Optimizable{
 
     }
 
+    /**
+     * an objective that is a sum over data points plus a penalty,
+     * whose gradient can also be estimated from a mini-batch of data points
+     */
+    public interface ByMiniBatchGradient extends ByGradientValue{
+        int getNumDataPoints();
+
+        /**
+         * unbiased estimate of getGradient() at the current parameters:
+         * the gradient over the given data points, scaled by numDataPoints/batch size, plus the full penalty gradient.
+         * the returned vector may be reused, and overwritten by the next call
+         * @param dataPoints indices of the data points in the batch
+         */
+        Vector getBatchGradient(int[] dataPoints);
+    }
+
 }
@@ -0,0 +1,43 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * mini-batch stochastic gradient descent with momentum
+ * the batch gradients estimate the gradient of the full objective (a sum over data points),
+ * so the learning rate should shrink as the data set grows
+ */
+public class SGD extends StochasticOptimizer{
+    private double learningRate = 0.01;
+    private double momentum = 0.9;
+    private double[] velocity;
+
+    public SGD(Optimizable.ByMiniBatchGradient function) {
+        super(function);
+        this.velocity = new double[function.getParameters().size()];
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * 0 for plain stochastic gradient descent
+     */
+    public void setMomentum(double momentum) {
+        if (momentum<0 || momentum>=1){
+            throw new IllegalArgumentException("momentum should be in [0,1)");
+        }
+        this.momentum = momentum;
+    }
+
+    @Override
+    protected void update(int[] batch) {
+        Vector gradient = function.getBatchGradient(batch);
+        for (int j=0;j<parameters.length;j++){
+            velocity[j] = momentum*velocity[j] - learningRate*gradient.getQuick(j);
+            parameters[j] += velocity[j];
+        }
+        commitParameters();
+    }
+}
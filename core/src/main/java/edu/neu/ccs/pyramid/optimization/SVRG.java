@@ -0,0 +1,55 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+/**
+ * stochastic variance reduced gradient
+ * at the start of every epoch, the parameters are snapshotted and the full gradient is computed there;
+ * each batch gradient is then corrected by the same batch's gradient at the snapshot.
+ * Johnson, Rie, and Tong Zhang.
+ * "Accelerating stochastic gradient descent using predictive variance reduction."
+ * Advances in neural information processing systems. 2013.
+ */
+public class SVRG extends StochasticOptimizer{
+    private double learningRate = 0.01;
+    private double[] snapshot;
+    private Vector snapshotVector;
+    private double[] fullGradient;
+    // the function may overwrite a batch gradient with the next one
+    private double[] batchGradient;
+
+    public SVRG(Optimizable.ByMiniBatchGradient function) {
+        super(function);
+        this.snapshot = new double[parameters.length];
+        this.snapshotVector = new DenseVector(snapshot, true);
+        this.fullGradient = new double[parameters.length];
+        this.batchGradient = new double[parameters.length];
+    }
+
+    /**
+     * the batch gradients estimate the gradient of the full objective (a sum over data points),
+     * so the learning rate should shrink as the data set grows
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    @Override
+    protected void beginEpoch() {
+        System.arraycopy(parameters, 0, snapshot, 0, parameters.length);
+        copy(function.getGradient(), fullGradient);
+    }
+
+    @Override
+    protected void update(int[] batch) {
+        copy(function.getBatchGradient(batch), batchGradient);
+        function.setParameters(snapshotVector);
+        Vector snapshotGradient = function.getBatchGradient(batch);
+        for (int j=0;j<parameters.length;j++){
+            double corrected = batchGradient[j] - snapshotGradient.getQuick(j) + fullGradient[j];
+            parameters[j] -= learningRate*corrected;
+        }
+        commitParameters();
+    }
+}
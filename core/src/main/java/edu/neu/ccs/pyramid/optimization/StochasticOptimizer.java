@@ -0,0 +1,148 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * mini-batch optimizer
+ * one iteration is one epoch: a pass over a random permutation of the data points, one update per batch.
+ * the full objective is only evaluated once per epoch, for the terminator
+ */
+public abstract class StochasticOptimizer implements Optimizer{
+    private static final Logger logger = LogManager.getLogger();
+    protected Optimizable.ByMiniBatchGradient function;
+    protected Terminator terminator;
+    private int batchSize = 128;
+    private Random random;
+    private int[] permutation;
+    private int numEpochs = 0;
+    // updated in place; the function holds a view of this buffer, set again after every update
+    protected double[] parameters;
+    private Vector parameterVector;
+
+    public StochasticOptimizer(Optimizable.ByMiniBatchGradient function) {
+        this.function = function;
+        this.parameters = new double[function.getParameters().size()];
+        this.parameterVector = new DenseVector(parameters, true);
+        this.terminator = new Terminator();
+        this.terminator.setGoal(Terminator.Goal.MINIMIZE);
+        this.random = new Random(0);
+        this.permutation = IntStream.range(0, function.getNumDataPoints()).toArray();
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize<1){
+            throw new IllegalArgumentException("batchSize should be >= 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setSeed(long seed){
+        this.random = new Random(seed);
+    }
+
+    public int getNumEpochs() {
+        return numEpochs;
+    }
+
+    @Override
+    public void optimize() {
+        while(true){
+            iterate();
+            if (terminator.shouldTerminate()){
+                break;
+            }
+        }
+    }
+
+    /**
+     * stop when the terminator or the early stopper says so
+     * @param earlyStopper fed with the validation measure after every epoch
+     * @param validationMeasure
+     */
+    public void optimize(EarlyStopper earlyStopper, DoubleSupplier validationMeasure){
+        while(true){
+            iterate();
+            earlyStopper.add(numEpochs, validationMeasure.getAsDouble());
+            if (terminator.shouldTerminate() || earlyStopper.shouldStop()){
+                break;
+            }
+        }
+    }
+
+    /**
+     * one epoch
+     * the parameters are read from the function once, so changes made between epochs are picked up
+     */
+    public void iterate(){
+        copy(function.getParameters(), parameters);
+        beginEpoch();
+        shuffle();
+        for (int start=0;start<permutation.length;start+=batchSize){
+            int end = Math.min(start+batchSize, permutation.length);
+            update(Arrays.copyOfRange(permutation, start, end));
+        }
+        numEpochs += 1;
+        double value = function.getValue();
+        if (logger.isDebugEnabled()){
+            logger.debug("epoch "+numEpochs+", objective = "+value);
+        }
+        terminator.add(value);
+    }
+
+    @Override
+    public double getFinalObjective() {
+        return this.terminator.getLastValue();
+    }
+
+    @Override
+    public Terminator getTerminator() {
+        return this.terminator;
+    }
+
+    /**
+     * called at the start of every epoch, before any update
+     */
+    protected void beginEpoch(){
+
+    }
+
+    /**
+     * one update from a mini-batch
+     */
+    protected abstract void update(int[] batch);
+
+    /**
+     * hand the updated parameters to the function, which invalidates its caches;
+     * no vector is allocated per batch
+     */
+    protected void commitParameters(){
+        function.setParameters(parameterVector);
+    }
+
+    protected static void copy(Vector vector, double[] array){
+        for (int j=0;j<array.length;j++){
+            array[j] = vector.getQuick(j);
+        }
+    }
+
+    private void shuffle(){
+        for (int i=permutation.length-1;i>0;i--){
+            int j = random.nextInt(i+1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+    }
+}
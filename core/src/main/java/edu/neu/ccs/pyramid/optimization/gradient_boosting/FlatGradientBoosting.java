@@ -0,0 +1,139 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.FlatTrees;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
+import org.apache.mahout.math.Vector;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * scoring-only copy of a {@link GradientBoosting} model with every ensemble compiled into {@link FlatTrees}
+ * scores are bit-identical to the original model; the model is not updated by later training
+ */
+public class FlatGradientBoosting implements Serializable{
+    private static final long serialVersionUID = 1L;
+    // data points per block in batch prediction
+    static final int BLOCK_SIZE = 1024;
+    private int numEnsembles;
+    private FlatTrees[] ensembles;
+
+    public FlatGradientBoosting(GradientBoosting boosting) {
+        this.numEnsembles = boosting.getNumEnsembles();
+        this.ensembles = new FlatTrees[numEnsembles];
+        for (int k=0;k<numEnsembles;k++){
+            ensembles[k] = new FlatTrees(boosting.getEnsemble(k).getRegressors());
+        }
+    }
+
+    /**
+     * @param regressors regressors of each ensemble
+     */
+    public FlatGradientBoosting(List<List<Regressor>> regressors) {
+        this.numEnsembles = regressors.size();
+        this.ensembles = new FlatTrees[numEnsembles];
+        for (int k=0;k<numEnsembles;k++){
+            ensembles[k] = new FlatTrees(regressors.get(k));
+        }
+    }
+
+    private FlatGradientBoosting() {
+    }
+
+    public int getNumEnsembles() {
+        return numEnsembles;
+    }
+
+    public FlatTrees getEnsemble(int ensembleIndex){
+        return ensembles[ensembleIndex];
+    }
+
+    public double score(Vector vector, int ensembleIndex){
+        return ensembles[ensembleIndex].predict(vector);
+    }
+
+    public double[] scores(Vector vector){
+        double[] scores = new double[numEnsembles];
+        scores(vector, scores);
+        return scores;
+    }
+
+    /**
+     * write the scores of all ensembles into a caller-supplied buffer
+     */
+    public void scores(Vector vector, double[] scores){
+        for (int k=0;k<numEnsembles;k++){
+            scores[k] = ensembles[k].predict(vector);
+        }
+    }
+
+    /**
+     * scores of a block of data points, evaluated tree by tree
+     * @param scores scores[k*numEnsembles+e] is set to the score of ensemble e for rows[k]
+     */
+    public void predictBatch(DataSet dataSet, int[] rows, double[] scores){
+        predictBatch(dataSet, rows, 0, rows.length, scores, 0);
+    }
+
+    /**
+     * scores of all data points; blocks of data points are processed in parallel
+     * @param scores scores[i*numEnsembles+e] is set to the score of ensemble e for data point i
+     */
+    public void predictBatch(DataSet dataSet, double[] scores){
+        int numDataPoints = dataSet.getNumDataPoints();
+        int[] rows = IntStream.range(0, numDataPoints).toArray();
+        int numBlocks = (numDataPoints + BLOCK_SIZE - 1)/BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            int start = b*BLOCK_SIZE;
+            int end = Math.min(numDataPoints, start + BLOCK_SIZE);
+            predictBatch(dataSet, rows, start, end, scores, start*numEnsembles);
+        });
+    }
+
+    private void predictBatch(DataSet dataSet, int[] rows, int start, int end, double[] scores, int offset){
+        Vector[] vectors = new Vector[end-start];
+        for (int k=start;k<end;k++){
+            vectors[k-start] = dataSet.getRow(rows[k]);
+        }
+        for (int e=0;e<numEnsembles;e++){
+            ensembles[e].predictBatch(vectors, scores, offset + e, numEnsembles);
+        }
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(numEnsembles);
+        for (FlatTrees ensemble: ensembles){
+            ensemble.writeTo(out);
+        }
+    }
+
+    public static FlatGradientBoosting readFrom(ByteBuffer buffer){
+        FlatGradientBoosting boosting = new FlatGradientBoosting();
+        boosting.numEnsembles = buffer.getInt();
+        boosting.ensembles = new FlatTrees[boosting.numEnsembles];
+        for (int k=0;k<boosting.numEnsembles;k++){
+            boosting.ensembles[k] = FlatTrees.readFrom(buffer);
+        }
+        return boosting;
+    }
+
+    /**
+     * compact binary format, see {@link BinarySerialization}
+     */
+    public void serializeBinary(File file) throws IOException {
+        try (DataOutputStream out = BinarySerialization.openForWrite(file, "FlatGradientBoosting")){
+            writeTo(out);
+        }
+    }
+
+    public static FlatGradientBoosting deserializeBinary(File file) throws IOException {
+        return readFrom(BinarySerialization.openForRead(file, "FlatGradientBoosting"));
+    }
+}
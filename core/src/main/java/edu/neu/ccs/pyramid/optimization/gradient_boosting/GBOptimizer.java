@@ -1,15 +1,18 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.ExternalQuantizedDataSet;
 import edu.neu.ccs.pyramid.dataset.GradientMatrix;
 import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.RegressorFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.FlatTrees;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
 import org.apache.mahout.math.Vector;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.stream.IntStream;
 
 /**
@@ -25,6 +28,7 @@ public abstract class GBOptimizer {
     protected boolean isInitialized;
     protected double shrinkage = 1;
     protected int[][] monotonicity=null;
+    protected RowSampler rowSampler = RowSampler.none();
 
 
     protected GBOptimizer(GradientBoosting boosting, DataSet dataSet,  RegressorFactory factory, double[] weights) {
@@ -43,6 +47,13 @@ public abstract class GBOptimizer {
         this.monotonicity = monotonicity;
     }
 
+    /**
+     * rows used by each tree; all rows by default
+     */
+    public void setRowSampler(RowSampler rowSampler) {
+        this.rowSampler = rowSampler;
+    }
+
     /**
      * model specific initialization
      * should be called after constructor
@@ -67,13 +78,17 @@ public abstract class GBOptimizer {
      */
     protected abstract void initializeOthers();
 
+    /**
+     * the tree is fit on the rows chosen by the row sampler; scores are still updated for all rows
+     */
     protected Regressor fitRegressor(int ensembleIndex){
         double[] gradients = gradient(ensembleIndex);
+        double[] sampleWeights = rowSampler.sample(weights, gradients);
         Regressor regressor;
         if (monotonicity==null){
-            regressor = factory.fit(dataSet,gradients, weights);
+            regressor = factory.fit(dataSet,gradients, sampleWeights);
         } else {
-            regressor = ((RegTreeFactory) factory).fit(dataSet, gradients, weights, monotonicity[ensembleIndex]);
+            regressor = ((RegTreeFactory) factory).fit(dataSet, gradients, sampleWeights, monotonicity[ensembleIndex]);
         }
         return regressor;
     }
@@ -92,10 +107,38 @@ public abstract class GBOptimizer {
         this.scoreMatrix.increment(dataIndex,ensembleIndex,score);
     }
 
+    /**
+     * the regressor is compiled once and evaluated over blocks of data points in parallel
+     * an external data set is streamed from disk one stored block at a time
+     */
     protected void updateStagedScores(Regressor regressor, int ensembleIndex){
-        int numDataPoints = dataSet.getNumDataPoints();
-        IntStream.range(0, numDataPoints).parallel()
-                .forEach(dataIndex -> this.updateStagedScore(regressor,ensembleIndex,dataIndex));
+        FlatTrees flatTrees = new FlatTrees(Collections.singletonList(regressor));
+        if (dataSet instanceof ExternalQuantizedDataSet){
+            ((ExternalQuantizedDataSet) dataSet).forEachBlock((block, blockStart) ->
+                    addScores(flatTrees, ensembleIndex, block, blockStart));
+        } else {
+            addScores(flatTrees, ensembleIndex, dataSet, 0);
+        }
+    }
+
+    /**
+     * rows holds data points [offset, offset+rows.getNumDataPoints())
+     */
+    private void addScores(FlatTrees flatTrees, int ensembleIndex, DataSet rows, int offset){
+        int numDataPoints = rows.getNumDataPoints();
+        int blockSize = FlatGradientBoosting.BLOCK_SIZE;
+        int numBlocks = (numDataPoints + blockSize - 1)/blockSize;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            int start = b*blockSize;
+            int end = Math.min(numDataPoints, start + blockSize);
+            Vector[] vectors = new Vector[end-start];
+            for (int i=start;i<end;i++){
+                vectors[i-start] = rows.getRow(i);
+            }
+            double[] scores = new double[end-start];
+            flatTrees.predictBatch(vectors, scores, 0, 1);
+            this.scoreMatrix.incrementForClass(ensembleIndex, offset+start, scores);
+        });
     }
 
     public void iterate(){
@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import org.apache.mahout.math.Vector;
 
@@ -46,6 +47,15 @@ public class GradientBoosting implements Serializable{
         return scores;
     }
 
+    /**
+     * scores of all data points, evaluated tree by tree over blocks of data points
+     * the model is compiled on each call; keep a {@link FlatGradientBoosting} to score many times
+     * @param scores scores[i*numEnsembles+k] is set to the score of ensemble k for data point i
+     */
+    public void predictBatch(DataSet dataSet, double[] scores){
+        new FlatGradientBoosting(this).predictBatch(dataSet, scores);
+    }
+
     public FeatureList getFeatureList() {
         return featureList;
     }
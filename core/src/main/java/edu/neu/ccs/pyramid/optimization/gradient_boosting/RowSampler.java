@@ -0,0 +1,145 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * per-tree row sampling for gradient boosting
+ * a sample is returned as instance weights; rows left out get weight 0,
+ * and histogram tree trainers never visit data points with weight 0.
+ *
+ * bagging keeps each row with a fixed probability.
+ * GOSS (gradient-based one-side sampling) keeps the rows with the largest absolute gradients,
+ * and samples the other rows uniformly, scaling up their weights to keep gradient sums unbiased.
+ */
+public class RowSampler {
+    public enum Type {
+        NONE, BAGGING, GOSS
+    }
+
+    private Type type;
+    // bagging
+    private double fraction;
+    // GOSS: fractions of all rows taken by largest gradient and by uniform sampling
+    private double topFraction;
+    private double otherFraction;
+    private Random random;
+
+    private RowSampler(Type type, long randomSeed) {
+        this.type = type;
+        this.random = new Random(randomSeed);
+    }
+
+    public static RowSampler none(){
+        return new RowSampler(Type.NONE, 0);
+    }
+
+    /**
+     * @param fraction probability of keeping each row
+     */
+    public static RowSampler bagging(double fraction, long randomSeed){
+        if (fraction<=0 || fraction>1){
+            throw new IllegalArgumentException("fraction should be in (0,1]");
+        }
+        RowSampler sampler = new RowSampler(Type.BAGGING, randomSeed);
+        sampler.fraction = fraction;
+        return sampler;
+    }
+
+    /**
+     * @param topFraction fraction of rows kept for their large gradients, e.g. 0.2
+     * @param otherFraction fraction of rows sampled among the others, e.g. 0.1
+     */
+    public static RowSampler goss(double topFraction, double otherFraction, long randomSeed){
+        if (topFraction<0 || otherFraction<=0 || topFraction+otherFraction>1){
+            throw new IllegalArgumentException("fractions should be non-negative and sum to at most 1");
+        }
+        RowSampler sampler = new RowSampler(Type.GOSS, randomSeed);
+        sampler.topFraction = topFraction;
+        sampler.otherFraction = otherFraction;
+        return sampler;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @param weights instance weights of all rows; not modified
+     * @param gradients the targets of the next tree
+     * @return weights of the sampled rows, 0 for other rows
+     */
+    public double[] sample(double[] weights, double[] gradients){
+        switch (type){
+            case BAGGING:
+                return bagging(weights);
+            case GOSS:
+                return goss(weights, gradients);
+            default:
+                return weights;
+        }
+    }
+
+    private double[] bagging(double[] weights){
+        double[] sampled = new double[weights.length];
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]>0 && random.nextDouble()<fraction){
+                sampled[i] = weights[i];
+            }
+        }
+        return sampled;
+    }
+
+    private double[] goss(double[] weights, double[] gradients){
+        int numActive = 0;
+        for (double weight: weights){
+            if (weight>0){
+                numActive += 1;
+            }
+        }
+        double[] magnitudes = new double[numActive];
+        int k = 0;
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]>0){
+                magnitudes[k] = Math.abs(gradients[i]);
+                k += 1;
+            }
+        }
+        int numTop = (int)Math.ceil(topFraction*numActive);
+        double[] sampled = new double[weights.length];
+        if (numTop>=numActive){
+            System.arraycopy(weights, 0, sampled, 0, weights.length);
+            return sampled;
+        }
+        // the numTop-th largest magnitude; ties at the threshold are taken in row order
+        double threshold = Double.POSITIVE_INFINITY;
+        int numAboveThreshold = 0;
+        if (numTop>0){
+            Arrays.parallelSort(magnitudes);
+            threshold = magnitudes[numActive-numTop];
+            for (int t=numActive-numTop;t<numActive;t++){
+                if (magnitudes[t]>threshold){
+                    numAboveThreshold += 1;
+                }
+            }
+        }
+        int numTiesToTake = numTop - numAboveThreshold;
+        double keepProb = otherFraction/(1-topFraction);
+        double amplification = (1-topFraction)/otherFraction;
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]<=0){
+                continue;
+            }
+            double magnitude = Math.abs(gradients[i]);
+            if (magnitude>threshold){
+                sampled[i] = weights[i];
+            } else if (magnitude==threshold && numTiesToTake>0){
+                sampled[i] = weights[i];
+                numTiesToTake -= 1;
+            } else if (random.nextDouble()<keepProb){
+                sampled[i] = weights[i]*amplification;
+            }
+        }
+        return sampled;
+    }
+}
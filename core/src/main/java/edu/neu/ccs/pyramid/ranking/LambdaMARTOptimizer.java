@@ -1,15 +1,22 @@
 package edu.neu.ccs.pyramid.ranking;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
-import edu.neu.ccs.pyramid.eval.NDCG;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GBOptimizer;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GradientBoosting;
 import edu.neu.ccs.pyramid.regression.RegressorFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.LeafOutputCalculator;
+import edu.neu.ccs.pyramid.util.ArgSort;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+/**
+ * lambda gradients of NDCG
+ * each query is sorted once per iteration; gains and ideal DCG only depend on the relevance grades and are cached,
+ * so |delta NDCG| of swapping two documents is computed in O(1) from their rank positions.
+ * only pairs with at least one document above the truncation level change NDCG,
+ * which makes the cost per query O(n log n + n * truncation)
+ */
 public class LambdaMARTOptimizer extends GBOptimizer {
     private double[] relevanceGrades;
     private int ndcgTruncationLevel=10;
@@ -18,61 +25,108 @@ public class LambdaMARTOptimizer extends GBOptimizer {
     private List<List<Integer>> instanceIdsInEachQuery;
     private int numQueries;
 
+    // 2^grade-1 of each data point
+    private double[] gains;
+    // ideal dcg of each query, at the truncation level
+    private double[] idealDCGs;
+    // 1/log2(rank+2), rank starts at 0
+    private double[] discounts;
+    // second derivatives of the last gradient computation, in data set order
+    private double[] hessians;
+
 
     public LambdaMARTOptimizer(LambdaMART lambdaMART, DataSet dataSet, double[] relevanceGrades, RegressorFactory factory, List<List<Integer>> instanceIdsInEachQuery) {
         super(lambdaMART, dataSet, factory);
         this.relevanceGrades = relevanceGrades;
         this.instanceIdsInEachQuery = instanceIdsInEachQuery;
         this.numQueries = instanceIdsInEachQuery.size();
+        this.gains = new double[relevanceGrades.length];
+        for (int i=0;i<gains.length;i++){
+            gains[i] = Math.pow(2, relevanceGrades[i])-1;
+        }
+        this.hessians = new double[dataSet.getNumDataPoints()];
+        cacheIdealDCGs();
     }
 
     public void setNdcgTruncationLevel(int ndcgTruncationLevel) {
         this.ndcgTruncationLevel = ndcgTruncationLevel;
+        cacheIdealDCGs();
     }
 
-    private List<Integer> instancesForQuery(int queryId){
-        return instanceIdsInEachQuery.get(queryId);
+    /**
+     * second derivatives of the loss with respect to the scores, from the last call of {@link #gradient(int)}
+     */
+    public double[] getHessians() {
+        return hessians;
     }
 
-    // calculate gradients for all instances in a query
-    private double gradientForInstanceInQuery(double[] predictedScores, double[] relevance, int dataIndexInQuery){
-        double grade = relevance[dataIndexInQuery];
-        double score = predictedScores[dataIndexInQuery];
-        double gradient = 0;
-        //todo times ndcg delta
-        for (int i=0;i<relevance.length;i++){
-            if (grade>relevance[i]){
-                gradient += 1.0/(1+Math.exp(score - predictedScores[i]))*delta(predictedScores,relevance, dataIndexInQuery, i, ndcgTruncationLevel);
-            }
+    /**
+     * Newton step leaf outputs, sum of lambdas / sum of lambda hessians;
+     * set it on the regression tree factory of this optimizer
+     */
+    public LeafOutputCalculator newtonOutputCalculator(){
+        return new LambdaMARTOutputCalculator(this);
+    }
 
-            if (grade< relevance[i]){
-                gradient -= 1.0/(1+Math.exp(predictedScores[i]- score))*delta(predictedScores,relevance, dataIndexInQuery, i, ndcgTruncationLevel);
-            }
-        }
-        return gradient;
+    private List<Integer> instancesForQuery(int queryId){
+        return instanceIdsInEachQuery.get(queryId);
     }
 
-    private double delta(double[] predictedScores, double[] relevance, int data1, int data2, int truncation){
-        double ndcg = NDCG.ndcg(relevance,predictedScores,truncation);
-        double[] swapped = Arrays.copyOf(relevance, relevance.length);
-        double data1Rel = relevance[data1];
-        double data2Rel = relevance[data2];
-        swapped[data1] = data2Rel;
-        swapped[data2] = data1Rel;
-        double swappedNDCG = NDCG.ndcg(swapped, predictedScores, truncation);
-        return Math.abs(swappedNDCG-ndcg);
+    private void cacheIdealDCGs(){
+        int maxQuerySize = instanceIdsInEachQuery.stream().mapToInt(List::size).max().orElse(0);
+        this.discounts = new double[maxQuerySize];
+        for (int r=0;r<maxQuerySize;r++){
+            discounts[r] = r<ndcgTruncationLevel ? 1/(Math.log(r+2)/Math.log(2)) : 0;
+        }
+        this.idealDCGs = new double[numQueries];
+        IntStream.range(0, numQueries).parallel().forEach(q -> {
+            double[] queryGains = instancesForQuery(q).stream().mapToDouble(i->gains[i]).toArray();
+            int[] ideal = ArgSort.argSortDescending(queryGains);
+            double dcg = 0;
+            for (int r=0;r<ideal.length;r++){
+                dcg += queryGains[ideal[r]]*discounts[r];
+            }
+            idealDCGs[q] = dcg;
+        });
     }
 
-    // calculate gradients for all instances in a query
-    private double[] gradientForQuery(int queryIndex){
-        List<Integer> instancesForQuery = instancesForQuery(queryIndex);
-        double[] predictedScores = instancesForQuery.stream().mapToDouble(i->scoreMatrix.getScoresForData(i)[0]).toArray();
-        double[] relevance = instancesForQuery.stream().mapToDouble(i->relevanceGrades[i]).toArray();
-        double[] gradients = new double[instancesForQuery.size()];
-        for (int i=0;i<gradients.length;i++){
-            gradients[i] = gradientForInstanceInQuery(predictedScores,relevance,i);
+    /**
+     * lambdas and their second derivatives of one query, for documents in query order
+     * for a pair where document a is more relevant than b,
+     * rho = 1/(1+exp(s_a-s_b)), lambda_a += rho*|delta NDCG|, lambda_b -= rho*|delta NDCG|,
+     * and both hessians get rho*(1-rho)*|delta NDCG|
+     * @param discounts discount of each rank, 0 below the truncation level
+     */
+    static void lambdas(double[] scores, double[] gains, double idealDCG, double[] discounts,
+                        double[] gradients, double[] hessians){
+        int numDocs = scores.length;
+        if (idealDCG==0){
+            return;
+        }
+        int[] ranked = ArgSort.argSortDescending(scores);
+        int top = numDocs;
+        while (top>0 && discounts[top-1]==0){
+            top -= 1;
+        }
+        for (int r1=0;r1<top;r1++){
+            int a = ranked[r1];
+            for (int r2=r1+1;r2<numDocs;r2++){
+                int b = ranked[r2];
+                if (gains[a]==gains[b]){
+                    continue;
+                }
+                double delta = Math.abs((gains[a]-gains[b])*(discounts[r1]-discounts[r2]))/idealDCG;
+                int high = gains[a]>gains[b] ? a : b;
+                int low = high==a ? b : a;
+                double rho = 1.0/(1+Math.exp(scores[high]-scores[low]));
+                double lambda = rho*delta;
+                gradients[high] += lambda;
+                gradients[low] -= lambda;
+                double hessian = rho*(1-rho)*delta;
+                hessians[high] += hessian;
+                hessians[low] += hessian;
+            }
         }
-        return gradients;
     }
 
     @Override
@@ -84,15 +138,28 @@ public class LambdaMARTOptimizer extends GBOptimizer {
     @Override
     protected double[] gradient(int ensembleIndex) {
         double[] gradients = new double[dataSet.getNumDataPoints()];
+        double[] newHessians = new double[dataSet.getNumDataPoints()];
         IntStream.range(0, numQueries).parallel()
                 .forEach(q->{
-                    double[] queryGradients = gradientForQuery(q);
                     List<Integer> instancesInQuery = instancesForQuery(q);
-                    for (int i=0;i<instancesInQuery.size();i++){
+                    int numDocs = instancesInQuery.size();
+                    double[] scores = new double[numDocs];
+                    double[] queryGains = new double[numDocs];
+                    for (int i=0;i<numDocs;i++){
+                        int globalIndex = instancesInQuery.get(i);
+                        scores[i] = scoreMatrix.getScore(globalIndex,0);
+                        queryGains[i] = gains[globalIndex];
+                    }
+                    double[] queryGradients = new double[numDocs];
+                    double[] queryHessians = new double[numDocs];
+                    lambdas(scores, queryGains, idealDCGs[q], discounts, queryGradients, queryHessians);
+                    for (int i=0;i<numDocs;i++){
                         int globalIndex = instancesInQuery.get(i);
                         gradients[globalIndex] = queryGradients[i];
+                        newHessians[globalIndex] = queryHessians[i];
                     }
                 });
+        this.hessians = newHessians;
         return gradients;
     }
 
@@ -0,0 +1,66 @@
+package edu.neu.ccs.pyramid.ranking;
+
+import edu.neu.ccs.pyramid.regression.regression_tree.LeafOutputCalculator;
+
+import java.util.stream.IntStream;
+
+/**
+ * Newton step leaf output for LambdaMART, sum of lambdas / sum of lambda hessians
+ * labels are the lambdas; hessians come from the optimizer that computed them
+ */
+public class LambdaMARTOutputCalculator implements LeafOutputCalculator {
+    private LambdaMARTOptimizer optimizer;
+    private boolean parallel;
+
+    public LambdaMARTOutputCalculator(LambdaMARTOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    @Override
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public double getLeafOutput(double[] probabilities, double[] labels) {
+        double[] hessians = optimizer.getHessians();
+        IntStream intStream = IntStream.range(0,probabilities.length);
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        double numerator = intStream.mapToDouble(i->labels[i]*probabilities[i]).sum();
+
+        IntStream intStream2 = IntStream.range(0,probabilities.length);
+        if (parallel){
+            intStream2 = intStream2.parallel();
+        }
+        double denominator = intStream2.mapToDouble(i->hessians[i]*probabilities[i]).sum();
+        return leafOutput(numerator, denominator);
+    }
+
+    @Override
+    public double getLeafOutput(int[] dataIndices, double[] probabilities, double[] labels) {
+        double[] hessians = optimizer.getHessians();
+        double numerator = 0;
+        double denominator = 0;
+        for (int k=0;k<dataIndices.length;k++) {
+            numerator += labels[dataIndices[k]]*probabilities[k];
+            denominator += hessians[dataIndices[k]]*probabilities[k];
+        }
+        return leafOutput(numerator, denominator);
+    }
+
+    private double leafOutput(double numerator, double denominator){
+        if (denominator==0){
+            return 0;
+        }
+        double out = numerator/denominator;
+        if (Double.isNaN(out)) {
+            throw new RuntimeException("leaf value is NaN");
+        }
+        if (Double.isInfinite(out)){
+            throw new RuntimeException("leaf value is Infinite");
+        }
+        return out;
+    }
+}
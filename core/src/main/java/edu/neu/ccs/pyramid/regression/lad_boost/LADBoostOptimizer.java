@@ -45,7 +45,7 @@ public class LADBoostOptimizer extends GBOptimizer {
     @Override
     protected double[] gradient(int ensembleIndex) {
         return IntStream.range(0, dataSet.getNumDataPoints()).parallel().
-                mapToDouble(i-> MathUtil.sign(labels[i]-scoreMatrix.getScoresForData(i)[0])).toArray();
+                mapToDouble(i-> MathUtil.sign(labels[i]-scoreMatrix.getScore(i,0))).toArray();
     }
 
     @Override
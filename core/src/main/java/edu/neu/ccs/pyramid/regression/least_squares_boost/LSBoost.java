@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.regression.least_squares_boost;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GradientBoosting;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import org.apache.mahout.math.Vector;
@@ -20,4 +21,11 @@ public class LSBoost extends GradientBoosting implements Regressor {
         return getEnsemble(0).score(vector);
     }
 
+    @Override
+    public double[] predict(DataSet dataSet) {
+        double[] scores = new double[dataSet.getNumDataPoints()];
+        predictBatch(dataSet, scores);
+        return scores;
+    }
+
 }
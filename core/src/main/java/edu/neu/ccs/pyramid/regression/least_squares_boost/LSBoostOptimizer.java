@@ -44,7 +44,7 @@ public class LSBoostOptimizer extends GBOptimizer{
     @Override
     protected double[] gradient(int ensembleIndex) {
         return IntStream.range(0, dataSet.getNumDataPoints()).parallel().
-                mapToDouble(i->labels[i]-scoreMatrix.getScoresForData(i)[0]).toArray();
+                mapToDouble(i->labels[i]-scoreMatrix.getScore(i,0)).toArray();
     }
 
     @Override
@@ -30,6 +30,12 @@ public class ElasticNetLinearRegOptimizer {
     double[] instanceWeights;
     double sumWeights;
     private boolean isActiveSet = false;
+    // strong rule and gap safe screening, with coordinate descent on a working set of features
+    private boolean screening = false;
+    // regularization of the solution the weights start from, for the sequential strong rule; NaN if unknown
+    private double previousRegularization = Double.NaN;
+    // (1/sumWeights) sum_i w_i x_ij^2, only depends on data and instance weights
+    private double[] squaredNorms;
 
     public boolean isActiveSet() {
         return isActiveSet;
@@ -81,10 +87,43 @@ public class ElasticNetLinearRegOptimizer {
         return terminator;
     }
 
+    public boolean isScreening() {
+        return screening;
+    }
+
+    public void setScreening(boolean screening) {
+        this.screening = screening;
+    }
+
+    /**
+     * when warm starting from the solution of another regularization on a path,
+     * the strong rule discards more features
+     */
+    public void setPreviousRegularization(double previousRegularization) {
+        this.previousRegularization = previousRegularization;
+    }
+
+
+    /**
+     * share cached per-feature statistics between optimizers with the same data and instance weights
+     */
+    void setSquaredNorms(double[] squaredNorms) {
+        this.squaredNorms = squaredNorms;
+    }
+
+    double[] getSquaredNorms() {
+        if (squaredNorms==null){
+            squaredNorms = new double[dataSet.getNumFeatures()];
+            IntStream.range(0,dataSet.getNumFeatures()).parallel().forEach(j -> squaredNorms[j] = squaredNorm(j));
+        }
+        return squaredNorms;
+    }
 
     public void optimize(){
 
-        if (!isActiveSet) {
+        if (screening && regularization*l1Ratio>0) {
+            screeningOptimize();
+        } else if (!isActiveSet) {
             normalOptimize();
         } else {
             // it's for CBM internal updates for now.
@@ -180,15 +219,7 @@ public class ElasticNetLinearRegOptimizer {
             }
             return;
         }
-        double oldBias = linearRegression.getWeights().getBias();
-        double newBias = IntStream.range(0,dataSet.getNumDataPoints()).parallel().mapToDouble(i ->
-                instanceWeights[i]*(labels[i]-scores[i] + oldBias)).sum()/sumWeights;
-        linearRegression.getWeights().setBias(newBias);
-        //update scores
-        double difference = newBias - oldBias;
-        if (difference != 0) {
-            IntStream.range(0,dataSet.getNumDataPoints()).parallel().forEach(i -> scores[i] = scores[i] + difference);
-        }
+        updateBias(scores);
         for (int j = activeSet.nextSetBit(0); j >= 0; j = activeSet.nextSetBit(j+1)) {
             optimizeOneFeature(scores,j);
         }
@@ -205,6 +236,14 @@ public class ElasticNetLinearRegOptimizer {
             }
             return;
         }
+        updateBias(scores);
+        for (int j=0;j<dataSet.getNumFeatures();j++){
+            optimizeOneFeature(scores,j);
+        }
+    }
+
+
+    private void updateBias(double[] scores){
         double oldBias = linearRegression.getWeights().getBias();
         double newBias = IntStream.range(0,dataSet.getNumDataPoints()).parallel().mapToDouble(i ->
                 instanceWeights[i]*(labels[i]-scores[i] + oldBias)).sum()/sumWeights;
@@ -214,11 +253,187 @@ public class ElasticNetLinearRegOptimizer {
         if (difference != 0) {
             IntStream.range(0,dataSet.getNumDataPoints()).parallel().forEach(i -> scores[i] = scores[i] + difference);
         }
-        for (int j=0;j<dataSet.getNumFeatures();j++){
-            optimizeOneFeature(scores,j);
+    }
+
+    /**
+     * Tibshirani, Robert, et al.
+     * "Strong rules for discarding predictors in lasso-type problems."
+     * Journal of the Royal Statistical Society: Series B 74.2 (2012): 245-266.
+     *
+     * Ndiaye, Eugene, et al.
+     * "Gap safe screening rules for sparsity enforcing penalties."
+     * The Journal of Machine Learning Research 18.1 (2017): 4671-4703.
+     *
+     * coordinate descent only visits a working set of features: non-zero coefficients and features kept by the strong rule.
+     * after the working set converges, features outside it are checked against the KKT conditions,
+     * and violators are added until there is none.
+     * the gap safe rule permanently discards features whose coefficients are zero at the optimum
+     */
+    private void screeningOptimize(){
+        int numFeatures = dataSet.getNumFeatures();
+        double[] scores = new double[dataSet.getNumDataPoints()];
+        IntStream.range(0,dataSet.getNumDataPoints()).parallel().forEach(i->
+                scores[i] = linearRegression.predict(dataSet.getRow(i)));
+        // if no weight at all, only minimize the penalty
+        if (sumWeights==0){
+            iterate(scores);
+            return;
+        }
+        double l1 = regularization*l1Ratio;
+        // the bias is not penalized; at its optimum weighted residuals sum to 0, as the dual requires
+        updateBias(scores);
+        // (1/sumWeights) sum_i w_i x_ij (y_i - score_i)
+        double[] correlations = new double[numFeatures];
+        double[] squaredNorms = getSquaredNorms();
+        BitSet discarded = new BitSet(numFeatures);
+        updateCorrelations(scores, correlations, discarded);
+        screen(scores, correlations, squaredNorms, discarded);
+
+        double reference = regularization;
+        if (!Double.isNaN(previousRegularization)){
+            reference = Math.max(previousRegularization, regularization);
         }
+        double strongThreshold = l1Ratio*(2*regularization - reference);
+        Vector coefficients = linearRegression.getWeights().getWeightsWithoutBias();
+        BitSet workingSet = new BitSet(numFeatures);
+        for (int j=0;j<numFeatures;j++){
+            if (!discarded.get(j) && (coefficients.get(j)!=0 || Math.abs(correlations[j])>=strongThreshold)){
+                workingSet.set(j);
+            }
+        }
+        if (logger.isDebugEnabled()){
+            logger.debug("discarded by gap safe rule = "+discarded.cardinality()+", initial working set = "+workingSet.cardinality());
+        }
+
+        while (true){
+            while (true){
+                activeSetIterate(scores, workingSet);
+                double loss = loss(scores, workingSet);
+                if (logger.isDebugEnabled()){
+                    logger.debug("loss = "+loss);
+                }
+                terminator.add(loss);
+                if (terminator.shouldTerminate()){
+                    break;
+                }
+            }
+            if (terminator.getNumIterations()>=terminator.getMaxIteration()){
+                break;
+            }
+            updateBias(scores);
+            updateCorrelations(scores, correlations, discarded);
+            screen(scores, correlations, squaredNorms, discarded);
+            workingSet.andNot(discarded);
+            int numViolations = 0;
+            for (int j=discarded.nextClearBit(0);j<numFeatures;j=discarded.nextClearBit(j+1)){
+                if (!workingSet.get(j) && Math.abs(correlations[j])>l1){
+                    workingSet.set(j);
+                    numViolations += 1;
+                }
+            }
+            if (logger.isDebugEnabled()){
+                logger.debug("KKT violations = "+numViolations+", working set = "+workingSet.cardinality()
+                        +", discarded = "+discarded.cardinality());
+            }
+            if (numViolations==0){
+                break;
+            }
+        }
+    }
+
+    private double squaredNorm(int featureIndex){
+        double sum = 0;
+        for (Vector.Element element: dataSet.getColumn(featureIndex).nonZeroes()){
+            double x = element.get();
+            sum += instanceWeights[element.index()]*x*x;
+        }
+        return sum/sumWeights;
     }
 
+    private void updateCorrelations(double[] scores, double[] correlations, BitSet discarded){
+        IntStream.range(0,dataSet.getNumFeatures()).parallel().filter(j -> !discarded.get(j)).forEach(j -> {
+            double sum = 0;
+            for (Vector.Element element: dataSet.getColumn(j).nonZeroes()){
+                int i = element.index();
+                sum += instanceWeights[i]*element.get()*(labels[i]-scores[i]);
+            }
+            correlations[j] = sum/sumWeights;
+        });
+    }
+
+    /**
+     * gap safe sphere test on the problem restricted to features not discarded yet.
+     * the elastic net is seen as a lasso on data augmented with sqrt(l2) * identity rows;
+     * a dual feasible point is obtained by scaling the augmented residual.
+     * discarded features get coefficient 0 and scores are updated
+     */
+    private void screen(double[] scores, double[] correlations, double[] squaredNorms, BitSet discarded){
+        int numDataPoints = dataSet.getNumDataPoints();
+        double l1 = regularization*l1Ratio;
+        double l2 = regularization*(1-l1Ratio);
+        Vector coefficients = linearRegression.getWeights().getWeightsWithoutBias();
+        double bias = linearRegression.getWeights().getBias();
+        double squaredResidual = 0;
+        double labelResidual = 0;
+        for (int i=0;i<numDataPoints;i++){
+            double residual = labels[i] - scores[i];
+            squaredResidual += instanceWeights[i]*residual*residual;
+            // residuals sum to 0, so shifting labels by the bias only reduces rounding
+            labelResidual += instanceWeights[i]*(labels[i]-bias)*residual;
+        }
+        squaredResidual /= sumWeights;
+        labelResidual /= sumWeights;
+        double squaredL2 = 0;
+        double normL1 = 0;
+        double dualNorm = l1;
+        for (int j=discarded.nextClearBit(0);j<dataSet.getNumFeatures();j=discarded.nextClearBit(j+1)){
+            double coefficient = coefficients.get(j);
+            squaredL2 += coefficient*coefficient;
+            normL1 += Math.abs(coefficient);
+            dualNorm = Math.max(dualNorm, Math.abs(correlations[j] - l2*coefficient));
+        }
+        double primal = 0.5*squaredResidual + 0.5*l2*squaredL2 + l1*normL1;
+        double scale = l1/dualNorm;
+        double dual = scale*labelResidual - 0.5*scale*scale*(squaredResidual + l2*squaredL2);
+        double gap = Math.max(primal - dual, 0);
+        double radius = Math.sqrt(2*gap)/l1;
+        for (int j=discarded.nextClearBit(0);j<dataSet.getNumFeatures();j=discarded.nextClearBit(j+1)){
+            double coefficient = coefficients.get(j);
+            double dualCorrelation = Math.abs(correlations[j] - l2*coefficient)/dualNorm;
+            if (dualCorrelation + radius*Math.sqrt(squaredNorms[j] + l2) < 1){
+                discarded.set(j);
+                if (coefficient!=0){
+                    linearRegression.getWeights().setWeight(j,0);
+                    for (Vector.Element element: dataSet.getColumn(j).nonZeroes()){
+                        int i = element.index();
+                        scores[i] = scores[i] - coefficient*element.get();
+                    }
+                }
+            }
+        }
+        if (logger.isDebugEnabled()){
+            logger.debug("duality gap = "+gap);
+        }
+    }
+
+    /**
+     * loss when coefficients outside the working set are 0
+     */
+    private double loss(double[] scores, BitSet workingSet){
+        double mse = IntStream.range(0,scores.length).parallel().mapToDouble(i ->
+                instanceWeights[i] * Math.pow(labels[i] - scores[i], 2))
+                .sum();
+        Vector coefficients = linearRegression.getWeights().getWeightsWithoutBias();
+        double squaredL2 = 0;
+        double normL1 = 0;
+        for (int j=workingSet.nextSetBit(0);j>=0;j=workingSet.nextSetBit(j+1)){
+            double coefficient = coefficients.get(j);
+            squaredL2 += coefficient*coefficient;
+            normL1 += Math.abs(coefficient);
+        }
+        double penalty = regularization*((1-l1Ratio)*0.5*squaredL2 + l1Ratio*normL1);
+        return mse/(2*sumWeights) + penalty;
+    }
 
     private void optimizeOneFeature(double[] scores, int featureIndex){
         double oldCoeff = linearRegression.getWeights().getWeightsWithoutBias().get(featureIndex);
@@ -0,0 +1,189 @@
+package edu.neu.ccs.pyramid.regression.linear_regression;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.eval.RMSE;
+import edu.neu.ccs.pyramid.util.Grid;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * elastic net linear regression over a decreasing sequence of regularizations
+ * each fit starts from the previous solution, with screening on,
+ * and per-feature statistics are computed once for the whole path.
+ * Friedman, Jerome, Trevor Hastie, and Rob Tibshirani.
+ * "Regularization paths for generalized linear models via coordinate descent."
+ * Journal of statistical software 33.1 (2010): 1.
+ */
+public class ElasticNetLinearRegPath {
+    private static final Logger logger = LogManager.getLogger();
+    private DataSet dataSet;
+    private double[] labels;
+    private double[] instanceWeights;
+    private double sumWeights;
+    private double l1Ratio = 1;
+    // if not given, a log uniform grid from the smallest regularization with all coefficients at 0
+    private List<Double> regularizations;
+    private int numRegularizations = 20;
+    private double minRatio = 0.001;
+    private RegDataSet validationSet;
+
+    public ElasticNetLinearRegPath(DataSet dataSet, double[] labels, double[] instanceWeights) {
+        this.dataSet = dataSet;
+        this.labels = labels;
+        this.instanceWeights = instanceWeights;
+        this.sumWeights = Arrays.stream(instanceWeights).parallel().sum();
+    }
+
+    public ElasticNetLinearRegPath(RegDataSet dataSet) {
+        this(dataSet, dataSet.getLabels(), defaultWeights(dataSet.getNumDataPoints()));
+    }
+
+    public ElasticNetLinearRegPath setL1Ratio(double l1Ratio) {
+        if (l1Ratio<0 || l1Ratio>1){
+            throw new IllegalArgumentException("(l1Ratio>=0)&&(l1Ratio<=1)");
+        }
+        this.l1Ratio = l1Ratio;
+        return this;
+    }
+
+    /**
+     * fit these regularizations, from big to small
+     */
+    public ElasticNetLinearRegPath setRegularizations(List<Double> regularizations) {
+        List<Double> sorted = new ArrayList<>(regularizations);
+        sorted.sort(Collections.reverseOrder());
+        this.regularizations = sorted;
+        return this;
+    }
+
+    public ElasticNetLinearRegPath setNumRegularizations(int numRegularizations) {
+        this.numRegularizations = numRegularizations;
+        return this;
+    }
+
+    /**
+     * smallest regularization of the default grid, relative to the biggest one
+     */
+    public ElasticNetLinearRegPath setMinRatio(double minRatio) {
+        this.minRatio = minRatio;
+        return this;
+    }
+
+    /**
+     * every model on the path is evaluated on this set
+     */
+    public ElasticNetLinearRegPath setValidationSet(RegDataSet validationSet) {
+        this.validationSet = validationSet;
+        return this;
+    }
+
+    /**
+     * smallest regularization at which all coefficients are 0;
+     * it needs l1Ratio > 0
+     */
+    public double maxRegularization(){
+        if (l1Ratio==0){
+            throw new IllegalStateException("with l1Ratio = 0, regularizations should be given");
+        }
+        double mean = IntStream.range(0, labels.length).mapToDouble(i -> instanceWeights[i]*labels[i]).sum()/sumWeights;
+        return IntStream.range(0, dataSet.getNumFeatures()).parallel().mapToDouble(j -> {
+            double sum = 0;
+            for (Vector.Element element: dataSet.getColumn(j).nonZeroes()){
+                int i = element.index();
+                sum += instanceWeights[i]*element.get()*(labels[i]-mean);
+            }
+            return Math.abs(sum)/sumWeights;
+        }).max().orElse(0)/l1Ratio;
+    }
+
+    public List<Solution> fit(){
+        List<Double> grid = regularizations;
+        if (grid==null){
+            double max = maxRegularization();
+            grid = new ArrayList<>(Grid.logUniform(max*minRatio, max, numRegularizations));
+            grid.sort(Collections.reverseOrder());
+        }
+        LinearRegression linearRegression = new LinearRegression(dataSet.getNumFeatures());
+        double[] squaredNorms = null;
+        double previousRegularization = Double.NaN;
+        List<Solution> solutions = new ArrayList<>();
+        for (double regularization: grid){
+            ElasticNetLinearRegOptimizer optimizer = new ElasticNetLinearRegOptimizer(linearRegression,
+                    dataSet, labels, instanceWeights, sumWeights);
+            optimizer.setRegularization(regularization);
+            optimizer.setL1Ratio(l1Ratio);
+            optimizer.setScreening(true);
+            optimizer.setPreviousRegularization(previousRegularization);
+            if (squaredNorms!=null){
+                optimizer.setSquaredNorms(squaredNorms);
+            }
+            optimizer.optimize();
+            squaredNorms = optimizer.getSquaredNorms();
+            previousRegularization = regularization;
+
+            LinearRegression model = new LinearRegression(dataSet.getNumFeatures(),
+                    new DenseVector(linearRegression.getWeights().getWeights()));
+            double validationRMSE = Double.NaN;
+            if (validationSet!=null){
+                validationRMSE = RMSE.rmse(model, validationSet);
+            }
+            Solution solution = new Solution(regularization, model, validationRMSE);
+            if (logger.isDebugEnabled()){
+                logger.debug(solution);
+            }
+            solutions.add(solution);
+        }
+        return solutions;
+    }
+
+    private static double[] defaultWeights(int numData){
+        double[] weights = new double[numData];
+        Arrays.fill(weights,1.0);
+        return weights;
+    }
+
+    public static class Solution {
+        private double regularization;
+        private LinearRegression linearRegression;
+        private double validationRMSE;
+
+        Solution(double regularization, LinearRegression linearRegression, double validationRMSE) {
+            this.regularization = regularization;
+            this.linearRegression = linearRegression;
+            this.validationRMSE = validationRMSE;
+        }
+
+        public double getRegularization() {
+            return regularization;
+        }
+
+        public LinearRegression getLinearRegression() {
+            return linearRegression;
+        }
+
+        /**
+         * NaN without a validation set
+         */
+        public double getValidationRMSE() {
+            return validationRMSE;
+        }
+
+        public int getNumNonZeros(){
+            return linearRegression.getWeights().getWeightsWithoutBias().getNumNonZeroElements();
+        }
+
+        @Override
+        public String toString() {
+            return "regularization = "+regularization+", non-zeros = "+getNumNonZeros()+", validation RMSE = "+validationRMSE;
+        }
+    }
+}
@@ -93,7 +93,7 @@ public class LSLogisticBoostOptimizer extends GBOptimizer {
     }
 
     private double gradientForInstance(int i){
-        double p = Sigmoid.sigmoid(scoreMatrix.getScoresForData(i)[0]);
+        double p = Sigmoid.sigmoid(scoreMatrix.getScore(i,0));
        return labels[i]-p - (1-p)*noiseRates0[i] + p*noiseRates1[i];
         //todo
 //        return (labels[i]-p - (1-p)*noiseRates0[i] + p*noiseRates1[i])/(1-noiseRates0[i]-noiseRates1[i]);
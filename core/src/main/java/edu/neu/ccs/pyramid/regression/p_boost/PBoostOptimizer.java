@@ -48,7 +48,7 @@ public class PBoostOptimizer extends GBOptimizer {
         int n = dataSet.getNumDataPoints();
         double labelAve = MathUtil.arraySum(labels)/n;
 
-        double[] pred = IntStream.range(0, n).mapToDouble(i->scoreMatrix.getScoresForData(i)[0]).toArray();
+        double[] pred = IntStream.range(0, n).mapToDouble(i->scoreMatrix.getScore(i,0)).toArray();
         double predAve = MathUtil.arraySum(pred)/n;
         double[] labelDev = IntStream.range(0, n).mapToDouble(i->labels[i]-labelAve).toArray();
         double[] predDev = IntStream.range(0, n).mapToDouble(i->pred[i]-predAve).toArray();
@@ -0,0 +1,222 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * data points reaching each node of a tree being grown
+ * every node owns a contiguous slice of one shared permutation of the data points,
+ * and splitting a node partitions its slice in place, so memory does not grow with the depth of the tree.
+ * data points with a missing value on a split feature go down both branches with fractional probabilities;
+ * only those are kept outside the permutation, in small per-node lists
+ */
+class DataPartition {
+    // branches of a data point at a split
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+    static final int MISSING = 2;
+    private int[] rows;
+    private int[] buffer;
+    // node holding each data point as a whole, -1 if the data point reaches nodes only fractionally
+    private int[] nodeOf;
+    private double[] weights;
+    // indexed by node id
+    private Range[] ranges;
+
+    /**
+     * all data points with positive weights start at the root
+     */
+    DataPartition(double[] weights, int rootId, int maxNumNodes) {
+        this.weights = weights;
+        int numDataPoints = weights.length;
+        this.nodeOf = new int[numDataPoints];
+        Arrays.fill(nodeOf, -1);
+        this.rows = new int[numDataPoints];
+        int size = 0;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                rows[size] = i;
+                nodeOf[i] = rootId;
+                size += 1;
+            }
+        }
+        this.buffer = new int[numDataPoints];
+        this.ranges = new Range[maxNumNodes];
+        ranges[rootId] = new Range(0, size, new int[0], new double[0]);
+    }
+
+    /**
+     * @param featureValue feature value of a data point on the split feature
+     */
+    void split(int parentId, int leftId, int rightId, IntToDoubleFunction featureValue,
+               double threshold, double leftProb, double rightProb){
+        split(parentId, leftId, rightId, i -> {
+            double value = featureValue.applyAsDouble(i);
+            if (Double.isNaN(value)){
+                return MISSING;
+            }
+            return value<=threshold ? LEFT : RIGHT;
+        }, leftProb, rightProb);
+    }
+
+    /**
+     * @param branch {@link #LEFT}, {@link #RIGHT} or {@link #MISSING} for a data point
+     */
+    void split(int parentId, int leftId, int rightId, IntUnaryOperator branch,
+               double leftProb, double rightProb){
+        Range parent = ranges[parentId];
+        int numLeft = 0;
+        int numRight = 0;
+        int numMissing = 0;
+        int[] missing = new int[0];
+        for (int k=parent.start;k<parent.end;k++){
+            int i = rows[k];
+            int side = branch.applyAsInt(i);
+            if (side==MISSING){
+                if (numMissing==missing.length){
+                    missing = Arrays.copyOf(missing, Math.max(8, 2*numMissing));
+                }
+                missing[numMissing] = i;
+                numMissing += 1;
+                nodeOf[i] = -1;
+            } else if (side==LEFT){
+                // writes never overtake reads
+                rows[parent.start+numLeft] = i;
+                numLeft += 1;
+                nodeOf[i] = leftId;
+            } else {
+                buffer[numRight] = i;
+                numRight += 1;
+                nodeOf[i] = rightId;
+            }
+        }
+        System.arraycopy(buffer, 0, rows, parent.start+numLeft, numRight);
+
+        FractionalRows leftFractional = new FractionalRows(parent.fracRows.length + numMissing);
+        FractionalRows rightFractional = new FractionalRows(parent.fracRows.length + numMissing);
+        for (int m=0;m<numMissing;m++){
+            int i = missing[m];
+            leftFractional.add(i, weights[i]*leftProb);
+            rightFractional.add(i, weights[i]*rightProb);
+        }
+        for (int k=0;k<parent.fracRows.length;k++){
+            int i = parent.fracRows[k];
+            double prob = parent.fracProbs[k];
+            int side = branch.applyAsInt(i);
+            if (side==MISSING){
+                leftFractional.add(i, prob*leftProb);
+                rightFractional.add(i, prob*rightProb);
+            } else if (side==LEFT){
+                leftFractional.add(i, prob);
+            } else {
+                rightFractional.add(i, prob);
+            }
+        }
+        ranges[leftId] = new Range(parent.start, parent.start+numLeft,
+                leftFractional.getRows(), leftFractional.getProbs());
+        ranges[rightId] = new Range(parent.start+numLeft, parent.start+numLeft+numRight,
+                rightFractional.getRows(), rightFractional.getProbs());
+        ranges[parentId] = null;
+    }
+
+    /**
+     * number of data points reaching the node, whole or fractional
+     */
+    int size(int nodeId){
+        Range range = ranges[nodeId];
+        return range.end - range.start + range.fracRows.length;
+    }
+
+    int[] getRows() {
+        return rows;
+    }
+
+    int getStart(int nodeId){
+        return ranges[nodeId].start;
+    }
+
+    int getEnd(int nodeId){
+        return ranges[nodeId].end;
+    }
+
+    int[] getFracRows(int nodeId){
+        return ranges[nodeId].fracRows;
+    }
+
+    double[] getFracProbs(int nodeId){
+        return ranges[nodeId].fracProbs;
+    }
+
+    int getNodeOf(int dataPointIndex){
+        return nodeOf[dataPointIndex];
+    }
+
+    double getWeight(int dataPointIndex){
+        return weights[dataPointIndex];
+    }
+
+    /**
+     * all data points at the node, aligned with {@link #probabilities(int)}
+     */
+    int[] dataIndices(int nodeId){
+        Range range = ranges[nodeId];
+        int numWhole = range.end - range.start;
+        int[] indices = new int[numWhole + range.fracRows.length];
+        System.arraycopy(rows, range.start, indices, 0, numWhole);
+        System.arraycopy(range.fracRows, 0, indices, numWhole, range.fracRows.length);
+        return indices;
+    }
+
+    double[] probabilities(int nodeId){
+        Range range = ranges[nodeId];
+        int numWhole = range.end - range.start;
+        double[] probs = new double[numWhole + range.fracRows.length];
+        for (int k=0;k<numWhole;k++){
+            probs[k] = weights[rows[range.start+k]];
+        }
+        System.arraycopy(range.fracProbs, 0, probs, numWhole, range.fracRows.length);
+        return probs;
+    }
+
+    private static class Range {
+        private int start;
+        private int end;
+        private int[] fracRows;
+        private double[] fracProbs;
+
+        Range(int start, int end, int[] fracRows, double[] fracProbs) {
+            this.start = start;
+            this.end = end;
+            this.fracRows = fracRows;
+            this.fracProbs = fracProbs;
+        }
+    }
+
+    private static class FractionalRows {
+        private int[] rows;
+        private double[] probs;
+        private int size;
+
+        FractionalRows(int capacity) {
+            this.rows = new int[capacity];
+            this.probs = new double[capacity];
+        }
+
+        void add(int dataPointIndex, double prob){
+            if (prob>0){
+                rows[size] = dataPointIndex;
+                probs[size] = prob;
+                size += 1;
+            }
+        }
+
+        int[] getRows(){
+            return Arrays.copyOf(rows, size);
+        }
+
+        double[] getProbs(){
+            return Arrays.copyOf(probs, size);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * data-parallel regression tree trainer
+ * rows are split into shards, each shard builds its own node histograms, and the histograms of all shards
+ * are summed before each split decision, so splits are the ones {@link HistRegTreeTrainer} would find on all rows
+ * with the same bins. as in {@link HistRegTreeTrainer}, only the smaller child of a split is built,
+ * the larger one is the parent minus the smaller one.
+ * leaf outputs are weighted averages of the targets, as {@link AverageOutputCalculator} computes them
+ */
+public class DistributedRegTreeTrainer {
+
+    /**
+     * a pool with one thread per shard, to be reused for all trees and shut down by the caller;
+     * threads are daemons, so a pool that is not shut down does not keep the JVM alive
+     */
+    public static ExecutorService newExecutor(int numShards){
+        return Executors.newFixedThreadPool(numShards, runnable -> {
+            Thread thread = new Thread(runnable, "tree-shard-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param reference bins shared by all shards
+     * @param numDataPoints total number of rows over all shards
+     * @param executor runs the calls to the shards, see {@link #newExecutor(int)}
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     QuantizedDataSet reference,
+                                     List<? extends TreeShard> shards,
+                                     int ensembleIndex,
+                                     int numDataPoints,
+                                     ExecutorService executor) throws IOException {
+        FeatureBins bins = FeatureBins.quantized(reference);
+        RegressionTree tree = new RegressionTree();
+        tree.setFeatureList(reference.getFeatureList());
+
+        tree.leaves = new ArrayList<>();
+        tree.root = new Node();
+        tree.root.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        // indexed by node id; only totals for the last two leaves
+        Histogram[] histograms = new Histogram[2*maxNumLeaves];
+        int rootId = tree.root.getId();
+        histograms[rootId] = Histogram.fromArray(allReduce(executor, shards,
+                shard -> shard.startTree(ensembleIndex, rootId, 2*maxNumLeaves)));
+        HistRegTreeTrainer.updateNode(tree.root, regTreeConfig, bins, histograms[rootId]);
+        tree.leaves.add(tree.root);
+        tree.root.setLeaf(true);
+        tree.allNodes.add(tree.root);
+
+        /**
+         * grow the tree
+         */
+        while (tree.leaves.size()<maxNumLeaves) {
+            Optional<Node> leafToSplitOptional = RegTreeTrainer.findLeafToSplit(tree.leaves);
+            if (leafToSplitOptional.isPresent()){
+                Node leafToSplit = leafToSplitOptional.get();
+                splitNode(tree, leafToSplit, regTreeConfig, bins, shards, executor, histograms);
+            } else {
+                break;
+            }
+        }
+
+        for (Node leaf: tree.leaves){
+            Histogram histogram = histograms[leaf.getId()];
+            leaf.setValue(histogram.totalSum/histogram.totalCount);
+        }
+        RegTreeTrainer.normalizeReductions(tree, numDataPoints);
+        return tree;
+    }
+
+    private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
+                                  FeatureBins bins, List<? extends TreeShard> shards, ExecutorService executor,
+                                  Histogram[] histograms) throws IOException {
+        Node leftChild = new Node();
+        leftChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+        Node rightChild = new Node();
+        rightChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        //the last two leaves need not to be updated completely
+        //as we don't need to split them later
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        boolean updateChildren = tree.leaves.size()!=maxNumLeaves-1;
+        // the split result tells which child is smaller over all shards
+        boolean buildLeft = leafToSplit.getLeftProb()<=leafToSplit.getRightProb();
+        Node built = buildLeft ? leftChild : rightChild;
+        Node other = buildLeft ? rightChild : leftChild;
+        int parentId = leafToSplit.getId();
+        int leftId = leftChild.getId();
+        int rightId = rightChild.getId();
+        int featureIndex = leafToSplit.getFeatureIndex();
+        double threshold = leafToSplit.getThreshold();
+        double leftProb = leafToSplit.getLeftProb();
+        double rightProb = leafToSplit.getRightProb();
+        int builtId = built.getId();
+        Histogram builtHistogram = Histogram.fromArray(allReduce(executor, shards,
+                shard -> shard.split(parentId, leftId, rightId, featureIndex, threshold, leftProb, rightProb,
+                        builtId, updateChildren)));
+
+        Histogram parentHistogram = histograms[parentId];
+        histograms[parentId] = null;
+        Histogram otherHistogram;
+        if (updateChildren){
+            otherHistogram = parentHistogram.subtract(builtHistogram);
+            HistRegTreeTrainer.updateNode(built, regTreeConfig, bins, builtHistogram);
+            HistRegTreeTrainer.updateNode(other, regTreeConfig, bins, otherHistogram);
+        } else {
+            otherHistogram = new Histogram(0);
+            otherHistogram.totalCount = parentHistogram.totalCount - builtHistogram.totalCount;
+            otherHistogram.totalSum = parentHistogram.totalSum - builtHistogram.totalSum;
+        }
+        histograms[built.getId()] = builtHistogram;
+        histograms[other.getId()] = otherHistogram;
+
+        leafToSplit.setLeftChild(leftChild);
+        leafToSplit.setRightChild(rightChild);
+
+        leafToSplit.setLeaf(false);
+        tree.leaves.remove(leafToSplit);
+        leftChild.setLeaf(true);
+        rightChild.setLeaf(true);
+        tree.leaves.add(leftChild);
+        tree.leaves.add(rightChild);
+        tree.allNodes.add(leftChild);
+        tree.allNodes.add(rightChild);
+    }
+
+    /**
+     * run the same call on all shards at once and sum the results
+     */
+    private static double[] allReduce(ExecutorService executor, List<? extends TreeShard> shards,
+                                      ShardCall call) throws IOException {
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (TreeShard shard: shards){
+            futures.add(executor.submit(() -> call.apply(shard)));
+        }
+        double[] sum = null;
+        for (Future<double[]> future: futures){
+            double[] result;
+            try {
+                result = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException){
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof UncheckedIOException){
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("shard failed", e.getCause());
+            }
+            if (sum==null){
+                sum = result;
+            } else {
+                for (int s=0;s<sum.length;s++){
+                    sum[s] += result[s];
+                }
+            }
+        }
+        return sum;
+    }
+
+    private interface ShardCall {
+        double[] apply(TreeShard shard) throws IOException;
+    }
+}
@@ -0,0 +1,320 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.ExternalQuantizedDataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * out-of-core regression tree trainer on an {@link ExternalQuantizedDataSet}
+ * follows {@link HistRegTreeTrainer}, but bins are only read by streaming over the blocks of the file:
+ * one pass builds the root histogram; a later pass routes a batch of frontier leaves at once, recording the branches
+ * of their data points and building the histograms of their left children; the right child is the parent minus the
+ * left child. the batch is the best splittable leaves not routed yet, as many as splits remain.
+ * splits are still applied one leaf at a time in best-first order, and a leaf is unchanged until it is split,
+ * so trees are the same as routing each split on its own, with about one pass per level instead of one per split.
+ * labels, weights, the partition of data points and the branches of routed leaves are kept in memory
+ */
+public class ExternalRegTreeTrainer {
+
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     ExternalQuantizedDataSet dataSet,
+                                     double[] labels,
+                                     double[] weights,
+                                     LeafOutputCalculator leafOutputCalculator){
+        FeatureBins bins = FeatureBins.quantized(dataSet.getSchema());
+        RegressionTree tree = new RegressionTree();
+        tree.setFeatureList(dataSet.getFeatureList());
+
+        tree.leaves = new ArrayList<>();
+        tree.root = new Node();
+        tree.root.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        // indexed by node id
+        Histogram[] histograms = new Histogram[2*maxNumLeaves];
+        DataPartition partition = new DataPartition(weights, tree.root.getId(), 2*maxNumLeaves);
+        // branch of each data point held whole by a routed leaf
+        byte[] branches = new byte[dataSet.getNumDataPoints()];
+        // indexed by node id, null for leaves not routed yet
+        RoutedSplit[] routed = new RoutedSplit[2*maxNumLeaves];
+
+        histograms[tree.root.getId()] = buildRoot(dataSet, bins, partition, tree.root.getId(), labels,
+                regTreeConfig.isParallel());
+        HistRegTreeTrainer.updateNode(tree.root, regTreeConfig, bins, histograms[tree.root.getId()]);
+        tree.leaves.add(tree.root);
+        tree.root.setLeaf(true);
+        tree.allNodes.add(tree.root);
+
+        /**
+         * grow the tree
+         */
+        while (tree.leaves.size()<maxNumLeaves) {
+            Optional<Node> leafToSplitOptional = RegTreeTrainer.findLeafToSplit(tree.leaves);
+            if (leafToSplitOptional.isPresent()){
+                Node leafToSplit = leafToSplitOptional.get();
+                if (routed[leafToSplit.getId()]==null){
+                    routeFrontier(tree, leafToSplit, regTreeConfig, dataSet, bins, partition, branches, labels, routed);
+                }
+                splitNode(tree, leafToSplit, regTreeConfig, bins, partition, histograms, branches,
+                        routed[leafToSplit.getId()]);
+                routed[leafToSplit.getId()] = null;
+            } else {
+                break;
+            }
+        }
+
+        HistRegTreeTrainer.setLeavesOutputs(regTreeConfig, tree.leaves, partition, leafOutputCalculator, labels);
+        RegTreeTrainer.normalizeReductions(tree, dataSet);
+        return tree;
+    }
+
+    private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
+                                  FeatureBins bins, DataPartition partition,
+                                  Histogram[] histograms, byte[] branches, RoutedSplit routedSplit) {
+        Node leftChild = new Node();
+        leftChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+        Node rightChild = new Node();
+        rightChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        //the last two leaves need not to be updated completely
+        //as we don't need to split them later
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        boolean updateChildren = tree.leaves.size()!=maxNumLeaves-1;
+        partition.split(leafToSplit.getId(), leftChild.getId(), rightChild.getId(),
+                i -> routedSplit.branch(i, branches), leafToSplit.getLeftProb(), leafToSplit.getRightProb());
+
+        Histogram parentHistogram = histograms[leafToSplit.getId()];
+        histograms[leafToSplit.getId()] = null;
+        if (updateChildren){
+            Histogram leftHistogram = routedSplit.leftHistogram;
+            Histogram rightHistogram = parentHistogram.subtract(leftHistogram);
+            histograms[leftChild.getId()] = leftHistogram;
+            histograms[rightChild.getId()] = rightHistogram;
+            HistRegTreeTrainer.updateNode(leftChild, regTreeConfig, bins, leftHistogram);
+            HistRegTreeTrainer.updateNode(rightChild, regTreeConfig, bins, rightHistogram);
+        }
+
+        leafToSplit.setLeftChild(leftChild);
+        leafToSplit.setRightChild(rightChild);
+
+        leafToSplit.setLeaf(false);
+        tree.leaves.remove(leafToSplit);
+        leftChild.setLeaf(true);
+        rightChild.setLeaf(true);
+        tree.leaves.add(leftChild);
+        tree.leaves.add(rightChild);
+        tree.allNodes.add(leftChild);
+        tree.allNodes.add(rightChild);
+    }
+
+    /**
+     * route the leaf to split and the next best splittable leaves not routed yet, as many as splits remain, in one pass
+     * left histograms are skipped when only the last split remains, as its children are never split
+     */
+    private static void routeFrontier(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
+                                      ExternalQuantizedDataSet dataSet, FeatureBins bins, DataPartition partition,
+                                      byte[] branches, double[] labels, RoutedSplit[] routed){
+        int remaining = regTreeConfig.getMaxNumLeaves() - tree.leaves.size();
+        List<Node> batch = new ArrayList<>();
+        batch.add(leafToSplit);
+        tree.leaves.stream()
+                .filter(leaf -> leaf!=leafToSplit && leaf.isSplitable() && routed[leaf.getId()]==null)
+                .sorted(Comparator.comparing(Node::getReduction).reversed())
+                .limit(remaining-1)
+                .forEach(batch::add);
+        route(dataSet, bins, partition, batch, branches, labels, remaining>1, regTreeConfig.isParallel(), routed);
+    }
+
+    /**
+     * one pass over the file with all data points of positive weight
+     */
+    private static Histogram buildRoot(ExternalQuantizedDataSet dataSet, FeatureBins bins, DataPartition partition,
+                                       int rootId, double[] labels, boolean parallel){
+        Histogram histogram = new Histogram(bins.getTotalSize());
+        dataSet.forEachBlock((block, blockStart) -> {
+            int numRows = block.getNumDataPoints();
+            double[] probs = new double[numRows];
+            int[] activeRows = new int[numRows];
+            int numActive = 0;
+            for (int r=0;r<numRows;r++){
+                int i = blockStart + r;
+                if (partition.getNodeOf(i)==rootId){
+                    probs[r] = partition.getWeight(i);
+                    activeRows[numActive] = r;
+                    numActive += 1;
+                }
+            }
+            histogram.addBlock(bins, block, blockStart, probs, activeRows, numActive, labels, parallel);
+        });
+        return histogram;
+    }
+
+    /**
+     * one pass over the file recording the branch of every data point of the nodes,
+     * and, if needed, adding the share of each data point going left to the histogram of the left child of its node
+     * a data point held whole belongs to one node; a fractional one may reach several nodes of the batch
+     */
+    private static void route(ExternalQuantizedDataSet dataSet, FeatureBins bins, DataPartition partition,
+                              List<Node> nodes, byte[] branches, double[] labels, boolean buildLeft,
+                              boolean parallel, RoutedSplit[] routed){
+        int numNodes = nodes.size();
+        // position of each node id in the batch, -1 outside the batch
+        int[] slotOf = new int[routed.length];
+        Arrays.fill(slotOf, -1);
+        RoutedSplit[] splits = new RoutedSplit[numNodes];
+        List<int[]> fractional = new ArrayList<>();
+        for (int s=0;s<numNodes;s++){
+            Node node = nodes.get(s);
+            slotOf[node.getId()] = s;
+            splits[s] = new RoutedSplit(node, partition, buildLeft ? new Histogram(bins.getTotalSize()) : null);
+            for (int k=0;k<splits[s].fracRows.length;k++){
+                fractional.add(new int[]{splits[s].fracRows[k], s, k});
+            }
+        }
+        // fractional data points of all nodes, visited in row order
+        fractional.sort(Comparator.comparingInt(entry -> entry[0]));
+        int[] fracCursor = {0};
+        BlockRows[] blockRows = new BlockRows[numNodes];
+        for (int s=0;s<numNodes;s++){
+            blockRows[s] = new BlockRows();
+        }
+        dataSet.forEachBlock((block, blockStart) -> {
+            int numRows = block.getNumDataPoints();
+            for (BlockRows rows: blockRows){
+                rows.size = 0;
+            }
+            for (int r=0;r<numRows;r++){
+                int i = blockStart + r;
+                int nodeId = partition.getNodeOf(i);
+                if (nodeId!=-1 && slotOf[nodeId]!=-1){
+                    int s = slotOf[nodeId];
+                    byte branch = splits[s].branchOf(block, r);
+                    branches[i] = branch;
+                    blockRows[s].add(r, partition.getWeight(i)*splits[s].leftShare(branch));
+                }
+                while (fracCursor[0]<fractional.size() && fractional.get(fracCursor[0])[0]==i){
+                    int[] entry = fractional.get(fracCursor[0]);
+                    int s = entry[1];
+                    int k = entry[2];
+                    byte branch = splits[s].branchOf(block, r);
+                    splits[s].fracBranches[k] = branch;
+                    blockRows[s].add(r, splits[s].fracProbs[k]*splits[s].leftShare(branch));
+                    fracCursor[0] += 1;
+                }
+            }
+            if (buildLeft){
+                double[] probs = new double[numRows];
+                for (int s=0;s<numNodes;s++){
+                    BlockRows rows = blockRows[s];
+                    if (rows.size==0){
+                        continue;
+                    }
+                    for (int k=0;k<rows.size;k++){
+                        probs[rows.rows[k]] = rows.probs[k];
+                    }
+                    splits[s].leftHistogram.addBlock(bins, block, blockStart, probs, rows.rows, rows.size,
+                            labels, parallel);
+                    for (int k=0;k<rows.size;k++){
+                        probs[rows.rows[k]] = 0;
+                    }
+                }
+            }
+        });
+        for (int s=0;s<numNodes;s++){
+            routed[nodes.get(s).getId()] = splits[s];
+        }
+    }
+
+    /**
+     * a leaf routed ahead of its split: the branches of its fractional data points, in row order,
+     * and the histogram of its left child; branches of data points held whole are in the shared array
+     */
+    private static class RoutedSplit {
+        private int featureIndex;
+        private double threshold;
+        private double leftProb;
+        private int[] fracRows;
+        private double[] fracProbs;
+        private byte[] fracBranches;
+        // null if not needed
+        private Histogram leftHistogram;
+
+        RoutedSplit(Node node, DataPartition partition, Histogram leftHistogram) {
+            this.featureIndex = node.getFeatureIndex();
+            this.threshold = node.getThreshold();
+            this.leftProb = node.getLeftProb();
+            int[] rows = partition.getFracRows(node.getId());
+            double[] probs = partition.getFracProbs(node.getId());
+            int[] order = IntStream.range(0, rows.length).boxed()
+                    .sorted(Comparator.comparingInt(k -> rows[k]))
+                    .mapToInt(Integer::intValue).toArray();
+            this.fracRows = new int[rows.length];
+            this.fracProbs = new double[rows.length];
+            for (int k=0;k<order.length;k++){
+                fracRows[k] = rows[order[k]];
+                fracProbs[k] = probs[order[k]];
+            }
+            this.fracBranches = new byte[rows.length];
+            this.leftHistogram = leftHistogram;
+        }
+
+        byte branchOf(QuantizedDataSet block, int r){
+            double value = block.getValue(r, featureIndex);
+            if (Double.isNaN(value)){
+                return DataPartition.MISSING;
+            }
+            return value<=threshold ? (byte)DataPartition.LEFT : (byte)DataPartition.RIGHT;
+        }
+
+        double leftShare(byte branch){
+            if (branch==DataPartition.MISSING){
+                return leftProb;
+            }
+            return branch==DataPartition.LEFT ? 1 : 0;
+        }
+
+        /**
+         * a data point reaching the node fractionally is never held whole by any node
+         */
+        int branch(int dataPointIndex, byte[] branches){
+            if (fracRows.length>0){
+                int k = Arrays.binarySearch(fracRows, dataPointIndex);
+                if (k>=0){
+                    return fracBranches[k];
+                }
+            }
+            return branches[dataPointIndex];
+        }
+    }
+
+    /**
+     * rows of one block going left from one node, with their shares
+     */
+    private static class BlockRows {
+        private int[] rows = new int[16];
+        private double[] probs = new double[16];
+        private int size;
+
+        void add(int row, double prob){
+            if (prob<=0){
+                return;
+            }
+            if (size==rows.length){
+                rows = Arrays.copyOf(rows, 2*size);
+                probs = Arrays.copyOf(probs, 2*size);
+            }
+            rows[size] = row;
+            probs[size] = prob;
+            size += 1;
+        }
+    }
+}
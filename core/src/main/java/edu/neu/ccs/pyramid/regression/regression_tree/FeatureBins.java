@@ -0,0 +1,187 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * fixed bin boundaries for every feature, shared by all nodes of a tree
+ * so that node histograms can be added and subtracted bin by bin.
+ *
+ * in the flat histogram layout, feature j occupies slots [offset(j), offset(j)+numBins(j)],
+ * where the last slot holds missing values
+ */
+class FeatureBins {
+    private int numFeatures;
+    // number of bins for present values; less than 2 if the feature cannot be split
+    private int[] numBins;
+    private int[] offsets;
+    // bin containing zero, -1 if zero never appears
+    private int[] zeroBins;
+    private double[] mins;
+    private double[] lengths;
+    private int totalSize;
+    // bin boundaries come from the data set if it is quantized
+    private QuantizedDataSet quantized;
+
+    /**
+     * equal width bins over the range of each feature among data points with positive weight,
+     * the same grid IntervalSplitter builds at the root
+     */
+    static FeatureBins equalWidth(DataSet dataSet, double[] weights, int numIntervals, boolean parallel){
+        FeatureBins bins = new FeatureBins();
+        int numFeatures = dataSet.getNumFeatures();
+        long numActive = Arrays.stream(weights).filter(weight -> weight>0).count();
+        bins.numFeatures = numFeatures;
+        bins.numBins = new int[numFeatures];
+        bins.zeroBins = new int[numFeatures];
+        bins.mins = new double[numFeatures];
+        bins.lengths = new double[numFeatures];
+        IntStream intStream = IntStream.range(0, numFeatures);
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(j -> {
+            Vector column = dataSet.getColumn(j);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int nonZeroCount = 0;
+            for (Vector.Element element: column.nonZeroes()){
+                if (weights[element.index()]<=0){
+                    continue;
+                }
+                nonZeroCount += 1;
+                double value = element.get();
+                if (!Double.isNaN(value)){
+                    if (value<min){
+                        min = value;
+                    }
+                    if (value>max){
+                        max = value;
+                    }
+                }
+            }
+            boolean hasZero = nonZeroCount < numActive;
+            if (hasZero){
+                min = Math.min(min, 0);
+                max = Math.max(max, 0);
+            }
+            // no present values or no range
+            if (max == Double.NEGATIVE_INFINITY || min == max){
+                bins.numBins[j] = 0;
+                bins.zeroBins[j] = -1;
+                return;
+            }
+            double length = (max-min)/numIntervals;
+            bins.numBins[j] = numIntervals;
+            bins.mins[j] = min;
+            bins.lengths[j] = length;
+            if (hasZero){
+                bins.zeroBins[j] = IntervalSplitter.getIntervalIndex(0, min, length, numIntervals);
+            } else {
+                bins.zeroBins[j] = -1;
+            }
+        });
+        bins.computeOffsets();
+        return bins;
+    }
+
+    /**
+     * bins of a quantized data set; bin indices are read from the data set, never recomputed
+     */
+    static FeatureBins quantized(QuantizedDataSet dataSet){
+        FeatureBins bins = new FeatureBins();
+        int numFeatures = dataSet.getNumFeatures();
+        bins.numFeatures = numFeatures;
+        bins.quantized = dataSet;
+        bins.numBins = new int[numFeatures];
+        bins.zeroBins = new int[numFeatures];
+        for (int j=0;j<numFeatures;j++){
+            bins.numBins[j] = dataSet.getNumBins(j);
+            bins.zeroBins[j] = dataSet.getZeroBin(j);
+        }
+        bins.computeOffsets();
+        return bins;
+    }
+
+    /**
+     * @param weights rows with weight 0 do not affect the bins of a data set that is not quantized
+     */
+    static FeatureBins of(DataSet dataSet, double[] weights, RegTreeConfig regTreeConfig){
+        if (dataSet instanceof QuantizedDataSet){
+            return quantized((QuantizedDataSet) dataSet);
+        }
+        return equalWidth(dataSet, weights, regTreeConfig.getNumSplitIntervals(), regTreeConfig.isParallel());
+    }
+
+    private void computeOffsets(){
+        offsets = new int[numFeatures];
+        int offset = 0;
+        for (int j=0;j<numFeatures;j++){
+            offsets[j] = offset;
+            // one extra slot for missing values
+            offset += numBins[j] + 1;
+        }
+        totalSize = offset;
+    }
+
+    int getNumFeatures() {
+        return numFeatures;
+    }
+
+    int getNumBins(int featureIndex){
+        return numBins[featureIndex];
+    }
+
+    int getOffset(int featureIndex){
+        return offsets[featureIndex];
+    }
+
+    int getNanSlot(int featureIndex){
+        return offsets[featureIndex] + numBins[featureIndex];
+    }
+
+    int getZeroBin(int featureIndex){
+        return zeroBins[featureIndex];
+    }
+
+    int getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * slot in the flat histogram for a value, including missing values
+     */
+    int getSlot(int featureIndex, double featureValue){
+        if (Double.isNaN(featureValue)){
+            return getNanSlot(featureIndex);
+        }
+        return offsets[featureIndex] + IntervalSplitter.getIntervalIndex(featureValue, mins[featureIndex],
+                lengths[featureIndex], numBins[featureIndex]);
+    }
+
+    boolean isQuantized(){
+        return quantized!=null;
+    }
+
+    QuantizedDataSet getQuantized() {
+        return quantized;
+    }
+
+    double getLower(int featureIndex, int bin){
+        if (quantized!=null){
+            return quantized.getLowerBound(featureIndex, bin);
+        }
+        return mins[featureIndex] + bin*lengths[featureIndex];
+    }
+
+    double getUpper(int featureIndex, int bin){
+        if (quantized!=null){
+            return quantized.getUpperBound(featureIndex, bin);
+        }
+        return getLower(featureIndex, bin) + lengths[featureIndex];
+    }
+}
@@ -0,0 +1,271 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.util.BinarySerialization;
+import org.apache.mahout.math.Vector;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * a sum of regressors compiled into primitive arrays
+ * nodes of all trees are stored in pre-order; constant regressors become single leaf trees.
+ * predictions are the same as summing {@link RegressionTree#predict(Vector)} in order, bit for bit,
+ * including missing values: a data point hitting a missing value on its path is spread over all leaves
+ * with the split probabilities, leaf by leaf in the order of the original tree.
+ * no memory is allocated during prediction
+ */
+public class FlatTrees implements Serializable{
+    private static final long serialVersionUID = 1L;
+
+    private int numRegressors;
+    // root node of each regressor, -1 if the regressor is not a tree
+    private int[] roots;
+    // regressors that cannot be flattened, null for trees
+    private Regressor[] others;
+
+    // by node
+    private int[] featureIndices;
+    private double[] thresholds;
+    // -1 for leaves
+    private int[] leftChildren;
+    private int[] rightChildren;
+    private double[] values;
+    private double[] leftProbs;
+    private double[] rightProbs;
+
+    // leaves of regressor r are leafNodes[leafStarts[r]...leafStarts[r+1]-1], in the order of RegressionTree.leaves
+    private int[] leafStarts;
+    private int[] leafNodes;
+    // the path of leaf l goes through pathNodes[pathStarts[l]...pathStarts[l+1]-1] from the root,
+    // turning left at the k-th node if pathLefts[k]
+    private int[] pathStarts;
+    private int[] pathNodes;
+    private boolean[] pathLefts;
+
+    public FlatTrees(List<Regressor> regressors) {
+        this.numRegressors = regressors.size();
+        this.roots = new int[numRegressors];
+        this.others = new Regressor[numRegressors];
+        List<Node> nodes = new ArrayList<>();
+        List<Node> leaves = new ArrayList<>();
+        this.leafStarts = new int[numRegressors+1];
+        for (int r=0;r<numRegressors;r++){
+            Regressor regressor = regressors.get(r);
+            leafStarts[r] = leaves.size();
+            if (regressor instanceof RegressionTree){
+                RegressionTree tree = (RegressionTree) regressor;
+                roots[r] = nodes.size();
+                nodes.addAll(tree.traverse());
+                leaves.addAll(tree.leaves);
+            } else if (regressor instanceof ConstantRegressor){
+                Node leaf = new Node();
+                leaf.setLeaf(true);
+                leaf.setValue(((ConstantRegressor) regressor).getScore());
+                roots[r] = nodes.size();
+                nodes.add(leaf);
+                leaves.add(leaf);
+            } else {
+                roots[r] = -1;
+                others[r] = regressor;
+            }
+        }
+        leafStarts[numRegressors] = leaves.size();
+
+        int numNodes = nodes.size();
+        this.featureIndices = new int[numNodes];
+        this.thresholds = new double[numNodes];
+        this.leftChildren = new int[numNodes];
+        this.rightChildren = new int[numNodes];
+        this.values = new double[numNodes];
+        this.leftProbs = new double[numNodes];
+        this.rightProbs = new double[numNodes];
+        // nodes are distinct objects, so identity gives the flat index
+        IdentityHashMap<Node, Integer> positions = new IdentityHashMap<>();
+        for (int n=0;n<numNodes;n++){
+            positions.put(nodes.get(n), n);
+        }
+        for (int n=0;n<numNodes;n++){
+            Node node = nodes.get(n);
+            values[n] = node.getValue();
+            if (node.isLeaf()){
+                leftChildren[n] = -1;
+                rightChildren[n] = -1;
+            } else {
+                featureIndices[n] = node.getFeatureIndex();
+                thresholds[n] = node.getThreshold();
+                leftChildren[n] = positions.get(node.getLeftChild());
+                rightChildren[n] = positions.get(node.getRightChild());
+                leftProbs[n] = node.getLeftProb();
+                rightProbs[n] = node.getRightProb();
+            }
+        }
+
+        int numLeaves = leaves.size();
+        this.leafNodes = new int[numLeaves];
+        this.pathStarts = new int[numLeaves+1];
+        List<Integer> pathNodeList = new ArrayList<>();
+        List<Boolean> pathLeftList = new ArrayList<>();
+        for (int l=0;l<numLeaves;l++){
+            Node leaf = leaves.get(l);
+            leafNodes[l] = positions.get(leaf);
+            pathStarts[l] = pathNodeList.size();
+            List<Node> ancestors = new ArrayList<>();
+            List<Boolean> lefts = new ArrayList<>();
+            Node node = leaf;
+            while (node.getParent()!=null){
+                Node parent = node.getParent();
+                ancestors.add(0, parent);
+                lefts.add(0, node==parent.getLeftChild());
+                node = parent;
+            }
+            for (int k=0;k<ancestors.size();k++){
+                pathNodeList.add(positions.get(ancestors.get(k)));
+                pathLeftList.add(lefts.get(k));
+            }
+        }
+        pathStarts[numLeaves] = pathNodeList.size();
+        this.pathNodes = pathNodeList.stream().mapToInt(Integer::intValue).toArray();
+        this.pathLefts = new boolean[pathLeftList.size()];
+        for (int k=0;k<pathLefts.length;k++){
+            pathLefts[k] = pathLeftList.get(k);
+        }
+    }
+
+    private FlatTrees() {
+    }
+
+    public int getNumRegressors() {
+        return numRegressors;
+    }
+
+    /**
+     * sum of all regressors
+     */
+    public double predict(Vector vector){
+        double res = 0;
+        for (int r=0;r<numRegressors;r++){
+            res += predict(vector, r);
+        }
+        return res;
+    }
+
+    /**
+     * prediction of a single regressor
+     */
+    public double predict(Vector vector, int regressorIndex){
+        int node = roots[regressorIndex];
+        if (node==-1){
+            return others[regressorIndex].predict(vector);
+        }
+        while (leftChildren[node]!=-1){
+            double featureValue = vector.get(featureIndices[node]);
+            if (Double.isNaN(featureValue)){
+                return predictWithMissingValue(vector, regressorIndex);
+            }
+            if (featureValue<=thresholds[node]){
+                node = leftChildren[node];
+            } else {
+                node = rightChildren[node];
+            }
+        }
+        return values[node];
+    }
+
+    /**
+     * predictions for a block of data points, evaluated tree by tree:
+     * all data points go through one tree before the next tree is read
+     * scores[offset + k*stride] is set to the prediction for vectors[k]
+     */
+    public void predictBatch(Vector[] vectors, double[] scores, int offset, int stride){
+        for (int k=0;k<vectors.length;k++){
+            scores[offset + k*stride] = 0;
+        }
+        for (int r=0;r<numRegressors;r++){
+            for (int k=0;k<vectors.length;k++){
+                scores[offset + k*stride] += predict(vectors[k], r);
+            }
+        }
+    }
+
+    /**
+     * probabilities are accumulated from the root down, in the same order as RegressionTree.probability
+     */
+    private double predictWithMissingValue(Vector vector, int regressorIndex){
+        double prediction = 0;
+        for (int l=leafStarts[regressorIndex];l<leafStarts[regressorIndex+1];l++){
+            double prob = 1;
+            for (int k=pathStarts[l];k<pathStarts[l+1];k++){
+                int node = pathNodes[k];
+                double featureValue = vector.get(featureIndices[node]);
+                if (Double.isNaN(featureValue)){
+                    if (pathLefts[k]){
+                        prob = leftProbs[node]*prob;
+                    } else {
+                        prob = rightProbs[node]*prob;
+                    }
+                } else if ((featureValue<=thresholds[node])!=pathLefts[k]){
+                    prob = 0;
+                    break;
+                }
+            }
+            prediction += prob*values[leafNodes[l]];
+        }
+        return prediction;
+    }
+
+    /**
+     * write the arrays in the compact binary model format
+     * only trees and constants can be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        for (Regressor other: others){
+            if (other!=null){
+                throw new UnsupportedOperationException("cannot write "+other.getClass().getSimpleName());
+            }
+        }
+        out.writeInt(numRegressors);
+        BinarySerialization.writeInts(out, roots);
+        BinarySerialization.writeInts(out, featureIndices);
+        BinarySerialization.writeDoubles(out, thresholds);
+        BinarySerialization.writeInts(out, leftChildren);
+        BinarySerialization.writeInts(out, rightChildren);
+        BinarySerialization.writeDoubles(out, values);
+        BinarySerialization.writeDoubles(out, leftProbs);
+        BinarySerialization.writeDoubles(out, rightProbs);
+        BinarySerialization.writeInts(out, leafStarts);
+        BinarySerialization.writeInts(out, leafNodes);
+        BinarySerialization.writeInts(out, pathStarts);
+        BinarySerialization.writeInts(out, pathNodes);
+        BinarySerialization.writeBooleans(out, pathLefts);
+    }
+
+    /**
+     * read arrays written by {@link #writeTo(DataOutputStream)}; no tree objects are created
+     */
+    public static FlatTrees readFrom(ByteBuffer buffer){
+        FlatTrees flatTrees = new FlatTrees();
+        flatTrees.numRegressors = buffer.getInt();
+        flatTrees.others = new Regressor[flatTrees.numRegressors];
+        flatTrees.roots = BinarySerialization.readInts(buffer);
+        flatTrees.featureIndices = BinarySerialization.readInts(buffer);
+        flatTrees.thresholds = BinarySerialization.readDoubles(buffer);
+        flatTrees.leftChildren = BinarySerialization.readInts(buffer);
+        flatTrees.rightChildren = BinarySerialization.readInts(buffer);
+        flatTrees.values = BinarySerialization.readDoubles(buffer);
+        flatTrees.leftProbs = BinarySerialization.readDoubles(buffer);
+        flatTrees.rightProbs = BinarySerialization.readDoubles(buffer);
+        flatTrees.leafStarts = BinarySerialization.readInts(buffer);
+        flatTrees.leafNodes = BinarySerialization.readInts(buffer);
+        flatTrees.pathStarts = BinarySerialization.readInts(buffer);
+        flatTrees.pathNodes = BinarySerialization.readInts(buffer);
+        flatTrees.pathLefts = BinarySerialization.readBooleans(buffer);
+        return flatTrees;
+    }
+}
@@ -0,0 +1,180 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * regression tree trainer based on node histograms
+ * bins are fixed for the whole tree; only the smaller child of a split is scanned,
+ * the histogram of the larger child is obtained by subtracting the smaller one from the parent
+ * on a {@link edu.neu.ccs.pyramid.dataset.QuantizedDataSet}, the precomputed bins are used directly
+ * nodes do not keep probability arrays over all data points; see {@link DataPartition}
+ */
+public class HistRegTreeTrainer {
+
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     DataSet dataSet,
+                                     double[] labels,
+                                     LeafOutputCalculator leafOutputCalculator){
+        double[] weights = new double[labels.length];
+        Arrays.fill(weights,1.0);
+        return fit(regTreeConfig,dataSet,labels,weights,leafOutputCalculator);
+    }
+
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     DataSet dataSet,
+                                     double[] labels,
+                                     double[] weights,
+                                     LeafOutputCalculator leafOutputCalculator){
+        FeatureBins bins = FeatureBins.of(dataSet, weights, regTreeConfig);
+        return fit(regTreeConfig, dataSet, bins, labels, weights, leafOutputCalculator);
+    }
+
+    static RegressionTree fit(RegTreeConfig regTreeConfig,
+                              DataSet dataSet,
+                              FeatureBins bins,
+                              double[] labels,
+                              double[] weights,
+                              LeafOutputCalculator leafOutputCalculator){
+        RegressionTree tree = new RegressionTree();
+        tree.setFeatureList(dataSet.getFeatureList());
+
+        tree.leaves = new ArrayList<>();
+        tree.root = new Node();
+        tree.root.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        // indexed by node id
+        Histogram[] histograms = new Histogram[2*maxNumLeaves];
+
+        //root gets all active data points
+        DataPartition partition = new DataPartition(weights, tree.root.getId(), 2*maxNumLeaves);
+        histograms[tree.root.getId()] = Histogram.build(bins, dataSet, partition, tree.root.getId(), labels,
+                regTreeConfig.isParallel());
+        updateNode(tree.root, regTreeConfig, bins, histograms[tree.root.getId()]);
+        tree.leaves.add(tree.root);
+        tree.root.setLeaf(true);
+        tree.allNodes.add(tree.root);
+
+        /**
+         * grow the tree
+         */
+        while (tree.leaves.size()<maxNumLeaves) {
+            Optional<Node> leafToSplitOptional = RegTreeTrainer.findLeafToSplit(tree.leaves);
+            if (leafToSplitOptional.isPresent()){
+                Node leafToSplit = leafToSplitOptional.get();
+                splitNode(tree, leafToSplit, regTreeConfig, dataSet, bins, partition, histograms, labels);
+            } else {
+                break;
+            }
+        }
+
+        setLeavesOutputs(regTreeConfig, tree.leaves, partition, leafOutputCalculator, labels);
+        RegTreeTrainer.normalizeReductions(tree, dataSet);
+        return tree;
+    }
+
+    private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
+                                  DataSet dataSet, FeatureBins bins, DataPartition partition,
+                                  Histogram[] histograms, double[] labels) {
+        int featureIndex = leafToSplit.getFeatureIndex();
+        double threshold = leafToSplit.getThreshold();
+
+        Node leftChild = new Node();
+        leftChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+        Node rightChild = new Node();
+        rightChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        //<= go left, > go right, missing values go to both branches probabilistically
+        IntToDoubleFunction featureValue;
+        if (bins.isQuantized()){
+            QuantizedDataSet quantized = bins.getQuantized();
+            featureValue = i -> quantized.getValue(i, featureIndex);
+        } else {
+            Vector column = dataSet.getColumn(featureIndex);
+            featureValue = column::get;
+        }
+        partition.split(leafToSplit.getId(), leftChild.getId(), rightChild.getId(), featureValue, threshold,
+                leafToSplit.getLeftProb(), leafToSplit.getRightProb());
+
+        Histogram parentHistogram = histograms[leafToSplit.getId()];
+        histograms[leafToSplit.getId()] = null;
+        //the last two leaves need not to be updated completely
+        //as we don't need to split them later
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        if (tree.leaves.size()!=maxNumLeaves-1){
+            Histogram leftHistogram;
+            Histogram rightHistogram;
+            if (partition.size(leftChild.getId())<=partition.size(rightChild.getId())){
+                leftHistogram = Histogram.build(bins, dataSet, partition, leftChild.getId(), labels,
+                        regTreeConfig.isParallel());
+                rightHistogram = parentHistogram.subtract(leftHistogram);
+            } else {
+                rightHistogram = Histogram.build(bins, dataSet, partition, rightChild.getId(), labels,
+                        regTreeConfig.isParallel());
+                leftHistogram = parentHistogram.subtract(rightHistogram);
+            }
+            histograms[leftChild.getId()] = leftHistogram;
+            histograms[rightChild.getId()] = rightHistogram;
+            updateNode(leftChild, regTreeConfig, bins, leftHistogram);
+            updateNode(rightChild, regTreeConfig, bins, rightHistogram);
+        }
+
+        leafToSplit.setLeftChild(leftChild);
+        leafToSplit.setRightChild(rightChild);
+
+        leafToSplit.setLeaf(false);
+        tree.leaves.remove(leafToSplit);
+        leftChild.setLeaf(true);
+        rightChild.setLeaf(true);
+        tree.leaves.add(leftChild);
+        tree.leaves.add(rightChild);
+        tree.allNodes.add(leftChild);
+        tree.allNodes.add(rightChild);
+    }
+
+    /**
+     * parallel; each leaf only reads its own data points
+     */
+    static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, DataPartition partition,
+                                         LeafOutputCalculator calculator, double[] labels){
+        Stream<Node> stream = leaves.stream();
+        if (regTreeConfig.isParallel()){
+            stream = stream.parallel();
+        }
+        stream.forEach(leaf -> leaf.setValue(calculator.getLeafOutput(partition.dataIndices(leaf.getId()),
+                partition.probabilities(leaf.getId()), labels)));
+    }
+
+    static void updateNode(Node node,
+                                   RegTreeConfig regTreeConfig,
+                                   FeatureBins bins,
+                                   Histogram histogram) {
+        Optional<SplitResult> splitResultOptional = HistogramSplitter.split(regTreeConfig, bins, histogram);
+        if (splitResultOptional.isPresent()){
+            SplitResult splitResult = splitResultOptional.get();
+            node.setFeatureIndex(splitResult.getFeatureIndex());
+            node.setThreshold(splitResult.getThreshold());
+            node.setReduction(splitResult.getReduction());
+            double leftCount = splitResult.getLeftCount();
+            double rightCount = splitResult.getRightCount();
+            double totalCount = leftCount + rightCount;
+            node.setLeftProb(leftCount/totalCount);
+            node.setRightProb(rightCount/totalCount);
+            node.setSplitable(true);
+        } else{
+            node.setSplitable(false);
+        }
+    }
+}
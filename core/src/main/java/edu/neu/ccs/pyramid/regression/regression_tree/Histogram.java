@@ -0,0 +1,308 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.FeatureBundles;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.stream.IntStream;
+
+/**
+ * per-feature bin statistics of one node, laid out by {@link FeatureBins}
+ * zero values are never added explicitly;
+ * the zero bin receives whatever node mass the other slots of the feature do not account for
+ */
+class Histogram {
+    // \sum _i p_i in each slot
+    final double[] counts;
+    // \sum _i p_i * y_i in each slot
+    final double[] sums;
+    // node totals
+    double totalCount;
+    double totalSum;
+
+    Histogram(int size) {
+        this.counts = new double[size];
+        this.sums = new double[size];
+    }
+
+    /**
+     * scan the data points of a node
+     */
+    static Histogram build(FeatureBins bins, DataSet dataSet, DataPartition partition, int nodeId,
+                           double[] labels, boolean parallel){
+        if (bins.isQuantized()){
+            return buildQuantized(bins, partition, nodeId, labels, parallel);
+        }
+        int start = partition.getStart(nodeId);
+        int end = partition.getEnd(nodeId);
+        Histogram histogram;
+        if (!parallel){
+            histogram = build(bins, dataSet, partition, start, end, labels);
+        } else {
+            int numRows = end - start;
+            int numChunks = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(numRows/1000, 1));
+            int chunkSize = (numRows + numChunks - 1)/numChunks;
+            histogram = IntStream.range(0, numChunks).parallel()
+                    .mapToObj(c -> build(bins, dataSet, partition, start + c*chunkSize,
+                            Math.min(end, start + (c+1)*chunkSize), labels))
+                    .reduce(Histogram::add).get();
+        }
+        int[] fracRows = partition.getFracRows(nodeId);
+        double[] fracProbs = partition.getFracProbs(nodeId);
+        for (int k=0;k<fracRows.length;k++){
+            histogram.addRow(bins, dataSet.getRow(fracRows[k]), fracProbs[k], labels[fracRows[k]]);
+        }
+        return histogram;
+    }
+
+    /**
+     * whole data points in [start, end) of the partition
+     */
+    private static Histogram build(FeatureBins bins, DataSet dataSet, DataPartition partition, int start, int end,
+                                   double[] labels){
+        Histogram histogram = new Histogram(bins.getTotalSize());
+        int[] rows = partition.getRows();
+        for (int k=start;k<end;k++){
+            int i = rows[k];
+            histogram.addRow(bins, dataSet.getRow(i), partition.getWeight(i), labels[i]);
+        }
+        return histogram;
+    }
+
+    private void addRow(FeatureBins bins, Vector row, double prob, double label){
+        double weightedLabel = prob*label;
+        totalCount += prob;
+        totalSum += weightedLabel;
+        for (Vector.Element element: row.nonZeroes()){
+            int featureIndex = element.index();
+            if (bins.getNumBins(featureIndex)==0){
+                continue;
+            }
+            int slot = bins.getSlot(featureIndex, element.get());
+            counts[slot] += prob;
+            sums[slot] += weightedLabel;
+        }
+    }
+
+    /**
+     * column by column scan of bin indices; parallel by feature
+     * dense columns are read at the rows of the node;
+     * a sparse column is either scanned entry by entry, keeping the entries of the node,
+     * or searched row by row, whichever is cheaper for the node size.
+     * bundled features are read from their bundle columns, see {@link FeatureBundles}
+     */
+    private static Histogram buildQuantized(FeatureBins bins, DataPartition partition, int nodeId,
+                                            double[] labels, boolean parallel){
+        QuantizedDataSet dataSet = bins.getQuantized();
+        FeatureBundles bundles = dataSet.getBundles();
+        Histogram histogram = new Histogram(bins.getTotalSize());
+        int[] rows = partition.getRows();
+        int start = partition.getStart(nodeId);
+        int end = partition.getEnd(nodeId);
+        int[] fracRows = partition.getFracRows(nodeId);
+        double[] fracProbs = partition.getFracProbs(nodeId);
+        for (int k=start;k<end;k++){
+            int i = rows[k];
+            histogram.totalCount += partition.getWeight(i);
+            histogram.totalSum += partition.getWeight(i)*labels[i];
+        }
+        for (int k=0;k<fracRows.length;k++){
+            histogram.totalCount += fracProbs[k];
+            histogram.totalSum += fracProbs[k]*labels[fracRows[k]];
+        }
+        IntStream intStream = IntStream.range(0, bins.getNumFeatures());
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(featureIndex -> {
+            if (bins.getNumBins(featureIndex)<2 || (bundles!=null && bundles.isBundled(featureIndex))){
+                return;
+            }
+            int offset = bins.getOffset(featureIndex);
+            double[] counts = histogram.counts;
+            double[] sums = histogram.sums;
+            if (dataSet.isSparseColumn(featureIndex) && scanEntries(dataSet.getNumEntries(featureIndex), end-start)){
+                int numEntries = dataSet.getNumEntries(featureIndex);
+                for (int e=0;e<numEntries;e++){
+                    int i = dataSet.getEntryRow(featureIndex, e);
+                    if (partition.getNodeOf(i)==nodeId){
+                        double prob = partition.getWeight(i);
+                        int slot = offset + dataSet.getEntryBin(featureIndex, e);
+                        counts[slot] += prob;
+                        sums[slot] += prob*labels[i];
+                    }
+                }
+            } else {
+                for (int k=start;k<end;k++){
+                    int i = rows[k];
+                    double prob = partition.getWeight(i);
+                    int slot = offset + dataSet.getBin(i, featureIndex);
+                    counts[slot] += prob;
+                    sums[slot] += prob*labels[i];
+                }
+            }
+            for (int k=0;k<fracRows.length;k++){
+                int i = fracRows[k];
+                int slot = offset + dataSet.getBin(i, featureIndex);
+                counts[slot] += fracProbs[k];
+                sums[slot] += fracProbs[k]*labels[i];
+            }
+        });
+        if (bundles!=null){
+            histogram.addBundles(bins, bundles, partition, nodeId, labels, parallel);
+        }
+        return histogram;
+    }
+
+    /**
+     * every non-zero code of a bundle is added to the slot of the feature and bin it stands for;
+     * bundles have disjoint members, so they can be scanned in parallel
+     */
+    private void addBundles(FeatureBins bins, FeatureBundles bundles, DataPartition partition, int nodeId,
+                            double[] labels, boolean parallel){
+        int[] rows = partition.getRows();
+        int start = partition.getStart(nodeId);
+        int end = partition.getEnd(nodeId);
+        int[] fracRows = partition.getFracRows(nodeId);
+        double[] fracProbs = partition.getFracProbs(nodeId);
+        IntStream intStream = IntStream.range(0, bundles.getNumBundles());
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(bundle -> {
+            if (bundles.isSparse(bundle) && scanEntries(bundles.getNumEntries(bundle), end-start)){
+                int numEntries = bundles.getNumEntries(bundle);
+                for (int e=0;e<numEntries;e++){
+                    int i = bundles.getEntryRow(bundle, e);
+                    if (partition.getNodeOf(i)==nodeId){
+                        addCode(bins, bundles, bundle, bundles.getEntryCode(bundle, e), partition.getWeight(i),
+                                labels[i]);
+                    }
+                }
+            } else {
+                for (int k=start;k<end;k++){
+                    int i = rows[k];
+                    addCode(bins, bundles, bundle, bundles.getCode(bundle, i), partition.getWeight(i), labels[i]);
+                }
+            }
+            for (int k=0;k<fracRows.length;k++){
+                int i = fracRows[k];
+                addCode(bins, bundles, bundle, bundles.getCode(bundle, i), fracProbs[k], labels[i]);
+            }
+        });
+    }
+
+    private void addCode(FeatureBins bins, FeatureBundles bundles, int bundle, int code, double prob, double label){
+        if (code==0){
+            return;
+        }
+        int slot = bins.getOffset(bundles.getFeature(bundle, code)) + bundles.getBin(bundle, code);
+        counts[slot] += prob;
+        sums[slot] += prob*label;
+    }
+
+    /**
+     * add the data points of one block of an external data set; parallel by feature
+     * @param probs probability of each row of the block at the node, 0 for rows outside the node
+     * @param activeRows the first numActive entries are the rows of the block with positive probability
+     */
+    void addBlock(FeatureBins bins, QuantizedDataSet block, int blockStart, double[] probs,
+                  int[] activeRows, int numActive, double[] labels, boolean parallel){
+        for (int k=0;k<numActive;k++){
+            int r = activeRows[k];
+            totalCount += probs[r];
+            totalSum += probs[r]*labels[blockStart+r];
+        }
+        IntStream intStream = IntStream.range(0, bins.getNumFeatures());
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(featureIndex -> {
+            if (bins.getNumBins(featureIndex)<2){
+                return;
+            }
+            int offset = bins.getOffset(featureIndex);
+            if (block.isSparseColumn(featureIndex) && scanEntries(block.getNumEntries(featureIndex), numActive)){
+                int numEntries = block.getNumEntries(featureIndex);
+                for (int e=0;e<numEntries;e++){
+                    int r = block.getEntryRow(featureIndex, e);
+                    double prob = probs[r];
+                    if (prob>0){
+                        int slot = offset + block.getEntryBin(featureIndex, e);
+                        counts[slot] += prob;
+                        sums[slot] += prob*labels[blockStart+r];
+                    }
+                }
+            } else {
+                for (int k=0;k<numActive;k++){
+                    int r = activeRows[k];
+                    double prob = probs[r];
+                    int slot = offset + block.getBin(r, featureIndex);
+                    counts[slot] += prob;
+                    sums[slot] += prob*labels[blockStart+r];
+                }
+            }
+        });
+    }
+
+    /**
+     * scanning all entries of a sparse column is cheaper than one binary search per row of the node
+     */
+    private static boolean scanEntries(int numEntries, int numRows){
+        int searchCost = 32 - Integer.numberOfLeadingZeros(numEntries);
+        return (long)numRows*searchCost >= numEntries;
+    }
+
+    /**
+     * counts, then sums, then the node totals; the layout sent between shards
+     */
+    double[] toArray(){
+        int size = counts.length;
+        double[] array = new double[2*size+2];
+        System.arraycopy(counts, 0, array, 0, size);
+        System.arraycopy(sums, 0, array, size, size);
+        array[2*size] = totalCount;
+        array[2*size+1] = totalSum;
+        return array;
+    }
+
+    static Histogram fromArray(double[] array){
+        int size = (array.length-2)/2;
+        Histogram histogram = new Histogram(size);
+        System.arraycopy(array, 0, histogram.counts, 0, size);
+        System.arraycopy(array, size, histogram.sums, 0, size);
+        histogram.totalCount = array[2*size];
+        histogram.totalSum = array[2*size+1];
+        return histogram;
+    }
+
+    /**
+     * merge another histogram into this one
+     * @return this
+     */
+    Histogram add(Histogram other){
+        for (int s=0;s<counts.length;s++){
+            counts[s] += other.counts[s];
+            sums[s] += other.sums[s];
+        }
+        totalCount += other.totalCount;
+        totalSum += other.totalSum;
+        return this;
+    }
+
+    /**
+     * turn a parent histogram into the histogram of its larger child, in place
+     * @param sibling histogram of the smaller child
+     * @return this
+     */
+    Histogram subtract(Histogram sibling){
+        for (int s=0;s<counts.length;s++){
+            counts[s] -= sibling.counts[s];
+            sums[s] -= sibling.sums[s];
+        }
+        totalCount -= sibling.totalCount;
+        totalSum -= sibling.totalSum;
+        return this;
+    }
+}
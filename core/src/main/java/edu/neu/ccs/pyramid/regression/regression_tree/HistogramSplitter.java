@@ -0,0 +1,148 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * split finding on node histograms
+ * follows the same rules as {@link IntervalSplitter}: missing values are spread over bins
+ * according to the bin percentages, empty bins are dropped and their range is given to the neighbours
+ */
+class HistogramSplitter {
+    // slots with less mass than this fraction of the node are considered empty;
+    // subtraction leaves round-off residues instead of exact zeros
+    private static final double EMPTY = 1E-12;
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       FeatureBins bins,
+                                       Histogram histogram){
+        IntStream intStream = IntStream.range(0, bins.getNumFeatures());
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        return intStream.mapToObj(featureIndex -> split(regTreeConfig, bins, histogram, featureIndex))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .max(Comparator.comparing(SplitResult::getReduction));
+    }
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       FeatureBins bins,
+                                       Histogram histogram,
+                                       int featureIndex){
+        int numBins = bins.getNumBins(featureIndex);
+        if (numBins==0){
+            return Optional.empty();
+        }
+        double nodeCount = histogram.totalCount;
+        if (nodeCount<=0){
+            return Optional.empty();
+        }
+        int offset = bins.getOffset(featureIndex);
+        int nanSlot = bins.getNanSlot(featureIndex);
+        double[] counts = new double[numBins];
+        double[] sums = new double[numBins];
+        double accountedCount = 0;
+        double accountedSum = 0;
+        for (int b=0;b<numBins;b++){
+            counts[b] = histogram.counts[offset+b];
+            sums[b] = histogram.sums[offset+b];
+            accountedCount += counts[b];
+            accountedSum += sums[b];
+        }
+        double nanCount = histogram.counts[nanSlot];
+        double nanSum = histogram.sums[nanSlot];
+        accountedCount += nanCount;
+        accountedSum += nanSum;
+
+        int zeroBin = bins.getZeroBin(featureIndex);
+        if (zeroBin!=-1){
+            counts[zeroBin] += nodeCount - accountedCount;
+            sums[zeroBin] += histogram.totalSum - accountedSum;
+        }
+
+        double emptyCount = EMPTY*nodeCount;
+        boolean hasNan = nanCount > emptyCount;
+        for (int b=0;b<numBins;b++){
+            if (counts[b] <= emptyCount){
+                counts[b] = 0;
+                sums[b] = 0;
+                continue;
+            }
+            // missing values follow the percentages of present values
+            if (hasNan){
+                double percentage = counts[b]/nodeCount;
+                counts[b] += percentage*nanCount;
+                sums[b] += percentage*nanSum;
+            }
+        }
+        return findBest(regTreeConfig, bins, featureIndex, counts, sums);
+    }
+
+    private static Optional<SplitResult> findBest(RegTreeConfig regTreeConfig,
+                                                  FeatureBins bins,
+                                                  int featureIndex,
+                                                  double[] counts,
+                                                  double[] sums){
+        int numBins = counts.length;
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        double totalCount = 0;
+        double totalSum = 0;
+        int lastNonEmpty = -1;
+        for (int b=0;b<numBins;b++){
+            if (counts[b]!=0){
+                totalCount += counts[b];
+                totalSum += sums[b];
+                lastNonEmpty = b;
+            }
+        }
+
+        SplitResult best = null;
+        double leftCount = 0;
+        double leftSum = 0;
+        int b = nextNonEmpty(counts, 0);
+        while (b!=-1 && b<lastNonEmpty){
+            int next = nextNonEmpty(counts, b+1);
+            leftCount += counts[b];
+            leftSum += sums[b];
+            double rightSum = totalSum - leftSum;
+            double rightCount = totalCount - leftCount;
+            double reduction = leftSum * leftSum / leftCount +
+                    rightSum * rightSum / rightCount
+                    - totalSum * totalSum / totalCount;
+            if (leftCount >= minDataPerLeaf && rightCount >= minDataPerLeaf
+                    && (best==null || reduction > best.getReduction())){
+                best = new SplitResult();
+                best.setFeatureIndex(featureIndex)
+                        .setLeftCount(leftCount)
+                        .setRightCount(rightCount)
+                        .setReduction(reduction)
+                        .setThreshold(threshold(bins, featureIndex, b, next));
+            }
+            b = next;
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * threshold between a non-empty bin and the next non-empty bin;
+     * a gap of empty bins is split in the middle, the way IntervalSplitter.compress does
+     */
+    private static double threshold(FeatureBins bins, int featureIndex, int bin, int next){
+        // compress never opens an empty block at the second interval
+        if (next==bin+1 || bin==0){
+            return bins.getUpper(featureIndex, bin);
+        }
+        return (bins.getLower(featureIndex, bin+1) + bins.getUpper(featureIndex, next-1))/2;
+    }
+
+    private static int nextNonEmpty(double[] counts, int from){
+        for (int b=from;b<counts.length;b++){
+            if (counts[b]!=0){
+                return b;
+            }
+        }
+        return -1;
+    }
+}
@@ -14,5 +14,22 @@ public interface LeafOutputCalculator {
      * @return output of the leaf node
      */
     double getLeafOutput(double[] probabilities, double[] labels);
+
+    /**
+     * leaf output from the data points reaching the leaf only
+     * the default expands them to a probability array over all data points;
+     * calculators used on large data should override it
+     * @param dataIndices data points at the leaf
+     * @param probabilities probabilities of these data points, aligned with dataIndices
+     * @return output of the leaf node
+     */
+    default double getLeafOutput(int[] dataIndices, double[] probabilities, double[] labels){
+        double[] allProbabilities = new double[labels.length];
+        for (int k=0;k<dataIndices.length;k++){
+            allProbabilities[dataIndices[k]] += probabilities[k];
+        }
+        return getLeafOutput(allProbabilities, labels);
+    }
+
     void setParallel(boolean parallel);
 }
@@ -14,6 +14,8 @@ public class RegTreeConfig {
     private int numActiveFeatures=10;
     //"none", "weak", "strong", "xgboost"
     private String monotonicityType="none";
+    // find splits on node histograms over fixed bins
+    private boolean histogram=false;
 
 
     public RegTreeConfig setMaxNumLeaves(int maxNumLeaves) {
@@ -49,6 +51,11 @@ public class RegTreeConfig {
         return this;
     }
 
+    public RegTreeConfig setHistogram(boolean histogram) {
+        this.histogram = histogram;
+        return this;
+    }
+
     int getMaxNumLeaves() {
         return maxNumLeaves;
     }
@@ -76,4 +83,8 @@ public class RegTreeConfig {
     public String getMonotonicityType() {
         return monotonicityType;
     }
+
+    public boolean isHistogram() {
+        return histogram;
+    }
 }
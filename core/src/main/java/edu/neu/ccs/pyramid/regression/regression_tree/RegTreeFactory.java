@@ -1,9 +1,13 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.ExternalQuantizedDataSet;
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.RegressorFactory;
 
+import java.util.Arrays;
+
 /**
  * Created by chengli on 7/5/15.
  */
@@ -22,11 +26,26 @@ public class RegTreeFactory implements RegressorFactory {
 
     @Override
     public Regressor fit(DataSet dataSet, double[] labels) {
+        if (dataSet instanceof ExternalQuantizedDataSet){
+            double[] weights = new double[labels.length];
+            Arrays.fill(weights,1.0);
+            return fit(dataSet, labels, weights);
+        }
+        if (regTreeConfig.isHistogram() || dataSet instanceof QuantizedDataSet){
+            return HistRegTreeTrainer.fit(regTreeConfig,dataSet,labels,leafOutputCalculator);
+        }
         return RegTreeTrainer.fit(regTreeConfig,dataSet,labels,leafOutputCalculator);
     }
 
     @Override
     public Regressor fit(DataSet dataSet, double[] labels, double[] weights) {
+        if (dataSet instanceof ExternalQuantizedDataSet){
+            return ExternalRegTreeTrainer.fit(regTreeConfig,(ExternalQuantizedDataSet) dataSet,labels,weights,
+                    leafOutputCalculator);
+        }
+        if (regTreeConfig.isHistogram() || dataSet instanceof QuantizedDataSet){
+            return HistRegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights,leafOutputCalculator);
+        }
         return RegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights, leafOutputCalculator);
     }
 
@@ -7,6 +7,7 @@ import org.apache.mahout.math.Vector;
 
 import java.util.*;
 
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -236,8 +237,7 @@ public class RegTreeTrainer {
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
         if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels);
-            updateNode(rightChild,regTreeConfig,dataSet,labels);
+            updateNodes(Arrays.asList(leftChild,rightChild),regTreeConfig,dataSet,labels,null);
         }
 
 
@@ -327,8 +327,7 @@ public class RegTreeTrainer {
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
         if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels, monotonicity);
-            updateNode(rightChild,regTreeConfig,dataSet,labels, monotonicity);
+            updateNodes(Arrays.asList(leftChild,rightChild),regTreeConfig,dataSet,labels, monotonicity);
         }
 
 
@@ -464,7 +463,40 @@ public class RegTreeTrainer {
         }
     }
 
-    private static void cleanLeaves(List<Node> leaves){
+    /**
+     * parallel over (node, feature) pairs
+     * given probs, fill other information of several nodes at once
+     * @param monotonicity xgboost monotonicity, null if not used
+     */
+    private static void updateNodes(List<Node> nodes,
+                                    RegTreeConfig regTreeConfig,
+                                    DataSet dataSet,
+                                    double[] labels,
+                                    int[] monotonicity) {
+        List<double[]> probsList = nodes.stream().map(Node::getProbs).collect(Collectors.toList());
+        List<Optional<SplitResult>> splitResults = Splitter.split(regTreeConfig,
+                dataSet,labels,probsList,monotonicity);
+        for (int n=0;n<nodes.size();n++){
+            Node node = nodes.get(n);
+            Optional<SplitResult> splitResultOptional = splitResults.get(n);
+            if (splitResultOptional.isPresent()){
+                SplitResult splitResult = splitResultOptional.get();
+                node.setFeatureIndex(splitResult.getFeatureIndex());
+                node.setThreshold(splitResult.getThreshold());
+                node.setReduction(splitResult.getReduction());
+                double leftCount = splitResult.getLeftCount();
+                double rightCount = splitResult.getRightCount();
+                double totalCount = leftCount + rightCount;
+                node.setLeftProb(leftCount/totalCount);
+                node.setRightProb(rightCount/totalCount);
+                node.setSplitable(true);
+            } else{
+                node.setSplitable(false);
+            }
+        }
+    }
+
+    static void cleanLeaves(List<Node> leaves){
         for (Node leaf: leaves){
             leaf.clearProbs();
         }
@@ -474,7 +506,7 @@ public class RegTreeTrainer {
     /**
      * parallel
      */
-    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator, double[] labels){
+    static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator, double[] labels){
         Stream<Node> stream = leaves.stream();
         if (regTreeConfig.isParallel()){
             stream = stream.parallel();
@@ -489,7 +521,7 @@ public class RegTreeTrainer {
         leaf.setValue(output);
     }
 
-    private static Optional<Node> findLeafToSplit(List<Node> leaves){
+    static Optional<Node> findLeafToSplit(List<Node> leaves){
         return leaves.stream().filter(Node::isSplitable)
                 .max(Comparator.comparing(Node::getReduction));
     }
@@ -500,8 +532,11 @@ public class RegTreeTrainer {
      * and make trees trained with different number of data comparable
      * @param tree
      */
-    private static void normalizeReductions(RegressionTree tree, DataSet dataSet){
-        int numDataPoints = dataSet.getNumDataPoints();
+    static void normalizeReductions(RegressionTree tree, DataSet dataSet){
+        normalizeReductions(tree, dataSet.getNumDataPoints());
+    }
+
+    static void normalizeReductions(RegressionTree tree, int numDataPoints){
         List<Node> nodes = tree.traverse();
         for (Node node: nodes){
             double oldReduction = node.getReduction();
@@ -0,0 +1,53 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.QuantizedDataSet;
+
+/**
+ * the part of data-parallel tree training done next to a shard of the rows:
+ * node histograms over the rows of the shard, and the partition of those rows as the tree grows.
+ * every shard must be quantized with the same bins, see {@link QuantizedDataSet#quantize(edu.neu.ccs.pyramid.dataset.DataSet, QuantizedDataSet)}
+ */
+public class ShardHistograms {
+    private QuantizedDataSet shard;
+    private FeatureBins bins;
+    private boolean parallel;
+    private DataPartition partition;
+    private double[] labels;
+
+    public ShardHistograms(QuantizedDataSet shard, boolean parallel) {
+        this.shard = shard;
+        this.bins = FeatureBins.quantized(shard);
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param labels targets of the tree for the rows of the shard
+     * @return root histogram, in the layout of {@link TreeShard}
+     */
+    public double[] start(double[] labels, double[] weights, int rootId, int maxNumNodes){
+        this.labels = labels;
+        this.partition = new DataPartition(weights, rootId, maxNumNodes);
+        return Histogram.build(bins, shard, partition, rootId, labels, parallel).toArray();
+    }
+
+    /**
+     * see {@link TreeShard#split}
+     */
+    public double[] split(int parentId, int leftId, int rightId, int featureIndex, double threshold,
+                          double leftProb, double rightProb, int histogramNodeId, boolean fullHistogram){
+        partition.split(parentId, leftId, rightId, i -> shard.getValue(i, featureIndex), threshold,
+                leftProb, rightProb);
+        if (fullHistogram){
+            return Histogram.build(bins, shard, partition, histogramNodeId, labels, parallel).toArray();
+        }
+        int[] dataIndices = partition.dataIndices(histogramNodeId);
+        double[] probabilities = partition.probabilities(histogramNodeId);
+        double totalCount = 0;
+        double totalSum = 0;
+        for (int k=0;k<dataIndices.length;k++){
+            totalCount += probabilities[k];
+            totalSum += probabilities[k]*labels[dataIndices[k]];
+        }
+        return new double[]{totalCount, totalSum};
+    }
+}
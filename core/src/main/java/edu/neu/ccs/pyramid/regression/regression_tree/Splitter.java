@@ -82,6 +82,59 @@ public class Splitter {
 
 
 
+    /**
+     * best splits of several leaves at once
+     * there is one task per (leaf, feature) pair on the common fork/join pool,
+     * so cores are kept busy even when there are fewer features than cores.
+     * results are the same as calling split on each leaf in turn
+     * @param monotonicity null if there are no monotonicity constraints
+     * @return best valid splitResult of each leaf, possibly nothing
+     */
+    static List<Optional<SplitResult>> split(RegTreeConfig regTreeConfig,
+                                             DataSet dataSet,
+                                             double[] labels,
+                                             List<double[]> probsList,
+                                             int[] monotonicity){
+        int numLeaves = probsList.size();
+        int numFeatures = dataSet.getNumFeatures();
+        GlobalStats[] globalStats = new GlobalStats[numLeaves];
+        IntStream leafStream = IntStream.range(0, numLeaves);
+        if (regTreeConfig.isParallel()){
+            leafStream = leafStream.parallel();
+        }
+        leafStream.forEach(l -> globalStats[l] = new GlobalStats(labels, probsList.get(l)));
+
+        SplitResult[][] results = new SplitResult[numLeaves][numFeatures];
+        IntStream taskStream = IntStream.range(0, numLeaves*numFeatures);
+        if (regTreeConfig.isParallel()){
+            taskStream = taskStream.parallel();
+        }
+        taskStream.forEach(task -> {
+            int l = task/numFeatures;
+            int featureIndex = task%numFeatures;
+            Optional<SplitResult> result;
+            if (monotonicity==null){
+                result = split(regTreeConfig, dataSet, labels, probsList.get(l), featureIndex, globalStats[l]);
+            } else {
+                result = split(regTreeConfig, dataSet, labels, probsList.get(l), featureIndex, globalStats[l], monotonicity);
+            }
+            results[l][featureIndex] = result.orElse(null);
+        });
+
+        List<Optional<SplitResult>> best = new ArrayList<>(numLeaves);
+        for (int l=0;l<numLeaves;l++){
+            // ties go to the smaller feature index, as with a sequential max
+            SplitResult leafBest = null;
+            for (SplitResult result: results[l]){
+                if (result!=null && (leafBest==null || result.getReduction()>leafBest.getReduction())){
+                    leafBest = result;
+                }
+            }
+            best.add(Optional.ofNullable(leafBest));
+        }
+        return best;
+    }
+
     // this is for active feature faster boosting
 
     static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
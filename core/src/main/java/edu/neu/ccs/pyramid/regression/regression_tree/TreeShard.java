@@ -0,0 +1,27 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.io.IOException;
+
+/**
+ * a shard of the rows in data-parallel tree training, local or in another process
+ * histograms are exchanged as flat arrays: counts, then sums, one slot per bin of every feature,
+ * then the total count and total sum of the node; without the bins, only the two totals are sent.
+ * node ids are chosen by {@link DistributedRegTreeTrainer}
+ */
+public interface TreeShard {
+
+    /**
+     * compute the targets of a new tree on the rows of the shard, and put all rows at the root
+     * @param ensembleIndex the ensemble the tree is for, e.g. a class
+     * @return root histogram of the shard
+     */
+    double[] startTree(int ensembleIndex, int rootId, int maxNumNodes) throws IOException;
+
+    /**
+     * split a node of the shard, <= threshold go left, > threshold go right, missing values go to both branches
+     * @param histogramNodeId the child whose histogram is returned
+     * @param fullHistogram false if only the totals of the child are needed
+     */
+    double[] split(int parentId, int leftId, int rightId, int featureIndex, double threshold,
+                   double leftProb, double rightProb, int histogramNodeId, boolean fullHistogram) throws IOException;
+}
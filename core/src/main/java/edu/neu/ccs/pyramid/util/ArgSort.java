@@ -8,12 +8,13 @@ import java.util.stream.IntStream;
  * Created by chengli on 8/20/14.
  */
 public class ArgSort {
+    /**
+     * stable; equal values keep their original order
+     */
     public static int[] argSortAscending(double[] arr){
-        Comparator<Pair<Integer,Double>> comparator = Comparator.comparing(Pair::getSecond);
-        return IntStream.range(0,arr.length)
-                .mapToObj(i-> new Pair<>(i,arr[i]))
-                .sorted(comparator)
-                .mapToInt(Pair::getFirst).toArray();
+        int[] indices = IntStream.range(0,arr.length).toArray();
+        mergeSort(indices, new int[arr.length], arr, 0, arr.length, false);
+        return indices;
     }
 
     public static int[] argSortAscending(List<Double> arr){
@@ -24,12 +25,67 @@ public class ArgSort {
                 .mapToInt(Pair::getFirst).toArray();
     }
 
+    /**
+     * stable; equal values keep their original order
+     */
     public static int[] argSortDescending(double[] arr){
-        Comparator<Pair<Integer,Double>> comparator = Comparator.comparing(Pair::getSecond);
-        return IntStream.range(0,arr.length)
-                .mapToObj(i-> new Pair<>(i,arr[i]))
-                .sorted(comparator.reversed())
-                .mapToInt(Pair::getFirst).toArray();
+        int[] indices = IntStream.range(0,arr.length).toArray();
+        mergeSort(indices, new int[arr.length], arr, 0, arr.length, true);
+        return indices;
+    }
+
+    /**
+     * sort the given indices by their values, in place and without boxing
+     * stable, values are compared as by {@link Double#compare}
+     * @param buffer scratch space, at least as long as indices
+     */
+    public static void argSort(int[] indices, int[] buffer, double[] values, boolean descending){
+        mergeSort(indices, buffer, values, 0, indices.length, descending);
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private static void mergeSort(int[] indices, int[] buffer, double[] values, int from, int to, boolean descending){
+        if (to-from<=INSERTION_SORT_THRESHOLD){
+            for (int i=from+1;i<to;i++){
+                int index = indices[i];
+                int j = i-1;
+                while (j>=from && before(values, index, indices[j], descending)){
+                    indices[j+1] = indices[j];
+                    j -= 1;
+                }
+                indices[j+1] = index;
+            }
+            return;
+        }
+        int middle = (from+to)>>>1;
+        mergeSort(indices, buffer, values, from, middle, descending);
+        mergeSort(indices, buffer, values, middle, to, descending);
+        // already in order
+        if (!before(values, indices[middle], indices[middle-1], descending)){
+            return;
+        }
+        System.arraycopy(indices, from, buffer, from, to-from);
+        int left = from;
+        int right = middle;
+        for (int k=from;k<to;k++){
+            // take from the left run on ties, for stability
+            if (right>=to || (left<middle && !before(values, buffer[right], buffer[left], descending))){
+                indices[k] = buffer[left];
+                left += 1;
+            } else {
+                indices[k] = buffer[right];
+                right += 1;
+            }
+        }
+    }
+
+    /**
+     * whether index a goes strictly before index b
+     */
+    private static boolean before(double[] values, int a, int b, boolean descending){
+        int comparison = Double.compare(values[a], values[b]);
+        return descending ? comparison>0 : comparison<0;
     }
 
     public static int[] argSortDescending(List<Double> arr){
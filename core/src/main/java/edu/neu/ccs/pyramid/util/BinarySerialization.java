@@ -0,0 +1,222 @@
+package edu.neu.ccs.pyramid.util;
+
+import edu.neu.ccs.pyramid.dataset.LabelTranslator;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * primitive building blocks of the compact binary model format
+ * models are written with a {@link DataOutputStream} and read back from a memory mapped {@link ByteBuffer},
+ * both big endian; arrays are a length followed by the elements and are read in bulk.
+ * every file starts with a magic number, a format version and the kind of model it holds,
+ * so files do not depend on class layouts or serialVersionUID
+ */
+public class BinarySerialization {
+    private static final int MAGIC = 0x5059524D;
+    private static final int VERSION = 1;
+
+    public static DataOutputStream openForWrite(File file, String kind) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()){
+            parent.mkdirs();
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, kind);
+        return out;
+    }
+
+    /**
+     * map the whole file and check the header
+     * @return the buffer positioned right after the header
+     */
+    public static ByteBuffer openForRead(File file, String kind) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining()<8 || buffer.getInt()!=MAGIC){
+            throw new IllegalArgumentException(file+" is not a binary model");
+        }
+        int version = buffer.getInt();
+        if (version!=VERSION){
+            throw new IllegalArgumentException("unsupported binary model version "+version);
+        }
+        String found = readString(buffer);
+        if (!found.equals(kind)){
+            throw new IllegalArgumentException(file+" holds a "+found+", not a "+kind);
+        }
+        return buffer;
+    }
+
+    public static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeInts(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int value: array){
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer buffer){
+        int[] array = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + array.length*Integer.BYTES);
+        return array;
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] array) throws IOException {
+        out.writeInt(array.length);
+        for (double value: array){
+            out.writeDouble(value);
+        }
+    }
+
+    public static double[] readDoubles(ByteBuffer buffer){
+        double[] array = new double[buffer.getInt()];
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + array.length*Double.BYTES);
+        return array;
+    }
+
+    public static void writeBooleans(DataOutputStream out, boolean[] array) throws IOException {
+        out.writeInt(array.length);
+        for (boolean value: array){
+            out.writeByte(value ? 1 : 0);
+        }
+    }
+
+    public static boolean[] readBooleans(ByteBuffer buffer){
+        boolean[] array = new boolean[buffer.getInt()];
+        for (int k=0;k<array.length;k++){
+            array[k] = buffer.get()!=0;
+        }
+        return array;
+    }
+
+    /**
+     * dense vectors are written as all values, sparse vectors as indices and values of non-zeros;
+     * the vector read back has the same kind
+     */
+    public static void writeVector(DataOutputStream out, Vector vector) throws IOException {
+        out.writeInt(vector.size());
+        if (vector.isDense()){
+            out.writeByte(1);
+            double[] values = new double[vector.size()];
+            for (int i=0;i<values.length;i++){
+                values[i] = vector.getQuick(i);
+            }
+            writeDoubles(out, values);
+        } else {
+            out.writeByte(0);
+            int numNonZeros = vector.getNumNonZeroElements();
+            int[] indices = new int[numNonZeros];
+            double[] values = new double[numNonZeros];
+            int k = 0;
+            for (Vector.Element element: vector.nonZeroes()){
+                indices[k] = element.index();
+                values[k] = element.get();
+                k += 1;
+            }
+            writeInts(out, Arrays.copyOf(indices, k));
+            writeDoubles(out, Arrays.copyOf(values, k));
+        }
+    }
+
+    public static Vector readVector(ByteBuffer buffer){
+        int size = buffer.getInt();
+        boolean dense = buffer.get()==1;
+        if (dense){
+            return new DenseVector(readDoubles(buffer), true);
+        }
+        int[] indices = readInts(buffer);
+        double[] values = readDoubles(buffer);
+        Vector vector = new RandomAccessSparseVector(size, indices.length);
+        for (int k=0;k<indices.length;k++){
+            vector.setQuick(indices[k], values[k]);
+        }
+        return vector;
+    }
+
+    /**
+     * class indices of each multi-label, in increasing order
+     */
+    public static void writeMultiLabels(DataOutputStream out, List<MultiLabel> multiLabels) throws IOException {
+        int[] offsets = new int[multiLabels.size()+1];
+        for (int i=0;i<multiLabels.size();i++){
+            offsets[i+1] = offsets[i] + multiLabels.get(i).getNumMatchedLabels();
+        }
+        int[] labels = new int[offsets[multiLabels.size()]];
+        for (int i=0;i<multiLabels.size();i++){
+            int k = offsets[i];
+            for (int label: multiLabels.get(i).getMatchedLabelsOrdered()){
+                labels[k] = label;
+                k += 1;
+            }
+        }
+        writeInts(out, offsets);
+        writeInts(out, labels);
+    }
+
+    public static List<MultiLabel> readMultiLabels(ByteBuffer buffer){
+        int[] offsets = readInts(buffer);
+        int[] labels = readInts(buffer);
+        List<MultiLabel> multiLabels = new ArrayList<>(offsets.length-1);
+        for (int i=0;i<offsets.length-1;i++){
+            MultiLabel multiLabel = new MultiLabel();
+            for (int k=offsets[i];k<offsets[i+1];k++){
+                multiLabel.addLabel(labels[k]);
+            }
+            multiLabels.add(multiLabel);
+        }
+        return multiLabels;
+    }
+
+    /**
+     * ext labels in the order of int labels; may be null
+     */
+    public static void writeLabelTranslator(DataOutputStream out, LabelTranslator labelTranslator) throws IOException {
+        if (labelTranslator==null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(labelTranslator.getNumClasses());
+        for (int k=0;k<labelTranslator.getNumClasses();k++){
+            writeString(out, labelTranslator.toExtLabel(k));
+        }
+    }
+
+    public static LabelTranslator readLabelTranslator(ByteBuffer buffer){
+        int numClasses = buffer.getInt();
+        if (numClasses==-1){
+            return null;
+        }
+        String[] extLabels = new String[numClasses];
+        for (int k=0;k<numClasses;k++){
+            extLabels[k] = readString(buffer);
+        }
+        return new LabelTranslator(extLabels);
+    }
+}
@@ -0,0 +1,68 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class BinaryFormatTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+    }
+
+    // save and load again: arrays, labels and translators should survive
+    private static void test1() throws Exception{
+        CompressedClfDataSet dataSet = CompressedDataSetBuilder.getBuilder().numDataPoints(3).numFeatures(4)
+                .numClasses(2).missingValue(true)
+                .setFeatureValue(0,1,1.5).setFeatureValue(1,3,-2).setFeatureValue(2,0,Double.NaN)
+                .setFeatureValue(2,2,4).buildClfDataSet();
+        dataSet.setLabel(1,1);
+        dataSet.setLabelTranslator(new LabelTranslator(new String[]{"spam","ham"}));
+        File file = File.createTempFile("data", ".bin");
+        file.deleteOnExit();
+        BinaryFormat.save(dataSet, file);
+        CompressedClfDataSet loaded = BinaryFormat.loadClfDataSet(file.getAbsolutePath());
+        System.out.println(loaded.getMetaInfo());
+        System.out.println("Expected (mapped=true) - Output: "+loaded.isMapped());
+        System.out.println("same rows = "+(Arrays.equals(dataSet.getRows().indicesToArray(), loaded.getRows().indicesToArray())
+                && Arrays.equals(dataSet.getRows().valuesToArray(), loaded.getRows().valuesToArray())));
+        System.out.println("same columns = "+(Arrays.equals(dataSet.getColumns().offsetsToArray(), loaded.getColumns().offsetsToArray())
+                && Arrays.equals(dataSet.getColumns().valuesToArray(), loaded.getColumns().valuesToArray())));
+        System.out.println("Expected (value=-2.0) - Output: "+loaded.getRow(1).get(3));
+        System.out.println("Expected (value=NaN) - Output: "+loaded.getColumn(0).get(2));
+        System.out.println("labels = "+Arrays.toString(loaded.getLabels()));
+        System.out.println("label translator = "+loaded.getLabelTranslator());
+        System.out.println("id of data point 2 = "+loaded.getIdTranslator().toExtId(2));
+    }
+
+    // rows mapped in several small windows read the same as rows on the heap
+    private static void test2() throws Exception{
+        CompressedDataSetBuilder builder = CompressedDataSetBuilder.getBuilder().numDataPoints(50).numFeatures(20);
+        for (int i=0;i<50;i++){
+            for (int j=i%3;j<20;j+=3){
+                builder.setFeatureValue(i,j,i+0.1*j);
+            }
+        }
+        CompressedDataSet dataSet = builder.build();
+        File file = File.createTempFile("data", ".bin");
+        file.deleteOnExit();
+        BinaryFormat.save(dataSet, file);
+        int nnz = dataSet.getNumNonZeros();
+        long indicesPosition = (64 + 51*Integer.BYTES + 7) & ~7L;
+        long valuesPosition = (indicesPosition + (long)nnz*Integer.BYTES + 7) & ~7L;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            // room for 10 entries per window
+            CompressedSection rows = CompressedSection.map(channel, 20, 50, 64, indicesPosition, valuesPosition, 80);
+            System.out.println("Expected (windows>1) - Output: windows = "+rows.getNumWindows());
+            boolean same = true;
+            for (int i=0;i<50;i++){
+                for (int j=0;j<20;j++){
+                    same &= dataSet.getRow(i).get(j)==rows.getVector(i).get(j);
+                }
+            }
+            System.out.println("Expected (same=true) - Output: "+same);
+            System.out.println("Expected (same=true) - Output: "+Arrays.equals(dataSet.getRows().valuesToArray(), rows.valuesToArray()));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+public class CompressedDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    // duplicates: last one wins; zeros are dropped; rows and columns agree
+    private static void test1(){
+        CompressedDataSet dataSet = CompressedDataSetBuilder.getBuilder().numDataPoints(4).numFeatures(5)
+                .missingValue(true)
+                .setFeatureValue(2,3,1.5).setFeatureValue(0,4,2).setFeatureValue(2,1,-1)
+                .setFeatureValue(2,3,7).setFeatureValue(3,0,Double.NaN).setFeatureValue(1,1,0)
+                .setFeatureValue(0,1,3).build();
+        System.out.println(dataSet);
+        System.out.println("number of non-zeros = "+dataSet.getNumNonZeros());
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                double columnValue = dataSet.getColumn(element.index()).get(i);
+                if (Double.compare(columnValue, element.get())!=0){
+                    System.out.println("mismatch at "+i+", "+element.index());
+                }
+            }
+        }
+    }
+
+    private static void test2(){
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(3).numFeatures(4)
+                .numClasses(3).density(Density.SPARSE_RANDOM).build();
+        dataSet.setFeatureValue(0,1,1);
+        dataSet.setFeatureValue(1,3,2);
+        dataSet.setFeatureValue(2,0,3);
+        dataSet.addLabel(0,2);
+        dataSet.addLabel(2,0);
+        dataSet.addLabel(2,1);
+        CompressedDataSet compressed = CompressedDataSetBuilder.compress(dataSet);
+        System.out.println(compressed.getMetaInfo());
+        System.out.println(compressed);
+    }
+}
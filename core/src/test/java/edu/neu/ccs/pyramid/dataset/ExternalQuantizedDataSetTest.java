@@ -0,0 +1,104 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.eval.RMSE;
+import edu.neu.ccs.pyramid.regression.least_squares_boost.LSBoost;
+import edu.neu.ccs.pyramid.regression.least_squares_boost.LSBoostOptimizer;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.simulation.RegressionSynthesizer;
+
+import java.io.File;
+import java.util.Random;
+
+public class ExternalQuantizedDataSetTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    // blocks read back should hold the same bins as the in-memory data set
+    private static void test1() throws Exception{
+        DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(10).numFeatures(3)
+                .density(Density.SPARSE_RANDOM).missingValue(true).build();
+        for (int i=0;i<10;i++){
+            dataSet.setFeatureValue(i,0,i);
+        }
+        dataSet.setFeatureValue(3,1,2.5);
+        dataSet.setFeatureValue(4,2,Double.NaN);
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        File file = File.createTempFile("data", ".qbin");
+        file.deleteOnExit();
+        ExternalQuantizedDataSet.save(quantized, file, 3);
+        ExternalQuantizedDataSet external = ExternalQuantizedDataSet.open(file);
+        System.out.println(external.getMetaInfo());
+        boolean same = true;
+        for (int b=0;b<external.getNumBlocks();b++){
+            QuantizedDataSet block = external.loadBlock(b);
+            for (int i=external.getBlockStart(b);i<external.getBlockEnd(b);i++){
+                for (int j=0;j<3;j++){
+                    same &= quantized.getBin(i,j)==block.getBin(i-external.getBlockStart(b),j);
+                }
+            }
+        }
+        System.out.println("same bins = "+same);
+    }
+
+    // boosting streamed from disk should match boosting on the in-memory quantized data set
+    private static void test2() throws Exception{
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(10000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,255, QuantizedDataSet.Binning.QUANTILE);
+        File file = File.createTempFile("data", ".qbin");
+        file.deleteOnExit();
+        ExternalQuantizedDataSet.save(quantized, file, 1000);
+        ExternalQuantizedDataSet external = ExternalQuantizedDataSet.open(file);
+
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(7);
+        LSBoost inMemory = new LSBoost();
+        LSBoostOptimizer inMemoryOptimizer = new LSBoostOptimizer(inMemory, quantized,
+                new RegTreeFactory(regTreeConfig), dataSet.getLabels());
+        inMemoryOptimizer.setShrinkage(0.1);
+        inMemoryOptimizer.initialize();
+        inMemoryOptimizer.iterate(20);
+
+        LSBoost streamed = new LSBoost();
+        LSBoostOptimizer streamedOptimizer = new LSBoostOptimizer(streamed, external,
+                new RegTreeFactory(regTreeConfig), dataSet.getLabels());
+        streamedOptimizer.setShrinkage(0.1);
+        streamedOptimizer.initialize();
+        streamedOptimizer.iterate(20);
+
+        System.out.println("in-memory RMSE = "+ RMSE.rmse(inMemory, dataSet));
+        System.out.println("streamed RMSE = "+ RMSE.rmse(streamed, dataSet));
+    }
+
+    // leaves routed in batches, with missing values going both ways, give the same tree as in memory
+    private static void test3() throws Exception{
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(5000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        DataSet withMissing = DataSetBuilder.getBuilder().numDataPoints(dataSet.getNumDataPoints())
+                .numFeatures(dataSet.getNumFeatures()).density(Density.DENSE).missingValue(true).build();
+        Random random = new Random(0);
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                double value = random.nextDouble()<0.1 ? Double.NaN : dataSet.getRow(i).get(j);
+                withMissing.setFeatureValue(i,j,value);
+            }
+        }
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(withMissing,63, QuantizedDataSet.Binning.QUANTILE);
+        File file = File.createTempFile("data", ".qbin");
+        file.deleteOnExit();
+        ExternalQuantizedDataSet.save(quantized, file, 700);
+        ExternalQuantizedDataSet external = ExternalQuantizedDataSet.open(file);
+
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(31);
+        RegressionTree inMemory = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(quantized, dataSet.getLabels());
+        RegressionTree streamed = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(external, dataSet.getLabels());
+        System.out.println("number of leaves = "+streamed.getNumLeaves());
+        System.out.println("same tree = "+inMemory.toString().equals(streamed.toString()));
+    }
+}
@@ -0,0 +1,133 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.simulation.RegressionSynthesizer;
+import edu.neu.ccs.pyramid.eval.RMSE;
+import org.apache.mahout.math.Vector;
+
+public class QuantizedDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+        test5();
+    }
+
+    private static void test1(){
+        DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(10).numFeatures(3)
+                .density(Density.SPARSE_RANDOM).missingValue(true).build();
+        for (int i=0;i<10;i++){
+            dataSet.setFeatureValue(i,0,i);
+        }
+        dataSet.setFeatureValue(3,1,2.5);
+        dataSet.setFeatureValue(4,2,Double.NaN);
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        for (int j=0;j<3;j++){
+            System.out.println("feature "+j+", sparse = "+quantized.isSparseColumn(j)
+                    +", num bins = "+quantized.getNumBins(j)+", zero bin = "+quantized.getZeroBin(j));
+            for (int i=0;i<10;i++){
+                System.out.print(quantized.getBin(i,j)+"->"+quantized.getValue(i,j)+" ");
+            }
+            System.out.println();
+        }
+    }
+
+    // trees trained on quantized data should be close to trees trained on raw data
+    private static void test2(){
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(10000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,255, QuantizedDataSet.Binning.QUANTILE);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(31);
+        RegressionTree tree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(quantized, dataSet.getLabels());
+        System.out.println(quantized.getMetaInfo());
+        System.out.println("RMSE on raw data = "+ RMSE.rmse(tree, dataSet));
+    }
+
+    // mutually exclusive sparse features should end up in one bundle, with the same tree as without bundles
+    private static void test3(){
+        int numDataPoints = 1000;
+        int numFeatures = 50;
+        DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(numFeatures)
+                .density(Density.SPARSE_RANDOM).build();
+        double[] labels = new double[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            int j = i%numFeatures;
+            dataSet.setFeatureValue(i,j,1+i%3);
+            labels[i] = j%7 + i%3;
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(15);
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        RegressionTree tree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(quantized, labels);
+        QuantizedDataSet bundled = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        System.out.println("number of bundles = "+bundled.bundleFeatures(0));
+        RegressionTree bundledTree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(bundled, labels);
+        System.out.println("same tree = "+tree.toString().equals(bundledTree.toString()));
+    }
+
+    // wide data: more conflicting singleton bundles than the search window, the exclusive features still form one bundle
+    private static void test4(){
+        int numDataPoints = 2000;
+        int numExclusive = 400;
+        int numConflicting = 150;
+        DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numExclusive+numConflicting).density(Density.SPARSE_RANDOM).build();
+        double[] labels = new double[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            int j = i%numExclusive;
+            dataSet.setFeatureValue(i,j,1+i%3);
+            labels[i] = j%7 + i%3;
+        }
+        // every conflicting feature is on at data points 0 and 1
+        for (int c=0;c<numConflicting;c++){
+            dataSet.setFeatureValue(0,numExclusive+c,1);
+            dataSet.setFeatureValue(1,numExclusive+c,2);
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(15);
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        RegressionTree tree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(quantized, labels);
+        QuantizedDataSet bundled = QuantizedDataSet.quantize(dataSet,4, QuantizedDataSet.Binning.QUANTILE);
+        System.out.println("Expected (bundles=1) - Output: bundles = "+bundled.bundleFeatures(0));
+        System.out.println("Expected (members="+numExclusive+") - Output: members = "
+                +bundled.getBundles().getMembers(0).length);
+        RegressionTree bundledTree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(bundled, labels);
+        System.out.println("same tree = "+tree.toString().equals(bundledTree.toString()));
+    }
+
+    // materialized rows, built from the entries of sparse columns, should hold every non-zero value
+    private static void test5(){
+        int numDataPoints = 200;
+        int numFeatures = 30;
+        DataSet dataSet = DataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(numFeatures)
+                .density(Density.SPARSE_RANDOM).missingValue(true).build();
+        for (int i=0;i<numDataPoints;i++){
+            // a dense feature, and sparse features hit by a few data points each
+            dataSet.setFeatureValue(i,0,i%7-3);
+            dataSet.setFeatureValue(i,1+i%(numFeatures-1),1+i%5);
+        }
+        dataSet.setFeatureValue(5,2,Double.NaN);
+        QuantizedDataSet quantized = QuantizedDataSet.quantize(dataSet,8, QuantizedDataSet.Binning.QUANTILE);
+        System.out.println("Expected (feature 0 sparse=false, feature 2 sparse=true) - Output: feature 0 sparse="
+                +quantized.isSparseColumn(0)+", feature 2 sparse="+quantized.isSparseColumn(2));
+        boolean same = true;
+        for (int i=0;i<numDataPoints;i++){
+            Vector row = quantized.getRow(i);
+            int numNonZeros = 0;
+            for (Vector.Element element: row.nonZeroes()){
+                numNonZeros += 1;
+                same &= Double.compare(element.get(), quantized.getValue(i, element.index()))==0;
+            }
+            int expected = 0;
+            for (int j=0;j<numFeatures;j++){
+                if (quantized.getValue(i,j)!=0){
+                    expected += 1;
+                }
+            }
+            same &= numNonZeros==expected;
+        }
+        System.out.println("Expected (same=true) - Output: "+same);
+    }
+}
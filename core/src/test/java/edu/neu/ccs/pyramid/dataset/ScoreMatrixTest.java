@@ -0,0 +1,65 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.util.MathUtil;
+
+import java.util.Arrays;
+
+public class ScoreMatrixTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    // every entry lands in its own slot, rows and classes read back what was written
+    private static void test1(){
+        int numData = 5;
+        int numClasses = 3;
+        ScoreMatrix scoreMatrix = new ScoreMatrix(numData, numClasses);
+        for (int i=0;i<numData;i++){
+            for (int k=0;k<numClasses;k++){
+                scoreMatrix.setScore(i,k,10*i+k);
+            }
+        }
+        scoreMatrix.increment(4,2,0.5);
+        scoreMatrix.incrementForClass(1, 2, new double[]{100,200});
+        System.out.println("Expected [30.0, 131.0, 32.0] - Output: "+Arrays.toString(scoreMatrix.getScoresForData(3)));
+        System.out.println("Expected [40.0, 41.0, 42.5] - Output: "+Arrays.toString(scoreMatrix.getScoresForData(4)));
+        System.out.println("Expected (value=121.0) - Output: "+scoreMatrix.getScore(2,1));
+        double expected = MathUtil.logSumExp(scoreMatrix.getScoresForData(3));
+        System.out.println("Expected (value="+expected+") - Output: "+scoreMatrix.logSumExpForData(3));
+    }
+
+    private static void test2(){
+        ProbabilityMatrix probabilityMatrix = new ProbabilityMatrix(4, 2);
+        for (int i=0;i<4;i++){
+            probabilityMatrix.setProbability(i,0,0.1*i);
+            probabilityMatrix.setProbability(i,1,1-0.1*i);
+        }
+        probabilityMatrix.increment(3,1,0.05);
+        System.out.println("Expected [0.3, 0.75] - Output: "+Arrays.toString(probabilityMatrix.getProbabilitiesForData(3)));
+        System.out.println("Expected (value=0.9) - Output: "+probabilityMatrix.getProbability(1,1));
+    }
+
+    // class major: the gradients of one class are contiguous
+    private static void test3(){
+        GradientMatrix gradientMatrix = new GradientMatrix(3, 2, GradientMatrix.Objective.MINIMIZE);
+        for (int i=0;i<3;i++){
+            gradientMatrix.setGradient(i,0,i);
+            gradientMatrix.setGradient(i,1,-i);
+        }
+        System.out.println("Expected [0.0, -1.0, -2.0] - Output: "+Arrays.toString(gradientMatrix.getGradientsForClass(1)));
+        System.out.println("Expected (value=2.0) - Output: "+gradientMatrix.getGradient(2,0));
+    }
+
+    // sizes that overflow an int fail before allocating
+    private static void test4(){
+        try {
+            new ScoreMatrix(100_000_000, 100);
+            System.out.println("Expected exception - Output: none");
+        } catch (IllegalArgumentException e){
+            System.out.println("Expected exception - Output: "+e.getMessage());
+        }
+    }
+}
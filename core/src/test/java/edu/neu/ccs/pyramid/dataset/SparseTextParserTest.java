@@ -0,0 +1,56 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SparseTextParserTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+    }
+
+    // the fast path must agree with Double.parseDouble
+    private static void test1(){
+        Random random = new Random(0);
+        String[] fixed = {"0", "-0", "1", "0.1", "3.14159", "1e-5", "2.5E3", "-7.25e+2", "123456789012345678",
+                "0.30000000000000004", "1e300", "4.9e-324", "NaN", "Infinity", ".5", "5."};
+        int numDifferent = 0;
+        for (int k=0;k<100000+fixed.length;k++){
+            String text = k<fixed.length ? fixed[k] : ""+random.nextGaussian()*Math.pow(10, random.nextInt(20)-10);
+            if (k>=fixed.length && k%2==0){
+                text = String.format("%.6f", random.nextDouble()*100);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+            double parsed = SparseTextParser.parseDouble(buffer, 0, buffer.limit(), 0);
+            if (Double.compare(parsed, Double.parseDouble(text))!=0){
+                numDifferent += 1;
+                System.out.println(text+" -> "+parsed);
+            }
+        }
+        System.out.println("number of different doubles = "+numDifferent);
+    }
+
+    // comments, blank label fields, tabs and windows line endings
+    private static void test2() throws Exception{
+        File file = File.createTempFile("sparse", ".txt");
+        file.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))){
+            bw.write("1,3 0:1.5 4:2 # first\n");
+            bw.write(" 2:0.25\n");
+            bw.write("2\t1:-3\t\t3:1e2\r\n");
+            bw.write("0 # nothing\n");
+        }
+        SparseTextParser parser = SparseTextParser.parse(file, 0);
+        System.out.println("number of lines = "+parser.numLines);
+        System.out.println("label offsets = "+Arrays.toString(parser.labelOffsets));
+        System.out.println("labels = "+Arrays.toString(parser.labels));
+        System.out.println("entry offsets = "+Arrays.toString(parser.entryOffsets));
+        System.out.println("features = "+Arrays.toString(parser.features));
+        System.out.println("values = "+Arrays.toString(parser.values));
+    }
+}
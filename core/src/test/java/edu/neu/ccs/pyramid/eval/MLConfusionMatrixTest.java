@@ -0,0 +1,65 @@
+package edu.neu.ccs.pyramid.eval;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+
+import java.util.Random;
+
+public class MLConfusionMatrixTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * same example as HammingLossTest
+     */
+    private static void test1(){
+        MultiLabel[] labels = new MultiLabel[2];
+        MultiLabel[] predictions = new MultiLabel[2];
+        labels[0] = new MultiLabel().addLabel(0).addLabel(1);
+        labels[1] = new MultiLabel().addLabel(1);
+        predictions[0] = new MultiLabel().addLabel(0);
+        predictions[1] = new MultiLabel().addLabel(0);
+        MLMeasures measures = new MLMeasures(2, labels, predictions);
+        System.out.println("Expected (value=0.75) - Output: " + measures.getInstanceAverage().getHammingLoss()*2);
+        System.out.println("Expected (value=0) - Output: " + measures.getInstanceAverage().getAccuracy());
+        System.out.println("Expected (value=0.5) - Output: " + measures.getMicroAverage().getPrecision());
+    }
+
+    /**
+     * adding data points one at a time over two shards gives the same measures as the array constructor
+     */
+    private static void test2(){
+        int numClasses = 50;
+        int numData = 1000;
+        Random random = new Random(0);
+        MultiLabel[] labels = new MultiLabel[numData];
+        MultiLabel[] predictions = new MultiLabel[numData];
+        for (int i=0;i<numData;i++){
+            labels[i] = new MultiLabel();
+            predictions[i] = new MultiLabel();
+            for (int l=0;l<numClasses;l++){
+                if (random.nextDouble()<0.05){
+                    labels[i].addLabel(l);
+                }
+                if (random.nextDouble()<0.05){
+                    predictions[i].addLabel(l);
+                }
+            }
+        }
+        MLMeasures all = new MLMeasures(numClasses, labels, predictions);
+
+        MLConfusionMatrix first = new MLConfusionMatrix(numClasses);
+        MLConfusionMatrix second = new MLConfusionMatrix(numClasses);
+        for (int i=0;i<numData;i++){
+            if (i<numData/2){
+                first.add(labels[i], predictions[i]);
+            } else {
+                second.add(labels[i], predictions[i]);
+            }
+        }
+        MLMeasures merged = new MLMeasures(first.merge(second));
+        System.out.println(all);
+        System.out.println(merged);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.neu.ccs.pyramid.eval;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+
+import java.util.Random;
+
+public class RankingMeasuresTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * unit weights and weights of 2 give the same measures
+     */
+    private static void test1(){
+        int[] labels = {0,0,1,1,0,1};
+        double[] scores = {0.3,-10,0.1,0.1,0.1,0.8};
+        double[] weights = {2,2,2,2,2,2};
+        System.out.println("Expected (value="+RankingMeasures.auc(scores,labels)+") - Output: "
+                +RankingMeasures.auc(scores,labels,weights));
+        System.out.println("Expected (value="+RankingMeasures.averagePrecision(scores,labels)+") - Output: "
+                +RankingMeasures.averagePrecision(scores,labels,weights));
+    }
+
+    /**
+     * binary NDCG is the same as graded NDCG with 0/1 grades
+     */
+    private static void test2(){
+        double[] grades = {0,1,1,0,0,1};
+        boolean[] relevant = {false,true,true,false,false,true};
+        double[] scores = {0.9,0.1,0.5,0.4,0.2,0.3};
+        System.out.println("Expected (value="+NDCG.ndcg(grades,scores)+") - Output: "
+                +RankingMeasures.binaryNDCG(relevant,scores));
+    }
+
+    /**
+     * the per-label driver agrees with AUC on each column
+     */
+    private static void test3(){
+        int numData = 2000;
+        int numClasses = 5;
+        Random random = new Random(0);
+        double[][] scores = new double[numData][numClasses];
+        MultiLabel[] truth = new MultiLabel[numData];
+        for (int i=0;i<numData;i++){
+            truth[i] = new MultiLabel();
+            for (int l=0;l<numClasses;l++){
+                boolean match = random.nextDouble()<0.3;
+                if (match){
+                    truth[i].addLabel(l);
+                }
+                // rounded, so that there are ties
+                scores[i][l] = Math.round((random.nextDouble()+(match?0.3:0))*20)/20.0;
+            }
+        }
+        RankingMeasures.LabelResults results = RankingMeasures.labelMeasures(scores, truth, numClasses, null);
+        for (int l=0;l<numClasses;l++){
+            double[] column = new double[numData];
+            int[] labels = new int[numData];
+            for (int i=0;i<numData;i++){
+                column[i] = scores[i][l];
+                labels[i] = truth[i].matchClass(l)?1:0;
+            }
+            System.out.println("Expected (value="+AUC.auc(column,labels)+") - Output: "+results.getAUC(l));
+            System.out.println("Expected (value="+AveragePrecision.averagePrecision(labels,column)+") - Output: "
+                    +results.getAveragePrecision(l));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class StackedBinaryClassifiersTest {
+    public static void main(String[] args) {
+        test1();
+    }
+
+    // feature-major margins should give the log probabilities of every component classifier
+    private static void test1(){
+        int numComponents = 3;
+        int numLabels = 4;
+        int numFeatures = 6;
+        CBM cbm = CBM.getBuilder().setNumClasses(numLabels).setNumComponents(numComponents)
+                .setNumFeatures(numFeatures).build();
+        Random random = new Random(1);
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numLabels;l++){
+                Vector weights = new DenseVector((numFeatures+1)*2);
+                for (int i=0;i<weights.size();i++){
+                    // feature 4 has zero weight in every classifier
+                    if (i%(numFeatures+1)!=5){
+                        weights.set(i, random.nextGaussian());
+                    }
+                }
+                cbm.binaryClassifiers[k][l] = new LogisticRegression(2, numFeatures, weights);
+            }
+        }
+        cbm.binaryClassifiers[1][2] = new PriorProbClassifier(new double[]{0.3,0.7});
+        StackedBinaryClassifiers stacked = new StackedBinaryClassifiers(cbm);
+        System.out.println("Expected (logistic=11) - Output: "+stacked.getNumLogistic());
+
+        Vector dense = new DenseVector(numFeatures);
+        for (int j=0;j<numFeatures;j++){
+            dense.set(j, random.nextGaussian());
+        }
+        Vector sparse = new RandomAccessSparseVector(numFeatures);
+        sparse.set(1, 2.5);
+        sparse.set(4, -1);
+        Vector empty = new RandomAccessSparseVector(numFeatures);
+        Vector[] rows = {dense, sparse, empty};
+        double[][] blockMargins = stacked.margins(rows);
+        int[] components = {2, 0, 1};
+        double maxDifference = 0;
+        for (int r=0;r<rows.length;r++){
+            Vector x = rows[r];
+            double[] margins = stacked.margins(x);
+            double[] componentMargins = stacked.margins(x, components);
+            double[][][] logClassProbs = new double[components.length][numLabels][];
+            stacked.fillLogClassProbs(x, components, componentMargins, logClassProbs);
+            for (int c=0;c<components.length;c++){
+                int k = components[c];
+                for (int l=0;l<numLabels;l++){
+                    int p = k*numLabels+l;
+                    double[] expected = cbm.binaryClassifiers[k][l].predictLogClassProbs(x);
+                    if (cbm.binaryClassifiers[k][l] instanceof LogisticRegression){
+                        double expectedMargin = expected[1]-expected[0];
+                        maxDifference = Math.max(maxDifference, Math.abs(margins[p]-expectedMargin));
+                        maxDifference = Math.max(maxDifference, Math.abs(blockMargins[r][p]-expectedMargin));
+                        maxDifference = Math.max(maxDifference, Math.abs(componentMargins[c*numLabels+l]-expectedMargin));
+                    }
+                    maxDifference = Math.max(maxDifference, Math.abs(logClassProbs[c][l][0]-expected[0]));
+                    maxDifference = Math.max(maxDifference, Math.abs(logClassProbs[c][l][1]-expected[1]));
+                }
+            }
+        }
+        System.out.println("Expected (max difference close to 0) - Output: "+maxDifference);
+    }
+}
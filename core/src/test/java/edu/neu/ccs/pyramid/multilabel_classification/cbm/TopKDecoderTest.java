@@ -0,0 +1,78 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import edu.neu.ccs.pyramid.util.Pair;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TopKDecoderTest {
+    public static void main(String[] args) {
+        test1();
+    }
+
+    // the decoder should agree with enumerating all multi-labels
+    private static void test1(){
+        Random random = new Random(1);
+        int numWrong = 0;
+        for (int t=0;t<300;t++){
+            int numComponents = 1+random.nextInt(4);
+            int numLabels = 1+random.nextInt(11);
+            double[] proportions = new double[numComponents];
+            for (int k=0;k<numComponents;k++){
+                proportions[k] = random.nextDouble();
+            }
+            double sum = Arrays.stream(proportions).sum();
+            double[] logProportions = Arrays.stream(proportions).map(p->Math.log(p/sum)).toArray();
+            double[][][] logClassProbs = new double[numComponents][numLabels][2];
+            for (int k=0;k<numComponents;k++){
+                for (int l=0;l<numLabels;l++){
+                    double p = random.nextDouble();
+                    // some certain labels
+                    if (random.nextInt(10)==0){
+                        p = random.nextBoolean() ? 0 : 1;
+                    }
+                    logClassProbs[k][l][0] = Math.log(1-p);
+                    logClassProbs[k][l][1] = Math.log(p);
+                }
+            }
+            boolean allowEmpty = random.nextBoolean();
+            int top = 1+random.nextInt(5);
+            List<Pair<MultiLabel,Double>> decoded = new TopKDecoder(logProportions, logClassProbs)
+                    .setAllowEmpty(allowEmpty).setTop(top).topK();
+
+            double[] probs = new double[1<<numLabels];
+            int numValid = 0;
+            for (int m=0;m<probs.length;m++){
+                if (m==0 && !allowEmpty){
+                    continue;
+                }
+                double[] terms = new double[numComponents];
+                for (int k=0;k<numComponents;k++){
+                    terms[k] = logProportions[k];
+                    for (int l=0;l<numLabels;l++){
+                        terms[k] += logClassProbs[k][l][(m>>l)&1];
+                    }
+                }
+                probs[m] = Math.exp(MathUtil.logSumExp(terms));
+                if (probs[m]>0){
+                    numValid += 1;
+                }
+            }
+            Arrays.sort(probs);
+            if (decoded.size()!=Math.min(top, numValid)){
+                numWrong += 1;
+                continue;
+            }
+            for (int i=0;i<decoded.size();i++){
+                if (Math.abs(decoded.get(i).getSecond()-probs[probs.length-1-i])>1E-12){
+                    numWrong += 1;
+                    break;
+                }
+            }
+        }
+        System.out.println("number of wrong top k lists = "+numWrong);
+    }
+}
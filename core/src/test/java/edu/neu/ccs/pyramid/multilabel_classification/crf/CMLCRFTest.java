@@ -15,6 +15,7 @@ import edu.neu.ccs.pyramid.optimization.GradientDescent;
 import edu.neu.ccs.pyramid.optimization.LBFGS;
 import edu.neu.ccs.pyramid.optimization.Optimizer;
 import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
+import edu.neu.ccs.pyramid.util.MathUtil;
 
 import java.io.File;
 import java.util.Arrays;
@@ -38,6 +39,8 @@ public class CMLCRFTest {
 //        test6();
 
 //        test7();
+        test10();
+        test11();
         test8();
     }
 
@@ -491,6 +494,59 @@ public class CMLCRFTest {
         }
         System.out.println(cmlcrf);
     }
-}
 
+    /**
+     * sparse posteriors keeping the full support give the dense value and gradient;
+     * keeping a few combinations gives the exact value and a close gradient
+     */
+    private static void test10(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.flipTwo(1000, 10, 6);
+        CMLCRF cmlcrf = new CMLCRF(dataSet);
+        for (int k=0;k<cmlcrf.getNumClasses();k++){
+            cmlcrf.getWeights().getWeightsWithoutBiasForClass(k).set(k, 1);
+        }
+        cmlcrf.updateCombLabelPartScores();
+        CRFLoss dense = new CRFLoss(cmlcrf, dataSet, 1);
+        CRFLoss full = new CRFLoss(cmlcrf, dataSet, 1);
+        full.setSparsePosteriors(cmlcrf.getNumSupports(), 0);
+        CRFLoss top = new CRFLoss(cmlcrf, dataSet, 1);
+        top.setSparsePosteriors(3, 1E-4);
+        System.out.println("number of supports = "+cmlcrf.getNumSupports());
+        System.out.println("dense value = "+dense.getValue()+", full sparse value = "+full.getValue()
+                +", top 3 value = "+top.getValue());
+        System.out.println("gradient difference, full sparse = "+dense.getGradient().minus(full.getGradient()).norm(2));
+        System.out.println("gradient difference, top 3 = "+dense.getGradient().minus(top.getGradient()).norm(2)
+                +", gradient norm = "+dense.getGradient().norm(2)+", average remainder = "+top.getAverageRemainder());
+    }
 
+    // with confident class scores most combinations are pruned, yet the log partition and marginals match the dense ones
+    private static void test11(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.flipTwo(1000, 10, 6);
+        CMLCRF cmlcrf = new CMLCRF(dataSet);
+        for (int k=0;k<cmlcrf.getNumClasses();k++){
+            cmlcrf.getWeights().getWeightsWithoutBiasForClass(k).set(k, 40);
+        }
+        cmlcrf.updateCombLabelPartScores();
+        double maxLogPartitionDiff = 0;
+        double maxClassProbDiff = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            double[] classScores = cmlcrf.predictClassScores(dataSet.getRow(i));
+            double[] combScores = cmlcrf.predictCombinationScores(classScores);
+            double logPartition = MathUtil.logSumExp(combScores);
+            SparseCombinationPosterior posterior = cmlcrf.predictSparseCombinationPosterior(classScores, 3, 1E-4);
+            maxLogPartitionDiff = Math.max(maxLogPartitionDiff, Math.abs(logPartition-posterior.getLogPartition()));
+            double[] classProbs = new double[cmlcrf.getNumClasses()];
+            for (int c=0;c<combScores.length;c++){
+                MultiLabel combination = cmlcrf.getSupportCombinations().get(c);
+                for (int l: combination.getMatchedLabels()){
+                    classProbs[l] += Math.exp(combScores[c]-logPartition);
+                }
+            }
+            for (int l=0;l<classProbs.length;l++){
+                maxClassProbDiff = Math.max(maxClassProbDiff, Math.abs(classProbs[l]-posterior.getClassProbs()[l]));
+            }
+        }
+        System.out.println("Expected (diff<1E-10) - Output: log partition diff = "+maxLogPartitionDiff
+                +", class prob diff = "+maxClassProbDiff);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.*;
+import edu.neu.ccs.pyramid.eval.Accuracy;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class DistributedIMLGBTrainerTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    // two shards in this JVM
+    private static void test1() throws Exception{
+        MultiLabelClfDataSet dataSet = synthesize();
+        QuantizedDataSet reference = QuantizedDataSet.quantize(dataSet, 32, QuantizedDataSet.Binning.QUANTILE);
+        List<IMLGBShard> shards = Arrays.asList(new IMLGBShard(firstHalf(dataSet, true), reference),
+                new IMLGBShard(firstHalf(dataSet, false), reference));
+        IMLGradientBoosting boosting = new IMLGradientBoosting(dataSet.getNumClasses());
+        try (DistributedIMLGBTrainer trainer = new DistributedIMLGBTrainer(boosting, reference, shards,
+                new RegTreeConfig().setMaxNumLeaves(4), 0.5, true)){
+            for (int i=0;i<20;i++){
+                trainer.iterate();
+            }
+        }
+        System.out.println("local shards, accuracy = "+ Accuracy.accuracy(boosting, dataSet));
+    }
+
+    // two shards served over sockets
+    private static void test2() throws Exception{
+        MultiLabelClfDataSet dataSet = synthesize();
+        QuantizedDataSet reference = QuantizedDataSet.quantize(dataSet, 32, QuantizedDataSet.Binning.QUANTILE);
+        boolean[] halves = {true, false};
+        int[] ports = new int[2];
+        List<Thread> servers = new ArrayList<>();
+        for (int s=0;s<2;s++){
+            IMLGBShard shard = new IMLGBShard(firstHalf(dataSet, halves[s]), reference);
+            // an ephemeral port, listening before the server thread starts
+            ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            ports[s] = serverSocket.getLocalPort();
+            Thread server = new Thread(() -> {
+                try {
+                    IMLGBWorkerServer.serve(shard, serverSocket);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            server.start();
+            servers.add(server);
+        }
+        List<RemoteIMLGBWorker> workers = new ArrayList<>();
+        for (int port: ports){
+            workers.add(new RemoteIMLGBWorker(InetAddress.getLoopbackAddress().getHostAddress(), port));
+        }
+        IMLGradientBoosting boosting = new IMLGradientBoosting(dataSet.getNumClasses());
+        try (DistributedIMLGBTrainer trainer = new DistributedIMLGBTrainer(boosting, reference, workers,
+                new RegTreeConfig().setMaxNumLeaves(4), 0.5, true)){
+            for (int i=0;i<20;i++){
+                trainer.iterate();
+            }
+        }
+        for (RemoteIMLGBWorker worker: workers){
+            worker.close();
+        }
+        for (Thread server: servers){
+            server.join();
+        }
+        System.out.println("socket shards, accuracy = "+ Accuracy.accuracy(boosting, dataSet));
+    }
+
+    // warm start from a model trained on raw thresholds: shard scores should match the model
+    private static void test3() throws Exception{
+        MultiLabelClfDataSet dataSet = synthesize();
+        IMLGradientBoosting boosting = new IMLGradientBoosting(dataSet.getNumClasses());
+        IMLGBConfig config = new IMLGBConfig.Builder(dataSet).numLeaves(4).learningRate(0.5)
+                .numSplitIntervals(1000).minDataPerLeaf(1).build();
+        IMLGBTrainer intervalTrainer = new IMLGBTrainer(config, boosting);
+        for (int i=0;i<5;i++){
+            intervalTrainer.iterate();
+        }
+        // coarse bins, so most raw thresholds fall inside a bin
+        QuantizedDataSet reference = QuantizedDataSet.quantize(dataSet, 8, QuantizedDataSet.Binning.QUANTILE);
+        MultiLabelClfDataSet half = firstHalf(dataSet, true);
+        IMLGBShard shard = new IMLGBShard(half, reference);
+        try (DistributedIMLGBTrainer trainer = new DistributedIMLGBTrainer(boosting, reference,
+                Arrays.asList(shard), new RegTreeConfig().setMaxNumLeaves(4), 0.5, true)){
+            double maxDifference = 0;
+            for (int i=0;i<half.getNumDataPoints();i++){
+                double[] scores = boosting.predictClassScores(half.getRow(i));
+                for (int k=0;k<dataSet.getNumClasses();k++){
+                    maxDifference = Math.max(maxDifference, Math.abs(shard.getScore(i,k)-scores[k]));
+                }
+            }
+            System.out.println("Expected (max difference close to 0) - Output: "+maxDifference);
+        }
+    }
+
+    // class k is on when feature k is above 0.5
+    private static MultiLabelClfDataSet synthesize(){
+        int numDataPoints = 2000;
+        int numClasses = 3;
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(5)
+                .numClasses(numClasses).density(Density.DENSE).build();
+        Random random = new Random(0);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<5;j++){
+                dataSet.setFeatureValue(i,j,random.nextDouble());
+            }
+            for (int k=0;k<numClasses;k++){
+                if (dataSet.getRow(i).get(k)>0.5){
+                    dataSet.addLabel(i,k);
+                }
+            }
+        }
+        return dataSet;
+    }
+
+    private static MultiLabelClfDataSet firstHalf(MultiLabelClfDataSet dataSet, boolean first){
+        int half = dataSet.getNumDataPoints()/2;
+        IntStream indices = first ? IntStream.range(0, half) : IntStream.range(half, dataSet.getNumDataPoints());
+        List<Integer> list = indices.boxed().collect(Collectors.toList());
+        return DataSetUtil.sampleData(dataSet, list);
+    }
+}
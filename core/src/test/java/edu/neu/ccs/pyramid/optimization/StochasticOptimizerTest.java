@@ -0,0 +1,89 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticLoss;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.dataset.ClfDataSetBuilder;
+import edu.neu.ccs.pyramid.eval.Accuracy;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class StochasticOptimizerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    private static ClfDataSet sample(){
+        int numData = 5000;
+        int numFeatures = 10;
+        Random random = new Random(0);
+        double[] truth = new double[numFeatures];
+        for (int j=0;j<numFeatures;j++){
+            truth[j] = random.nextGaussian();
+        }
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder()
+                .numClasses(2).numDataPoints(numData).numFeatures(numFeatures)
+                .dense(true).missingValue(false).build();
+        for (int i=0;i<numData;i++){
+            double score = 0;
+            for (int j=0;j<numFeatures;j++){
+                double value = random.nextGaussian();
+                dataSet.setFeatureValue(i,j,value);
+                score += truth[j]*value;
+            }
+            int label = random.nextDouble() < 1/(1+Math.exp(-score)) ? 1 : 0;
+            dataSet.setLabel(i,label);
+        }
+        return dataSet;
+    }
+
+    /**
+     * a batch of all data points gives the full gradient
+     */
+    private static void test1(){
+        ClfDataSet dataSet = sample();
+        LogisticRegression logisticRegression = new LogisticRegression(2, dataSet.getNumFeatures());
+        LogisticLoss loss = new LogisticLoss(logisticRegression, dataSet, 10, true);
+        new Adam(loss).iterate();
+        int[] all = IntStream.range(0, dataSet.getNumDataPoints()).toArray();
+        System.out.println("Expected (value=0) - Output: "+loss.getGradient().minus(loss.getBatchGradient(all)).norm(2));
+    }
+
+    /**
+     * stochastic optimizers reach about the objective of LBFGS
+     */
+    private static void test2(){
+        ClfDataSet dataSet = sample();
+        LogisticRegression lbfgsModel = new LogisticRegression(2, dataSet.getNumFeatures());
+        LBFGS lbfgs = new LBFGS(new LogisticLoss(lbfgsModel, dataSet, 10, true));
+        lbfgs.optimize();
+        System.out.println("LBFGS objective = "+lbfgs.getFinalObjective()+", accuracy = "+Accuracy.accuracy(lbfgsModel, dataSet));
+
+        LogisticRegression adamModel = new LogisticRegression(2, dataSet.getNumFeatures());
+        Adam adam = new Adam(new LogisticLoss(adamModel, dataSet, 10, true));
+        adam.setLearningRate(0.01);
+        adam.getTerminator().setMaxIteration(50);
+        adam.optimize();
+        System.out.println("Adam objective = "+adam.getFinalObjective()+", epochs = "+adam.getNumEpochs()
+                +", accuracy = "+Accuracy.accuracy(adamModel, dataSet));
+
+        LogisticRegression sgdModel = new LogisticRegression(2, dataSet.getNumFeatures());
+        SGD sgd = new SGD(new LogisticLoss(sgdModel, dataSet, 10, true));
+        sgd.setLearningRate(1E-5);
+        sgd.getTerminator().setMaxIteration(50);
+        sgd.optimize();
+        System.out.println("SGD objective = "+sgd.getFinalObjective()+", epochs = "+sgd.getNumEpochs()
+                +", accuracy = "+Accuracy.accuracy(sgdModel, dataSet));
+
+        LogisticRegression svrgModel = new LogisticRegression(2, dataSet.getNumFeatures());
+        SVRG svrg = new SVRG(new LogisticLoss(svrgModel, dataSet, 10, true));
+        svrg.setLearningRate(1E-5);
+        svrg.getTerminator().setMaxIteration(50);
+        EarlyStopper earlyStopper = new EarlyStopper(EarlyStopper.Goal.MAXIMIZE, 5);
+        svrg.optimize(earlyStopper, () -> Accuracy.accuracy(svrgModel, dataSet));
+        System.out.println("SVRG objective = "+svrg.getFinalObjective()+", epochs = "+svrg.getNumEpochs()
+                +", best epoch by accuracy = "+earlyStopper.getBestIteration());
+    }
+}
@@ -0,0 +1,84 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RowSamplerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    // ties at the threshold: exactly numTop rows are kept as they are, ties taken in row order
+    private static void test1(){
+        double[] weights = new double[10];
+        Arrays.fill(weights, 1);
+        double[] gradients = {5,-3,3,3,-3,1,1,-1,1,1};
+        RowSampler sampler = RowSampler.goss(0.3, 0.2, 0);
+        double[] sampled = sampler.sample(weights, gradients);
+        System.out.println("sampled = "+Arrays.toString(sampled));
+        System.out.println("Expected [1.0, 1.0, 1.0] - Output: "+Arrays.toString(Arrays.copyOf(sampled, 3)));
+        boolean amplifiedOrDropped = true;
+        for (int i=3;i<10;i++){
+            amplifiedOrDropped &= sampled[i]==0 || sampled[i]==3.5;
+        }
+        System.out.println("Expected (rest amplified by 3.5 or dropped=true) - Output: "+amplifiedOrDropped);
+    }
+
+    // the (1-a)/b amplification keeps the weighted gradient sum unbiased
+    private static void test2(){
+        int numData = 10000;
+        Random random = new Random(1);
+        double[] weights = new double[numData];
+        double[] gradients = new double[numData];
+        double fullSum = 0;
+        for (int i=0;i<numData;i++){
+            weights[i] = 1+random.nextDouble();
+            gradients[i] = random.nextGaussian()+0.3;
+            fullSum += weights[i]*gradients[i];
+        }
+        RowSampler sampler = RowSampler.goss(0.2, 0.1, 0);
+        int numRounds = 500;
+        double averageSum = 0;
+        double averageKept = 0;
+        for (int round=0;round<numRounds;round++){
+            double[] sampled = sampler.sample(weights, gradients);
+            for (int i=0;i<numData;i++){
+                averageSum += sampled[i]*gradients[i]/numRounds;
+                if (sampled[i]>0){
+                    averageKept += 1.0/numRounds;
+                }
+            }
+        }
+        System.out.println("Expected (kept=3000) - Output: kept = "+averageKept);
+        System.out.println("Expected (relative difference close to 0) - Output: full sum = "+fullSum
+                +", average sampled sum = "+averageSum+", relative difference = "+Math.abs(averageSum-fullSum)/Math.abs(fullSum));
+    }
+
+    // bagging keeps rows at the given rate and never brings back rows of weight 0
+    private static void test3(){
+        int numData = 10000;
+        double[] weights = new double[numData];
+        for (int i=0;i<numData;i++){
+            weights[i] = i%5==0 ? 0 : 2;
+        }
+        RowSampler sampler = RowSampler.bagging(0.5, 0);
+        double[] sampled = sampler.sample(weights, new double[numData]);
+        int numKept = 0;
+        int numZeroKept = 0;
+        boolean sameWeights = true;
+        for (int i=0;i<numData;i++){
+            if (sampled[i]>0){
+                numKept += 1;
+                sameWeights &= sampled[i]==weights[i];
+                if (weights[i]==0){
+                    numZeroKept += 1;
+                }
+            }
+        }
+        System.out.println("Expected (keep rate=0.5) - Output: keep rate = "+((double)numKept)/8000);
+        System.out.println("Expected (weight 0 rows kept=0) - Output: "+numZeroKept);
+        System.out.println("Expected (same weights=true) - Output: "+sameWeights);
+    }
+}
@@ -10,13 +10,16 @@ import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class LambdaMARTOptimizerTest  {
     public static void main(String[] args) throws Exception{
         test1();
+        test2();
     }
 
     private static void test1() throws Exception{
@@ -46,4 +49,66 @@ public class LambdaMARTOptimizerTest  {
         }
     }
 
-}
\ No newline at end of file
+    // lambdas from rank positions should equal the ones from swapping grades and recomputing NDCG
+    private static void test2(){
+        Random random = new Random(0);
+        int numDocs = 50;
+        int truncation = 10;
+        double[] grades = new double[numDocs];
+        double[] scores = new double[numDocs];
+        double[] gains = new double[numDocs];
+        for (int i=0;i<numDocs;i++){
+            grades[i] = random.nextInt(5);
+            scores[i] = random.nextGaussian();
+            gains[i] = Math.pow(2, grades[i])-1;
+        }
+        double[] discounts = new double[numDocs];
+        for (int r=0;r<truncation;r++){
+            discounts[r] = 1/(Math.log(r+2)/Math.log(2));
+        }
+        double[] ideal = Arrays.copyOf(gains, numDocs);
+        Arrays.sort(ideal);
+        double idealDCG = 0;
+        for (int r=0;r<numDocs;r++){
+            idealDCG += ideal[numDocs-1-r]*discounts[r];
+        }
+        double[] gradients = new double[numDocs];
+        double[] hessians = new double[numDocs];
+        LambdaMARTOptimizer.lambdas(scores, gains, idealDCG, discounts, gradients, hessians);
+
+        double maxDifference = 0;
+        for (int a=0;a<numDocs;a++){
+            double expected = 0;
+            for (int b=0;b<numDocs;b++){
+                if (grades[a]==grades[b]){
+                    continue;
+                }
+                double[] swapped = Arrays.copyOf(grades, numDocs);
+                swapped[a] = grades[b];
+                swapped[b] = grades[a];
+                double delta = Math.abs(dcg(swapped, scores, discounts)-dcg(grades, scores, discounts))/idealDCG;
+                if (grades[a]>grades[b]){
+                    expected += 1.0/(1+Math.exp(scores[a]-scores[b]))*delta;
+                } else {
+                    expected -= 1.0/(1+Math.exp(scores[b]-scores[a]))*delta;
+                }
+            }
+            maxDifference = Math.max(maxDifference, Math.abs(expected-gradients[a]));
+        }
+        System.out.println("max difference of lambdas = "+maxDifference);
+        System.out.println("hessians all non-negative = "+Arrays.stream(hessians).allMatch(h->h>=0));
+    }
+
+    private static double dcg(double[] grades, double[] scores, double[] discounts){
+        Integer[] ranked = new Integer[grades.length];
+        for (int i=0;i<ranked.length;i++){
+            ranked[i] = i;
+        }
+        Arrays.sort(ranked, (i,j)->Double.compare(scores[j], scores[i]));
+        double dcg = 0;
+        for (int r=0;r<ranked.length;r++){
+            dcg += (Math.pow(2, grades[ranked[r]])-1)*discounts[r];
+        }
+        return dcg;
+    }
+}
@@ -23,6 +23,8 @@ public class ElasticNetLinearRegTrainerTest {
 //        test1();
 //        test2();
         test3();
+        test4();
+        test5();
     }
 
     private static void test1() throws Exception{
@@ -107,4 +109,41 @@ public class ElasticNetLinearRegTrainerTest {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * screening should reach the same solution as plain coordinate descent
+     */
+    private static void test4() throws Exception{
+        RegDataSet dataSet = RegressionSynthesizer.linear();
+        LinearRegression plain = new LinearRegression(dataSet.getNumFeatures());
+        ElasticNetLinearRegOptimizer plainTrainer = new ElasticNetLinearRegOptimizer(plain,dataSet);
+        plainTrainer.setRegularization(0.1);
+        plainTrainer.setL1Ratio(0.9);
+        plainTrainer.optimize();
+
+        LinearRegression screened = new LinearRegression(dataSet.getNumFeatures());
+        ElasticNetLinearRegOptimizer screenedTrainer = new ElasticNetLinearRegOptimizer(screened,dataSet);
+        screenedTrainer.setRegularization(0.1);
+        screenedTrainer.setL1Ratio(0.9);
+        screenedTrainer.setScreening(true);
+        screenedTrainer.optimize();
+
+        System.out.println("plain non-zeros = "+plain.getWeights().getWeightsWithoutBias().getNumNonZeroElements());
+        System.out.println("screened non-zeros = "+screened.getWeights().getWeightsWithoutBias().getNumNonZeroElements());
+        System.out.println("max weight difference = "+plain.getWeights().getWeights()
+                .minus(screened.getWeights().getWeights()).norm(Double.POSITIVE_INFINITY));
+    }
+
+    private static void test5() throws Exception{
+        RegDataSet dataSet = RegressionSynthesizer.linear();
+        RegDataSet validationSet = RegressionSynthesizer.linear();
+        List<ElasticNetLinearRegPath.Solution> solutions = new ElasticNetLinearRegPath(dataSet)
+                .setL1Ratio(0.9)
+                .setNumRegularizations(10)
+                .setValidationSet(validationSet)
+                .fit();
+        for (ElasticNetLinearRegPath.Solution solution: solutions){
+            System.out.println(solution);
+        }
+    }
+
+}
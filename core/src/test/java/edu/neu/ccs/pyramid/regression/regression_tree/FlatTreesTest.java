@@ -0,0 +1,100 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.simulation.RegressionSynthesizer;
+import org.apache.mahout.math.Vector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlatTreesTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    // flattened predictions should be identical, with and without missing values
+    private static void test1(){
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(1000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        List<Regressor> regressors = new ArrayList<>();
+        regressors.add(new ConstantRegressor(0.5));
+        for (int t=0;t<5;t++){
+            RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(7+t);
+            regressors.add(RegTreeTrainer.fit(regTreeConfig, dataSet));
+        }
+        FlatTrees flatTrees = new FlatTrees(regressors);
+        for (int i=0;i<dataSet.getNumDataPoints();i+=3){
+            dataSet.setFeatureValue(i, i%dataSet.getNumFeatures(), Double.NaN);
+        }
+        int numDifferent = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            double expected = 0;
+            for (Regressor regressor: regressors){
+                expected += regressor.predict(dataSet.getRow(i));
+            }
+            if (flatTrees.predict(dataSet.getRow(i))!=expected){
+                numDifferent += 1;
+            }
+        }
+        System.out.println("number of different predictions = "+numDifferent);
+    }
+
+    // tree by tree batch prediction should agree with row by row prediction
+    private static void test2(){
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(3000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        List<Regressor> regressors = new ArrayList<>();
+        for (int t=0;t<10;t++){
+            regressors.add(RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(10), dataSet));
+        }
+        FlatTrees flatTrees = new FlatTrees(regressors);
+        Vector[] vectors = new Vector[dataSet.getNumDataPoints()];
+        for (int i=0;i<vectors.length;i++){
+            vectors[i] = dataSet.getRow(i);
+        }
+        double[] scores = new double[vectors.length];
+        flatTrees.predictBatch(vectors, scores, 0, 1);
+        int numDifferent = 0;
+        for (int i=0;i<vectors.length;i++){
+            if (scores[i]!=flatTrees.predict(vectors[i])){
+                numDifferent += 1;
+            }
+        }
+        System.out.println("number of different batch predictions = "+numDifferent);
+    }
+
+    // trees read back from the binary format should predict the same
+    private static void test3() throws Exception{
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(1000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        List<Regressor> regressors = new ArrayList<>();
+        regressors.add(new ConstantRegressor(0.5));
+        for (int t=0;t<10;t++){
+            regressors.add(RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(10), dataSet));
+        }
+        FlatTrees flatTrees = new FlatTrees(regressors);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)){
+            flatTrees.writeTo(out);
+        }
+        FlatTrees loaded = FlatTrees.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        System.out.println("bytes = "+bytes.size());
+        int numDifferent = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            if (loaded.predict(dataSet.getRow(i))!=flatTrees.predict(dataSet.getRow(i))){
+                numDifferent += 1;
+            }
+        }
+        System.out.println("number of different predictions after reading = "+numDifferent);
+    }
+}
@@ -0,0 +1,56 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.eval.RMSE;
+import edu.neu.ccs.pyramid.simulation.RegressionSynthesizer;
+
+public class HistRegTreeTrainerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    // root split should be the same as the interval splitter
+    private static void test1(){
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(1000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(2);
+        RegressionTree intervalTree = RegTreeTrainer.fit(regTreeConfig, dataSet);
+        RegressionTree histTree = HistRegTreeTrainer.fit(regTreeConfig, dataSet, dataSet.getLabels(),
+                new AverageOutputCalculator());
+        System.out.println("interval root = "+intervalTree.getRoot());
+        System.out.println("histogram root = "+histTree.getRoot());
+        System.out.println("Expected (same root=true) - Output: same root="+sameRoot(intervalTree, histTree));
+
+        // rows with weight 0, as left by row sampling, should not change the grid
+        double[] weights = new double[dataSet.getNumDataPoints()];
+        for (int i=0;i<weights.length;i++){
+            weights[i] = (i<300 || i%7==0) ? 0 : 1;
+        }
+        RegressionTree weightedIntervalTree = RegTreeTrainer.fit(regTreeConfig, dataSet, dataSet.getLabels(), weights,
+                new AverageOutputCalculator());
+        RegressionTree weightedHistTree = HistRegTreeTrainer.fit(regTreeConfig, dataSet, dataSet.getLabels(), weights,
+                new AverageOutputCalculator());
+        System.out.println("Expected (same root with zero weights=true) - Output: same root with zero weights="
+                +sameRoot(weightedIntervalTree, weightedHistTree));
+    }
+
+    private static boolean sameRoot(RegressionTree tree1, RegressionTree tree2){
+        Node root1 = tree1.getRoot();
+        Node root2 = tree2.getRoot();
+        return root1.getFeatureIndex()==root2.getFeatureIndex() && root1.getThreshold()==root2.getThreshold();
+    }
+
+    private static void test2(){
+        RegressionSynthesizer regressionSynthesizer = RegressionSynthesizer.getBuilder()
+                .setNumDataPoints(10000).build();
+        RegDataSet dataSet = regressionSynthesizer.multivarLine();
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(31);
+        RegressionTree intervalTree = RegTreeTrainer.fit(regTreeConfig, dataSet);
+        RegressionTree histTree = (RegressionTree) new RegTreeFactory(regTreeConfig.setHistogram(true))
+                .fit(dataSet, dataSet.getLabels());
+        System.out.println("interval tree RMSE = "+ RMSE.rmse(intervalTree, dataSet));
+        System.out.println("histogram tree RMSE = "+ RMSE.rmse(histTree, dataSet));
+    }
+}